@@ -28,7 +28,10 @@ import ca.uhn.fhir.rest.server.IResourceProvider;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
 import org.openmrs.module.BaseModuleActivator;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.DaemonTokenAware;
 import org.openmrs.module.Module;
 import org.openmrs.module.ModuleException;
 import org.openmrs.module.ModuleFactory;
@@ -37,6 +40,7 @@ import org.openmrs.module.fhir2.api.dao.FhirDao;
 import org.openmrs.module.fhir2.api.spi.ModuleLifecycleListener;
 import org.openmrs.module.fhir2.api.spi.ServiceClassLoader;
 import org.openmrs.module.fhir2.api.translators.FhirTranslator;
+import org.openmrs.module.fhir2.api.translators.impl.ConceptTranslationIndex;
 import org.openmrs.module.fhir2.api.util.FhirGlobalPropertyHolder;
 import org.openmrs.module.fhir2.model.GroupMember;
 import org.springframework.beans.BeansException;
@@ -50,7 +54,7 @@ import org.springframework.stereotype.Component;
  */
 @Slf4j
 @Component
-public class FhirActivator extends BaseModuleActivator implements ApplicationContextAware {
+public class FhirActivator extends BaseModuleActivator implements ApplicationContextAware, DaemonTokenAware {
 	
 	@Getter
 	private static ConfigurableApplicationContext applicationContext;
@@ -63,6 +67,10 @@ public class FhirActivator extends BaseModuleActivator implements ApplicationCon
 	
 	private boolean started = false;
 	
+	// the token used to run work in the background, such as bulk exports, on a daemon thread
+	@Getter
+	private static DaemonToken daemonToken;
+	
 	@Override
 	public void started() {
 		if (applicationContext == null) {
@@ -74,6 +82,7 @@ public class FhirActivator extends BaseModuleActivator implements ApplicationCon
 		log.info("Started FHIR");
 		
 		lifecycleListeners.forEach(ModuleLifecycleListener::started);
+		preloadConceptTranslations();
 	}
 	
 	@Override
@@ -99,6 +108,7 @@ public class FhirActivator extends BaseModuleActivator implements ApplicationCon
 		loadModules();
 		
 		lifecycleListeners.forEach(ModuleLifecycleListener::refreshed);
+		preloadConceptTranslations();
 	}
 	
 	@Override
@@ -130,6 +140,11 @@ public class FhirActivator extends BaseModuleActivator implements ApplicationCon
 		lifecycleListeners.remove(lifecycleListener);
 	}
 	
+	@Override
+	public void setDaemonToken(DaemonToken daemonToken) {
+		FhirActivator.daemonToken = daemonToken;
+	}
+	
 	@Override
 	public void setApplicationContext(@Nonnull ApplicationContext applicationContext) throws BeansException {
 		if (applicationContext instanceof ConfigurableApplicationContext) {
@@ -137,6 +152,23 @@ public class FhirActivator extends BaseModuleActivator implements ApplicationCon
 		}
 	}
 	
+	// the concept translation index is emptied whenever the context is refreshed, so it is filled again each time
+	protected void preloadConceptTranslations() {
+		ConceptTranslationIndex conceptTranslationIndex = applicationContext.getBean(ConceptTranslationIndex.class);
+		if (daemonToken == null || !conceptTranslationIndex.isPreloadEnabled()) {
+			return;
+		}
+		
+		Daemon.runInDaemonThread(() -> {
+			try {
+				conceptTranslationIndex.preload();
+			}
+			catch (Exception e) {
+				log.warn("Could not preload concept translations", e);
+			}
+		}, daemonToken);
+	}
+	
 	protected void loadModules() {
 		ModuleFactory.getLoadedModules().stream()
 		        // only try to load services from modules that have the FHIR2 module available on their ModuleClasspath
@@ -175,11 +207,11 @@ public class FhirActivator extends BaseModuleActivator implements ApplicationCon
 			        catch (NullPointerException e) {
 				        result = false;
 			        }
-			        
+			
 			        if (!result) {
 				        log.warn("Skipping {} as it is not an annotated Spring Component", c);
 			        }
-			        
+			
 			        return result;
 		        }).forEach(moduleServices::add);
 	}
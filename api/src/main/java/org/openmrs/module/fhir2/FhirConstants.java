@@ -129,6 +129,44 @@ public final class FhirConstants {
 	
 	public static final String OPENMRS_FHIR_MAXIMUM_PAGE_SIZE = "fhir2.paging.maximum";
 	
+	public static final String OPENMRS_FHIR_KEYSET_PAGING = "fhir2.paging.keyset";
+	
+	public static final String OPENMRS_FHIR_PAGING_STORE = "fhir2.paging.store";
+	
+	public static final String OPENMRS_FHIR_PAGING_STORE_MAXIMUM_SIZE = "fhir2.paging.store.maximumSize";
+	
+	public static final String OPENMRS_FHIR_PAGING_STORE_TIME_TO_LIVE = "fhir2.paging.store.timeToLive";
+	
+	public static final String OPENMRS_FHIR_INCLUDE_PARALLELISM = "fhir2.include.parallelism";
+	
+	public static final String OPENMRS_FHIR_STREAMING_FETCH_SIZE = "fhir2.streaming.fetchSize";
+	
+	public static final String OPENMRS_FHIR_EXPORT_TIME_TO_LIVE = "fhir2.export.timeToLive";
+	
+	public static final String OPENMRS_FHIR_GROUP_MEMBERS_LIMIT = "fhir2.group.membersLimit";
+	
+	public static final String OPENMRS_FHIR_RESOURCE_CACHE_MAX_SIZE = "fhir2.resourceCache.maxSize";
+	
+	public static final String OPENMRS_FHIR_RESOURCE_CACHE_TIME_TO_LIVE = "fhir2.resourceCache.timeToLive";
+	
+	public static final String OPENMRS_FHIR_CONDITIONAL_READ_RESOURCE_TYPES = "fhir2.conditionalRead.resourceTypes";
+	
+	public static final String OPENMRS_FHIR_CONCEPT_INDEX_MAX_MEMORY = "fhir2.conceptIndex.maxMemory";
+	
+	public static final String OPENMRS_FHIR_CONCEPT_INDEX_PRELOAD = "fhir2.conceptIndex.preload";
+	
+	public static final String OPENMRS_FHIR_CONCEPT_CODE_RESOLVER = "fhir2.conceptCodeResolver.enabled";
+	
+	public static final String OPENMRS_FHIR_ESTIMATED_TOTAL_LIMIT = "fhir2.estimatedTotalLimit";
+	
+	public static final String OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_TTL = "fhir2.searchResultIdCache.ttl";
+	
+	public static final String OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_MAX_IDS = "fhir2.searchResultIdCache.maxIds";
+	
+	public static final String OPENMRS_FHIR_SERVER_TIMING = "fhir2.serverTiming.enabled";
+	
+	public static final String OPENMRS_FHIR_SLOW_SEARCH_THRESHOLD = "fhir2.slowSearch.threshold";
+	
 	public static final String ALLERGY_INTOLERANCE = "AllergyIntolerance";
 	
 	public static final String CONDITION = "Condition";
@@ -361,6 +399,8 @@ public final class FhirConstants {
 	
 	public static final String LASTN_ENCOUNTERS_SEARCH_HANDLER = "lastn.encounters.search.handler";
 	
+	public static final String LASTN_PATIENTS_SEARCH_HANDLER = "lastn.patients.search.handler";
+	
 	public static final String EVERYTHING_SEARCH_HANDLER = "everything.search.handler";
 	
 	public static final String TITLE_SEARCH_HANDLER = "title.search.handler";
@@ -0,0 +1,73 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Set;
+
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
+
+/**
+ * Runs FHIR bulk data {@code $export} requests. Each export runs in the background, writing one
+ * NDJSON file per resource type, and can be polled until its files are ready to download.
+ */
+public interface FhirBulkExportService extends FhirHelperService {
+	
+	/**
+	 * Starts a new export, which runs as the current user
+	 *
+	 * @param level whether to export every resource, only the resources of patients, or only the
+	 *            resources of the members of a group
+	 * @param groupId the uuid of the group to export, if exporting a group
+	 * @param resourceTypes the resource types to export, or all supported types if empty
+	 * @param since if set, only resources changed after this time are exported
+	 * @param request the request which started the export
+	 * @return the job for the new export
+	 */
+	BulkExportJob startExport(@Nonnull BulkExportJob.Level level, @Nullable String groupId,
+	        @Nullable Collection<String> resourceTypes, @Nullable Date since, @Nullable String request);
+	
+	/**
+	 * @param jobId the id of an export
+	 * @return the job for the export
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException if there is no such export
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException if the export was started
+	 *             by another user and the current user is not a super user
+	 */
+	BulkExportJob getJob(@Nonnull String jobId);
+	
+	/**
+	 * Cancels an export if it is still running and deletes any files it has written
+	 *
+	 * @param jobId the id of an export
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException if there is no such export
+	 */
+	void deleteJob(@Nonnull String jobId);
+	
+	/**
+	 * @param jobId the id of a completed export
+	 * @param fileName the name of one of the files listed in the outputs or errors of the export
+	 * @return the path of the file
+	 * @throws ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException if there is no such export
+	 *             or file
+	 */
+	Path getOutputFile(@Nonnull String jobId, @Nonnull String fileName);
+	
+	/**
+	 * @param level the level of an export
+	 * @return the resource types which can be exported at that level
+	 */
+	Set<String> getSupportedResourceTypes(@Nonnull BulkExportJob.Level level);
+}
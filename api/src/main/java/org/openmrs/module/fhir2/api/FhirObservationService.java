@@ -26,4 +26,6 @@ public interface FhirObservationService extends FhirService<Observation> {
 	IBundleProvider getLastnObservations(NumberParam max, ObservationSearchParams observationSearchParams);
 	
 	IBundleProvider getLastnEncountersObservations(NumberParam max, ObservationSearchParams observationSearchParams);
+	
+	IBundleProvider getLastnPatientsObservations(NumberParam max, ObservationSearchParams observationSearchParams);
 }
@@ -24,6 +24,16 @@ public interface FhirService<T extends IAnyResource> {
 	
 	List<T> get(@Nonnull Collection<String> uuids);
 	
+	/**
+	 * Gets the version id of the resource with the given id without loading or translating it, so
+	 * that a client's cached copy of the resource can be checked cheaply.
+	 *
+	 * @param uuid the id of the resource
+	 * @return the version id of the resource, or {@code null} if there is no such resource or its
+	 *         version cannot be looked up without reading it
+	 */
+	String getVersionId(@Nonnull String uuid);
+	
 	T create(@Nonnull T newResource);
 	
 	T update(@Nonnull String uuid, @Nonnull T updatedResource);
@@ -31,7 +41,7 @@ public interface FhirService<T extends IAnyResource> {
 	/**
 	 * Updates the specified resource if it exists otherwise creates a new one of the resource provider
 	 * supports the operation and createIfNotExists is set to true.
-	 * 
+	 *
 	 * @param uuid the unique identifier of the resource
 	 * @param updatedResource the resource to update
 	 * @param requestDetails {@link RequestDetails} object
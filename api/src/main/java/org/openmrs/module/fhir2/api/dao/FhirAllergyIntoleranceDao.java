@@ -13,9 +13,11 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Allergy;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -33,10 +35,26 @@ public interface FhirAllergyIntoleranceDao extends FhirDao<Allergy> {
 	@Authorized(PrivilegeConstants.GET_ALLERGIES)
 	List<Allergy> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_ALLERGIES)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_ALLERGIES)
+	KeysetPage<Allergy> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_ALLERGIES)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<Allergy> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_ALLERGIES)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_ALLERGIES)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized({ PrivilegeConstants.ADD_ALLERGIES, PrivilegeConstants.EDIT_ALLERGIES })
 	Allergy createOrUpdate(@Nonnull Allergy newEntry);
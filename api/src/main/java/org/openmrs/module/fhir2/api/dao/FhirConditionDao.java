@@ -13,9 +13,11 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Condition;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -33,10 +35,26 @@ public interface FhirConditionDao extends FhirDao<Condition> {
 	@Authorized(PrivilegeConstants.GET_CONCEPTS)
 	List<Condition> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_CONCEPTS)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_CONCEPTS)
+	KeysetPage<Condition> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_CONCEPTS)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<Condition> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_CONCEPTS)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_CONCEPTS)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized(PrivilegeConstants.EDIT_CONDITIONS)
 	Condition createOrUpdate(@Nonnull Condition newCondition);
@@ -14,9 +14,11 @@ import javax.annotation.Nonnull;
 import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Auditable;
 import org.openmrs.OpenmrsObject;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 
 /**
@@ -62,6 +64,19 @@ public interface FhirDao<T extends OpenmrsObject & Auditable> extends FhirDaoAop
 	 */
 	List<T> get(@Nonnull Collection<String> uuids);
 	
+	/**
+	 * Gets the version id of the object of type {@link T} with the supplied UUID, without loading the
+	 * object. This is the same version id that
+	 * {@link org.openmrs.module.fhir2.api.translators.impl.FhirTranslatorUtils#getVersionId} gives for
+	 * the object, so it can be used to check whether a resource translated from the object is still
+	 * current.
+	 *
+	 * @param uuid The UUID of the object
+	 * @return The version id of the object or {@code null} if no such object can be found or the object
+	 *         has no version
+	 */
+	String getVersionId(@Nonnull String uuid);
+	
 	/**
 	 * Runs a search using the supplied {@link SearchParameterMap} and returns any objects that match
 	 * the {@link SearchParameterMap}.
@@ -72,6 +87,23 @@ public interface FhirDao<T extends OpenmrsObject & Auditable> extends FhirDaoAop
 	 */
 	List<T> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	/**
+	 * Runs a search using the supplied {@link SearchParameterMap} and passes each matching object to the
+	 * supplied {@link Consumer}, in the same order as {@link #getSearchResults(SearchParameterMap)}. <br/>
+	 * Rather than loading every result, the results are read a page at a time, using keyset pagination
+	 * where the search supports it, and everything each page loaded into the session, i.e., the
+	 * objects and the associations loaded with them, is detached once the page has been handed to the
+	 * consumer, so the memory used does not grow with the number of results. This makes it suitable
+	 * for walking very large result sets, e.g., for bulk export. <br/>
+	 * <strong>NB</strong> The objects passed to the consumer are detached afterwards, so the consumer
+	 * should not hold on to them, nor rely on lazily loading their associations once it has returned.
+	 *
+	 * @param theParams A {@link SearchParameterMap} defining any filters to apply
+	 * @param consumer A {@link Consumer} called with each object matching the supplied
+	 *            {@link SearchParameterMap}
+	 */
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<T> consumer);
+	
 	/**
 	 * Gets the count of objects that will match a search run with the supplied
 	 * {@link SearchParameterMap}
@@ -81,4 +113,52 @@ public interface FhirDao<T extends OpenmrsObject & Auditable> extends FhirDaoAop
 	 */
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	/**
+	 * Gets the count of objects that will match a search run with the supplied
+	 * {@link SearchParameterMap}, giving up once more than {@code maxCount} objects have been found.
+	 * For searches matching many objects this is much cheaper than
+	 * {@link #getSearchResultsCount(SearchParameterMap)}, as the database can stop reading rows as
+	 * soon as it has found {@code maxCount + 1} of them.
+	 *
+	 * @param theParams A {@link SearchParameterMap} defining any filters to apply
+	 * @param maxCount The largest count to work out
+	 * @return The number of objects matching the supplied {@link SearchParameterMap} or {@code null}
+	 *         if more than {@code maxCount} objects match
+	 */
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
+	/**
+	 * Gets the uuids of all objects that match a search run with the supplied
+	 * {@link SearchParameterMap}. This is much cheaper than loading every matching object when only the
+	 * identity of the results is needed, e.g., to find the resources which reference them. If the map
+	 * asks for a page of results, with {@link SearchParameterMap#getFromIndex()} and
+	 * {@link SearchParameterMap#getToIndex()}, only that page of the uuids, in uuid order, is returned.
+	 *
+	 * @param theParams A {@link SearchParameterMap} defining any filters to apply
+	 * @return The uuids of the objects matching the supplied {@link SearchParameterMap}
+	 */
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	/**
+	 * Whether a search run with the supplied {@link SearchParameterMap} can be paged using
+	 * {@link #getKeysetSearchResults(SearchParameterMap)}
+	 *
+	 * @param theParams A {@link SearchParameterMap} defining any filters to apply
+	 * @return {@code true} if keyset pagination is supported for this search
+	 */
+	boolean supportsKeysetPagination(@Nonnull SearchParameterMap theParams);
+	
+	/**
+	 * Runs a search using keyset (or "seek") pagination. Rather than skipping
+	 * {@link SearchParameterMap#getFromIndex()} rows, the returned page starts immediately after the
+	 * position given by {@link SearchParameterMap#getKeysetCursor()}, or at the first result if no
+	 * cursor is set, so fetching a page deep into the result set costs the same as fetching the first
+	 * page. The page size is {@link SearchParameterMap#getToIndex()} -
+	 * {@link SearchParameterMap#getFromIndex()}.
+	 *
+	 * @param theParams A {@link SearchParameterMap} defining any filters to apply
+	 * @return A {@link KeysetPage} holding the matching objects and the cursor for the next page
+	 */
+	KeysetPage<T> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
 }
@@ -13,9 +13,11 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Diagnosis;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -33,10 +35,26 @@ public interface FhirDiagnosisDao extends FhirDao<Diagnosis> {
 	@Authorized(PrivilegeConstants.GET_DIAGNOSES)
 	List<Diagnosis> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_DIAGNOSES)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_DIAGNOSES)
+	KeysetPage<Diagnosis> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_DIAGNOSES)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<Diagnosis> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_DIAGNOSES)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_DIAGNOSES)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized({ PrivilegeConstants.EDIT_DIAGNOSES })
 	Diagnosis createOrUpdate(@Nonnull Diagnosis newDiagnosis);
@@ -13,8 +13,10 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.module.fhir2.model.FhirDiagnosticReport;
 import org.openmrs.util.PrivilegeConstants;
@@ -33,10 +35,26 @@ public interface FhirDiagnosticReportDao extends FhirDao<FhirDiagnosticReport> {
 	@Authorized(PrivilegeConstants.GET_OBS)
 	List<FhirDiagnosticReport> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_OBS)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_OBS)
+	KeysetPage<FhirDiagnosticReport> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_OBS)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<FhirDiagnosticReport> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_OBS)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_OBS)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized({ PrivilegeConstants.ADD_OBS, PrivilegeConstants.EDIT_OBS })
 	FhirDiagnosticReport createOrUpdate(@Nonnull FhirDiagnosticReport newEntry);
@@ -13,9 +13,11 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.PatientProgram;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -33,10 +35,26 @@ public interface FhirEpisodeOfCareDao extends FhirDao<PatientProgram> {
 	@Authorized(PrivilegeConstants.GET_PATIENT_PROGRAMS)
 	List<PatientProgram> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_PROGRAMS)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_PROGRAMS)
+	KeysetPage<PatientProgram> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_PROGRAMS)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<PatientProgram> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_PATIENT_PROGRAMS)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_PROGRAMS)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized({ PrivilegeConstants.ADD_PATIENT_PROGRAMS, PrivilegeConstants.EDIT_PATIENT_PROGRAMS })
 	PatientProgram createOrUpdate(@Nonnull PatientProgram newEntry);
@@ -13,9 +13,11 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Cohort;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -33,10 +35,44 @@ public interface FhirGroupDao extends FhirDao<Cohort> {
 	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
 	List<Cohort> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
+	KeysetPage<Cohort> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<Cohort> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
+	/**
+	 * @param groupUuid the uuid of the cohort
+	 * @return the number of patients who are members of the cohort
+	 */
+	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
+	int getMemberCount(@Nonnull String groupUuid);
+	
+	/**
+	 * Fetches a page of the ids of the patients who are members of a cohort, ordered by patient id
+	 *
+	 * @param groupUuid the uuid of the cohort
+	 * @param firstResult the index of the first member to return
+	 * @param maxResults the maximum number of members to return
+	 * @return the patient ids of the members
+	 */
+	@Authorized(PrivilegeConstants.GET_PATIENT_COHORTS)
+	List<Integer> getMemberIds(@Nonnull String groupUuid, int firstResult, int maxResults);
+	
 	@Override
 	@Authorized({ PrivilegeConstants.ADD_COHORTS, PrivilegeConstants.EDIT_COHORTS })
 	Cohort createOrUpdate(@Nonnull Cohort newEntry);
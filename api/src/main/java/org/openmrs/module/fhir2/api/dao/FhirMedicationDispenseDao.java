@@ -13,10 +13,12 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Auditable;
 import org.openmrs.OpenmrsObject;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -34,10 +36,26 @@ public interface FhirMedicationDispenseDao<T extends OpenmrsObject & Auditable>
 	@Authorized(PrivilegeConstants.GET_MEDICATION_DISPENSE)
 	List<T> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_MEDICATION_DISPENSE)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_MEDICATION_DISPENSE)
+	KeysetPage<T> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_MEDICATION_DISPENSE)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<T> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_MEDICATION_DISPENSE)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_MEDICATION_DISPENSE)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized(PrivilegeConstants.EDIT_MEDICATION_DISPENSE)
 	T createOrUpdate(@Nonnull T newEntry);
@@ -13,10 +13,12 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Provider;
 import org.openmrs.ProviderAttribute;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -30,6 +32,10 @@ public interface FhirPractitionerDao extends FhirDao<Provider> {
 	@Authorized(PrivilegeConstants.GET_PROVIDERS)
 	List<Provider> get(@Nonnull Collection<String> uuids);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PROVIDERS)
+	String getVersionId(@Nonnull String uuid);
+	
 	@Authorized(PrivilegeConstants.GET_PROVIDERS)
 	List<ProviderAttribute> getActiveAttributesByPractitionerAndAttributeTypeUuid(@Nonnull Provider provider,
 	        @Nonnull String providerAttributeTypeUuid);
@@ -38,10 +44,26 @@ public interface FhirPractitionerDao extends FhirDao<Provider> {
 	@Authorized(PrivilegeConstants.GET_PROVIDERS)
 	List<Provider> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PROVIDERS)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PROVIDERS)
+	KeysetPage<Provider> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PROVIDERS)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<Provider> consumer);
+	
 	@Override
 	@Authorized(PrivilegeConstants.GET_PROVIDERS)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(PrivilegeConstants.GET_PROVIDERS)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized({ PrivilegeConstants.MANAGE_PROVIDERS })
 	Provider createOrUpdate(@Nonnull Provider newEntry);
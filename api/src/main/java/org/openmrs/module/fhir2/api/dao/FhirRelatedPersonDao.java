@@ -13,9 +13,11 @@ import javax.annotation.Nonnull;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.openmrs.Relationship;
 import org.openmrs.annotation.Authorized;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.util.PrivilegeConstants;
 
@@ -33,10 +35,26 @@ public interface FhirRelatedPersonDao extends FhirDao<Relationship> {
 	@Authorized(value = { PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_RELATIONSHIPS }, requireAll = true)
 	List<Relationship> getSearchResults(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(value = { PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_RELATIONSHIPS }, requireAll = true)
+	List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(value = { PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_RELATIONSHIPS }, requireAll = true)
+	KeysetPage<Relationship> getKeysetSearchResults(@Nonnull SearchParameterMap theParams);
+	
+	@Override
+	@Authorized(value = { PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_RELATIONSHIPS }, requireAll = true)
+	void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<Relationship> consumer);
+	
 	@Override
 	@Authorized(value = { PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_RELATIONSHIPS }, requireAll = true)
 	int getSearchResultsCount(@Nonnull SearchParameterMap theParams);
 	
+	@Override
+	@Authorized(value = { PrivilegeConstants.GET_PERSONS, PrivilegeConstants.GET_RELATIONSHIPS }, requireAll = true)
+	Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount);
+	
 	@Override
 	@Authorized(value = { PrivilegeConstants.ADD_PERSONS, PrivilegeConstants.EDIT_PERSONS,
 	        PrivilegeConstants.ADD_RELATIONSHIPS, PrivilegeConstants.EDIT_RELATIONSHIPS }, requireAll = true)
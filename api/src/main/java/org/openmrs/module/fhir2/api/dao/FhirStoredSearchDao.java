@@ -0,0 +1,44 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao;
+
+import javax.annotation.Nonnull;
+
+import java.util.Date;
+import java.util.Optional;
+
+import org.openmrs.module.fhir2.model.FhirStoredSearch;
+
+public interface FhirStoredSearchDao extends FhirDaoAop {
+	
+	Optional<FhirStoredSearch> getStoredSearch(@Nonnull String searchId);
+	
+	FhirStoredSearch saveStoredSearch(@Nonnull FhirStoredSearch storedSearch);
+	
+	/**
+	 * Moves the expiration date of the stored search with the given id
+	 *
+	 * @param searchId the id of the stored search
+	 * @param expirationDate the new expiration date
+	 */
+	void updateExpirationDate(@Nonnull String searchId, @Nonnull Date expirationDate);
+	
+	/**
+	 * Deletes every stored search whose expiration date is before the supplied date
+	 *
+	 * @param date the cut-off date
+	 * @return the number of stored searches deleted
+	 */
+	int deleteExpiredStoredSearches(@Nonnull Date date);
+	
+	long getStoredSearchCount();
+	
+	Optional<Date> getOldestStoredSearchDate();
+}
@@ -18,31 +18,46 @@ import javax.persistence.CacheRetrieveMode;
 import javax.persistence.CacheStoreMode;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
+import javax.persistence.PersistenceUnitUtil;
 import javax.persistence.TypedQuery;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
+import javax.persistence.criteria.Fetch;
+import javax.persistence.criteria.JoinType;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Selection;
 
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.function.BiFunction;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 import com.google.common.reflect.TypeToken;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.hl7.fhir.r4.model.DomainResource;
 import org.openmrs.Auditable;
 import org.openmrs.Obs;
@@ -54,10 +69,16 @@ import org.openmrs.aop.RequiredDataAdvice;
 import org.openmrs.api.handler.RetireHandler;
 import org.openmrs.api.handler.VoidHandler;
 import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
 import org.openmrs.module.fhir2.api.dao.FhirDao;
 import org.openmrs.module.fhir2.api.dao.internals.FhirSearchQueryHelper;
+import org.openmrs.module.fhir2.api.dao.internals.InClauseValues;
 import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaContext;
+import org.openmrs.module.fhir2.api.dao.internals.SearchResultIdCache;
 import org.openmrs.module.fhir2.api.dao.internals.SortState;
+import org.openmrs.module.fhir2.api.metrics.SlowSearchLog;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
+import org.openmrs.module.fhir2.api.search.param.KeysetCursor;
 import org.openmrs.module.fhir2.api.search.param.PropParam;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -77,6 +98,11 @@ import org.springframework.transaction.annotation.Transactional;
 @Slf4j
 public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends BaseDao implements FhirDao<T> {
 	
+	// keeps the IN-lists used to prefetch associations well below the limits of the supported databases
+	protected static final int PREFETCH_BATCH_SIZE = 500;
+	
+	private static final int DEFAULT_STREAMING_FETCH_SIZE = 500;
+	
 	@SuppressWarnings("UnstableApiUsage")
 	protected final TypeToken<T> typeToken = new TypeToken<T>(getClass()) {};
 	
@@ -84,6 +110,12 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 	@Setter(value = AccessLevel.PROTECTED, onMethod_ = { @Autowired })
 	private FhirSearchQueryHelper searchQueryHelper;
 	
+	@Setter(value = AccessLevel.PROTECTED, onMethod_ = { @Autowired })
+	private FhirGlobalPropertyService fhirGlobalPropertyService;
+	
+	@Setter(value = AccessLevel.PROTECTED, onMethod_ = { @Autowired })
+	private SearchResultIdCache searchResultIdCache;
+	
 	private final boolean isRetireable;
 	
 	private final boolean isVoidable;
@@ -137,7 +169,7 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 		OpenmrsFhirCriteriaContext<T, T> criteriaContext = createCriteriaContext((Class<T>) typeToken.getRawType());
 		
 		criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot());
-		criteriaContext.addPredicate(criteriaContext.getRoot().get("uuid").in(uuids));
+		criteriaContext.addPredicate(criteriaContext.getRoot().get("uuid").in(InClauseValues.pad(uuids)));
 		
 		if (isVoidable) {
 			handleVoidable(criteriaContext);
@@ -145,8 +177,13 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 			handleRetireable(criteriaContext);
 		}
 		
-		return criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery()).getResultList().stream()
-		        .filter(Objects::nonNull).map(this::deproxyResult).collect(Collectors.toList());
+		List<T> results = criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery())
+		        .getResultList().stream().filter(Objects::nonNull).map(this::deproxyResult)
+		        .collect(Collectors.toList());
+		
+		prefetchAssociations(results);
+		
+		return results;
 	}
 	
 	@Override
@@ -169,11 +206,36 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 		}
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public String getVersionId(@Nonnull String uuid) {
+		@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
+		OpenmrsFhirCriteriaContext<T, Object[]> criteriaContext = createCriteriaContext(
+		    (Class<T>) typeToken.getRawType(), Object[].class);
+		
+		criteriaContext.getCriteriaQuery().multiselect(criteriaContext.getRoot().get("dateChanged"),
+		    criteriaContext.getRoot().get("dateCreated"));
+		criteriaContext
+		        .addPredicate(criteriaContext.getCriteriaBuilder().equal(criteriaContext.getRoot().get("uuid"), uuid));
+		
+		List<Object[]> results = criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery())
+		        .setMaxResults(1).getResultList();
+		if (results.isEmpty()) {
+			return null;
+		}
+		
+		Date lastUpdated = (Date) (results.get(0)[0] != null ? results.get(0)[0] : results.get(0)[1]);
+		return lastUpdated == null ? null : String.valueOf(lastUpdated.getTime());
+	}
+	
 	@Override
 	public List<T> getSearchResults(@Nonnull SearchParameterMap theParams) {
 		List<T> results;
 		
-		if (hasDistinctResults()) {
+		int[] resultIds = getCachedResultIds(theParams);
+		if (resultIds != null) {
+			results = getResultsForCachedIds(resultIds, theParams);
+		} else if (hasDistinctResults()) {
 			OpenmrsFhirCriteriaContext<T, T> criteriaContext = getSearchResultCriteria(theParams);
 			String idProperty = getIdPropertyName(criteriaContext.getEntityManager());
 			
@@ -184,6 +246,7 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 			criteriaQuery.select(criteriaContext.getRoot());
 			
 			TypedQuery<T> executableQuery = criteriaContext.getEntityManager().createQuery(criteriaQuery);
+			SlowSearchLog.recordQuery(criteriaContext.getEntityManager(), executableQuery);
 			
 			executableQuery.setFirstResult(theParams.getFromIndex());
 			if (theParams.getToIndex() != Integer.MAX_VALUE && theParams.getToIndex() >= 0) {
@@ -213,6 +276,7 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 			
 			// Apply pagination to the sorted ID query
 			TypedQuery<Object> executableIdQuery = criteriaContext.getEntityManager().createQuery(idQuery);
+			SlowSearchLog.recordQuery(criteriaContext.getEntityManager(), executableIdQuery);
 			executableIdQuery.setFirstResult(theParams.getFromIndex());
 			if (theParams.getToIndex() != Integer.MAX_VALUE && theParams.getToIndex() >= 0) {
 				int maxResults = theParams.getToIndex() - theParams.getFromIndex();
@@ -227,35 +291,175 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 				return Collections.emptyList();
 			}
 			
-			// Extract IDs from results - when ORDER BY is present, results are Object[] with ID as first element
-			List<Integer> ids = new ArrayList<>(rawResults.size());
-			for (Object result : rawResults) {
-				if (result instanceof Object[]) {
-					ids.add((Integer) ((Object[]) result)[0]);
-				} else {
-					ids.add((Integer) result);
-				}
-			}
+			results = getResultsForIds(toIds(rawResults), theParams, idProperty);
+		}
+		
+		results = results.stream().map(this::deproxyResult).collect(Collectors.toList());
+		
+		prefetchAssociations(results);
+		
+		return results;
+	}
+	
+	@Override
+	public boolean supportsKeysetPagination(@Nonnull SearchParameterMap theParams) {
+		return true;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public KeysetPage<T> getKeysetSearchResults(@Nonnull SearchParameterMap theParams) {
+		@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
+		OpenmrsFhirCriteriaContext<T, Object> criteriaContext = getSearchResultCriteria(
+		    createCriteriaContext((Class<T>) typeToken.getRawType(), Object.class), theParams);
+		
+		String idProperty = getIdPropertyName(criteriaContext.getEntityManager());
+		
+		// keyset pagination relies on exactly the same ordering as offset pagination, with the position of nulls
+		// fixed so that it does not depend on the database
+		handleSort(criteriaContext, theParams.getSortSpec());
+		orderNullsExplicitly(criteriaContext);
+		handleIdPropertyOrdering(criteriaContext, idProperty);
+		
+		if (theParams.getKeysetCursor() != null) {
+			criteriaContext.addPredicate(handleKeysetCursor(criteriaContext, theParams.getKeysetCursor()));
+		}
+		
+		// both queries return rows of the form [result, sortKey1, ..., sortKeyN, id] so the cursor can be read
+		// from the last row
+		CriteriaQuery<Object> query;
+		if (hasDistinctResults()) {
+			List<Selection<?>> selections = new ArrayList<>(criteriaContext.getOrders().size() + 1);
+			selections.add(criteriaContext.getRoot());
+			criteriaContext.getOrders().forEach(order -> selections.add(order.getExpression()));
 			
-			// Use the IDs to fetch full objects
-			// We still need to sort the wrapper query to maintain the order, as IN() doesn't guarantee order
-			@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
-			OpenmrsFhirCriteriaContext<T, T> wrapperQuery = createCriteriaContext((Class<T>) typeToken.getRawType());
+			query = criteriaContext.finalizeQuery().multiselect(selections);
+		} else {
+			query = criteriaContext.finalizeIdQuery(idProperty);
+		}
+		
+		TypedQuery<Object> executableQuery = criteriaContext.getEntityManager().createQuery(query);
+		SlowSearchLog.recordQuery(criteriaContext.getEntityManager(), executableQuery);
+		
+		// the first page may still start at an offset, the following pages start after the cursor
+		if (theParams.getKeysetCursor() == null && theParams.getFromIndex() > 0) {
+			executableQuery.setFirstResult(theParams.getFromIndex());
+		}
+		
+		int pageSize = -1;
+		if (theParams.getToIndex() != Integer.MAX_VALUE && theParams.getToIndex() >= 0) {
+			pageSize = Math.max(theParams.getToIndex() - theParams.getFromIndex(), 0);
+			// fetch a single extra row to determine whether there is a following page
+			executableQuery.setMaxResults(pageSize + 1);
+		}
+		
+		List<Object> rows = executableQuery.getResultList();
+		
+		KeysetCursor nextCursor = null;
+		if (pageSize >= 0 && rows.size() > pageSize) {
+			rows = rows.subList(0, pageSize);
+			if (!rows.isEmpty()) {
+				nextCursor = KeysetCursor.fromRow((Object[]) rows.get(rows.size() - 1));
+			}
+		}
+		
+		if (rows.isEmpty()) {
+			return new KeysetPage<>(Collections.emptyList(), null);
+		}
+		
+		List<T> results;
+		if (hasDistinctResults()) {
+			results = new ArrayList<>(rows.size());
+			for (Object row : rows) {
+				@SuppressWarnings("unchecked")
+				T result = (T) ((Object[]) row)[0];
+				results.add(result);
+			}
+		} else {
+			results = getResultsForIds(toIds(rows), theParams, idProperty);
+		}
+		
+		results = results.stream().map(this::deproxyResult).collect(Collectors.toList());
+		
+		prefetchAssociations(results);
+		
+		return new KeysetPage<>(results, nextCursor);
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public void streamSearchResults(@Nonnull SearchParameterMap theParams, @Nonnull Consumer<T> consumer) {
+		// each page is read by a query of its own rather than through a cursor, as MySQL only streams a cursor
+		// by holding the connection, which the queries loading the objects of each page then cannot use
+		SearchParameterMap pageParams = theParams.withoutPaging();
+		boolean keysetPaging = supportsKeysetPagination(pageParams);
+		int pageSize = Math.max(getStreamingFetchSize(), 1);
+		int toIndex = theParams.getToIndex() < 0 ? Integer.MAX_VALUE : theParams.getToIndex();
+		
+		SessionImplementor session = getSessionFactory().getCurrentSession().unwrap(SessionImplementor.class);
+		// when the session holds nothing else, the stream owns it and can clear it after each page
+		boolean ownsSession = session.getPersistenceContext().getNumberOfManagedEntities() == 0;
+		Set<Object> callerEntities = Collections.newSetFromMap(new IdentityHashMap<>());
+		for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+			callerEntities.add(entry.getKey());
+		}
+		
+		KeysetCursor cursor = null;
+		int fromIndex = Math.max(theParams.getFromIndex(), 0);
+		while (fromIndex < toIndex) {
+			int pageEnd = (int) Math.min((long) fromIndex + pageSize, toIndex);
+			pageParams.setFromIndex(fromIndex);
+			pageParams.setToIndex(pageEnd);
 			
-			handleSort(wrapperQuery, theParams.getSortSpec());
-			handleIdPropertyOrdering(wrapperQuery, idProperty);
+			// the overridable search methods are used, so that subclasses which change the results, e.g., for
+			// $lastn, stream the same results as they return
+			List<T> results;
+			if (keysetPaging) {
+				pageParams.setKeysetCursor(cursor);
+				KeysetPage<T> page = getKeysetSearchResults(pageParams);
+				results = page.getResults();
+				cursor = page.getNextCursor();
+			} else {
+				results = getSearchResults(pageParams);
+			}
 			
-			wrapperQuery.getCriteriaQuery().select(wrapperQuery.getRoot());
+			results.forEach(consumer);
+			releasePage(session, ownsSession, callerEntities);
 			
-			results = wrapperQuery.getEntityManager().createQuery(wrapperQuery.finalizeWrapperQuery(idProperty, ids))
-			        .getResultList();
+			fromIndex += results.size();
+			if (results.size() < pageEnd - pageParams.getFromIndex() || (keysetPaging && cursor == null)) {
+				break;
+			}
+		}
+	}
+	
+	/**
+	 * Removes everything a page of streamed results loaded from the session, so that the size of the
+	 * session does not grow with the number of results streamed. A session owned by the stream is
+	 * cleared. Otherwise, every object the page brought into the session, i.e., the results and the
+	 * objects loaded with them, is evicted, leaving the objects the caller had loaded.
+	 */
+	private void releasePage(SessionImplementor session, boolean ownsSession, Set<Object> callerEntities) {
+		if (ownsSession) {
+			session.flush();
+			session.clear();
+			return;
 		}
 		
-		return results.stream().map(this::deproxyResult).collect(Collectors.toList());
+		for (Map.Entry<Object, EntityEntry> entry : session.getPersistenceContext().reentrantSafeEntityEntries()) {
+			if (!callerEntities.contains(entry.getKey()) && session.contains(entry.getKey())) {
+				session.evict(entry.getKey());
+			}
+		}
 	}
 	
 	@Override
 	public int getSearchResultsCount(@Nonnull SearchParameterMap theParams) {
+		int[] resultIds = getCachedResultIds(theParams);
+		if (resultIds != null) {
+			return resultIds.length;
+		}
+		
 		@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
 		OpenmrsFhirCriteriaContext<T, Long> criteriaContext = getSearchResultCriteria(
 		    createCriteriaContext((Class<T>) typeToken.getRawType(), Long.class), theParams);
@@ -269,7 +473,66 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 			        .countDistinct(criteriaContext.getRoot().get(getIdPropertyName(criteriaContext.getEntityManager()))));
 		}
 		
-		return criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery()).getSingleResult().intValue();
+		TypedQuery<Long> countQuery = criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery());
+		SlowSearchLog.recordQuery(criteriaContext.getEntityManager(), countQuery);
+		return countQuery.getSingleResult().intValue();
+	}
+	
+	@Override
+	public Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount) {
+		int[] resultIds = getCachedResultIds(theParams);
+		if (resultIds != null) {
+			return resultIds.length > maxCount ? null : resultIds.length;
+		}
+		
+		@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
+		OpenmrsFhirCriteriaContext<T, Object> criteriaContext = getSearchResultCriteria(
+		    createCriteriaContext((Class<T>) typeToken.getRawType(), Object.class), theParams);
+		
+		String idProperty = getIdPropertyName(criteriaContext.getEntityManager());
+		
+		// reading one id more than the limit is enough to tell whether the limit is exceeded
+		TypedQuery<Object> idQuery = criteriaContext.getEntityManager()
+		        .createQuery(criteriaContext.finalizeIdQuery(idProperty));
+		SlowSearchLog.recordQuery(criteriaContext.getEntityManager(), idQuery);
+		idQuery.setMaxResults(maxCount + 1);
+		
+		int count = idQuery.getResultList().size();
+		return count > maxCount ? null : count;
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<String> getSearchResultUuids(@Nonnull SearchParameterMap theParams) {
+		@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
+		OpenmrsFhirCriteriaContext<T, String> criteriaContext = getSearchResultCriteria(
+		    createCriteriaContext((Class<T>) typeToken.getRawType(), String.class), theParams);
+		
+		criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot().get("uuid")).distinct(true);
+		
+		boolean paged = isPaged(theParams);
+		if (paged) {
+			// pages of uuids are in uuid order, so that they neither overlap nor skip any uuid
+			criteriaContext.addOrder(criteriaContext.getCriteriaBuilder().asc(criteriaContext.getRoot().get("uuid")));
+		}
+		
+		TypedQuery<String> query = criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery());
+		if (paged) {
+			query.setFirstResult(Math.max(theParams.getFromIndex(), 0));
+			if (theParams.getToIndex() >= 0 && theParams.getToIndex() != Integer.MAX_VALUE) {
+				query.setMaxResults(Math.max(theParams.getToIndex() - Math.max(theParams.getFromIndex(), 0), 0));
+			}
+		}
+		
+		return query.getResultList();
+	}
+	
+	/**
+	 * @return whether the supplied map asks for a page of the results rather than all of them
+	 */
+	protected static boolean isPaged(@Nonnull SearchParameterMap theParams) {
+		return theParams.getFromIndex() > 0
+		        || (theParams.getToIndex() >= 0 && theParams.getToIndex() != Integer.MAX_VALUE);
 	}
 	
 	protected <V, U> void applyExactTotal(@Nonnull OpenmrsFhirCriteriaContext<V, U> criteriaContext,
@@ -288,6 +551,274 @@ public abstract class BaseFhirDao<T extends OpenmrsObject & Auditable> extends B
 		}
 	}
 	
+	/**
+	 * Precedes each of the orders already added to the query by an order on whether its key is null, so
+	 * that nulls sort first in ascending orders and last in descending orders on every database. MySQL
+	 * and H2 order nulls this way by default, but PostgreSQL, for instance, does the opposite, which
+	 * would make {@link #handleKeysetCursor(OpenmrsFhirCriteriaContext, KeysetCursor)} skip or repeat
+	 * rows. The extra orders become part of the sort keys held by a {@link KeysetCursor}.
+	 *
+	 * @param criteriaContext The {@link OpenmrsFhirCriteriaContext} for the current query
+	 */
+	protected <V, U> void orderNullsExplicitly(@Nonnull OpenmrsFhirCriteriaContext<V, U> criteriaContext) {
+		CriteriaBuilder cb = criteriaContext.getCriteriaBuilder();
+		List<javax.persistence.criteria.Order> orders = new ArrayList<>(criteriaContext.getOrders());
+		criteriaContext.getOrders().clear();
+		for (javax.persistence.criteria.Order order : orders) {
+			Expression<Integer> hasKey = cb.<Integer> selectCase().when(cb.isNull(order.getExpression()), 0)
+			        .otherwise(1);
+			criteriaContext.addOrder(order.isAscending() ? cb.asc(hasKey) : cb.desc(hasKey));
+			criteriaContext.addOrder(order);
+		}
+	}
+	
+	/**
+	 * Builds a predicate restricting a query to the rows which follow the position held by the supplied
+	 * {@link KeysetCursor} in the query's current sort order, i.e.,
+	 * {@code (k1 > v1) OR (k1 = v1 AND k2 > v2) OR ...}, where each {@code k} is one of the orders
+	 * already added to the query and each {@code v} the matching value from the cursor. Descending
+	 * orders use {@code <} instead of {@code >}. <br/>
+	 * Null values are treated as lower than any other value, which is the order given to them by
+	 * {@link #orderNullsExplicitly(OpenmrsFhirCriteriaContext)}.
+	 *
+	 * @param criteriaContext The {@link OpenmrsFhirCriteriaContext} for the current query, which must
+	 *            already have all of its orders applied
+	 * @param cursor the position to start after
+	 * @return a predicate matching only the rows after the cursor
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected <V, U> Predicate handleKeysetCursor(@Nonnull OpenmrsFhirCriteriaContext<V, U> criteriaContext,
+	        @Nonnull KeysetCursor cursor) {
+		List<javax.persistence.criteria.Order> orders = criteriaContext.getOrders();
+		if (orders.size() != cursor.size()) {
+			throw new InvalidRequestException("The supplied page id does not match the sort order of this search");
+		}
+		
+		CriteriaBuilder cb = criteriaContext.getCriteriaBuilder();
+		List<Predicate> disjuncts = new ArrayList<>(orders.size());
+		List<Predicate> equalities = new ArrayList<>(orders.size());
+		for (int i = 0; i < orders.size(); i++) {
+			javax.persistence.criteria.Order order = orders.get(i);
+			Expression<Comparable> key = (Expression<Comparable>) order.getExpression();
+			Comparable value = (Comparable) cursor.getSortKeys().get(i);
+			
+			Predicate following;
+			if (value == null) {
+				following = order.isAscending() ? cb.isNotNull(key) : cb.disjunction();
+			} else if (order.isAscending()) {
+				following = cb.greaterThan(key, value);
+			} else {
+				following = cb.or(cb.lessThan(key, value), cb.isNull(key));
+			}
+			
+			List<Predicate> conjuncts = new ArrayList<>(equalities);
+			conjuncts.add(following);
+			disjuncts.add(cb.and(conjuncts.toArray(new Predicate[0])));
+			
+			equalities.add(value == null ? cb.isNull(key) : cb.equal(key, value));
+		}
+		
+		return cb.or(disjuncts.toArray(new Predicate[0]));
+	}
+	
+	/**
+	 * The associations of {@link T} which the translator reads for every result, as property paths
+	 * such as {@code "names"} or {@code "person.addresses"}. These are loaded for a whole page of
+	 * results at once by {@link #prefetchAssociations(List)} instead of being initialized lazily one
+	 * result at a time during translation. <br/>
+	 * Subclasses should only list associations that are always read, as each one costs a query per
+	 * page.
+	 *
+	 * @return the property paths of the associations to prefetch
+	 */
+	protected Collection<String> getPrefetchedAssociations() {
+		return Collections.emptyList();
+	}
+	
+	/**
+	 * Loads the associations named by {@link #getPrefetchedAssociations()} for all of the supplied
+	 * results, which must be attached to the current session. Each association is loaded by a separate
+	 * {@code JOIN FETCH} query keyed by the ids of the results, so that collections are never joined to
+	 * each other, and the number of queries depends on the number of associations rather than the
+	 * number of results.
+	 *
+	 * @param results the results about to be translated
+	 */
+	protected void prefetchAssociations(@Nonnull List<T> results) {
+		Collection<String> associations = getPrefetchedAssociations();
+		if (results.isEmpty() || associations.isEmpty()) {
+			return;
+		}
+		
+		List<Integer> ids = results.stream().map(OpenmrsObject::getId).filter(Objects::nonNull).distinct()
+		        .collect(Collectors.toList());
+		if (ids.isEmpty()) {
+			return;
+		}
+		
+		for (String association : associations) {
+			for (int i = 0; i < ids.size(); i += PREFETCH_BATCH_SIZE) {
+				List<Integer> batch = ids.subList(i, Math.min(i + PREFETCH_BATCH_SIZE, ids.size()));
+				
+				@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
+				OpenmrsFhirCriteriaContext<T, T> criteriaContext = createCriteriaContext(
+				    (Class<T>) typeToken.getRawType());
+				
+				Fetch<?, ?> fetch = null;
+				for (String property : association.split("\\.")) {
+					fetch = fetch == null ? criteriaContext.getRoot().fetch(property, JoinType.LEFT)
+					        : fetch.fetch(property, JoinType.LEFT);
+				}
+				
+				String idProperty = getIdPropertyName(criteriaContext.getEntityManager());
+				// the ids are bound as a list, rather than written into the query, so that the query is the same
+				// for every batch
+				CriteriaBuilder criteriaBuilder = criteriaContext.getCriteriaBuilder();
+				criteriaContext.addPredicate(criteriaBuilder.in(criteriaContext.getRoot().get(idProperty))
+				        .value(criteriaBuilder.literal(InClauseValues.pad(batch))));
+				criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot()).distinct(true);
+				
+				// the results are discarded; running the query initializes the association on the managed instances
+				criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery()).getResultList();
+			}
+		}
+	}
+	
+	/**
+	 * The number of objects {@link #streamSearchResults(SearchParameterMap, Consumer)} reads from the
+	 * database at a time, i.e., the size of each page it fetches
+	 *
+	 * @return the page size to use for streamed searches
+	 */
+	protected int getStreamingFetchSize() {
+		if (fhirGlobalPropertyService == null) {
+			return DEFAULT_STREAMING_FETCH_SIZE;
+		}
+		
+		return fhirGlobalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_STREAMING_FETCH_SIZE,
+		    DEFAULT_STREAMING_FETCH_SIZE);
+	}
+	
+	/**
+	 * Fetches the objects with the supplied ids, in the order defined by the supplied
+	 * {@link SearchParameterMap}. This is the second part of the two-query approach used for
+	 * non-distinct results.
+	 *
+	 * @param ids the ids of the objects to fetch
+	 * @param theParams the parameters for the current search
+	 * @param idProperty the name of the id property
+	 * @return the matching objects
+	 */
+	protected List<T> getResultsForIds(@Nonnull List<Integer> ids, @Nonnull SearchParameterMap theParams,
+	        @Nonnull String idProperty) {
+		// We still need to sort the wrapper query to maintain the order, as IN() doesn't guarantee order
+		@SuppressWarnings({ "UnstableApiUsage", "unchecked" })
+		OpenmrsFhirCriteriaContext<T, T> wrapperQuery = createCriteriaContext((Class<T>) typeToken.getRawType());
+		
+		handleSort(wrapperQuery, theParams.getSortSpec());
+		handleIdPropertyOrdering(wrapperQuery, idProperty);
+		
+		wrapperQuery.getCriteriaQuery().select(wrapperQuery.getRoot());
+		
+		TypedQuery<T> executableQuery = wrapperQuery.getEntityManager()
+		        .createQuery(wrapperQuery.finalizeWrapperQuery(idProperty, ids));
+		SlowSearchLog.recordQuery(wrapperQuery.getEntityManager(), executableQuery);
+		return executableQuery.getResultList();
+	}
+	
+	/**
+	 * Gets the ids of every result of a search from the {@link SearchResultIdCache}, running the search
+	 * to find them if they are not held
+	 *
+	 * @param theParams the parameters for the current search
+	 * @return the ids of the results, in order, or {@code null} if they are not cached
+	 */
+	@SuppressWarnings("UnstableApiUsage")
+	private int[] getCachedResultIds(@Nonnull SearchParameterMap theParams) {
+		if (searchResultIdCache == null) {
+			return null;
+		}
+		
+		return searchResultIdCache.getResultIds(getClass(), typeToken.getRawType(), theParams, maxIds -> {
+			@SuppressWarnings("unchecked")
+			OpenmrsFhirCriteriaContext<T, Object> criteriaContext = getSearchResultCriteria(
+			    createCriteriaContext((Class<T>) typeToken.getRawType(), Object.class), theParams);
+			
+			String idProperty = getIdPropertyName(criteriaContext.getEntityManager());
+			
+			handleSort(criteriaContext, theParams.getSortSpec());
+			handleIdPropertyOrdering(criteriaContext, idProperty);
+			
+			TypedQuery<Object> idQuery = criteriaContext.getEntityManager()
+			        .createQuery(criteriaContext.finalizeIdQuery(idProperty));
+			idQuery.setMaxResults(maxIds + 1);
+			
+			List<Integer> ids = toIds(idQuery.getResultList());
+			return ids.size() > maxIds ? null : ids;
+		});
+	}
+	
+	/**
+	 * Fetches the page of results requested by the {@link SearchParameterMap} using the ids of every
+	 * result of the search
+	 *
+	 * @param resultIds the ids of every result of the search, in order
+	 * @param theParams the parameters for the current search
+	 * @return the results on the requested page, in order
+	 */
+	@SuppressWarnings("UnstableApiUsage")
+	private List<T> getResultsForCachedIds(@Nonnull int[] resultIds, @Nonnull SearchParameterMap theParams) {
+		int fromIndex = Math.max(theParams.getFromIndex(), 0);
+		int toIndex = theParams.getToIndex() < 0 ? resultIds.length
+		        : Math.min(theParams.getToIndex(), resultIds.length);
+		if (fromIndex >= toIndex) {
+			return Collections.emptyList();
+		}
+		
+		List<Integer> ids = Ints.asList(resultIds).subList(fromIndex, toIndex);
+		
+		@SuppressWarnings("unchecked")
+		OpenmrsFhirCriteriaContext<T, T> criteriaContext = createCriteriaContext((Class<T>) typeToken.getRawType());
+		EntityManager entityManager = criteriaContext.getEntityManager();
+		String idProperty = getIdPropertyName(entityManager);
+		PersistenceUnitUtil persistenceUnitUtil = entityManager.getEntityManagerFactory().getPersistenceUnitUtil();
+		
+		Map<Object, T> resultsById = new HashMap<>(ids.size());
+		for (List<Integer> batch : Lists.partition(ids, PREFETCH_BATCH_SIZE)) {
+			CriteriaQuery<T> query = criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot())
+			        .where(criteriaContext.getCriteriaBuilder().in(criteriaContext.getRoot().get(idProperty))
+			                .value(criteriaContext.getCriteriaBuilder().literal(InClauseValues.pad(batch))));
+			for (T result : entityManager.createQuery(query).getResultList()) {
+				resultsById.put(persistenceUnitUtil.getIdentifier(result), result);
+			}
+		}
+		
+		// an object deleted since the ids were cached is left out
+		List<T> results = new ArrayList<>(ids.size());
+		for (Integer id : ids) {
+			T result = resultsById.get(id);
+			if (result != null) {
+				results.add(result);
+			}
+		}
+		
+		return results;
+	}
+	
+	// Extract IDs from results - when ORDER BY is present, results are Object[] with ID as first element
+	private static List<Integer> toIds(List<Object> rawResults) {
+		List<Integer> ids = new ArrayList<>(rawResults.size());
+		for (Object result : rawResults) {
+			if (result instanceof Object[]) {
+				ids.add((Integer) ((Object[]) result)[0]);
+			} else {
+				ids.add((Integer) result);
+			}
+		}
+		
+		return ids;
+	}
+	
 	/**
 	 * This is an overrideable implementation to convert a result that may be a proxied Hibernate object
 	 * into its underlying implementation. <br/>
@@ -18,6 +18,8 @@ import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
@@ -59,6 +61,10 @@ public class FhirEncounterDaoImpl extends BaseEncounterDao<Encounter> implements
 			return getTopNRankedIds(results, getMaxParameter(theParams));
 		}
 		
+		if (isPaged(theParams)) {
+			return super.getSearchResultUuids(theParams);
+		}
+		
 		OpenmrsFhirCriteriaContext<Encounter, String> criteriaContext = createCriteriaContext(Encounter.class, String.class);
 		
 		handleVoidable(criteriaContext);
@@ -143,4 +149,9 @@ public class FhirEncounterDaoImpl extends BaseEncounterDao<Encounter> implements
 		    criteriaContext.getCriteriaBuilder().notEqual(ordersJoin.get("fulfillerStatus"),
 		        Order.FulfillerStatus.valueOf(fulfillerStatus.toUpperCase())));
 	}
+	
+	@Override
+	protected Collection<String> getPrefetchedAssociations() {
+		return Arrays.asList("encounterProviders");
+	}
 }
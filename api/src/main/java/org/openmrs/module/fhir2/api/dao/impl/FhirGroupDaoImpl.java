@@ -10,6 +10,7 @@
 package org.openmrs.module.fhir2.api.dao.impl;
 
 import javax.annotation.Nonnull;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Predicate;
 
@@ -21,11 +22,13 @@ import ca.uhn.fhir.rest.param.ReferenceAndListParam;
 import org.apache.commons.lang3.StringUtils;
 import org.hl7.fhir.r4.model.Practitioner;
 import org.openmrs.Cohort;
+import org.openmrs.CohortMembership;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.dao.FhirGroupDao;
 import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaContext;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 
 @Component
 public class FhirGroupDaoImpl extends BaseFhirDao<Cohort> implements FhirGroupDao {
@@ -34,6 +37,39 @@ public class FhirGroupDaoImpl extends BaseFhirDao<Cohort> implements FhirGroupDa
 	
 	private static final String PERSON_ALIAS = "person";
 	
+	@Override
+	@Transactional(readOnly = true)
+	public int getMemberCount(@Nonnull String groupUuid) {
+		OpenmrsFhirCriteriaContext<CohortMembership, Long> criteriaContext = createCriteriaContext(
+		    CohortMembership.class, Long.class);
+		addMembershipPredicates(criteriaContext, groupUuid);
+		criteriaContext.getCriteriaQuery()
+		        .select(criteriaContext.getCriteriaBuilder().count(criteriaContext.getRoot()));
+		
+		return criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery()).getSingleResult()
+		        .intValue();
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public List<Integer> getMemberIds(@Nonnull String groupUuid, int firstResult, int maxResults) {
+		OpenmrsFhirCriteriaContext<CohortMembership, Integer> criteriaContext = createCriteriaContext(
+		    CohortMembership.class, Integer.class);
+		addMembershipPredicates(criteriaContext, groupUuid);
+		criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot().get("patientId"));
+		criteriaContext.addOrder(criteriaContext.getCriteriaBuilder().asc(criteriaContext.getRoot().get("patientId")));
+		
+		return criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery())
+		        .setFirstResult(firstResult).setMaxResults(maxResults).getResultList();
+	}
+	
+	private <U> void addMembershipPredicates(OpenmrsFhirCriteriaContext<CohortMembership, U> criteriaContext,
+	        String groupUuid) {
+		CriteriaBuilder cb = criteriaContext.getCriteriaBuilder();
+		criteriaContext.addPredicate(cb.equal(criteriaContext.getRoot().get("cohort").get("uuid"), groupUuid));
+		criteriaContext.addPredicate(cb.isFalse(criteriaContext.getRoot().get("voided")));
+	}
+	
 	@Override
 	protected <U> void setupSearchParams(@Nonnull OpenmrsFhirCriteriaContext<Cohort, U> criteriaContext,
 	        @Nonnull SearchParameterMap theParams) {
@@ -10,17 +10,29 @@
 package org.openmrs.module.fhir2.api.dao.impl;
 
 import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
 import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.From;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Root;
 
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import ca.uhn.fhir.rest.param.DateRangeParam;
@@ -35,25 +47,39 @@ import ca.uhn.fhir.rest.param.TokenParam;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
+import org.hibernate.Session;
+import org.hibernate.query.NativeQuery;
 import org.hl7.fhir.r4.model.Observation;
 import org.openmrs.Concept;
 import org.openmrs.ConceptClass;
 import org.openmrs.Obs;
+import org.openmrs.Person;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.dao.FhirEncounterDao;
 import org.openmrs.module.fhir2.api.dao.FhirObservationDao;
+import org.openmrs.module.fhir2.api.dao.internals.NativeSqlQuery;
 import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaContext;
 import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaSubquery;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.util.LastnOperationUtils;
+import org.openmrs.module.fhir2.api.util.LastnResult;
 import org.openmrs.module.fhir2.model.FhirObservationCategoryMap;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
+@Slf4j
 @Component
 public class FhirObservationDaoImpl extends BaseFhirDao<Obs> implements FhirObservationDao {
 	
+	private static final String LASTN_MAX_PARAMETER = "lastnMax";
+	
+	private static final Pattern MARIADB_VERSION = Pattern.compile("(\\d+)\\.(\\d+)\\.\\d+-mariadb");
+	
+	private static final Pattern H2_1_4_VERSION = Pattern.compile("^1\\.4\\.(\\d+)");
+	
 	@Getter(AccessLevel.PROTECTED)
 	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
 	private FhirObservationCategoryMapDaoImpl categoryMap;
@@ -62,69 +88,37 @@ public class FhirObservationDaoImpl extends BaseFhirDao<Obs> implements FhirObse
 	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
 	private FhirEncounterDao encounterDao;
 	
+	// whether the database supports window functions, which is checked once when the DAO is created
+	@Getter(AccessLevel.PACKAGE)
+	@Setter(AccessLevel.PACKAGE)
+	private volatile boolean windowFunctionsSupported;
+	
+	@PostConstruct
+	public void detectWindowFunctions() {
+		try (Session session = getSessionFactory().openSession()) {
+			windowFunctionsSupported = session
+			        .doReturningWork(connection -> supportsWindowFunctions(connection.getMetaData()));
+		}
+		catch (RuntimeException e) {
+			log.warn("Could not check whether the database supports window functions, $lastn will rank obs in memory",
+			    e);
+			windowFunctionsSupported = false;
+		}
+	}
+	
 	@Override
 	@Transactional(readOnly = true)
 	public List<Obs> getSearchResults(@Nonnull SearchParameterMap theParams) {
 		if (!theParams.getParameters(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER).isEmpty()) {
-			OpenmrsFhirCriteriaContext<Obs, Obs> criteriaContext = getSearchResultCriteria(theParams);
-			
-			Join<?, ?> conceptJoin = criteriaContext.getJoin("c").orElseGet(() -> criteriaContext.addJoin("concept", "c"));
-			String conceptIdProperty = getIdPropertyName(criteriaContext.getEntityManager(), Concept.class);
-			
-			CriteriaQuery<Obs> finalizedQuery = criteriaContext.finalizeQuery().orderBy(
-			    criteriaContext.getCriteriaBuilder().asc(conceptJoin.get(conceptIdProperty)),
-			    criteriaContext.getCriteriaBuilder().desc(criteriaContext.getRoot().get("obsDatetime")));
-			
-			// Accumulate results across batched queries for $lastn operation
-			List<Obs> accumulatedResults = new ArrayList<>();
-			int firstResult = 0;
-			final int maxGroupCount = getMaxParameter(theParams);
-			final int batchSize = 100;
-			Concept prevConcept = null;
-			Date prevObsDatetime = null;
-			int groupCount = maxGroupCount;
-			
-			while (accumulatedResults.size() < theParams.getToIndex()) {
-				TypedQuery<Obs> obsQuery = criteriaContext.getEntityManager().createQuery(finalizedQuery);
-				obsQuery.setFirstResult(firstResult);
-				obsQuery.setMaxResults(batchSize);
-				
-				List<Obs> observations = obsQuery.getResultList();
-				
-				for (Obs obs : observations) {
-					if (prevConcept == obs.getConcept()) {
-						if (groupCount > 0 || obs.getObsDatetime().equals(prevObsDatetime)) {
-							// Load only as many results as requested per group or more if time matches
-							if (!obs.getObsDatetime().equals(prevObsDatetime)) {
-								groupCount--;
-							}
-							prevObsDatetime = obs.getObsDatetime();
-							accumulatedResults.add(obs);
-						}
-					} else {
-						prevConcept = obs.getConcept();
-						prevObsDatetime = obs.getObsDatetime();
-						groupCount = maxGroupCount;
-						accumulatedResults.add(obs);
-						groupCount--;
-					}
-					
-					if (accumulatedResults.size() >= theParams.getToIndex()) {
-						// Load only as many results as requested per page
-						break;
-					}
-				}
-				
-				if (observations.size() < batchSize) {
-					break;
-				} else {
-					firstResult += batchSize;
+			if (supportsWindowFunctions()) {
+				Optional<List<Obs>> results = getRankedLastnSearchResults(theParams);
+				if (results.isPresent()) {
+					return results.get();
 				}
 			}
 			
-			int toIndex = Math.min(accumulatedResults.size(), theParams.getToIndex());
-			return accumulatedResults.subList(theParams.getFromIndex(), toIndex).stream().map(this::deproxyResult)
-			        .collect(Collectors.toList());
+			return isLastnPerPatient(theParams) ? getLastnPatientsSearchResults(theParams)
+			        : getLastnSearchResults(theParams);
 		}
 		
 		return super.getSearchResults(theParams);
@@ -134,50 +128,37 @@ public class FhirObservationDaoImpl extends BaseFhirDao<Obs> implements FhirObse
 	@Transactional(readOnly = true)
 	public int getSearchResultsCount(@Nonnull SearchParameterMap theParams) {
 		if (!theParams.getParameters(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER).isEmpty()) {
-			OpenmrsFhirCriteriaContext<Obs, Object[]> criteriaContext = createCriteriaContext(Obs.class, Object[].class);
-			getSearchResultCriteria(criteriaContext, theParams);
-			
-			Join<?, ?> conceptJoin = criteriaContext.getJoin("c").orElseGet(() -> criteriaContext.addJoin("concept", "c"));
-			String conceptIdProperty = getIdPropertyName(criteriaContext.getEntityManager(), Concept.class);
-			
-			criteriaContext.getCriteriaQuery().orderBy(
-			    criteriaContext.getCriteriaBuilder().asc(conceptJoin.get(conceptIdProperty)),
-			    criteriaContext.getCriteriaBuilder().desc(criteriaContext.getRoot().get("obsDatetime")));
-			
-			criteriaContext.getCriteriaQuery().multiselect(conceptJoin.get(conceptIdProperty),
-			    criteriaContext.getRoot().get("obsDatetime"),
-			    criteriaContext.getCriteriaBuilder().count(criteriaContext.getRoot()));
-			
-			criteriaContext.getCriteriaQuery().groupBy(conceptJoin.get(conceptIdProperty),
-			    criteriaContext.getRoot().get("obsDatetime"));
-			
-			applyExactTotal(criteriaContext, theParams);
-			
-			List<Object[]> rows = criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery())
-			        .getResultList();
-			final int maxGroupCount = getMaxParameter(theParams);
-			int groupCount = maxGroupCount;
-			int count = 0;
-			Integer prevConceptId = null;
-			for (Object[] row : rows) {
-				Integer conceptId = (Integer) row[0];
-				Long rowCount = (Long) row[2];
-				if (!conceptId.equals(prevConceptId)) {
-					groupCount = maxGroupCount;
+			if (supportsWindowFunctions()) {
+				Optional<Integer> count = getRankedLastnSearchResultsCount(theParams);
+				if (count.isPresent()) {
+					return count.get();
 				}
-				if (groupCount > 0) {
-					count += rowCount;
-					groupCount--;
-				}
-				prevConceptId = conceptId;
 			}
 			
-			return count;
+			return isLastnPerPatient(theParams) ? getLastnPatientsIds(theParams).size()
+			        : getLastnSearchResultsCount(theParams);
 		}
 		
 		return super.getSearchResultsCount(theParams);
 	}
 	
+	@Override
+	@Transactional(readOnly = true)
+	public Integer getSearchResultsCount(@Nonnull SearchParameterMap theParams, int maxCount) {
+		if (!theParams.getParameters(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER).isEmpty()) {
+			int count = getSearchResultsCount(theParams);
+			return count > maxCount ? null : count;
+		}
+		
+		return super.getSearchResultsCount(theParams, maxCount);
+	}
+	
+	@Override
+	public boolean supportsKeysetPagination(@Nonnull SearchParameterMap theParams) {
+		// $lastn results are grouped by concept, so cannot be paged by a simple keyset
+		return theParams.getParameters(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER).isEmpty();
+	}
+	
 	@Override
 	protected Obs deproxyResult(@Nonnull Obs result) {
 		Obs obs = super.deproxyResult(result);
@@ -340,8 +321,300 @@ public class FhirObservationDaoImpl extends BaseFhirDao<Obs> implements FhirObse
 		return null;
 	}
 	
+	/**
+	 * Fetches a page of $lastn results with a single query which ranks the obs for each concept, or
+	 * each patient and concept for $lastn-patients, by their obsDatetime using {@code DENSE_RANK()}
+	 *
+	 * @return the results, or an empty optional if the query could not be built and the results need
+	 *         to be fetched with {@link #getLastnSearchResults(SearchParameterMap)}
+	 */
+	Optional<List<Obs>> getRankedLastnSearchResults(SearchParameterMap theParams) {
+		Optional<NativeSqlQuery> rankedObs = getRankedLastnQuery(theParams);
+		if (!rankedObs.isPresent()) {
+			return Optional.empty();
+		}
+		
+		String patientOrder = isLastnPerPatient(theParams) ? "o.person_id asc, " : "";
+		NativeSqlQuery lastnQuery = rankedObs.get().wrap(sql -> "select {o.*} from obs o inner join (" + sql
+		        + ") ranked on o.obs_id = ranked.obs_id where ranked.obs_rank <= :" + LASTN_MAX_PARAMETER + " order by "
+		        + patientOrder + "o.concept_id asc, o.obs_datetime desc, o.obs_id asc");
+		
+		NativeQuery<?> query = lastnQuery.bind(getSessionFactory().getCurrentSession()
+		        .createNativeQuery(lastnQuery.getSql()).addEntity("o", Obs.class));
+		query.setParameter(LASTN_MAX_PARAMETER, getMaxParameter(theParams));
+		query.setFirstResult(Math.max(theParams.getFromIndex(), 0));
+		if (theParams.getToIndex() >= 0 && theParams.getToIndex() != Integer.MAX_VALUE) {
+			query.setMaxResults(Math.max(theParams.getToIndex() - Math.max(theParams.getFromIndex(), 0), 0));
+		}
+		
+		List<Obs> results = query.getResultList().stream().map(Obs.class::cast).map(this::deproxyResult)
+		        .collect(Collectors.toList());
+		
+		prefetchAssociations(results);
+		
+		return Optional.of(results);
+	}
+	
+	private Optional<Integer> getRankedLastnSearchResultsCount(SearchParameterMap theParams) {
+		Optional<NativeSqlQuery> rankedObs = getRankedLastnQuery(theParams);
+		if (!rankedObs.isPresent()) {
+			return Optional.empty();
+		}
+		
+		NativeSqlQuery countQuery = rankedObs.get().wrap(
+		    sql -> "select count(*) from (" + sql + ") ranked where ranked.obs_rank <= :" + LASTN_MAX_PARAMETER);
+		
+		NativeQuery<?> query = countQuery
+		        .bind(getSessionFactory().getCurrentSession().createNativeQuery(countQuery.getSql()));
+		query.setParameter(LASTN_MAX_PARAMETER, getMaxParameter(theParams));
+		Object count = query.getSingleResult();
+		return Optional.of(((Number) count).intValue());
+	}
+	
+	/**
+	 * Builds a query selecting the id of every obs matching the search together with its rank among
+	 * the obs for the same concept, where the obs with the latest obsDatetime are ranked 1 and obs with
+	 * the same obsDatetime share a rank. The last n obs for each concept are those ranked n or lower.
+	 * For $lastn-patients, obs are ranked among the obs for the same patient and concept instead.
+	 */
+	private Optional<NativeSqlQuery> getRankedLastnQuery(SearchParameterMap theParams) {
+		OpenmrsFhirCriteriaContext<Obs, Integer> criteriaContext = createCriteriaContext(Obs.class, Integer.class);
+		getSearchResultCriteria(criteriaContext, theParams);
+		
+		NativeSqlQuery matchingObs;
+		try {
+			matchingObs = NativeSqlQuery.fromCriteriaQuery(criteriaContext.getEntityManager(),
+			    criteriaContext.finalizeIdSubquery(getIdPropertyName(criteriaContext.getEntityManager())));
+		}
+		catch (RuntimeException e) {
+			log.debug("Could not build a ranked query for $lastn, falling back to ranking the obs in memory", e);
+			return Optional.empty();
+		}
+		
+		String partition = isLastnPerPatient(theParams) ? "r.person_id, r.concept_id" : "r.concept_id";
+		return Optional.of(matchingObs.wrap(sql -> "select r.obs_id, dense_rank() over (partition by " + partition
+		        + " order by r.obs_datetime desc) as obs_rank from obs r where r.obs_id in (" + sql + ")"));
+	}
+	
+	/**
+	 * Window functions are supported by MySQL 8, MariaDB 10.2, PostgreSQL 8.4 and H2 1.4.198 and
+	 * later, so older databases fall back to the $lastn queries which rank obs in memory. This is decided
+	 * up front rather than by trying the ranked query, since a failed query aborts the transaction on
+	 * some databases, e.g., PostgreSQL, so nothing could be run after it.
+	 */
+	protected boolean supportsWindowFunctions() {
+		return windowFunctionsSupported;
+	}
+	
+	static boolean supportsWindowFunctions(DatabaseMetaData metaData) throws SQLException {
+		String productName = metaData.getDatabaseProductName().toLowerCase();
+		String productVersion = metaData.getDatabaseProductVersion().toLowerCase();
+		int majorVersion = metaData.getDatabaseMajorVersion();
+		int minorVersion = metaData.getDatabaseMinorVersion();
+		
+		// the MySQL driver reports MariaDB as MySQL with a version like 5.5.5-10.6.12-MariaDB
+		Matcher mariaDbVersion = MARIADB_VERSION.matcher(productVersion);
+		if (mariaDbVersion.find()) {
+			int major = Integer.parseInt(mariaDbVersion.group(1));
+			return major > 10 || (major == 10 && Integer.parseInt(mariaDbVersion.group(2)) >= 2);
+		}
+		
+		if (productName.contains("mysql")) {
+			return majorVersion >= 8;
+		} else if (productName.contains("postgresql")) {
+			return majorVersion > 8 || (majorVersion == 8 && minorVersion >= 4);
+		} else if (productName.contains("h2")) {
+			Matcher h2Version = H2_1_4_VERSION.matcher(productVersion);
+			return majorVersion >= 2 || (h2Version.find() && Integer.parseInt(h2Version.group(1)) >= 198);
+		}
+		
+		return false;
+	}
+	
+	private List<Obs> getLastnSearchResults(SearchParameterMap theParams) {
+		OpenmrsFhirCriteriaContext<Obs, Obs> criteriaContext = getSearchResultCriteria(theParams);
+		
+		Join<?, ?> conceptJoin = criteriaContext.getJoin("c").orElseGet(() -> criteriaContext.addJoin("concept", "c"));
+		String conceptIdProperty = getIdPropertyName(criteriaContext.getEntityManager(), Concept.class);
+		
+		CriteriaQuery<Obs> finalizedQuery = criteriaContext.finalizeQuery().orderBy(
+		    criteriaContext.getCriteriaBuilder().asc(conceptJoin.get(conceptIdProperty)),
+		    criteriaContext.getCriteriaBuilder().desc(criteriaContext.getRoot().get("obsDatetime")));
+		
+		// Accumulate results across batched queries for $lastn operation
+		List<Obs> accumulatedResults = new ArrayList<>();
+		int firstResult = 0;
+		final int maxGroupCount = getMaxParameter(theParams);
+		final int batchSize = 100;
+		Concept prevConcept = null;
+		Date prevObsDatetime = null;
+		int groupCount = maxGroupCount;
+		
+		while (accumulatedResults.size() < theParams.getToIndex()) {
+			TypedQuery<Obs> obsQuery = criteriaContext.getEntityManager().createQuery(finalizedQuery);
+			obsQuery.setFirstResult(firstResult);
+			obsQuery.setMaxResults(batchSize);
+			
+			List<Obs> observations = obsQuery.getResultList();
+			
+			for (Obs obs : observations) {
+				if (prevConcept == obs.getConcept()) {
+					if (groupCount > 0 || obs.getObsDatetime().equals(prevObsDatetime)) {
+						// Load only as many results as requested per group or more if time matches
+						if (!obs.getObsDatetime().equals(prevObsDatetime)) {
+							groupCount--;
+						}
+						prevObsDatetime = obs.getObsDatetime();
+						accumulatedResults.add(obs);
+					}
+				} else {
+					prevConcept = obs.getConcept();
+					prevObsDatetime = obs.getObsDatetime();
+					groupCount = maxGroupCount;
+					accumulatedResults.add(obs);
+					groupCount--;
+				}
+				
+				if (accumulatedResults.size() >= theParams.getToIndex()) {
+					// Load only as many results as requested per page
+					break;
+				}
+			}
+			
+			if (observations.size() < batchSize) {
+				break;
+			} else {
+				firstResult += batchSize;
+			}
+		}
+		
+		int toIndex = Math.min(accumulatedResults.size(), theParams.getToIndex());
+		List<Obs> results = accumulatedResults.subList(theParams.getFromIndex(), toIndex).stream()
+		        .map(this::deproxyResult).collect(Collectors.toList());
+		
+		prefetchAssociations(results);
+		
+		return results;
+	}
+	
+	private int getLastnSearchResultsCount(SearchParameterMap theParams) {
+		OpenmrsFhirCriteriaContext<Obs, Object[]> criteriaContext = createCriteriaContext(Obs.class, Object[].class);
+		getSearchResultCriteria(criteriaContext, theParams);
+		
+		Join<?, ?> conceptJoin = criteriaContext.getJoin("c").orElseGet(() -> criteriaContext.addJoin("concept", "c"));
+		String conceptIdProperty = getIdPropertyName(criteriaContext.getEntityManager(), Concept.class);
+		
+		criteriaContext.getCriteriaQuery().orderBy(
+		    criteriaContext.getCriteriaBuilder().asc(conceptJoin.get(conceptIdProperty)),
+		    criteriaContext.getCriteriaBuilder().desc(criteriaContext.getRoot().get("obsDatetime")));
+		
+		criteriaContext.getCriteriaQuery().multiselect(conceptJoin.get(conceptIdProperty),
+		    criteriaContext.getRoot().get("obsDatetime"),
+		    criteriaContext.getCriteriaBuilder().count(criteriaContext.getRoot()));
+		
+		criteriaContext.getCriteriaQuery().groupBy(conceptJoin.get(conceptIdProperty),
+		    criteriaContext.getRoot().get("obsDatetime"));
+		
+		applyExactTotal(criteriaContext, theParams);
+		
+		List<Object[]> rows = criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery())
+		        .getResultList();
+		final int maxGroupCount = getMaxParameter(theParams);
+		int groupCount = maxGroupCount;
+		int count = 0;
+		Integer prevConceptId = null;
+		for (Object[] row : rows) {
+			Integer conceptId = (Integer) row[0];
+			Long rowCount = (Long) row[2];
+			if (!conceptId.equals(prevConceptId)) {
+				groupCount = maxGroupCount;
+			}
+			if (groupCount > 0) {
+				count += rowCount;
+				groupCount--;
+			}
+			prevConceptId = conceptId;
+		}
+		
+		return count;
+	}
+	
+	private List<Obs> getLastnPatientsSearchResults(SearchParameterMap theParams) {
+		List<Integer> ids = getLastnPatientsIds(theParams);
+		int toIndex = Math.min(ids.size(), theParams.getToIndex());
+		if (theParams.getFromIndex() >= toIndex) {
+			return new ArrayList<>();
+		}
+		
+		List<Integer> pageIds = ids.subList(theParams.getFromIndex(), toIndex);
+		Map<Integer, Obs> obsById = getResultsForIds(pageIds, theParams,
+		    getIdPropertyName(getSessionFactory().getCurrentSession())).stream()
+		            .collect(Collectors.toMap(Obs::getObsId, Function.identity()));
+		
+		List<Obs> results = pageIds.stream().map(obsById::get).map(this::deproxyResult).collect(Collectors.toList());
+		
+		prefetchAssociations(results);
+		
+		return results;
+	}
+	
+	/**
+	 * Ranks the obs for each patient and concept in memory, for databases without window functions.
+	 * All of the matching obs are read with a single query which only selects what is needed to rank
+	 * them, ordered so that the obs for each patient and concept are read together.
+	 *
+	 * @return the ids of the last n obs for each patient and concept, in the order they are returned
+	 */
+	private List<Integer> getLastnPatientsIds(SearchParameterMap theParams) {
+		OpenmrsFhirCriteriaContext<Obs, Object[]> criteriaContext = createCriteriaContext(Obs.class, Object[].class);
+		getSearchResultCriteria(criteriaContext, theParams);
+		
+		EntityManager entityManager = criteriaContext.getEntityManager();
+		CriteriaBuilder criteriaBuilder = criteriaContext.getCriteriaBuilder();
+		Root<Obs> root = criteriaContext.getRoot();
+		
+		Path<Object> obsId = root.get(getIdPropertyName(entityManager));
+		Path<Object> obsDatetime = root.get("obsDatetime");
+		Path<Object> personId = root.get("person").get(getIdPropertyName(entityManager, Person.class));
+		Path<Object> conceptId = root.get("concept").get(getIdPropertyName(entityManager, Concept.class));
+		
+		criteriaContext.getCriteriaQuery().multiselect(obsId, obsDatetime, personId, conceptId).distinct(true);
+		criteriaContext.addOrder(criteriaBuilder.asc(personId)).addOrder(criteriaBuilder.asc(conceptId))
+		        .addOrder(criteriaBuilder.desc(obsDatetime)).addOrder(criteriaBuilder.asc(obsId));
+		
+		List<Object[]> rows = entityManager.createQuery(criteriaContext.finalizeQuery()).getResultList();
+		
+		final int max = getMaxParameter(theParams);
+		List<Integer> ids = new ArrayList<>();
+		List<LastnResult<Integer>> partition = new ArrayList<>();
+		List<Object> partitionKey = null;
+		for (Object[] row : rows) {
+			List<Object> key = Arrays.asList(row[2], row[3]);
+			if (!key.equals(partitionKey)) {
+				ids.addAll(LastnOperationUtils.getTopNRankedIds(partition, max));
+				partition = new ArrayList<>();
+				partitionKey = key;
+			}
+			
+			partition.add(new LastnResult<>(row));
+		}
+		
+		ids.addAll(LastnOperationUtils.getTopNRankedIds(partition, max));
+		
+		return ids;
+	}
+	
+	private boolean isLastnPerPatient(SearchParameterMap theParams) {
+		return !theParams.getParameters(FhirConstants.LASTN_PATIENTS_SEARCH_HANDLER).isEmpty();
+	}
+	
 	private int getMaxParameter(SearchParameterMap theParams) {
 		return ((NumberParam) theParams.getParameters(FhirConstants.MAX_SEARCH_HANDLER).get(0).getParam()).getValue()
 		        .intValue();
 	}
+	
+	@Override
+	protected Collection<String> getPrefetchedAssociations() {
+		return Arrays.asList("concept", "groupMembers");
+	}
 }
@@ -18,35 +18,52 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Join;
 import javax.persistence.criteria.Path;
 import javax.persistence.criteria.Predicate;
+import javax.persistence.criteria.Subquery;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
-import java.util.HashSet;
+import java.util.Collections;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Optional;
-import java.util.Set;
 
 import ca.uhn.fhir.rest.param.DateRangeParam;
 import ca.uhn.fhir.rest.param.HasAndListParam;
+import ca.uhn.fhir.rest.param.HasOrListParam;
 import ca.uhn.fhir.rest.param.StringAndListParam;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
+import lombok.AccessLevel;
 import lombok.NonNull;
+import lombok.Setter;
 import org.apache.commons.lang3.StringUtils;
 import org.openmrs.CohortMembership;
 import org.openmrs.Patient;
 import org.openmrs.PatientIdentifierType;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
+import org.openmrs.module.fhir2.api.dao.internals.CohortMembershipIndex;
+import org.openmrs.module.fhir2.api.dao.internals.IntBitmap;
 import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaContext;
+import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaSubquery;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
 @Component
 public class FhirPatientDaoImpl extends BasePersonDao<Patient> implements FhirPatientDao {
 	
+	private static final int MIN_PATIENT_ID_RANGE = 3;
+	
+	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
+	private CohortMembershipIndex cohortMembershipIndex;
+	
+	// the most patient ids matched with an IN-list before the cohort memberships are queried instead
+	@Setter(AccessLevel.PACKAGE)
+	private int maxPatientIdParameters = PREFETCH_BATCH_SIZE;
+	
 	@Override
 	@Transactional(readOnly = true)
 	public Patient getPatientById(@Nonnull Integer id) {
@@ -63,7 +80,7 @@ public class FhirPatientDaoImpl extends BasePersonDao<Patient> implements FhirPa
 		OpenmrsFhirCriteriaContext<Patient, Patient> criteriaContext = createCriteriaContext(Patient.class);
 		
 		criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot());
-		criteriaContext.getCriteriaQuery().where(criteriaContext.getRoot().get("id").in(ids));
+		criteriaContext.getCriteriaQuery().where(criteriaContext.getRoot().get("patientId").in(ids));
 		return criteriaContext.getEntityManager().createQuery(criteriaContext.getCriteriaQuery()).getResultList();
 	}
 	
@@ -166,8 +183,11 @@ public class FhirPatientDaoImpl extends BasePersonDao<Patient> implements FhirPa
 	protected <U> void handleHasAndListParam(OpenmrsFhirCriteriaContext<Patient, U> criteriaContext,
 	        HasAndListParam hasAndListParam) {
 		if (hasAndListParam != null) {
-			List<String> groupIds = new ArrayList<>();
-			hasAndListParam.getValuesAsQueryTokens().forEach(hasOrListParam -> {
+			// patients must be a member of one of the groups in each of the and-ed parameters
+			IntBitmap patientIds = null;
+			List<List<String>> andedGroupIds = new ArrayList<>();
+			for (HasOrListParam hasOrListParam : hasAndListParam.getValuesAsQueryTokens()) {
+				List<String> groupIds = new ArrayList<>();
 				hasOrListParam.getValuesAsQueryTokens().forEach(hasParam -> {
 					if (hasParam != null) {
 						String paramValue = hasParam.getParameterValue();
@@ -185,37 +205,100 @@ public class FhirPatientDaoImpl extends BasePersonDao<Patient> implements FhirPa
 						}
 					}
 				});
-			});
+				
+				if (!groupIds.isEmpty()) {
+					IntBitmap members = getGroupMembers(groupIds);
+					patientIds = patientIds == null ? members : patientIds.and(members);
+					andedGroupIds.add(groupIds);
+				}
+			}
 			
-			if (!groupIds.isEmpty()) {
-				verifyPatientInGroups(criteriaContext, groupIds);
+			if (patientIds != null) {
+				addPatientIdPredicate(criteriaContext, patientIds, andedGroupIds);
 			}
 		}
 	}
 	
 	protected <U> void verifyPatientInGroups(@Nonnull OpenmrsFhirCriteriaContext<Patient, U> criteriaContext,
 	        List<String> groupIds) {
-		Set<Integer> patientIds = new HashSet<>();
-		groupIds.forEach(groupId -> patientIds.addAll(getGroupMemberIds(groupId)));
+		addPatientIdPredicate(criteriaContext, getGroupMembers(groupIds), Collections.singletonList(groupIds));
+	}
+	
+	private IntBitmap getGroupMembers(List<String> groupIds) {
+		IntBitmap patientIds = new IntBitmap();
+		for (String groupId : groupIds) {
+			patientIds = patientIds.or(cohortMembershipIndex.getMembers(groupId));
+		}
 		
-		if (!patientIds.isEmpty()) {
-			criteriaContext.addPredicate(criteriaContext.getRoot().get("patientId").in(patientIds));
-		} else {
+		return patientIds;
+	}
+	
+	/**
+	 * Restricts the query to the given patients. Runs of consecutive ids are matched with a range, so
+	 * that large groups, which are often made up of patients registered around the same time, do not
+	 * need a parameter for each member. If more than {@link #maxPatientIdParameters} ids remain, the
+	 * query checks the cohort memberships itself instead, as every id in an IN-list is a parameter of
+	 * the statement however the lists are split, and databases cap the parameters of a statement.
+	 *
+	 * @param patientIds the ids of the patients who are members of the groups
+	 * @param andedGroupIds the groups the patients were taken from, where a patient must be a member of
+	 *            one of the groups in each list
+	 */
+	private <U> void addPatientIdPredicate(OpenmrsFhirCriteriaContext<Patient, U> criteriaContext, IntBitmap patientIds,
+	        List<List<String>> andedGroupIds) {
+		CriteriaBuilder cb = criteriaContext.getCriteriaBuilder();
+		if (patientIds.isEmpty()) {
 			// If no patients belong to the specified groups, add a predicate that matches nothing
 			// This ensures the query returns no results (rather than generating invalid SQL with an empty IN clause)
-			criteriaContext.addPredicate(criteriaContext.getCriteriaBuilder().disjunction());
+			criteriaContext.addPredicate(cb.disjunction());
+			return;
+		}
+		
+		Path<Integer> patientId = criteriaContext.getRoot().get("patientId");
+		List<Predicate> ranges = new ArrayList<>();
+		List<Integer> ids = new ArrayList<>();
+		int[] values = patientIds.toArray();
+		for (int start = 0, end; start < values.length; start = end) {
+			end = start + 1;
+			while (end < values.length && values[end] == values[end - 1] + 1) {
+				end++;
+			}
+			
+			if (end - start >= MIN_PATIENT_ID_RANGE) {
+				ranges.add(cb.between(patientId, values[start], values[end - 1]));
+			} else {
+				for (int i = start; i < end; i++) {
+					ids.add(values[i]);
+				}
+			}
+		}
+		
+		if (ids.size() > maxPatientIdParameters) {
+			for (List<String> groupIds : andedGroupIds) {
+				criteriaContext.addPredicate(cb.in(patientId).value(getGroupMemberIds(criteriaContext, groupIds)));
+			}
+			
+			return;
 		}
+		
+		if (!ids.isEmpty()) {
+			ranges.add(patientId.in(ids));
+		}
+		
+		criteriaContext.addPredicate(ranges.size() == 1 ? ranges.get(0) : cb.or(ranges.toArray(new Predicate[0])));
 	}
 	
-	private List<Integer> getGroupMemberIds(String groupId) {
-		OpenmrsFhirCriteriaContext<CohortMembership, Integer> criteriaContext = createCriteriaContext(CohortMembership.class,
-		    Integer.class);
-		CriteriaBuilder cb = criteriaContext.getCriteriaBuilder();
+	private <U> Subquery<Integer> getGroupMemberIds(OpenmrsFhirCriteriaContext<Patient, U> criteriaContext,
+	        List<String> groupIds) {
+		OpenmrsFhirCriteriaSubquery<CohortMembership, Integer> subquery = criteriaContext
+		        .addSubquery(CohortMembership.class, Integer.class);
+		Join<?, ?> cohort = subquery.addJoin("cohort", "cmc");
 		
-		criteriaContext.addPredicate(cb.equal(criteriaContext.getRoot().get("cohort").get("uuid"), groupId));
-		criteriaContext.getCriteriaQuery().select(criteriaContext.getRoot().get("patientId"));
+		subquery.setProjection(subquery.getRoot().get("patientId"));
+		subquery.addPredicate(cohort.get("uuid").in(groupIds));
+		subquery.addPredicate(subquery.getCriteriaBuilder().equal(subquery.getRoot().get("voided"), false));
 		
-		return criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery()).getResultList();
+		return subquery.finalizeQuery();
 	}
 	
 	private <U> Optional<Predicate> handlePatientQuery(@Nonnull OpenmrsFhirCriteriaContext<Patient, U> criteriaContext,
@@ -278,4 +361,9 @@ public class FhirPatientDaoImpl extends BasePersonDao<Patient> implements FhirPa
 		
 		return super.paramToProp(criteriaContext, param);
 	}
+	
+	@Override
+	protected Collection<String> getPrefetchedAssociations() {
+		return Arrays.asList("names", "identifiers", "addresses", "attributes");
+	}
 }
@@ -13,6 +13,8 @@ import javax.annotation.Nonnull;
 import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.Predicate;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Stream;
@@ -95,4 +97,8 @@ public class FhirPersonDaoImpl extends BasePersonDao<Person> implements FhirPers
 		    criteriaContext.getCriteriaBuilder().equal(criteriaContext.getRoot().get("personVoided"), false));
 	}
 	
+	@Override
+	protected Collection<String> getPrefetchedAssociations() {
+		return Arrays.asList("names", "addresses", "attributes");
+	}
 }
@@ -11,6 +11,8 @@ package org.openmrs.module.fhir2.api.dao.impl;
 
 import javax.annotation.Nonnull;
 
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -54,4 +56,9 @@ public class FhirPractitionerDaoImpl extends BasePractitionerDao<Provider> imple
 		
 		return criteriaContext.getEntityManager().createQuery(criteriaContext.finalizeQuery()).getResultList();
 	}
+	
+	@Override
+	protected Collection<String> getPrefetchedAssociations() {
+		return Arrays.asList("person.names", "person.addresses");
+	}
 }
@@ -0,0 +1,80 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.impl;
+
+import javax.annotation.Nonnull;
+
+import java.util.Date;
+import java.util.Optional;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.SessionFactory;
+import org.openmrs.module.fhir2.api.dao.FhirStoredSearchDao;
+import org.openmrs.module.fhir2.model.FhirStoredSearch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+@Component
+public class FhirStoredSearchDaoImpl implements FhirStoredSearchDao {
+	
+	@Getter(value = AccessLevel.PROTECTED)
+	@Setter(value = AccessLevel.PROTECTED, onMethod = @__({ @Autowired, @Qualifier("sessionFactory") }))
+	private SessionFactory sessionFactory;
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<FhirStoredSearch> getStoredSearch(@Nonnull String searchId) {
+		return sessionFactory.getCurrentSession()
+		        .createQuery("from FhirStoredSearch fss where fss.searchId = :search_id", FhirStoredSearch.class)
+		        .setParameter("search_id", searchId).getResultList().stream().findFirst();
+	}
+	
+	@Override
+	@Transactional
+	public FhirStoredSearch saveStoredSearch(@Nonnull FhirStoredSearch storedSearch) {
+		sessionFactory.getCurrentSession().saveOrUpdate(storedSearch);
+		return storedSearch;
+	}
+	
+	@Override
+	@Transactional
+	public void updateExpirationDate(@Nonnull String searchId, @Nonnull Date expirationDate) {
+		sessionFactory.getCurrentSession()
+		        .createQuery("update FhirStoredSearch fss set fss.expirationDate = :expiration_date "
+		                + "where fss.searchId = :search_id")
+		        .setParameter("expiration_date", expirationDate).setParameter("search_id", searchId).executeUpdate();
+	}
+	
+	@Override
+	@Transactional
+	public int deleteExpiredStoredSearches(@Nonnull Date date) {
+		return sessionFactory.getCurrentSession()
+		        .createQuery("delete from FhirStoredSearch fss where fss.expirationDate < :date")
+		        .setParameter("date", date).executeUpdate();
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public long getStoredSearchCount() {
+		return sessionFactory.getCurrentSession().createQuery("select count(fss) from FhirStoredSearch fss", Long.class)
+		        .getSingleResult();
+	}
+	
+	@Override
+	@Transactional(readOnly = true)
+	public Optional<Date> getOldestStoredSearchDate() {
+		return Optional.ofNullable(sessionFactory.getCurrentSession()
+		        .createQuery("select min(fss.dateCreated) from FhirStoredSearch fss", Date.class).getSingleResult());
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.List;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openmrs.Cohort;
+import org.openmrs.CohortMembership;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds an {@link IntBitmap} of the ids of the patients who are active members of each cohort used
+ * in a search, so that group membership criteria can be intersected and combined in memory instead
+ * of by the database. <br/>
+ * The members of a cohort are loaded the first time the cohort is asked for, and the cohorts used
+ * least recently are dropped once about {@value #MAX_INDEXED_MEMBERS} members are held. While a
+ * cohort is held, its bitmap is kept up to date by a Hibernate listener which applies each committed
+ * insert, update and delete of a {@link CohortMembership}, whether it was made through FHIR or any
+ * other OpenMRS API. Changes made directly in the database, or by another server sharing it, are not
+ * seen.
+ */
+@Slf4j
+@Component
+public class CohortMembershipIndex {
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = { @Autowired, @Qualifier("sessionFactory") })
+	private SessionFactory sessionFactory;
+	
+	// caps the memory used by the index at a few MB, evicting the cohorts used least recently
+	private static final long MAX_INDEXED_MEMBERS = 2_000_000L;
+	
+	private final Cache<Integer, IntBitmap> members = CacheBuilder.newBuilder().maximumWeight(MAX_INDEXED_MEMBERS)
+	        .weigher((Integer cohortId, IntBitmap bitmap) -> bitmap.getCardinality() + 1).build();
+	
+	// counts the membership changes seen, so that members loaded while a change is committed are not kept
+	private long changeCount;
+	
+	@PostConstruct
+	public void registerListener() {
+		if (!PostCommitListeners.register(sessionFactory, new MembershipListener(this))) {
+			log.warn("Cannot listen for cohort membership changes, so cohort members will not be indexed");
+			return;
+		}
+	}
+	
+	@PreDestroy
+	public synchronized void clear() {
+		members.invalidateAll();
+		changeCount++;
+	}
+	
+	/**
+	 * @param cohortUuid the uuid of a cohort
+	 * @return the ids of the patients who are active members of the cohort, which is empty if there is
+	 *         no such cohort
+	 */
+	public IntBitmap getMembers(@Nonnull String cohortUuid) {
+		Integer cohortId = getCohortId(cohortUuid);
+		if (cohortId == null) {
+			return new IntBitmap();
+		}
+		
+		long loadedAt;
+		synchronized (this) {
+			IntBitmap bitmap = members.getIfPresent(cohortId);
+			if (bitmap != null) {
+				return bitmap.copy();
+			}
+			
+			loadedAt = changeCount;
+		}
+		
+		IntBitmap bitmap = IntBitmap.of(loadMemberIds(cohortId));
+		Runnable cacheMembers = () -> {
+			synchronized (this) {
+				if (changeCount == loadedAt) {
+					members.put(cohortId, bitmap.copy());
+				}
+			}
+		};
+		
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// the members read in a transaction which is rolled back may include changes which never happened
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				
+				@Override
+				public void afterCommit() {
+					cacheMembers.run();
+				}
+			});
+		} else {
+			cacheMembers.run();
+		}
+		
+		return bitmap;
+	}
+	
+	synchronized void onMembershipChanged(CohortMembership membership, boolean deleted) {
+		changeCount++;
+		if (membership.getCohort() == null || membership.getPatientId() == null) {
+			return;
+		}
+		
+		Integer cohortId = membership.getCohort().getCohortId();
+		IntBitmap bitmap = members.getIfPresent(cohortId);
+		if (bitmap != null) {
+			if (deleted || membership.getVoided()) {
+				bitmap.remove(membership.getPatientId());
+			} else {
+				bitmap.add(membership.getPatientId());
+			}
+			
+			// entries are only weighed when they are put, so the bitmap is put again to count its new size
+			members.put(cohortId, bitmap);
+		}
+	}
+	
+	synchronized void onCohortDeleted(Cohort cohort) {
+		changeCount++;
+		members.invalidate(cohort.getCohortId());
+	}
+	
+	private Integer getCohortId(String cohortUuid) {
+		return sessionFactory.getCurrentSession()
+		        .createQuery("select c.cohortId from Cohort c where c.uuid = :uuid", Integer.class)
+		        .setParameter("uuid", cohortUuid).getResultList().stream().findFirst().orElse(null);
+	}
+	
+	private List<Integer> loadMemberIds(Integer cohortId) {
+		return sessionFactory.getCurrentSession()
+		        .createQuery("select m.patientId from CohortMembership m where m.cohort.cohortId = :cohortId "
+		                + "and m.voided = false",
+		            Integer.class)
+		        .setParameter("cohortId", cohortId).getResultList();
+	}
+	
+	/**
+	 * Passes committed changes to cohort memberships to the index. The listener only holds the index it
+	 * was created for, and it is replaced by the listener of the next index if the module is restarted.
+	 */
+	private static class MembershipListener implements PostCommitListeners.Listener {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final transient CohortMembershipIndex index;
+		
+		private MembershipListener(CohortMembershipIndex index) {
+			this.index = index;
+		}
+		
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			if (event.getEntity() instanceof CohortMembership) {
+				index.onMembershipChanged((CohortMembership) event.getEntity(), false);
+			}
+		}
+		
+		@Override
+		public void onPostUpdate(PostUpdateEvent event) {
+			if (event.getEntity() instanceof CohortMembership) {
+				index.onMembershipChanged((CohortMembership) event.getEntity(), false);
+			}
+		}
+		
+		@Override
+		public void onPostDelete(PostDeleteEvent event) {
+			if (event.getEntity() instanceof CohortMembership) {
+				index.onMembershipChanged((CohortMembership) event.getEntity(), true);
+			} else if (event.getEntity() instanceof Cohort) {
+				// the memberships of a purged cohort are deleted with it
+				index.onCohortDeleted((Cohort) event.getEntity());
+			}
+		}
+		
+		@Override
+		public void onPostInsertCommitFailed(PostInsertEvent event) {
+		}
+		
+		@Override
+		public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+		}
+		
+		@Override
+		public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+		}
+		
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			Class<?> entityClass = persister.getMappedClass();
+			return CohortMembership.class.isAssignableFrom(entityClass) || Cohort.class.isAssignableFrom(entityClass);
+		}
+	}
+}
@@ -0,0 +1,611 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.Duration;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.model.FhirConceptSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Resolves codes in a FHIR system, i.e. the url of a concept source, to the ids of the concepts
+ * mapped to them, going to the database only for codes which have not been resolved recently. <br/>
+ * The mappings of each code are loaded the first time the code is asked for, and the mappings of
+ * up to {@value #MAX_CACHED_CODES} codes are kept, dropping the codes used least recently. The
+ * concept source of each system is likewise looked up the first time it is asked for. After that, a
+ * Hibernate listener drops the codes affected by each committed insert, update and delete of a
+ * {@link ConceptMap}, by each change to whether a concept is retired, and by each change to a
+ * reference term or map type, so that they are loaded again the next time they are asked for. The
+ * codes held are indexed by the concept maps, concepts, reference terms and map types of their
+ * mappings, so a change only visits the codes it affects. A committed change to a concept source or
+ * FHIR concept source drops every code. Changes made directly in the database, or by another server
+ * sharing it, are not seen. <br/>
+ * A code is matched to the reference terms with exactly that code, so that the index on the code of
+ * reference terms can be used, and only matched ignoring case if there are no such terms. <br/>
+ * The resolver can be turned off by setting {@link FhirConstants#OPENMRS_FHIR_CONCEPT_CODE_RESOLVER}
+ * to false, in which case callers should query the concept mappings themselves.
+ */
+@Slf4j
+@Component
+public class ConceptCodeResolver {
+	
+	private static final int UNKNOWN_SOURCE = -1;
+	
+	// caps the memory used by the resolver at a few MB
+	private static final int MAX_CACHED_CODES = 50_000;
+	
+	private static final int MAX_CACHED_SYSTEMS = 1_000;
+	
+	// keeps the IN-lists used to load codes well below the limits of the supported databases
+	private static final int LOAD_BATCH_SIZE = 500;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = { @Autowired, @Qualifier("sessionFactory") })
+	private SessionFactory sessionFactory;
+	
+	private boolean listening;
+	
+	// the codes held for each concept map, concept, reference term and map type in their mappings, and for
+	// each code in lower case, so that the codes affected by a change can be found without visiting every code
+	private final Map<Integer, Set<CodeKey>> codesByConceptMap = new HashMap<>();
+	
+	private final Map<Integer, Set<CodeKey>> codesByConcept = new HashMap<>();
+	
+	private final Map<Integer, Set<CodeKey>> codesByTerm = new HashMap<>();
+	
+	private final Map<Integer, Set<CodeKey>> codesByMapType = new HashMap<>();
+	
+	private final Map<CodeKey, Set<CodeKey>> codesByLowerCaseCode = new HashMap<>();
+	
+	// the mappings of each code asked for, keyed by concept source id and code; codes are only removed from
+	// the indexes above when they are removed from here, and every change to either is made holding the lock
+	private final Cache<CodeKey, List<Mapping>> mappings = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_CODES)
+	        .<CodeKey, List<Mapping>> removalListener(removed -> unindex(removed.getKey(), removed.getValue())).build();
+	
+	// the concept source id of each known system which has been asked for
+	private final Cache<String, Integer> sourceIds = CacheBuilder.newBuilder().maximumSize(MAX_CACHED_SYSTEMS).build();
+	
+	// counts the changes seen, so that mappings loaded while a change is committed are not kept
+	private long changeCount;
+	
+	@PostConstruct
+	public void registerListener() {
+		if (!PostCommitListeners.register(sessionFactory, new MappingListener(this))) {
+			log.warn("Cannot listen for concept mapping changes, so concept codes will be resolved by the database");
+			return;
+		}
+		
+		listening = true;
+	}
+	
+	/**
+	 * @return true if codes should be resolved by this resolver
+	 */
+	public boolean isEnabled() {
+		return listening && Boolean.parseBoolean(
+		    globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_CONCEPT_CODE_RESOLVER, "true"));
+	}
+	
+	/**
+	 * Finds the concepts with any mapping to one of the given codes in a system. As in a search, retired
+	 * concepts are included. A code which is not mapped exactly is compared ignoring case.
+	 *
+	 * @param system the url of the system
+	 * @param codes the codes to look for
+	 * @return the ids of the matching concepts, in ascending order, which is empty if there are none or
+	 *         the system is unknown
+	 */
+	public int[] getConceptIds(@Nonnull String system, @Nonnull Collection<String> codes) {
+		int sourceId = getSourceId(system);
+		if (sourceId == UNKNOWN_SOURCE) {
+			return new int[0];
+		}
+		
+		IntBitmap conceptIds = new IntBitmap();
+		for (List<Mapping> codeMappings : getMappings(sourceId, codes).values()) {
+			for (Mapping mapping : codeMappings) {
+				conceptIds.add(mapping.conceptId);
+			}
+		}
+		
+		return conceptIds.toArray();
+	}
+	
+	/**
+	 * Finds the concept a code in a system should be translated to. If the concepts mapped to the code
+	 * are all mapped with the same map type, this is one of them, otherwise it is the concept with a
+	 * SAME-AS mapping. Concepts which are not retired are preferred to those which are.
+	 *
+	 * @param system the url of the system
+	 * @param code the code, which is compared exactly
+	 * @return the id of the concept, if there is one
+	 */
+	public Optional<Integer> getConceptId(@Nonnull String system, @Nonnull String code) {
+		int sourceId = getSourceId(system);
+		if (sourceId == UNKNOWN_SOURCE) {
+			return Optional.empty();
+		}
+		
+		Mapping single = null;
+		Mapping sameAs = null;
+		boolean singleMapType = true;
+		for (Mapping mapping : getMappings(sourceId, Collections.singleton(code)).getOrDefault(code,
+		    Collections.emptyList())) {
+			if (!code.equals(mapping.code)) {
+				continue;
+			}
+			
+			if (single != null && single.mapTypeId != mapping.mapTypeId) {
+				singleMapType = false;
+			}
+			
+			single = prefer(single, mapping);
+			if (mapping.sameAs) {
+				sameAs = prefer(sameAs, mapping);
+			}
+		}
+		
+		Mapping result = singleMapType ? single : sameAs;
+		return result == null ? Optional.empty() : Optional.of(result.conceptId);
+	}
+	
+	synchronized void onMappingChanged(ConceptMap conceptMap, boolean deleted) {
+		changeCount++;
+		if (conceptMap.getConceptMapId() == null) {
+			return;
+		}
+		
+		// drops the code the mapping was for
+		evict(codesByConceptMap.get(conceptMap.getConceptMapId()));
+		if (deleted) {
+			return;
+		}
+		
+		// drops the code the mapping is now for
+		ConceptReferenceTerm term = conceptMap.getConceptReferenceTerm();
+		if (term == null || !Hibernate.isInitialized(term) || term.getConceptSource() == null
+		        || term.getConceptSource().getConceptSourceId() == null) {
+			// the code cannot be read once its session is gone, so every code is loaded again
+			mappings.invalidateAll();
+			return;
+		}
+		
+		evictCode(term.getConceptSource().getConceptSourceId(), term.getCode());
+	}
+	
+	synchronized void onConceptChanged(Concept concept, boolean deleted) {
+		changeCount++;
+		if (concept.getConceptId() == null) {
+			return;
+		}
+		
+		int conceptId = concept.getConceptId();
+		boolean retired = !deleted && Boolean.TRUE.equals(concept.getRetired());
+		List<CodeKey> affected = new ArrayList<>();
+		for (CodeKey key : codesByConcept.getOrDefault(conceptId, Collections.emptySet())) {
+			List<Mapping> codeMappings = mappings.asMap().getOrDefault(key, Collections.emptyList());
+			if (codeMappings.stream().anyMatch(m -> m.conceptId == conceptId && m.retired != retired)) {
+				affected.add(key);
+			}
+		}
+		
+		evict(affected);
+	}
+	
+	synchronized void onTermChanged(ConceptReferenceTerm term) {
+		changeCount++;
+		if (term.getConceptReferenceTermId() == null) {
+			return;
+		}
+		
+		evict(codesByTerm.get(term.getConceptReferenceTermId()));
+		if (term.getConceptSource() != null && term.getConceptSource().getConceptSourceId() != null) {
+			// the term may now be for a code whose mappings are held without it
+			evictCode(term.getConceptSource().getConceptSourceId(), term.getCode());
+		}
+	}
+	
+	synchronized void onMapTypeChanged(ConceptMapType mapType) {
+		changeCount++;
+		if (mapType.getConceptMapTypeId() == null) {
+			return;
+		}
+		
+		evict(codesByMapType.get(mapType.getConceptMapTypeId()));
+	}
+	
+	synchronized void clear() {
+		changeCount++;
+		mappings.invalidateAll();
+		sourceIds.invalidateAll();
+	}
+	
+	private void evict(Collection<CodeKey> keys) {
+		if (keys != null) {
+			// the keys are copied, as the indexes they come from are updated as each code is dropped
+			mappings.invalidateAll(new ArrayList<>(keys));
+		}
+	}
+	
+	/**
+	 * Drops every case of a code, as a code held without mappings of its own may have been matched to
+	 * the code ignoring case
+	 */
+	private void evictCode(int sourceId, String code) {
+		evict(codesByLowerCaseCode.get(new CodeKey(sourceId, toKey(code))));
+	}
+	
+	private synchronized void cache(CodeKey key, List<Mapping> codeMappings) {
+		mappings.put(key, codeMappings);
+		index(codesByLowerCaseCode, new CodeKey(key.sourceId, toKey(key.code)), key);
+		for (Mapping mapping : codeMappings) {
+			index(codesByConceptMap, mapping.conceptMapId, key);
+			index(codesByConcept, mapping.conceptId, key);
+			index(codesByTerm, mapping.termId, key);
+			index(codesByMapType, mapping.mapTypeId, key);
+		}
+	}
+	
+	private synchronized void unindex(CodeKey key, List<Mapping> codeMappings) {
+		if (codeMappings == null) {
+			return;
+		}
+		
+		unindex(codesByLowerCaseCode, new CodeKey(key.sourceId, toKey(key.code)), key);
+		for (Mapping mapping : codeMappings) {
+			unindex(codesByConceptMap, mapping.conceptMapId, key);
+			unindex(codesByConcept, mapping.conceptId, key);
+			unindex(codesByTerm, mapping.termId, key);
+			unindex(codesByMapType, mapping.mapTypeId, key);
+		}
+	}
+	
+	private static <K> void index(Map<K, Set<CodeKey>> index, K id, CodeKey key) {
+		index.computeIfAbsent(id, k -> new HashSet<>(2)).add(key);
+	}
+	
+	private static <K> void unindex(Map<K, Set<CodeKey>> index, K id, CodeKey key) {
+		Set<CodeKey> keys = index.get(id);
+		if (keys != null && keys.remove(key) && keys.isEmpty()) {
+			index.remove(id);
+		}
+	}
+	
+	private int getSourceId(String system) {
+		long loadedAt;
+		synchronized (this) {
+			Integer sourceId = sourceIds.getIfPresent(system);
+			if (sourceId != null) {
+				return sourceId;
+			}
+			
+			loadedAt = changeCount;
+		}
+		
+		List<Integer> systemSourceIds = sessionFactory.getCurrentSession()
+		        .createQuery("select s.conceptSource.conceptSourceId from FhirConceptSource s where s.url = :url",
+		            Integer.class)
+		        .setParameter("url", system).getResultList();
+		if (systemSourceIds.isEmpty() && FhirConstants.SNOMED_SYSTEM_URI.equals(system)) {
+			systemSourceIds = sessionFactory.getCurrentSession()
+			        .createQuery("select s.conceptSourceId from ConceptSource s where s.hl7Code = :hl7Code",
+			            Integer.class)
+			        .setParameter("hl7Code", Duration.SNOMED_CT_CONCEPT_SOURCE_HL7_CODE).getResultList();
+		}
+		
+		if (systemSourceIds.isEmpty()) {
+			// unknown systems are not kept, as any system may be asked for
+			return UNKNOWN_SOURCE;
+		}
+		
+		Integer sourceId = systemSourceIds.get(0);
+		keepAfterCommit(loadedAt, () -> sourceIds.put(system, sourceId));
+		return sourceId;
+	}
+	
+	/**
+	 * @return the mappings of each of the codes, keyed by the code
+	 */
+	private Map<String, List<Mapping>> getMappings(int sourceId, Collection<String> codes) {
+		Map<String, List<Mapping>> result = new HashMap<>();
+		Set<String> missing = new LinkedHashSet<>();
+		long loadedAt;
+		synchronized (this) {
+			for (String code : codes) {
+				String key = code == null ? "" : code;
+				List<Mapping> codeMappings = mappings.getIfPresent(new CodeKey(sourceId, key));
+				if (codeMappings != null) {
+					result.put(key, codeMappings);
+				} else {
+					missing.add(key);
+				}
+			}
+			
+			loadedAt = changeCount;
+		}
+		
+		if (missing.isEmpty()) {
+			return result;
+		}
+		
+		Map<String, List<Mapping>> loaded = loadMappings(sourceId, missing);
+		result.putAll(loaded);
+		keepAfterCommit(loadedAt,
+		    () -> loaded.forEach((key, codeMappings) -> cache(new CodeKey(sourceId, key), codeMappings)));
+		
+		return result;
+	}
+	
+	/**
+	 * Keeps what was loaded once the transaction it was read in commits, unless a change was seen since
+	 */
+	private void keepAfterCommit(long loadedAt, Runnable keep) {
+		Runnable keepIfUnchanged = () -> {
+			synchronized (this) {
+				if (changeCount == loadedAt) {
+					keep.run();
+				}
+			}
+		};
+		
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// what is read in a transaction which is rolled back may include changes which never happened
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				
+				@Override
+				public void afterCommit() {
+					keepIfUnchanged.run();
+				}
+			});
+		} else {
+			keepIfUnchanged.run();
+		}
+	}
+	
+	/**
+	 * Loads the mappings of each code to the reference terms with exactly that code, or, for codes
+	 * with no such terms, to the terms with the code in any case
+	 */
+	private Map<String, List<Mapping>> loadMappings(int sourceId, Set<String> codes) {
+		// depending on its collation, the database may match codes ignoring case even when asked for an exact match
+		List<Mapping> candidates = queryMappings(sourceId, codes, "t.code in (:codes)");
+		Map<String, List<Mapping>> loaded = new HashMap<>();
+		Set<String> unmatched = new LinkedHashSet<>();
+		for (String code : codes) {
+			List<Mapping> codeMappings = match(candidates, code);
+			if (codeMappings.isEmpty()) {
+				unmatched.add(code);
+			} else {
+				loaded.put(code, codeMappings);
+			}
+		}
+		
+		if (!unmatched.isEmpty()) {
+			Set<String> lowerCaseCodes = unmatched.stream().map(ConceptCodeResolver::toKey)
+			        .collect(Collectors.toCollection(LinkedHashSet::new));
+			candidates = queryMappings(sourceId, lowerCaseCodes, "lower(t.code) in (:codes)");
+			
+			// codes without mappings are kept too, so that they are not looked up again
+			for (String code : unmatched) {
+				loaded.put(code, match(candidates, code));
+			}
+		}
+		
+		log.debug("Loaded the concept mappings of {} codes", codes.size());
+		return loaded;
+	}
+	
+	private List<Mapping> queryMappings(int sourceId, Set<String> codes, String codeCriterion) {
+		List<Mapping> result = new ArrayList<>();
+		for (List<String> batch : Lists.partition(new ArrayList<>(codes), LOAD_BATCH_SIZE)) {
+			List<Object[]> rows = sessionFactory.getCurrentSession()
+			        .createQuery("select m.conceptMapId, c.conceptId, c.retired, t.conceptReferenceTermId, t.code, "
+			                + "mt.conceptMapTypeId, mt.uuid, mt.name from ConceptMap m join m.concept c "
+			                + "join m.conceptReferenceTerm t join m.conceptMapType mt "
+			                + "where t.conceptSource.conceptSourceId = :sourceId and " + codeCriterion,
+			            Object[].class)
+			        .setParameter("sourceId", sourceId).setParameterList("codes", batch).getResultList();
+			
+			for (Object[] row : rows) {
+				result.add(new Mapping((Integer) row[0], (Integer) row[1], Boolean.TRUE.equals(row[2]),
+				        (Integer) row[3], (String) row[4], (Integer) row[5],
+				        isSameAs((String) row[6], (String) row[7])));
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return the mappings with exactly the given code or, if there are none, with the code in any case
+	 */
+	private static List<Mapping> match(List<Mapping> candidates, String code) {
+		List<Mapping> exact = new ArrayList<>(1);
+		List<Mapping> ignoringCase = new ArrayList<>(1);
+		for (Mapping mapping : candidates) {
+			if (code.equals(mapping.code)) {
+				exact.add(mapping);
+			} else if (code.equalsIgnoreCase(mapping.code)) {
+				ignoringCase.add(mapping);
+			}
+		}
+		
+		if (!exact.isEmpty()) {
+			return Collections.unmodifiableList(exact);
+		}
+		
+		return ignoringCase.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(ignoringCase);
+	}
+	
+	private static Mapping prefer(Mapping current, Mapping candidate) {
+		if (current == null) {
+			return candidate;
+		}
+		
+		return current.retired && !candidate.retired ? candidate : current;
+	}
+	
+	private static boolean isSameAs(String mapTypeUuid, String mapTypeName) {
+		return ConceptMapType.SAME_AS_MAP_TYPE_UUID.equals(mapTypeUuid) || "SAME-AS".equalsIgnoreCase(mapTypeName);
+	}
+	
+	private static String toKey(String code) {
+		return code == null ? "" : code.toLowerCase(Locale.ROOT);
+	}
+	
+	@EqualsAndHashCode
+	@RequiredArgsConstructor
+	private static final class CodeKey {
+		
+		private final int sourceId;
+		
+		private final String code;
+	}
+	
+	private static final class Mapping {
+		
+		private final int conceptMapId;
+		
+		private final int conceptId;
+		
+		private final boolean retired;
+		
+		private final int termId;
+		
+		private final String code;
+		
+		private final int mapTypeId;
+		
+		private final boolean sameAs;
+		
+		private Mapping(int conceptMapId, int conceptId, boolean retired, int termId, String code, int mapTypeId,
+		    boolean sameAs) {
+			this.conceptMapId = conceptMapId;
+			this.conceptId = conceptId;
+			this.retired = retired;
+			this.termId = termId;
+			this.code = code;
+			this.mapTypeId = mapTypeId;
+			this.sameAs = sameAs;
+		}
+	}
+	
+	/**
+	 * Passes committed changes to concepts and their mappings to the resolver. The listener only holds
+	 * the resolver it was created for, and it is replaced by the listener of the next resolver if the
+	 * module is restarted.
+	 */
+	private static class MappingListener implements PostCommitListeners.Listener {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final transient ConceptCodeResolver resolver;
+		
+		private MappingListener(ConceptCodeResolver resolver) {
+			this.resolver = resolver;
+		}
+		
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			onChange(event.getEntity(), false);
+		}
+		
+		@Override
+		public void onPostUpdate(PostUpdateEvent event) {
+			onChange(event.getEntity(), false);
+		}
+		
+		@Override
+		public void onPostDelete(PostDeleteEvent event) {
+			onChange(event.getEntity(), true);
+		}
+		
+		@Override
+		public void onPostInsertCommitFailed(PostInsertEvent event) {
+		}
+		
+		@Override
+		public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+		}
+		
+		@Override
+		public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+		}
+		
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			Class<?> entityClass = persister.getMappedClass();
+			return ConceptMap.class.isAssignableFrom(entityClass) || Concept.class.isAssignableFrom(entityClass)
+			        || ConceptReferenceTerm.class.isAssignableFrom(entityClass)
+			        || ConceptMapType.class.isAssignableFrom(entityClass) || isSource(entityClass);
+		}
+		
+		private void onChange(Object entity, boolean deleted) {
+			if (entity instanceof ConceptMap) {
+				resolver.onMappingChanged((ConceptMap) entity, deleted);
+			} else if (entity instanceof Concept) {
+				resolver.onConceptChanged((Concept) entity, deleted);
+			} else if (entity instanceof ConceptReferenceTerm) {
+				resolver.onTermChanged((ConceptReferenceTerm) entity);
+			} else if (entity instanceof ConceptMapType) {
+				resolver.onMapTypeChanged((ConceptMapType) entity);
+			} else if (entity != null && isSource(entity.getClass())) {
+				resolver.clear();
+			}
+		}
+		
+		private static boolean isSource(Class<?> entityClass) {
+			return ConceptSource.class.isAssignableFrom(entityClass)
+			        || FhirConceptSource.class.isAssignableFrom(entityClass);
+		}
+	}
+}
@@ -42,6 +42,7 @@ import ca.uhn.fhir.rest.param.StringAndListParam;
 import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
 import ca.uhn.fhir.rest.param.TokenOrListParam;
+import com.google.common.primitives.Ints;
 import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
@@ -115,6 +116,10 @@ public class FhirSearchQueryHelper extends BaseDao {
 	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
 	private LocalDateTimeFactory localDateTimeFactory;
 	
+	@Getter(value = AccessLevel.PROTECTED)
+	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
+	private ConceptCodeResolver conceptCodeResolver;
+	
 	// ========== Status Conversion ==========
 	
 	public TokenAndListParam convertStringStatusToBoolean(TokenAndListParam statusParam) {
@@ -323,11 +328,20 @@ public class FhirSearchQueryHelper extends BaseDao {
 			if (system.isEmpty()) {
 				Predicate inConceptId = criteriaContext.getCriteriaBuilder().in(conceptAlias.get("conceptId"))
 				        .value(criteriaContext.getCriteriaBuilder()
-				                .literal(tokensToParams(tokens).map(NumberUtils::toInt).collect(Collectors.toList())));
+				                .literal(InClauseValues.pad(
+				                    tokensToParams(tokens).map(NumberUtils::toInt).collect(Collectors.toList()))));
 				Predicate inUuid = criteriaContext.getCriteriaBuilder().in(conceptAlias.get("uuid"))
-				        .value(criteriaContext.getCriteriaBuilder().literal(tokensToList(tokens)));
+				        .value(criteriaContext.getCriteriaBuilder().literal(InClauseValues.pad(tokensToList(tokens))));
 				
 				return Optional.of(criteriaContext.getCriteriaBuilder().or(inConceptId, inUuid));
+			} else if (conceptCodeResolver != null && conceptCodeResolver.isEnabled()) {
+				int[] conceptIds = conceptCodeResolver.getConceptIds(system, tokensToList(tokens));
+				if (conceptIds.length == 0) {
+					return Optional.of(criteriaContext.getCriteriaBuilder().disjunction());
+				}
+				
+				return Optional.of(criteriaContext.getCriteriaBuilder().in(conceptAlias.get("conceptId")).value(
+				    criteriaContext.getCriteriaBuilder().literal(InClauseValues.pad(Ints.asList(conceptIds)))));
 			} else {
 				Join<?, ?> conceptMapAliasJoin = criteriaContext.addJoin(conceptAlias, "conceptMappings", conceptMapAlias);
 				criteriaContext.addJoin(conceptMapAliasJoin, "conceptReferenceTerm", conceptReferenceTermAlias);
@@ -903,7 +917,8 @@ public class FhirSearchQueryHelper extends BaseDao {
 		        .map((conceptReferenceTermJoin) -> criteriaContext.getCriteriaBuilder().and(
 		            criteriaContext.getCriteriaBuilder().in(conceptReferenceTermJoin.get("conceptSource"))
 		                    .value(conceptSourceSubquery.finalizeQuery()),
-		            criteriaContext.getCriteriaBuilder().in(conceptReferenceTermJoin.get("code")).value(codes)));
+		            criteriaContext.getCriteriaBuilder().in(conceptReferenceTermJoin.get("code"))
+		                    .value(InClauseValues.pad(codes))));
 	}
 	
 	// ========== String Matching ==========
@@ -0,0 +1,57 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Helpers for the values of {@code in} clauses. <br/>
+ * Hibernate expands a list of values bound to a query into one parameter per value, so every
+ * different number of values gives a different query, which Hibernate translates to SQL again and
+ * keeps in its query plan cache alongside the others. Passing the values through
+ * {@link #pad(Collection)} before binding them limits the number of different queries to one for
+ * each power of two, so searches which only differ in how many values they match on share a plan.
+ */
+public final class InClauseValues {
+	
+	// lists longer than this are not padded, as they are rare and padding them costs more
+	static final int MAX_PADDED_SIZE = 1024;
+	
+	private InClauseValues() {
+	}
+	
+	/**
+	 * Pads the given values to the next power of two by repeating the last value, which does not
+	 * change the results of an {@code in} clause.
+	 *
+	 * @param values the values to match
+	 * @return a list of the values, padded as needed
+	 */
+	public static <V> List<V> pad(@Nonnull Collection<V> values) {
+		int size = values.size();
+		if (size <= 1 || size > MAX_PADDED_SIZE || Integer.bitCount(size) == 1) {
+			return values instanceof List ? (List<V>) values : new ArrayList<>(values);
+		}
+		
+		int paddedSize = Integer.highestOneBit(size) << 1;
+		List<V> result = new ArrayList<>(paddedSize);
+		result.addAll(values);
+		V last = result.get(size - 1);
+		while (result.size() < paddedSize) {
+			result.add(last);
+		}
+		
+		return result;
+	}
+}
@@ -0,0 +1,476 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.IntConsumer;
+
+/**
+ * A compressed set of non-negative ints, laid out like a Roaring bitmap. Values are split into
+ * chunks of 65536 by their high 16 bits, and each chunk is held either as a sorted array of its low
+ * 16 bits, while it holds at most 4096 values, or as a 65536 bit bitmap once it holds more. Sparse
+ * sets therefore take about 2 bytes per value and dense sets about 1 bit per possible value, and
+ * intersections and unions are done a chunk at a time, a machine word at a time for dense chunks.
+ * <br/>
+ * <strong>Thread Safety:</strong> This class is <em>not</em> thread-safe. The results of
+ * {@link #and(IntBitmap)}, {@link #or(IntBitmap)} and {@link #copy()} do not share any state with
+ * the bitmaps they were created from.
+ */
+public final class IntBitmap {
+	
+	private static final int MAX_ARRAY_SIZE = 4096;
+	
+	private static final int BITMAP_WORDS = 1024;
+	
+	private final TreeMap<Integer, Container> containers;
+	
+	public IntBitmap() {
+		this(new TreeMap<>());
+	}
+	
+	private IntBitmap(TreeMap<Integer, Container> containers) {
+		this.containers = containers;
+	}
+	
+	public static IntBitmap of(int... values) {
+		IntBitmap bitmap = new IntBitmap();
+		for (int value : values) {
+			bitmap.add(value);
+		}
+		
+		return bitmap;
+	}
+	
+	public static IntBitmap of(Iterable<Integer> values) {
+		IntBitmap bitmap = new IntBitmap();
+		for (Integer value : values) {
+			bitmap.add(value);
+		}
+		
+		return bitmap;
+	}
+	
+	/**
+	 * @param value the value to add
+	 * @return true if the value was not already in this set
+	 */
+	public boolean add(int value) {
+		checkValue(value);
+		Container container = containers.get(value >>> 16);
+		if (container == null) {
+			container = new ArrayContainer();
+		} else if (container.contains((char) value)) {
+			return false;
+		}
+		
+		containers.put(value >>> 16, container.add((char) value));
+		return true;
+	}
+	
+	/**
+	 * @param value the value to remove
+	 * @return true if the value was in this set
+	 */
+	public boolean remove(int value) {
+		Container container = value < 0 ? null : containers.get(value >>> 16);
+		if (container == null || !container.contains((char) value)) {
+			return false;
+		}
+		
+		Container result = container.remove((char) value);
+		if (result.getCardinality() == 0) {
+			containers.remove(value >>> 16);
+		} else {
+			containers.put(value >>> 16, result);
+		}
+		
+		return true;
+	}
+	
+	public boolean contains(int value) {
+		Container container = value < 0 ? null : containers.get(value >>> 16);
+		return container != null && container.contains((char) value);
+	}
+	
+	public int getCardinality() {
+		int cardinality = 0;
+		for (Container container : containers.values()) {
+			cardinality += container.getCardinality();
+		}
+		
+		return cardinality;
+	}
+	
+	public boolean isEmpty() {
+		return containers.isEmpty();
+	}
+	
+	/**
+	 * @return a new set holding the values which are in both this set and the other set
+	 */
+	public IntBitmap and(IntBitmap other) {
+		TreeMap<Integer, Container> result = new TreeMap<>();
+		for (Map.Entry<Integer, Container> entry : containers.entrySet()) {
+			Container otherContainer = other.containers.get(entry.getKey());
+			if (otherContainer != null) {
+				Container container = entry.getValue().and(otherContainer);
+				if (container.getCardinality() > 0) {
+					result.put(entry.getKey(), container);
+				}
+			}
+		}
+		
+		return new IntBitmap(result);
+	}
+	
+	/**
+	 * @return a new set holding the values which are in either this set or the other set
+	 */
+	public IntBitmap or(IntBitmap other) {
+		TreeMap<Integer, Container> result = new TreeMap<>();
+		containers.forEach((key, container) -> result.put(key, container.copy()));
+		other.containers.forEach((key, otherContainer) -> {
+			Container container = result.get(key);
+			result.put(key, container == null ? otherContainer.copy() : container.or(otherContainer));
+		});
+		
+		return new IntBitmap(result);
+	}
+	
+	public IntBitmap copy() {
+		TreeMap<Integer, Container> result = new TreeMap<>();
+		containers.forEach((key, container) -> result.put(key, container.copy()));
+		return new IntBitmap(result);
+	}
+	
+	/**
+	 * Passes each value in this set to the consumer, in ascending order
+	 */
+	public void forEach(IntConsumer consumer) {
+		containers.forEach((key, container) -> container.forEach(key << 16, consumer));
+	}
+	
+	/**
+	 * @return the values in this set, in ascending order
+	 */
+	public int[] toArray() {
+		int[] values = new int[getCardinality()];
+		int[] index = new int[1];
+		forEach(value -> values[index[0]++] = value);
+		return values;
+	}
+	
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		
+		if (!(o instanceof IntBitmap)) {
+			return false;
+		}
+		
+		IntBitmap other = (IntBitmap) o;
+		return getCardinality() == other.getCardinality() && Arrays.equals(toArray(), other.toArray());
+	}
+	
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(toArray());
+	}
+	
+	@Override
+	public String toString() {
+		StringBuilder result = new StringBuilder("{");
+		forEach(value -> result.append(result.length() > 1 ? "," : "").append(value));
+		return result.append('}').toString();
+	}
+	
+	private static void checkValue(int value) {
+		if (value < 0) {
+			throw new IllegalArgumentException("Only non-negative values can be added to an IntBitmap, got " + value);
+		}
+	}
+	
+	private static Container fromWords(long[] words) {
+		int cardinality = 0;
+		for (long word : words) {
+			cardinality += Long.bitCount(word);
+		}
+		
+		BitmapContainer bitmap = new BitmapContainer(words, cardinality);
+		return cardinality > MAX_ARRAY_SIZE ? bitmap : bitmap.toArrayContainer();
+	}
+	
+	private abstract static class Container {
+		
+		abstract Container add(char value);
+		
+		abstract Container remove(char value);
+		
+		abstract boolean contains(char value);
+		
+		abstract int getCardinality();
+		
+		abstract long[] toWords();
+		
+		abstract Container copy();
+		
+		abstract void forEach(int high, IntConsumer consumer);
+		
+		Container and(Container other) {
+			long[] words = toWords();
+			long[] otherWords = other.toWords();
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				words[i] &= otherWords[i];
+			}
+			
+			return fromWords(words);
+		}
+		
+		Container or(Container other) {
+			long[] words = toWords();
+			long[] otherWords = other.toWords();
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				words[i] |= otherWords[i];
+			}
+			
+			return fromWords(words);
+		}
+	}
+	
+	private static final class ArrayContainer extends Container {
+		
+		private char[] values;
+		
+		private int size;
+		
+		ArrayContainer() {
+			this(new char[4], 0);
+		}
+		
+		ArrayContainer(char[] values, int size) {
+			this.values = values;
+			this.size = size;
+		}
+		
+		@Override
+		Container add(char value) {
+			int index = Arrays.binarySearch(values, 0, size, value);
+			if (index >= 0) {
+				return this;
+			}
+			
+			if (size == MAX_ARRAY_SIZE) {
+				return toBitmapContainer().add(value);
+			}
+			
+			index = -index - 1;
+			if (size == values.length) {
+				values = Arrays.copyOf(values, Math.min(Math.max(size * 2, 4), MAX_ARRAY_SIZE));
+			}
+			
+			System.arraycopy(values, index, values, index + 1, size - index);
+			values[index] = value;
+			size++;
+			return this;
+		}
+		
+		@Override
+		Container remove(char value) {
+			int index = Arrays.binarySearch(values, 0, size, value);
+			if (index >= 0) {
+				System.arraycopy(values, index + 1, values, index, size - index - 1);
+				size--;
+			}
+			
+			return this;
+		}
+		
+		@Override
+		boolean contains(char value) {
+			return Arrays.binarySearch(values, 0, size, value) >= 0;
+		}
+		
+		@Override
+		int getCardinality() {
+			return size;
+		}
+		
+		@Override
+		long[] toWords() {
+			long[] words = new long[BITMAP_WORDS];
+			for (int i = 0; i < size; i++) {
+				words[values[i] >>> 6] |= 1L << values[i];
+			}
+			
+			return words;
+		}
+		
+		@Override
+		Container copy() {
+			return new ArrayContainer(Arrays.copyOf(values, Math.max(size, 1)), size);
+		}
+		
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < size; i++) {
+				consumer.accept(high | values[i]);
+			}
+		}
+		
+		@Override
+		Container and(Container other) {
+			if (!(other instanceof ArrayContainer)) {
+				// probing the bitmap is cheaper than building a bitmap for this container
+				char[] result = new char[size];
+				int resultSize = 0;
+				for (int i = 0; i < size; i++) {
+					if (other.contains(values[i])) {
+						result[resultSize++] = values[i];
+					}
+				}
+				
+				return new ArrayContainer(result, resultSize);
+			}
+			
+			ArrayContainer array = (ArrayContainer) other;
+			char[] result = new char[Math.min(size, array.size)];
+			int resultSize = 0;
+			for (int i = 0, j = 0; i < size && j < array.size;) {
+				if (values[i] < array.values[j]) {
+					i++;
+				} else if (values[i] > array.values[j]) {
+					j++;
+				} else {
+					result[resultSize++] = values[i];
+					i++;
+					j++;
+				}
+			}
+			
+			return new ArrayContainer(result, resultSize);
+		}
+		
+		@Override
+		Container or(Container other) {
+			if (!(other instanceof ArrayContainer) || size + ((ArrayContainer) other).size > MAX_ARRAY_SIZE) {
+				return super.or(other);
+			}
+			
+			ArrayContainer array = (ArrayContainer) other;
+			char[] result = new char[size + array.size];
+			int resultSize = 0;
+			int i = 0;
+			int j = 0;
+			while (i < size && j < array.size) {
+				if (values[i] < array.values[j]) {
+					result[resultSize++] = values[i++];
+				} else if (values[i] > array.values[j]) {
+					result[resultSize++] = array.values[j++];
+				} else {
+					result[resultSize++] = values[i++];
+					j++;
+				}
+			}
+			
+			while (i < size) {
+				result[resultSize++] = values[i++];
+			}
+			
+			while (j < array.size) {
+				result[resultSize++] = array.values[j++];
+			}
+			
+			return new ArrayContainer(result, resultSize);
+		}
+		
+		private BitmapContainer toBitmapContainer() {
+			return new BitmapContainer(toWords(), size);
+		}
+	}
+	
+	private static final class BitmapContainer extends Container {
+		
+		private final long[] words;
+		
+		private int cardinality;
+		
+		BitmapContainer(long[] words, int cardinality) {
+			this.words = words;
+			this.cardinality = cardinality;
+		}
+		
+		@Override
+		Container add(char value) {
+			if (!contains(value)) {
+				words[value >>> 6] |= 1L << value;
+				cardinality++;
+			}
+			
+			return this;
+		}
+		
+		@Override
+		Container remove(char value) {
+			if (contains(value)) {
+				words[value >>> 6] &= ~(1L << value);
+				cardinality--;
+			}
+			
+			return cardinality > MAX_ARRAY_SIZE ? this : toArrayContainer();
+		}
+		
+		@Override
+		boolean contains(char value) {
+			return (words[value >>> 6] & (1L << value)) != 0;
+		}
+		
+		@Override
+		int getCardinality() {
+			return cardinality;
+		}
+		
+		@Override
+		long[] toWords() {
+			return Arrays.copyOf(words, BITMAP_WORDS);
+		}
+		
+		@Override
+		Container copy() {
+			return new BitmapContainer(toWords(), cardinality);
+		}
+		
+		@Override
+		void forEach(int high, IntConsumer consumer) {
+			for (int i = 0; i < BITMAP_WORDS; i++) {
+				long word = words[i];
+				while (word != 0) {
+					consumer.accept(high | (i << 6) | Long.numberOfTrailingZeros(word));
+					word &= word - 1;
+				}
+			}
+		}
+		
+		@Override
+		Container and(Container other) {
+			return other instanceof ArrayContainer ? other.and(this) : super.and(other);
+		}
+		
+		private ArrayContainer toArrayContainer() {
+			char[] values = new char[Math.max(cardinality, 1)];
+			int[] size = new int[1];
+			forEach(0, value -> values[size[0]++] = (char) value);
+			return new ArrayContainer(values, size[0]);
+		}
+	}
+}
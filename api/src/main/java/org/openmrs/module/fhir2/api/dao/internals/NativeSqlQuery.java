@@ -0,0 +1,194 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.criteria.CriteriaQuery;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.hql.spi.ParameterTranslations;
+import org.hibernate.hql.spi.QueryTranslator;
+import org.hibernate.query.Query;
+
+/**
+ * The SQL Hibernate generates for a {@link CriteriaQuery}, together with the values bound to its
+ * parameters. This allows a criteria query to be embedded in native SQL for the few things which the
+ * criteria API cannot express, like window functions. <br/>
+ * The parameters of the generated SQL are renamed to {@code :p0}, {@code :p1} and so on, so any SQL
+ * the query is embedded in should not use those names. <br/>
+ * Only criteria queries whose parameters are simple values, or non-empty collections of them, can be
+ * translated. A collection is bound as one parameter per element, as the SQL of an {@code in} list
+ * has a single placeholder for the whole list. Queries comparing against entities or enums are
+ * rejected with an {@link IllegalArgumentException}, as their values cannot be bound to a native
+ * query without knowing how they are mapped.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public final class NativeSqlQuery {
+	
+	private static final String PARAMETER_PREFIX = "p";
+	
+	private static final List<Class<?>> BINDABLE_TYPES = Arrays.asList(String.class, Number.class, Boolean.class,
+	    Character.class, Date.class);
+	
+	private final String sql;
+	
+	private final List<Object> parameters;
+	
+	/**
+	 * Translates a criteria query to SQL
+	 *
+	 * @param entityManager the entity manager the query would be run with
+	 * @param criteriaQuery the finalized criteria query
+	 * @return the SQL for the query and the values of its parameters
+	 * @throws IllegalArgumentException if the query cannot be translated
+	 */
+	public static NativeSqlQuery fromCriteriaQuery(@Nonnull EntityManager entityManager,
+	        @Nonnull CriteriaQuery<?> criteriaQuery) {
+		Query<?> query = entityManager.createQuery(criteriaQuery).unwrap(Query.class);
+		SessionImplementor session = entityManager.unwrap(SessionImplementor.class);
+		
+		HQLQueryPlan plan = session.getFactory().getQueryPlanCache().getHQLQueryPlan(query.getQueryString(), false,
+		    session.getLoadQueryInfluencers().getEnabledFilters());
+		if (plan.getTranslators().length != 1) {
+			throw new IllegalArgumentException("Only queries which translate to a single SQL statement are supported");
+		}
+		
+		QueryTranslator translator = plan.getTranslators()[0];
+		ParameterTranslations parameterTranslations = translator.getParameterTranslations();
+		if (!parameterTranslations.getPositionalParameterInformationMap().isEmpty()) {
+			throw new IllegalArgumentException("Only queries with named parameters are supported");
+		}
+		
+		String sql = translator.getSQLString();
+		Object[] values = new Object[countPlaceholders(sql)];
+		boolean[] bound = new boolean[values.length];
+		for (String name : query.getParameterMetadata().getNamedParameterNames()) {
+			Object value = query.getParameterValue(name);
+			if (!isBindable(value)) {
+				throw new IllegalArgumentException("Cannot bind the value of the parameter " + name);
+			}
+			
+			for (int location : parameterTranslations.getNamedParameterInformation(name).getSourceLocations()) {
+				values[location] = value;
+				bound[location] = true;
+			}
+		}
+		
+		for (boolean isBound : bound) {
+			if (!isBound) {
+				throw new IllegalArgumentException("Could not find the values of all of the parameters of the query");
+			}
+		}
+		
+		List<Object> parameters = new ArrayList<>(values.length);
+		String renamedSql = renamePlaceholders(sql, values, parameters);
+		return new NativeSqlQuery(renamedSql, Collections.unmodifiableList(parameters));
+	}
+	
+	/**
+	 * @param wrapper a function which embeds the SQL of this query in another statement
+	 * @return a query with the SQL returned by the wrapper and the same parameters as this query
+	 */
+	public NativeSqlQuery wrap(@Nonnull UnaryOperator<String> wrapper) {
+		return new NativeSqlQuery(wrapper.apply(sql), parameters);
+	}
+	
+	/**
+	 * Binds the parameters of this query to a native query created from its SQL
+	 *
+	 * @param query the native query
+	 * @return the native query
+	 */
+	public <Q extends Query<?>> Q bind(@Nonnull Q query) {
+		for (int i = 0; i < parameters.size(); i++) {
+			query.setParameter(PARAMETER_PREFIX + i, parameters.get(i));
+		}
+		
+		return query;
+	}
+	
+	private static boolean isBindable(Object value) {
+		if (value instanceof Collection) {
+			Collection<?> values = (Collection<?>) value;
+			return !values.isEmpty() && values.stream().allMatch(NativeSqlQuery::isSimpleValue);
+		}
+		
+		return isSimpleValue(value);
+	}
+	
+	private static boolean isSimpleValue(Object value) {
+		return value != null && BINDABLE_TYPES.stream().anyMatch(type -> type.isInstance(value));
+	}
+	
+	private static int countPlaceholders(String sql) {
+		int count = 0;
+		boolean quoted = false;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+			} else if (c == '?' && !quoted) {
+				count++;
+			}
+		}
+		
+		return count;
+	}
+	
+	/**
+	 * Replaces each placeholder with a named parameter, or with one named parameter per element for a
+	 * collection, and adds the value of each named parameter to the parameters in order
+	 */
+	private static String renamePlaceholders(String sql, Object[] values, List<Object> parameters) {
+		StringBuilder result = new StringBuilder(sql.length() + 16);
+		int index = 0;
+		boolean quoted = false;
+		for (int i = 0; i < sql.length(); i++) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				quoted = !quoted;
+			}
+			
+			if (c == '?' && !quoted) {
+				Object value = values[index++];
+				Collection<?> elements = value instanceof Collection ? (Collection<?>) value
+				        : Collections.singletonList(value);
+				boolean first = true;
+				for (Object element : elements) {
+					if (!first) {
+						result.append(", ");
+					}
+					
+					result.append(':').append(PARAMETER_PREFIX).append(parameters.size());
+					parameters.add(element);
+					first = false;
+				}
+			} else {
+				result.append(c);
+			}
+		}
+		
+		return result.toString();
+	}
+}
@@ -172,6 +172,18 @@ public class OpenmrsFhirCriteriaContext<T, U> extends BaseFhirCriteriaHolder<T>
 		return query;
 	}
 	
+	/**
+	 * Finalizes a query that selects the IDs of all matching rows without any sorting, which is
+	 * suitable for use as the subquery of an {@code IN} clause. IDs may be repeated if the query has
+	 * joins which match more than one row.
+	 *
+	 * @param idProperty The name of the ID property to select
+	 * @return A finalized {@link CriteriaQuery} selecting the IDs of the matching rows
+	 */
+	public CriteriaQuery<U> finalizeIdSubquery(String idProperty) {
+		return getCriteriaQuery().where(getPredicates().toArray(new Predicate[0])).select(getRoot().get(idProperty));
+	}
+	
 	/**
 	 * Finalizes a query that fetches full objects using a list of IDs obtained from a previous query.
 	 * This is the second part of the two-query approach used for non-distinct results, where the first
@@ -0,0 +1,93 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.DuplicationStrategy;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.event.spi.PostCommitDeleteEventListener;
+import org.hibernate.event.spi.PostCommitInsertEventListener;
+import org.hibernate.event.spi.PostCommitUpdateEventListener;
+
+/**
+ * Registers the Hibernate listeners used to keep the module's in-memory indexes and caches up to date
+ * with committed changes. <br/>
+ * Each listener class is registered once: the listener of a previous instance of the module, left
+ * behind when the module is restarted, is replaced by the listener of the same class rather than
+ * added to.
+ */
+public final class PostCommitListeners {
+	
+	private PostCommitListeners() {
+	}
+	
+	/**
+	 * Appends a listener for committed inserts, updates and deletes
+	 *
+	 * @param sessionFactory the session factory to listen to
+	 * @param listener the listener
+	 * @return true if the listener was registered, false if the session factory does not support
+	 *         listeners
+	 */
+	public static boolean register(SessionFactory sessionFactory, @Nonnull Listener listener) {
+		if (!(sessionFactory instanceof SessionFactoryImplementor)) {
+			return false;
+		}
+		
+		EventListenerRegistry registry = ((SessionFactoryImplementor) sessionFactory).getServiceRegistry()
+		        .getService(EventListenerRegistry.class);
+		registry.addDuplicationStrategy(ReplaceSameClass.INSTANCE);
+		registry.appendListeners(EventType.POST_COMMIT_INSERT, listener);
+		registry.appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+		registry.appendListeners(EventType.POST_COMMIT_DELETE, listener);
+		return true;
+	}
+	
+	/**
+	 * A listener for committed inserts, updates and deletes
+	 */
+	public interface Listener
+	        extends PostCommitInsertEventListener, PostCommitUpdateEventListener, PostCommitDeleteEventListener {
+	}
+	
+	/**
+	 * Replaces a listener with a listener of the same class. Classes are compared by name, since a
+	 * restarted module loads its classes again. Strategies are equal to each other for the same reason,
+	 * so that the registry only ever holds one of them.
+	 */
+	private static class ReplaceSameClass implements DuplicationStrategy {
+		
+		private static final ReplaceSameClass INSTANCE = new ReplaceSameClass();
+		
+		@Override
+		public boolean areMatch(Object listener, Object original) {
+			return listener.getClass().getName().equals(original.getClass().getName());
+		}
+		
+		@Override
+		public Action getAction() {
+			return Action.REPLACE_ORIGINAL;
+		}
+		
+		@Override
+		public boolean equals(Object other) {
+			return other != null && other.getClass().getName().equals(getClass().getName());
+		}
+		
+		@Override
+		public int hashCode() {
+			return getClass().getName().hashCode();
+		}
+	}
+}
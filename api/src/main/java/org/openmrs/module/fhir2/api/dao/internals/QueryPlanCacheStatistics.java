@@ -0,0 +1,68 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the hits and misses of Hibernate's query plan cache, which holds the SQL each query is
+ * compiled to, with the other metrics of the module, see {@link FhirMetrics}. Searches with the same
+ * {@link SearchShape} produce the same query, so after the first, they should be hits. <br/>
+ * Hibernate only counts hits and misses while its statistics are enabled, e.g., by setting
+ * {@code hibernate.generate_statistics} to true, so nothing is written while they are disabled.
+ */
+@Component
+public class QueryPlanCacheStatistics {
+	
+	private static final String STATISTICS_COMPONENT = "hibernate_query_plan_cache";
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = { @Autowired, @Qualifier("sessionFactory") })
+	private SessionFactory sessionFactory;
+	
+	@PostConstruct
+	public void registerStatistics() {
+		FhirMetrics.registerStatistics(STATISTICS_COMPONENT, this::getMetrics);
+	}
+	
+	@PreDestroy
+	public void unregisterStatistics() {
+		FhirMetrics.unregisterStatistics(STATISTICS_COMPONENT);
+	}
+	
+	/**
+	 * @return the hits and misses of the query plan cache, keyed by metric name, which is empty if
+	 *         Hibernate's statistics are disabled
+	 */
+	public Map<String, Number> getMetrics() {
+		Statistics statistics = sessionFactory.getStatistics();
+		if (!statistics.isStatisticsEnabled()) {
+			return Collections.emptyMap();
+		}
+		
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		metrics.put("fhir2_cache_hits_total", statistics.getQueryPlanCacheHitCount());
+		metrics.put("fhir2_cache_misses_total", statistics.getQueryPlanCacheMissCount());
+		return metrics;
+	}
+}
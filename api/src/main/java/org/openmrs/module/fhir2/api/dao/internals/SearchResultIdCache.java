@@ -0,0 +1,366 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.primitives.Ints;
+import lombok.AccessLevel;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Holds the ids of the results of recent searches, in the order they are returned, so that the same
+ * search run again, e.g., to fetch another page or by a dashboard polling for changes, does not have
+ * to run its query again. The total of the search is the number of ids. <br/>
+ * Searches are keyed by the DAO running them and their {@link SearchParameterMap}, ignoring the
+ * page requested. Ids are kept for the number of seconds set by
+ * {@link FhirConstants#OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_TTL}, which is 0, i.e., disabled, by
+ * default, and only for searches with no more results than
+ * {@link FhirConstants#OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_MAX_IDS}. <br/>
+ * A Hibernate listener drops the ids of every search for a type of object when an object of that type
+ * is committed. Changes to other objects a search depends on, e.g., to the name of the patient an
+ * observation is for, are only seen once the ids expire. Changes made directly in the database, or
+ * by another server sharing it, are not seen either.
+ */
+@Slf4j
+@Component
+public class SearchResultIdCache {
+	
+	private static final int DEFAULT_MAX_IDS = 10000;
+	
+	// caps the memory used by the cache at roughly 8MB
+	private static final long MAX_CACHED_IDS = 2_000_000L;
+	
+	// stands for a search with too many results to keep, so that the search is not run again to find that out
+	private static final int[] TOO_MANY_RESULTS = new int[0];
+
+	private static final String STATISTICS_COMPONENT = "search_result_id_cache";
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = { @Autowired, @Qualifier("sessionFactory") })
+	private SessionFactory sessionFactory;
+	
+	private boolean listening;
+	
+	private volatile Configuration configuration = new Configuration(0, null);
+	
+	// counts the changes seen to each type of object searched for, so that ids loaded while a change is
+	// committed are not kept
+	private final Map<Class<?>, AtomicLong> changeCounts = new ConcurrentHashMap<>();
+	
+	@PostConstruct
+	public void registerListener() {
+		if (!PostCommitListeners.register(sessionFactory, new ChangeListener(this))) {
+			log.warn("Cannot listen for changes, so search results will not be cached");
+			return;
+		}
+		
+		listening = true;
+	}
+	
+	@PostConstruct
+	public void registerStatistics() {
+		FhirMetrics.registerCacheStatistics(STATISTICS_COMPONENT, this::getStats);
+	}
+	
+	@PreDestroy
+	public void unregisterStatistics() {
+		FhirMetrics.unregisterStatistics(STATISTICS_COMPONENT);
+	}
+	
+	/**
+	 * Gets the ids of the results of a search, running the search if its ids are not held.
+	 *
+	 * @param daoClass the class of the DAO running the search
+	 * @param resultType the type of object searched for
+	 * @param theParams the parameters of the search, of which the page requested is ignored
+	 * @param loader called with the most ids which may be kept to get the ids of every result of the
+	 *            search, in order, returning {@code null} if there are more results than that
+	 * @return the ids of every result of the search or {@code null} if the cache is disabled or the
+	 *         search cannot be cached, e.g., because it has too many results
+	 */
+	public int[] getResultIds(@Nonnull Class<?> daoClass, @Nonnull Class<?> resultType,
+	        @Nonnull SearchParameterMap theParams, @Nonnull IntFunction<List<Integer>> loader) {
+		Configuration configuration = getConfiguration();
+		if (configuration.cache == null || theParams.getKeysetCursor() != null) {
+			return null;
+		}
+		
+		byte[] serializedParams = serialize(theParams.withoutPaging());
+		if (serializedParams == null) {
+			return null;
+		}
+		
+		SearchKey key = new SearchKey(daoClass.getName(), resultType, serializedParams);
+		int[] ids = configuration.cache.getIfPresent(key);
+		if (ids != null) {
+			return ids == TOO_MANY_RESULTS ? null : ids;
+		}
+		
+		AtomicLong changeCount = changeCounts.computeIfAbsent(resultType, k -> new AtomicLong());
+		long loadedAt = changeCount.get();
+		
+		List<Integer> loaded = loader.apply(getMaxIds());
+		if (loaded == null) {
+			// a search seldom drops below the limit, and one which has is still answered correctly without its ids,
+			// so searches with too many results are marked right away and the marks outlast changes until they expire
+			synchronized (this) {
+				configuration.cache.put(key, TOO_MANY_RESULTS);
+			}
+			
+			return null;
+		}
+		
+		int[] result = Ints.toArray(loaded);
+		Runnable keepIds = () -> {
+			synchronized (this) {
+				if (changeCount.get() == loadedAt) {
+					configuration.cache.put(key, result);
+				}
+			}
+		};
+		
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			// the results of a search in a transaction which is rolled back may include changes which never
+			// happened
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				
+				@Override
+				public void afterCommit() {
+					keepIds.run();
+				}
+			});
+		} else {
+			keepIds.run();
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @return the statistics for the cache, which are all zero if it is disabled
+	 */
+	public CacheStats getStats() {
+		Cache<SearchKey, int[]> cache = configuration.cache;
+		return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+	}
+	
+	/**
+	 * Drops the ids of every search for the given type of object, or a subtype or supertype of it. Searches
+	 * marked as having too many results stay marked.
+	 *
+	 * @param changedType the type of object changed
+	 */
+	public void invalidate(@Nonnull Class<?> changedType) {
+		boolean searchedFor = false;
+		for (Map.Entry<Class<?>, AtomicLong> changeCount : changeCounts.entrySet()) {
+			if (isRelated(changeCount.getKey(), changedType)) {
+				changeCount.getValue().incrementAndGet();
+				searchedFor = true;
+			}
+		}
+		
+		Cache<SearchKey, int[]> cache = configuration.cache;
+		if (searchedFor && cache != null && cache.size() > 0) {
+			synchronized (this) {
+				cache.asMap().entrySet().removeIf(
+				    entry -> entry.getValue() != TOO_MANY_RESULTS && isRelated(entry.getKey().resultType, changedType));
+			}
+		}
+	}
+	
+	public void invalidateAll() {
+		changeCounts.values().forEach(AtomicLong::incrementAndGet);
+		Cache<SearchKey, int[]> cache = configuration.cache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+	
+	private int getMaxIds() {
+		return globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_MAX_IDS, DEFAULT_MAX_IDS);
+	}
+	
+	private Configuration getConfiguration() {
+		int ttl = listening ? globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_TTL, 0) : 0;
+		
+		Configuration configuration = this.configuration;
+		if (configuration.ttl == ttl) {
+			return configuration;
+		}
+		
+		synchronized (this) {
+			if (this.configuration.ttl != ttl) {
+				log.debug("Configuring search result id cache with a time to live of {}s", ttl);
+				this.configuration = new Configuration(ttl, ttl > 0 ? buildCache(ttl) : null);
+			}
+			
+			return this.configuration;
+		}
+	}
+	
+	private static Cache<SearchKey, int[]> buildCache(int ttl) {
+		return CacheBuilder.newBuilder().expireAfterWrite(ttl, TimeUnit.SECONDS).maximumWeight(MAX_CACHED_IDS)
+		        .weigher((SearchKey key, int[] ids) -> ids.length + 1).recordStats().build();
+	}
+	
+	private static byte[] serialize(SearchParameterMap theParams) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(theParams);
+		}
+		catch (IOException e) {
+			log.debug("Cannot cache the results of a search whose parameters cannot be serialized", e);
+			return null;
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	private static boolean isRelated(Class<?> type, Class<?> otherType) {
+		return type.isAssignableFrom(otherType) || otherType.isAssignableFrom(type);
+	}
+	
+	@RequiredArgsConstructor
+	private static final class Configuration {
+		
+		private final int ttl;
+		
+		private final Cache<SearchKey, int[]> cache;
+	}
+	
+	/**
+	 * Identifies a search by the DAO running it, the type of object it is for and its serialized
+	 * parameters. HAPI's parameter types do not all implement {@code equals()}, so the parameters are
+	 * compared in their serialized form instead.
+	 */
+	private static final class SearchKey {
+		
+		private final String daoClassName;
+		
+		private final Class<?> resultType;
+		
+		private final byte[] params;
+		
+		private final int hashCode;
+		
+		private SearchKey(String daoClassName, Class<?> resultType, byte[] params) {
+			this.daoClassName = daoClassName;
+			this.resultType = resultType;
+			this.params = params;
+			this.hashCode = 31 * daoClassName.hashCode() + Arrays.hashCode(params);
+		}
+		
+		@Override
+		public boolean equals(Object o) {
+			if (this == o) {
+				return true;
+			}
+			
+			if (!(o instanceof SearchKey)) {
+				return false;
+			}
+			
+			SearchKey other = (SearchKey) o;
+			return hashCode == other.hashCode && daoClassName.equals(other.daoClassName)
+			        && resultType.equals(other.resultType) && Arrays.equals(params, other.params);
+		}
+		
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+	}
+	
+	/**
+	 * Passes committed changes to the cache. The listener only holds the cache it was created for, and
+	 * it is replaced by the listener of the next cache if the module is restarted.
+	 */
+	private static class ChangeListener implements PostCommitListeners.Listener {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final transient SearchResultIdCache cache;
+		
+		private ChangeListener(SearchResultIdCache cache) {
+			this.cache = cache;
+		}
+		
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			cache.invalidate(event.getPersister().getMappedClass());
+		}
+		
+		@Override
+		public void onPostUpdate(PostUpdateEvent event) {
+			cache.invalidate(event.getPersister().getMappedClass());
+		}
+		
+		@Override
+		public void onPostDelete(PostDeleteEvent event) {
+			cache.invalidate(event.getPersister().getMappedClass());
+		}
+		
+		@Override
+		public void onPostInsertCommitFailed(PostInsertEvent event) {
+		}
+		
+		@Override
+		public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+		}
+		
+		@Override
+		public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+		}
+		
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			// only changes to the types of object searched for matter
+			return !cache.changeCounts.isEmpty() && cache.changeCounts.keySet().stream()
+			        .anyMatch(type -> isRelated(type, persister.getMappedClass()));
+		}
+	}
+}
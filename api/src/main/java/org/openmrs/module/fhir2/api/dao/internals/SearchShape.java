@@ -0,0 +1,101 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import javax.annotation.Nonnull;
+
+import java.util.Map;
+
+import ca.uhn.fhir.model.api.IQueryParameterAnd;
+import ca.uhn.fhir.model.api.IQueryParameterOr;
+import ca.uhn.fhir.model.api.IQueryParameterType;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.BaseParamWithPrefix;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.apache.commons.lang3.StringUtils;
+import org.openmrs.module.fhir2.api.search.param.PropParam;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+
+/**
+ * Describes the shape of a search, i.e., the DAO running it, its parameters, modifiers, prefixes,
+ * number of values and sort order, leaving out the values searched for. <br/>
+ * Searches with the same shape produce the same query, with the values of the search bound to it,
+ * so they share a plan in Hibernate's query plan cache. The shape identifies a search in logs
+ * without including the values searched for.
+ */
+public final class SearchShape {
+	
+	private SearchShape() {
+	}
+	
+	/**
+	 * Describes the parts of a search which determine the query run for it, leaving out the values
+	 * searched for
+	 *
+	 * @param daoClass the class of the DAO running the search
+	 * @param theParams the parameters of the search
+	 * @return the shape of the search
+	 */
+	public static String of(@Nonnull Class<?> daoClass, @Nonnull SearchParameterMap theParams) {
+		StringBuilder shape = new StringBuilder(daoClass.getName());
+		theParams.getParameters().stream().sorted(Map.Entry.comparingByKey(String.CASE_INSENSITIVE_ORDER))
+		        .forEach(entry -> {
+			        shape.append('|').append(entry.getKey().toLowerCase());
+			        for (PropParam<?> propParam : entry.getValue()) {
+				        shape.append(':').append(StringUtils.defaultString(propParam.getPropertyName())).append('=');
+				        appendShape(shape, propParam.getParam());
+			        }
+		        });
+		
+		for (SortSpec sortSpec = theParams.getSortSpec(); sortSpec != null; sortSpec = sortSpec.getChain()) {
+			shape.append("|_sort:").append(sortSpec.getParamName()).append(' ').append(sortSpec.getOrder());
+		}
+		
+		return shape.toString();
+	}
+	
+	private static void appendShape(StringBuilder shape, Object param) {
+		if (param instanceof IQueryParameterAnd) {
+			shape.append("and(");
+			for (Object orParam : ((IQueryParameterAnd<?>) param).getValuesAsQueryTokens()) {
+				appendShape(shape, orParam);
+			}
+			shape.append(')');
+		} else if (param instanceof IQueryParameterOr) {
+			shape.append("or(");
+			for (Object value : ((IQueryParameterOr<?>) param).getValuesAsQueryTokens()) {
+				appendShape(shape, value);
+			}
+			shape.append(')');
+		} else if (param instanceof IQueryParameterType) {
+			IQueryParameterType value = (IQueryParameterType) param;
+			shape.append(param.getClass().getSimpleName())
+			        .append(StringUtils.defaultString(value.getQueryParameterQualifier()));
+			if (param instanceof BaseParamWithPrefix && ((BaseParamWithPrefix<?>) param).getPrefix() != null) {
+				shape.append(' ').append(((BaseParamWithPrefix<?>) param).getPrefix().getValue());
+			}
+			if (param instanceof TokenParam && StringUtils.isNotBlank(((TokenParam) param).getSystem())) {
+				shape.append(" system");
+			}
+			if (param instanceof ReferenceParam) {
+				ReferenceParam referenceParam = (ReferenceParam) param;
+				shape.append(' ').append(StringUtils.defaultString(referenceParam.getResourceType())).append('.')
+				        .append(StringUtils.defaultString(referenceParam.getChain()));
+			}
+			if (Boolean.TRUE.equals(value.getMissing())) {
+				shape.append(" missing");
+			}
+			shape.append(',');
+		} else if (param != null) {
+			shape.append(param.getClass().getSimpleName()).append(',');
+		}
+	}
+}
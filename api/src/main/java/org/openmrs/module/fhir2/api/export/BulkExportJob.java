@@ -0,0 +1,124 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.export;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The state of a single bulk data {@code $export} request. <br/>
+ * Jobs are updated by the thread running the export and read by the requests polling for its
+ * status, so all of the mutable state is safe to read from any thread.
+ */
+@Getter
+@RequiredArgsConstructor
+public class BulkExportJob {
+	
+	public enum Level {
+		SYSTEM,
+		PATIENT,
+		GROUP
+	}
+	
+	public enum Status {
+		ACCEPTED,
+		IN_PROGRESS,
+		COMPLETE,
+		ERROR,
+		CANCELLED
+	}
+	
+	private static final AtomicReferenceFieldUpdater<BulkExportJob, Status> STATUS = AtomicReferenceFieldUpdater
+	        .newUpdater(BulkExportJob.class, Status.class, "status");
+	
+	private final String id;
+	
+	private final Level level;
+	
+	private final String groupId;
+	
+	private final List<String> resourceTypes;
+	
+	private final Date since;
+	
+	private final String request;
+	
+	// the uuid of the user who started the export, who is the only user other than super users who may see it
+	private final String owner;
+	
+	// resources are exported as they were at, or after, this time
+	private final Date transactionTime;
+	
+	@Setter
+	private volatile Status status = Status.ACCEPTED;
+	
+	@Setter
+	private volatile String currentResourceType;
+	
+	@Setter
+	private volatile String error;
+	
+	@Setter
+	private volatile Date endTime;
+	
+	private final List<Output> outputs = new CopyOnWriteArrayList<>();
+	
+	private final List<Output> errors = new CopyOnWriteArrayList<>();
+	
+	public boolean isFinished() {
+		return isFinished(status);
+	}
+	
+	/**
+	 * Moves the job to the given status, but only if it is still in the expected status, so that the
+	 * thread running the export and a request cancelling it cannot overwrite each other's changes
+	 *
+	 * @param expected the status the job must be in
+	 * @param status the new status of the job
+	 * @return true if the status was changed, false if the job was no longer in the expected status
+	 */
+	public boolean compareAndSetStatus(Status expected, Status status) {
+		return STATUS.compareAndSet(this, expected, status);
+	}
+	
+	/**
+	 * Cancels the job, whatever its status
+	 *
+	 * @return the status the job was in before it was cancelled
+	 */
+	public Status cancel() {
+		return STATUS.getAndSet(this, Status.CANCELLED);
+	}
+	
+	public static boolean isFinished(Status status) {
+		return status == Status.COMPLETE || status == Status.ERROR || status == Status.CANCELLED;
+	}
+	
+	/**
+	 * A file written by the export
+	 */
+	@Getter
+	@AllArgsConstructor
+	public static class Output {
+		
+		private final String type;
+		
+		private final String fileName;
+		
+		private final long count;
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.export;
+
+import javax.annotation.Nonnull;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import lombok.Getter;
+
+/**
+ * Writes newline delimited JSON to a file through a {@link FileChannel}. Lines are collected in a
+ * direct buffer which is only written to the channel once it is full, so writing many small
+ * resources costs few system calls.
+ */
+public class NdjsonFileWriter implements Closeable {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private static final byte NEWLINE = '\n';
+	
+	private final FileChannel channel;
+	
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	
+	@Getter
+	private long count = 0;
+	
+	public NdjsonFileWriter(@Nonnull Path path) throws IOException {
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+		    StandardOpenOption.TRUNCATE_EXISTING);
+	}
+	
+	/**
+	 * Writes a single line
+	 *
+	 * @param json the JSON to write, which must not contain any line breaks
+	 */
+	public void write(@Nonnull String json) throws IOException {
+		byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length + 1 > buffer.remaining()) {
+			flush();
+		}
+		
+		if (bytes.length + 1 > buffer.capacity()) {
+			// too large to buffer, so written straight to the channel
+			writeFully(ByteBuffer.wrap(bytes));
+		} else {
+			buffer.put(bytes);
+		}
+		
+		buffer.put(NEWLINE);
+		count++;
+	}
+	
+	public void flush() throws IOException {
+		buffer.flip();
+		writeFully(buffer);
+		buffer.clear();
+	}
+	
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		}
+		finally {
+			channel.close();
+		}
+	}
+	
+	private void writeFully(ByteBuffer bytes) throws IOException {
+		while (bytes.hasRemaining()) {
+			channel.write(bytes);
+		}
+	}
+}
@@ -38,10 +38,13 @@ import org.openmrs.api.ValidationException;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.FhirService;
 import org.openmrs.module.fhir2.api.dao.FhirDao;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
 import org.openmrs.module.fhir2.api.translators.OpenmrsFhirTranslator;
 import org.openmrs.module.fhir2.api.translators.UpdatableOpenmrsTranslator;
+import org.openmrs.module.fhir2.api.translators.impl.FhirTranslatorUtils;
 import org.openmrs.module.fhir2.api.util.FhirUtils;
 import org.openmrs.module.fhir2.api.util.JsonPatchUtils;
+import org.openmrs.module.fhir2.api.util.TranslatedResourceCache;
 import org.openmrs.module.fhir2.api.util.XmlPatchUtils;
 import org.openmrs.validator.ValidateUtil;
 import org.slf4j.Logger;
@@ -62,6 +65,10 @@ public abstract class BaseFhirService<T extends IAnyResource, U extends OpenmrsO
 	@Setter(value = PROTECTED, onMethod_ = @__({ @Autowired, @Qualifier("fhirR4") }))
 	private FhirContext fhirContext;
 	
+	@Getter(PROTECTED)
+	@Setter(value = PROTECTED, onMethod_ = @Autowired)
+	private TranslatedResourceCache translatedResourceCache;
+	
 	protected BaseFhirService() {
 		// @formatter:off
 		TypeToken<T> resourceTypeToken = new TypeToken<T>(getClass()) {};
@@ -78,7 +85,20 @@ public abstract class BaseFhirService<T extends IAnyResource, U extends OpenmrsO
 			throw new InvalidRequestException("Uuid cannot be null.");
 		}
 		
-		U openmrsObj = getDao().get(uuid);
+		boolean useCache = isVersionLookupSupported() && translatedResourceCache != null
+		        && translatedResourceCache.isEnabled();
+		if (useCache) {
+			String versionId = getDao().getVersionId(uuid);
+			T cached = versionId == null ? null : translatedResourceCache.get(resourceClass, uuid, versionId);
+			if (cached != null) {
+				return cached;
+			}
+		}
+		
+		U openmrsObj;
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.QUERY)) {
+			openmrsObj = getDao().get(uuid);
+		}
 		
 		if (openmrsObj == null) {
 			throw resourceNotFound(uuid);
@@ -87,13 +107,36 @@ public abstract class BaseFhirService<T extends IAnyResource, U extends OpenmrsO
 			        "Resource of type " + resourceClass.getSimpleName() + " with ID " + uuid + " is gone/deleted");
 		}
 		
-		return getTranslator().toFhirResource(openmrsObj);
+		T result;
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.TRANSLATE)) {
+			result = getTranslator().toFhirResource(openmrsObj);
+		}
+		
+		String versionId = useCache ? FhirTranslatorUtils.getVersionId(openmrsObj) : null;
+		if (versionId != null) {
+			translatedResourceCache.put(resourceClass, uuid, versionId, result);
+		}
+		
+		return result;
+	}
+	
+	@Override
+	public String getVersionId(@Nonnull String uuid) {
+		return isVersionLookupSupported() ? getDao().getVersionId(uuid) : null;
 	}
 	
 	@Override
 	public List<T> get(@Nonnull Collection<String> uuids) {
+		List<U> openmrsObjs;
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.QUERY)) {
+			openmrsObjs = getDao().get(uuids);
+		}
+		FhirMetrics.recordRows(FhirMetrics.QUERY, openmrsObjs.size());
+		
 		OpenmrsFhirTranslator<U, T> translator = getTranslator();
-		return getDao().get(uuids).stream().map(translator::toFhirResource).collect(Collectors.toList());
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.TRANSLATE)) {
+			return openmrsObjs.stream().map(translator::toFhirResource).collect(Collectors.toList());
+		}
 	}
 	
 	@Override
@@ -235,6 +278,18 @@ public abstract class BaseFhirService<T extends IAnyResource, U extends OpenmrsO
 	 */
 	protected abstract OpenmrsFhirTranslator<U, T> getTranslator();
 	
+	/**
+	 * Overridden by subclasses whose resources carry the version id of the OpenMRS object they were
+	 * translated from, and whose DAO authorizes {@link FhirDao#getVersionId(String)} in the same way as
+	 * {@link FhirDao#get(String)}. Only these resources are served from the
+	 * {@link TranslatedResourceCache} or have their version looked up by {@link #getVersionId(String)}.
+	 *
+	 * @return true if the version of an object can be looked up without loading it, false otherwise
+	 */
+	protected boolean isVersionLookupSupported() {
+		return false;
+	}
+	
 	/**
 	 * Determines whether the object is voided
 	 *
@@ -0,0 +1,631 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.parser.IParser;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.HasAndListParam;
+import ca.uhn.fhir.rest.param.HasOrListParam;
+import ca.uhn.fhir.rest.param.HasParam;
+import ca.uhn.fhir.rest.param.ReferenceAndListParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.OperationOutcome;
+import org.openmrs.Auditable;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.User;
+import org.openmrs.api.APIAuthenticationException;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.fhir2.FhirActivator;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirBulkExportService;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirAllergyIntoleranceDao;
+import org.openmrs.module.fhir2.api.dao.FhirConditionDao;
+import org.openmrs.module.fhir2.api.dao.FhirDao;
+import org.openmrs.module.fhir2.api.dao.FhirDiagnosticReportDao;
+import org.openmrs.module.fhir2.api.dao.FhirEncounterDao;
+import org.openmrs.module.fhir2.api.dao.FhirGroupDao;
+import org.openmrs.module.fhir2.api.dao.FhirLocationDao;
+import org.openmrs.module.fhir2.api.dao.FhirMedicationDao;
+import org.openmrs.module.fhir2.api.dao.FhirMedicationRequestDao;
+import org.openmrs.module.fhir2.api.dao.FhirObservationDao;
+import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
+import org.openmrs.module.fhir2.api.dao.FhirPractitionerDao;
+import org.openmrs.module.fhir2.api.dao.FhirServiceRequestDao;
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
+import org.openmrs.module.fhir2.api.export.NdjsonFileWriter;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.translators.AllergyIntoleranceTranslator;
+import org.openmrs.module.fhir2.api.translators.ConditionTranslator;
+import org.openmrs.module.fhir2.api.translators.DiagnosticReportTranslator;
+import org.openmrs.module.fhir2.api.translators.EncounterTranslator;
+import org.openmrs.module.fhir2.api.translators.LocationTranslator;
+import org.openmrs.module.fhir2.api.translators.MedicationRequestTranslator;
+import org.openmrs.module.fhir2.api.translators.MedicationTranslator;
+import org.openmrs.module.fhir2.api.translators.ObservationTranslator;
+import org.openmrs.module.fhir2.api.translators.PatientTranslator;
+import org.openmrs.module.fhir2.api.translators.PractitionerTranslator;
+import org.openmrs.module.fhir2.api.translators.ServiceRequestTranslator;
+import org.openmrs.module.fhir2.api.translators.ToFhirTranslator;
+import org.openmrs.module.fhir2.api.util.FhirUtils;
+import org.openmrs.util.OpenmrsUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Runs bulk data exports one at a time on a background thread. <br/>
+ * Each resource type is read through {@link FhirDao#streamSearchResults(SearchParameterMap, Consumer)}
+ * and translated and written to its own NDJSON file as it is read, so an export uses the same
+ * amount of memory however many resources it writes. Resources which cannot be translated are
+ * skipped and reported as {@link OperationOutcome}s in a separate error file. <br/>
+ * Each export runs as the user who started it, and only that user, or a super user, may poll,
+ * download or cancel it. <br/>
+ * Jobs are held in memory, so exports do not survive a restart. The files of finished exports are
+ * deleted once they are older than {@link FhirConstants#OPENMRS_FHIR_EXPORT_TIME_TO_LIVE}.
+ */
+@Slf4j
+@Component
+public class FhirBulkExportServiceImpl implements FhirBulkExportService {
+	
+	private static final String EXPORT_DIRECTORY = "fhir2" + File.separator + "export";
+	
+	private static final String NDJSON_EXTENSION = ".ndjson";
+	
+	private static final String OPERATION_OUTCOME = "OperationOutcome";
+	
+	static final String EXPORT_FAILED_MESSAGE = "The export failed, see the server log for details";
+	
+	// keeps the IN-lists used to find the resources of group members well below the limits of the supported databases
+	private static final int PATIENT_BATCH_SIZE = 500;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = { @Autowired, @Qualifier("fhirR4") })
+	private FhirContext fhirContext;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGroupDao groupDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirPatientDao patientDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private PatientTranslator patientTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirEncounterDao encounterDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private EncounterTranslator<org.openmrs.Encounter> encounterTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirObservationDao observationDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private ObservationTranslator observationTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirConditionDao conditionDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private ConditionTranslator<org.openmrs.Condition> conditionTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirAllergyIntoleranceDao allergyIntoleranceDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private AllergyIntoleranceTranslator allergyIntoleranceTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirMedicationRequestDao medicationRequestDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private MedicationRequestTranslator medicationRequestTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirDiagnosticReportDao diagnosticReportDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private DiagnosticReportTranslator diagnosticReportTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirServiceRequestDao<org.openmrs.TestOrder> serviceRequestDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private ServiceRequestTranslator<org.openmrs.TestOrder> serviceRequestTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirPractitionerDao practitionerDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private PractitionerTranslator<org.openmrs.Provider> practitionerTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirLocationDao locationDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private LocationTranslator locationTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirMedicationDao medicationDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private MedicationTranslator medicationTranslator;
+	
+	private final Map<String, BulkExportJob> jobs = new ConcurrentHashMap<>();
+	
+	private volatile Map<String, ExportedType<?>> exportedTypes;
+	
+	private volatile ExecutorService executor;
+	
+	@Override
+	public BulkExportJob startExport(@Nonnull BulkExportJob.Level level, @Nullable String groupId,
+	        @Nullable Collection<String> resourceTypes, @Nullable Date since, @Nullable String request) {
+		purgeExpiredJobs();
+		
+		Set<String> supportedTypes = getSupportedResourceTypes(level);
+		List<String> types;
+		if (resourceTypes == null || resourceTypes.isEmpty()) {
+			types = new ArrayList<>(supportedTypes);
+		} else {
+			types = resourceTypes.stream().distinct().collect(Collectors.toList());
+			for (String type : types) {
+				if (!supportedTypes.contains(type)) {
+					throw new InvalidRequestException("Resources of type " + type + " cannot be exported");
+				}
+			}
+		}
+		
+		if (level == BulkExportJob.Level.GROUP && (groupId == null || groupDao.get(groupId) == null)) {
+			throw new ResourceNotFoundException("Could not find group with the id " + groupId);
+		}
+		
+		User user = Context.getAuthenticatedUser();
+		if (user == null) {
+			throw new APIAuthenticationException("Only authenticated users may start an export");
+		}
+		
+		BulkExportJob job = new BulkExportJob(FhirUtils.newUuid(), level, groupId, Collections.unmodifiableList(types),
+		        since, request, user.getUuid(), new Date());
+		jobs.put(job.getId(), job);
+		
+		// only the user is handed to the export, as the user context belongs to the session of the request
+		String systemId = user.getSystemId();
+		getExecutor().execute(() -> {
+			try {
+				runAs(systemId, () -> runJob(job));
+			}
+			catch (RuntimeException e) {
+				log.error("Could not run export {}", job.getId(), e);
+				if (fail(job, BulkExportJob.Status.ACCEPTED) || fail(job, BulkExportJob.Status.IN_PROGRESS)) {
+					job.setEndTime(new Date());
+				}
+			}
+		});
+		
+		return job;
+	}
+	
+	@Override
+	public BulkExportJob getJob(@Nonnull String jobId) {
+		purgeExpiredJobs();
+		
+		BulkExportJob job = jobs.get(jobId);
+		if (job == null || job.getStatus() == BulkExportJob.Status.CANCELLED) {
+			throw new ResourceNotFoundException("Could not find export with the id " + jobId);
+		}
+		
+		User user = Context.getAuthenticatedUser();
+		if (user == null || !(user.isSuperUser() || job.getOwner().equals(user.getUuid()))) {
+			throw new ForbiddenOperationException("Only the user who started export " + jobId + " may access it");
+		}
+		
+		return job;
+	}
+	
+	@Override
+	public void deleteJob(@Nonnull String jobId) {
+		BulkExportJob job = getJob(jobId);
+		
+		BulkExportJob.Status previous = job.cancel();
+		jobs.remove(jobId);
+		
+		// a running export deletes its own files once it notices it has been cancelled, as it can no longer
+		// complete, so the files only need to be deleted here if the export had already finished
+		if (BulkExportJob.isFinished(previous)) {
+			deleteJobDirectory(job);
+		}
+	}
+	
+	@Override
+	public Path getOutputFile(@Nonnull String jobId, @Nonnull String fileName) {
+		BulkExportJob job = getJob(jobId);
+		
+		// only files the export has listed can be fetched, so the file name cannot be used to reach other files
+		boolean listed = job.getStatus() == BulkExportJob.Status.COMPLETE
+		        && Stream.concat(job.getOutputs().stream(), job.getErrors().stream())
+		                .anyMatch(output -> output.getFileName().equals(fileName));
+		Path file = getJobDirectory(job).resolve(fileName);
+		if (!listed || !Files.isRegularFile(file)) {
+			throw new ResourceNotFoundException("Could not find the file " + fileName + " for export " + jobId);
+		}
+		
+		return file;
+	}
+	
+	@Override
+	public Set<String> getSupportedResourceTypes(@Nonnull BulkExportJob.Level level) {
+		return getExportedTypes().values().stream()
+		        .filter(type -> level == BulkExportJob.Level.SYSTEM || type.inPatientCompartment)
+		        .map(type -> type.name).collect(Collectors.toCollection(LinkedHashSet::new));
+	}
+	
+	@PreDestroy
+	public void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+	
+	/**
+	 * Runs an export as the user who started it. The export does not share the user context of the
+	 * request which started it, as that ends with the request's session. Instead, the export runs on a
+	 * daemon thread which takes on the identity of the user, so that the export can only read what the
+	 * user may read.
+	 *
+	 * @param systemId the system id of the user who started the export
+	 * @param task the export to run
+	 */
+	protected void runAs(@Nonnull String systemId, @Nonnull Runnable task) {
+		DaemonToken daemonToken = FhirActivator.getDaemonToken();
+		if (daemonToken == null) {
+			throw new IllegalStateException("Exports cannot be run until the FHIR2 module has started");
+		}
+		
+		Daemon.runInDaemonThreadAndWait(() -> {
+			Context.becomeUser(systemId);
+			task.run();
+		}, daemonToken);
+	}
+	
+	protected void runJob(BulkExportJob job) {
+		if (!job.compareAndSetStatus(BulkExportJob.Status.ACCEPTED, BulkExportJob.Status.IN_PROGRESS)) {
+			return;
+		}
+		
+		try (ExportContext exportContext = new ExportContext(job, Files.createDirectories(getJobDirectory(job)))) {
+			List<String> patientUuids = null;
+			if (job.getLevel() == BulkExportJob.Level.GROUP) {
+				patientUuids = getGroupMemberUuids(job.getGroupId());
+			}
+			
+			for (String type : job.getResourceTypes()) {
+				job.setCurrentResourceType(type);
+				exportResourceType(exportContext, getExportedTypes().get(type), patientUuids);
+			}
+			
+			exportContext.closeErrors();
+			job.setCurrentResourceType(null);
+			// a job cancelled after its last resource was exported stays cancelled, so that its files are deleted
+			job.compareAndSetStatus(BulkExportJob.Status.IN_PROGRESS, BulkExportJob.Status.COMPLETE);
+		}
+		catch (CancellationException e) {
+			log.debug("Export {} was cancelled", job.getId());
+		}
+		catch (Exception e) {
+			log.error("Export {} failed", job.getId(), e);
+			fail(job, BulkExportJob.Status.IN_PROGRESS);
+		}
+		finally {
+			job.setEndTime(new Date());
+			if (job.getStatus() == BulkExportJob.Status.CANCELLED) {
+				deleteJobDirectory(job);
+			}
+		}
+	}
+	
+	/**
+	 * Marks a job as failed unless it has since moved on from the expected status. Only a generic error
+	 * is recorded on the job, as the job is shown to the user, while the cause is logged.
+	 */
+	private boolean fail(BulkExportJob job, BulkExportJob.Status expected) {
+		job.setError(EXPORT_FAILED_MESSAGE);
+		return job.compareAndSetStatus(expected, BulkExportJob.Status.ERROR);
+	}
+	
+	private <T extends OpenmrsObject & Auditable> void exportResourceType(ExportContext exportContext,
+	        ExportedType<T> type, List<String> patientUuids) throws IOException {
+		BulkExportJob job = exportContext.job;
+		String fileName = type.name + NDJSON_EXTENSION;
+		Path file = exportContext.directory.resolve(fileName);
+		
+		long count;
+		try (NdjsonFileWriter writer = new NdjsonFileWriter(file)) {
+			Consumer<T> consumer = object -> {
+				if (job.getStatus() == BulkExportJob.Status.CANCELLED) {
+					throw new CancellationException();
+				}
+				
+				String json;
+				try {
+					json = exportContext.parser.encodeResourceToString(type.translator.toFhirResource(object));
+				}
+				catch (RuntimeException e) {
+					log.warn("Could not export {} {}", type.name, object.getUuid(), e);
+					exportContext.writeError(type.name + "/" + object.getUuid() + " could not be exported");
+					return;
+				}
+				
+				try {
+					writer.write(json);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			};
+			
+			if (patientUuids == null) {
+				type.dao.streamSearchResults(getSearchParams(job, type, null), consumer);
+			} else {
+				for (int i = 0; i < patientUuids.size(); i += PATIENT_BATCH_SIZE) {
+					List<String> batch = patientUuids.subList(i, Math.min(i + PATIENT_BATCH_SIZE, patientUuids.size()));
+					type.dao.streamSearchResults(getSearchParams(job, type, batch), consumer);
+				}
+			}
+			
+			count = writer.getCount();
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		
+		if (count > 0) {
+			job.getOutputs().add(new BulkExportJob.Output(type.name, fileName, count));
+		} else {
+			Files.deleteIfExists(file);
+		}
+	}
+	
+	private SearchParameterMap getSearchParams(BulkExportJob job, ExportedType<?> type, List<String> patientUuids) {
+		SearchParameterMap theParams = new SearchParameterMap();
+		
+		if (job.getSince() != null) {
+			theParams.addParameter(FhirConstants.COMMON_SEARCH_HANDLER, FhirConstants.LAST_UPDATED_PROPERTY,
+			    new DateRangeParam(job.getSince(), null));
+		}
+		
+		if (patientUuids != null) {
+			if (FhirConstants.PATIENT.equals(type.name)) {
+				TokenOrListParam ids = new TokenOrListParam();
+				patientUuids.forEach(uuid -> ids.addOr(new TokenParam(uuid)));
+				theParams.addParameter(FhirConstants.COMMON_SEARCH_HANDLER, FhirConstants.ID_PROPERTY,
+				    new TokenAndListParam().addAnd(ids));
+			} else {
+				ReferenceOrListParam patients = new ReferenceOrListParam();
+				patientUuids.forEach(uuid -> patients.addOr(new ReferenceParam(uuid)));
+				theParams.addParameter(FhirConstants.PATIENT_REFERENCE_SEARCH_HANDLER,
+				    new ReferenceAndListParam().addAnd(patients));
+			}
+		}
+		
+		return theParams;
+	}
+	
+	private List<String> getGroupMemberUuids(String groupId) {
+		HasAndListParam groupParam = new HasAndListParam().addAnd(new HasOrListParam()
+		        .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", groupId)));
+		return patientDao.getSearchResultUuids(
+		    new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam));
+	}
+	
+	private Map<String, ExportedType<?>> getExportedTypes() {
+		if (exportedTypes == null) {
+			Map<String, ExportedType<?>> types = new LinkedHashMap<>();
+			// resources in the patient compartment
+			addExportedType(types, FhirConstants.PATIENT, patientDao, patientTranslator, true);
+			addExportedType(types, FhirConstants.ENCOUNTER, encounterDao, encounterTranslator, true);
+			addExportedType(types, FhirConstants.OBSERVATION, observationDao, observationTranslator, true);
+			addExportedType(types, FhirConstants.CONDITION, conditionDao, conditionTranslator, true);
+			addExportedType(types, FhirConstants.ALLERGY_INTOLERANCE, allergyIntoleranceDao,
+			    allergyIntoleranceTranslator, true);
+			addExportedType(types, FhirConstants.MEDICATION_REQUEST, medicationRequestDao, medicationRequestTranslator,
+			    true);
+			addExportedType(types, FhirConstants.DIAGNOSTIC_REPORT, diagnosticReportDao, diagnosticReportTranslator,
+			    true);
+			addExportedType(types, FhirConstants.SERVICE_REQUEST, serviceRequestDao, serviceRequestTranslator, true);
+			// resources only exported at the system level
+			addExportedType(types, FhirConstants.PRACTITIONER, practitionerDao, practitionerTranslator, false);
+			addExportedType(types, FhirConstants.LOCATION, locationDao, locationTranslator, false);
+			addExportedType(types, FhirConstants.MEDICATION, medicationDao, medicationTranslator, false);
+			exportedTypes = types;
+		}
+		
+		return exportedTypes;
+	}
+	
+	private static <T extends OpenmrsObject & Auditable> void addExportedType(Map<String, ExportedType<?>> types,
+	        String name, FhirDao<T> dao, ToFhirTranslator<T, ? extends IBaseResource> translator,
+	        boolean inPatientCompartment) {
+		types.put(name, new ExportedType<>(name, dao, translator, inPatientCompartment));
+	}
+	
+	private void purgeExpiredJobs() {
+		long expiredBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(
+		    globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_EXPORT_TIME_TO_LIVE, 86400));
+		
+		Iterator<BulkExportJob> iterator = jobs.values().iterator();
+		while (iterator.hasNext()) {
+			BulkExportJob job = iterator.next();
+			if (job.isFinished() && job.getEndTime() != null && job.getEndTime().getTime() < expiredBefore) {
+				iterator.remove();
+				deleteJobDirectory(job);
+			}
+		}
+	}
+	
+	/**
+	 * @return the directory holding the files of every export
+	 */
+	protected Path getExportDirectory() {
+		return OpenmrsUtil.getDirectoryInApplicationDataDirectory(EXPORT_DIRECTORY).toPath();
+	}
+	
+	private Path getJobDirectory(BulkExportJob job) {
+		return getExportDirectory().resolve(job.getId());
+	}
+	
+	private void deleteJobDirectory(BulkExportJob job) {
+		Path directory = getJobDirectory(job);
+		if (!Files.exists(directory)) {
+			return;
+		}
+		
+		try (Stream<Path> paths = Files.walk(directory)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(path -> {
+				try {
+					Files.delete(path);
+				}
+				catch (IOException e) {
+					log.warn("Could not delete {}", path, e);
+				}
+			});
+		}
+		catch (IOException e) {
+			log.warn("Could not delete the files of export {}", job.getId(), e);
+		}
+	}
+	
+	private ExecutorService getExecutor() {
+		if (executor == null) {
+			synchronized (this) {
+				if (executor == null) {
+					executor = Executors.newSingleThreadExecutor(runnable -> {
+						Thread thread = new Thread(runnable, "fhir2-export");
+						thread.setDaemon(true);
+						return thread;
+					});
+				}
+			}
+		}
+		
+		return executor;
+	}
+	
+	@AllArgsConstructor
+	private static class ExportedType<T extends OpenmrsObject & Auditable> {
+		
+		private final String name;
+		
+		private final FhirDao<T> dao;
+		
+		private final ToFhirTranslator<T, ? extends IBaseResource> translator;
+		
+		private final boolean inPatientCompartment;
+	}
+	
+	/**
+	 * Holds what is shared while exporting each resource type of a job, including the error file,
+	 * which is only created if a resource fails to export
+	 */
+	private class ExportContext implements AutoCloseable {
+		
+		private final BulkExportJob job;
+		
+		private final Path directory;
+		
+		private final IParser parser = fhirContext.newJsonParser();
+		
+		private NdjsonFileWriter errorWriter;
+		
+		ExportContext(BulkExportJob job, Path directory) {
+			this.job = job;
+			this.directory = directory;
+		}
+		
+		void writeError(String message) {
+			OperationOutcome outcome = new OperationOutcome();
+			outcome.addIssue().setSeverity(OperationOutcome.IssueSeverity.ERROR)
+			        .setCode(OperationOutcome.IssueType.PROCESSING).setDiagnostics(message);
+			
+			try {
+				if (errorWriter == null) {
+					errorWriter = new NdjsonFileWriter(directory.resolve(OPERATION_OUTCOME + NDJSON_EXTENSION));
+				}
+				
+				errorWriter.write(parser.encodeResourceToString(outcome));
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		
+		void closeErrors() throws IOException {
+			if (errorWriter != null) {
+				errorWriter.close();
+				job.getErrors().add(new BulkExportJob.Output(OPERATION_OUTCOME, OPERATION_OUTCOME + NDJSON_EXTENSION,
+				        errorWriter.getCount()));
+				errorWriter = null;
+			}
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if (errorWriter != null) {
+				errorWriter.close();
+			}
+		}
+	}
+}
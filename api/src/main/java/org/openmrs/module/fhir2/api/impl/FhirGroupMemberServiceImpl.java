@@ -12,14 +12,30 @@ package org.openmrs.module.fhir2.api.impl;
 import javax.annotation.Nonnull;
 
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.AccessLevel;
+import lombok.Setter;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
 import org.openmrs.module.fhir2.api.FhirGroupMemberService;
+import org.openmrs.module.fhir2.api.dao.FhirGroupDao;
+import org.openmrs.module.fhir2.api.search.GroupMembersBundleProvider;
+import org.openmrs.module.fhir2.api.translators.GroupMemberTranslator;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
 @Component
 public class FhirGroupMemberServiceImpl implements FhirGroupMemberService {
 	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGroupDao groupDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private GroupMemberTranslator groupMemberTranslator;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
 	@Override
 	public IBundleProvider getGroupMembers(@Nonnull String groupUuid) {
-		throw new UnsupportedOperationException("Not supported in this openmrs platform version");
+		return new GroupMembersBundleProvider(groupUuid, groupDao, groupMemberTranslator, globalPropertyService);
 	}
 }
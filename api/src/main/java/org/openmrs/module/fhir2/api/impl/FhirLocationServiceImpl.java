@@ -58,4 +58,9 @@ public class FhirLocationServiceImpl extends BaseFhirService<Location, org.openm
 	public IBundleProvider searchForLocations(LocationSearchParams locationSearchParams) {
 		return searchQuery.getQueryResults(locationSearchParams.toSearchParameterMap(), dao, translator, searchQueryInclude);
 	}
+	
+	@Override
+	protected boolean isVersionLookupSupported() {
+		return true;
+	}
 }
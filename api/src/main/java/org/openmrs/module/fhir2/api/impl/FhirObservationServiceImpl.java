@@ -78,6 +78,17 @@ public class FhirObservationServiceImpl extends BaseFhirService<Observation, org
 		return searchQuery.getQueryResults(theParams, dao, translator, searchQueryInclude);
 	}
 	
+	@Override
+	public IBundleProvider getLastnPatientsObservations(NumberParam max, ObservationSearchParams observationSearchParams) {
+		
+		SearchParameterMap theParams = observationSearchParams.toSearchParameterMap()
+		        .addParameter(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER, new StringParam())
+		        .addParameter(FhirConstants.LASTN_PATIENTS_SEARCH_HANDLER, new StringParam())
+		        .addParameter(FhirConstants.MAX_SEARCH_HANDLER, Optional.ofNullable(max).orElse(new NumberParam(1)));
+		
+		return searchQuery.getQueryResults(theParams, dao, translator, searchQueryInclude);
+	}
+	
 	@Override
 	@SuppressWarnings("unchecked")
 	protected Observation applyUpdate(org.openmrs.Obs existingObject, Observation updatedResource) {
@@ -127,4 +127,9 @@ public class FhirPatientServiceImpl extends BaseFhirService<Patient, org.openmrs
 		
 		theParams.addParameter(FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER, revIncludes);
 	}
+	
+	@Override
+	protected boolean isVersionLookupSupported() {
+		return true;
+	}
 }
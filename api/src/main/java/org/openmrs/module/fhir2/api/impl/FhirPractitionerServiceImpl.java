@@ -109,4 +109,9 @@ public class FhirPractitionerServiceImpl extends BaseFhirService<Practitioner, P
 		
 		return providerBundle;
 	}
+	
+	@Override
+	protected boolean isVersionLookupSupported() {
+		return true;
+	}
 }
@@ -0,0 +1,412 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.metrics;
+
+import javax.annotation.Nonnull;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import com.google.common.cache.CacheStats;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Collects the time spent in each stage of handling FHIR requests, and the number of rows each stage
+ * handled, tagged by the resource type and operation of the request. <br/>
+ * The REST layer tags each request with {@link #startRequest(String, String)} and
+ * {@link #endRequest()}, while the stages themselves are timed where they run, with
+ * {@link #startTimer(String)}. Work done outside of a request is tagged with {@value #NONE}. Times
+ * are kept in a {@link LatencyHistogram} for each stage, resource type and operation, and can be
+ * written out in the Prometheus text format with {@link #writePrometheus(Writer)}. A request may also
+ * add up the time it spends in each stage, see {@link #accumulateRequestTimes()}. Components which keep
+ * statistics of their own, such as caches, can have them written out with the other metrics, see
+ * {@link #registerStatistics(String, Supplier)}. <br/>
+ * The metrics are held statically, like the other request-scoped state of the module, so that they
+ * can be recorded by objects which are not Spring beans, such as bundle providers.
+ */
+@Slf4j
+public final class FhirMetrics {
+	
+	/**
+	 * Running the resource provider method and building the response, which includes the other stages
+	 * except {@link #ENCODE}
+	 */
+	public static final String PROVIDER = "provider";
+	
+	/**
+	 * Fetching the OpenMRS objects for a read or a page of search results
+	 */
+	public static final String QUERY = "query";
+	
+	/**
+	 * Counting the results of a search
+	 */
+	public static final String COUNT = "count";
+	
+	/**
+	 * Translating OpenMRS objects to FHIR resources
+	 */
+	public static final String TRANSLATE = "translate";
+	
+	/**
+	 * Resolving an {@code _include}
+	 */
+	public static final String INCLUDE = "include";
+	
+	/**
+	 * Resolving a {@code _revinclude}
+	 */
+	public static final String REVINCLUDE = "revinclude";
+	
+	/**
+	 * Serializing the response
+	 */
+	public static final String ENCODE = "encode";
+	
+	public static final String NONE = "none";
+	
+	private static final List<String> STAGES = Arrays.asList(PROVIDER, QUERY, COUNT, TRANSLATE, INCLUDE, REVINCLUDE,
+	    ENCODE);
+	
+	private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+	
+	private static final Comparator<Key> KEY_ORDER = Comparator.comparing(Key::getResourceType)
+	        .thenComparing(Key::getOperation).thenComparing(Key::getStage);
+	
+	private static final RequestTags NO_REQUEST = new RequestTags(NONE, NONE, null);
+	
+	private static final ThreadLocal<RequestTags> REQUEST_TAGS = new ThreadLocal<>();
+	
+	private static final ConcurrentMap<Key, LatencyHistogram> TIMES = new ConcurrentHashMap<>();
+	
+	private static final ConcurrentMap<Key, LongAdder> ROWS = new ConcurrentHashMap<>();
+	
+	private static final Map<String, Supplier<Map<String, ? extends Number>>> STATISTICS = new ConcurrentHashMap<>();
+	
+	private FhirMetrics() {
+	}
+	
+	/**
+	 * Tags everything recorded by the current thread until {@link #endRequest()} is called
+	 *
+	 * @param resourceType the resource type of the request
+	 * @param operation the operation of the request, e.g., {@code search-type}
+	 */
+	public static void startRequest(String resourceType, String operation) {
+		REQUEST_TAGS.set(
+		    new RequestTags(resourceType == null ? NONE : resourceType, operation == null ? NONE : operation, null));
+	}
+	
+	/**
+	 * Adds up the time the request the current thread is handling spends in each stage, from now until
+	 * {@link #endRequest()} is called, so that it can be read with {@link #getRequestTime(String)}.
+	 * Requests which do not call this keep no times of their own.
+	 */
+	public static void accumulateRequestTimes() {
+		RequestTags tags = currentTags();
+		if (tags != NO_REQUEST && tags.getStageTimes() == null) {
+			REQUEST_TAGS.set(new RequestTags(tags.getResourceType(), tags.getOperation(),
+			        new AtomicLongArray(STAGES.size())));
+		}
+	}
+	
+	/**
+	 * Gets the time the request the current thread is handling has spent in a stage so far. Stages run
+	 * inside other stages, e.g., the queries made to resolve an {@code _include}, count towards both.
+	 *
+	 * @param stage the stage
+	 * @return the time spent in the stage, in nanoseconds, or -1 if the times of the request are not
+	 *         being added up
+	 */
+	public static long getRequestTime(@Nonnull String stage) {
+		AtomicLongArray stageTimes = currentTags().getStageTimes();
+		int index = STAGES.indexOf(stage);
+		return stageTimes == null || index < 0 ? -1 : stageTimes.get(index);
+	}
+	
+	public static void endRequest() {
+		REQUEST_TAGS.remove();
+	}
+	
+	/**
+	 * Starts timing a stage, tagged with the request the current thread is handling. The timer may be
+	 * stopped on another thread.
+	 *
+	 * @param stage the stage to time
+	 * @return the timer, which records the time when it is closed
+	 */
+	public static Timer startTimer(@Nonnull String stage) {
+		return new Timer(stage, currentTags(), System.nanoTime());
+	}
+	
+	/**
+	 * Wraps work which produces a collection, so that it is timed as the given stage, and the size of
+	 * its result recorded as the rows of that stage. The work, and any stages timed while doing it, are
+	 * tagged with the request the current thread is handling, whichever thread the work is run on.
+	 *
+	 * @param stage the stage the work belongs to
+	 * @param work the work to time
+	 * @return the timed work
+	 */
+	public static <R extends Collection<?>> Supplier<R> timed(@Nonnull String stage, @Nonnull Supplier<R> work) {
+		RequestTags tags = currentTags();
+		return () -> {
+			RequestTags previousTags = REQUEST_TAGS.get();
+			REQUEST_TAGS.set(tags);
+			try {
+				long start = System.nanoTime();
+				R result = work.get();
+				record(stage, tags, System.nanoTime() - start);
+				recordRows(stage, tags, result == null ? 0 : result.size());
+				return result;
+			}
+			finally {
+				if (previousTags == null) {
+					REQUEST_TAGS.remove();
+				} else {
+					REQUEST_TAGS.set(previousTags);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Records the number of rows handled by a stage of the request the current thread is handling
+	 */
+	public static void recordRows(@Nonnull String stage, int rows) {
+		recordRows(stage, currentTags(), rows);
+	}
+	
+	/**
+	 * Registers a component whose statistics are read each time the metrics are written. Each statistic
+	 * is written as a metric tagged with the name of the component, so that components which keep the
+	 * same statistics, e.g., caches, share metrics. Metrics whose name ends in {@code _total} are
+	 * written as counters, all others as gauges. Registering a component under a name already in use
+	 * replaces the component registered before.
+	 *
+	 * @param component the name of the component
+	 * @param statistics reads the current statistics of the component, keyed by metric name
+	 */
+	public static void registerStatistics(@Nonnull String component,
+	        @Nonnull Supplier<Map<String, ? extends Number>> statistics) {
+		STATISTICS.put(component, statistics);
+	}
+	
+	/**
+	 * Registers a cache whose statistics are written as the {@code fhir2_cache_*} metrics, tagged with
+	 * the name of the cache, see {@link #registerStatistics(String, Supplier)}
+	 *
+	 * @param component the name of the cache
+	 * @param stats reads the current statistics of the cache
+	 */
+	public static void registerCacheStatistics(@Nonnull String component, @Nonnull Supplier<CacheStats> stats) {
+		registerStatistics(component, () -> {
+			CacheStats cacheStats = stats.get();
+			Map<String, Number> metrics = new LinkedHashMap<>();
+			metrics.put("fhir2_cache_hits_total", cacheStats.hitCount());
+			metrics.put("fhir2_cache_misses_total", cacheStats.missCount());
+			metrics.put("fhir2_cache_evictions_total", cacheStats.evictionCount());
+			return metrics;
+		});
+	}
+	
+	/**
+	 * Stops writing the statistics of a component registered with
+	 * {@link #registerStatistics(String, Supplier)}
+	 *
+	 * @param component the name of the component
+	 */
+	public static void unregisterStatistics(@Nonnull String component) {
+		STATISTICS.remove(component);
+	}
+	
+	/**
+	 * Writes the collected metrics in the Prometheus text exposition format
+	 *
+	 * @param writer the writer to write to
+	 */
+	public static void writePrometheus(@Nonnull Writer writer) throws IOException {
+		writer.write("# HELP fhir2_stage_duration_seconds Time spent in each stage of handling FHIR requests\n");
+		writer.write("# TYPE fhir2_stage_duration_seconds summary\n");
+		for (Map.Entry<Key, LatencyHistogram> entry : sorted(TIMES)) {
+			String labels = entry.getKey().toLabels();
+			LatencyHistogram histogram = entry.getValue();
+			for (double quantile : QUANTILES) {
+				writer.write("fhir2_stage_duration_seconds{" + labels + ",quantile=\"" + quantile + "\"} "
+				        + toSeconds(histogram.getValueAtQuantile(quantile)) + "\n");
+			}
+			
+			writer.write("fhir2_stage_duration_seconds_sum{" + labels + "} " + toSeconds(histogram.getSum()) + "\n");
+			writer.write("fhir2_stage_duration_seconds_count{" + labels + "} " + histogram.getCount() + "\n");
+		}
+		
+		writer.write(
+		    "# HELP fhir2_stage_duration_max_seconds Longest time spent in each stage of handling FHIR requests\n");
+		writer.write("# TYPE fhir2_stage_duration_max_seconds gauge\n");
+		for (Map.Entry<Key, LatencyHistogram> entry : sorted(TIMES)) {
+			writer.write("fhir2_stage_duration_max_seconds{" + entry.getKey().toLabels() + "} "
+			        + toSeconds(entry.getValue().getMax()) + "\n");
+		}
+		
+		writer.write("# HELP fhir2_stage_rows_total Rows handled by each stage of handling FHIR requests\n");
+		writer.write("# TYPE fhir2_stage_rows_total counter\n");
+		for (Map.Entry<Key, LongAdder> entry : sorted(ROWS)) {
+			writer.write(
+			    "fhir2_stage_rows_total{" + entry.getKey().toLabels() + "} " + entry.getValue().sum() + "\n");
+		}
+		
+		for (Map.Entry<String, SortedMap<String, Number>> metric : readStatistics().entrySet()) {
+			String name = metric.getKey();
+			writer.write("# TYPE " + name + (name.endsWith("_total") ? " counter\n" : " gauge\n"));
+			for (Map.Entry<String, Number> value : metric.getValue().entrySet()) {
+				writer.write(name + "{component=\"" + escape(value.getKey()) + "\"} " + value.getValue() + "\n");
+			}
+		}
+		
+		writer.flush();
+	}
+	
+	/**
+	 * Discards all of the collected metrics. Registered components are kept.
+	 */
+	public static void reset() {
+		TIMES.clear();
+		ROWS.clear();
+	}
+	
+	static LatencyHistogram getHistogram(String stage, String resourceType, String operation) {
+		return TIMES.get(new Key(resourceType, operation, stage));
+	}
+	
+	// groups the statistics of the registered components by metric, as each metric must be written in one block
+	private static SortedMap<String, SortedMap<String, Number>> readStatistics() {
+		SortedMap<String, SortedMap<String, Number>> metrics = new TreeMap<>();
+		for (Map.Entry<String, Supplier<Map<String, ? extends Number>>> component : STATISTICS.entrySet()) {
+			Map<String, ? extends Number> statistics;
+			try {
+				statistics = component.getValue().get();
+			}
+			catch (RuntimeException e) {
+				log.warn("Could not read the statistics of {}", component.getKey(), e);
+				continue;
+			}
+			
+			statistics.forEach((name, value) -> metrics.computeIfAbsent(name, n -> new TreeMap<>())
+			        .put(component.getKey(), value));
+		}
+		
+		return metrics;
+	}
+	
+	private static RequestTags currentTags() {
+		RequestTags tags = REQUEST_TAGS.get();
+		return tags == null ? NO_REQUEST : tags;
+	}
+	
+	private static void record(String stage, RequestTags tags, long nanos) {
+		TIMES.computeIfAbsent(new Key(tags.getResourceType(), tags.getOperation(), stage), k -> new LatencyHistogram())
+		        .record(nanos);
+		
+		if (tags.getStageTimes() != null) {
+			int index = STAGES.indexOf(stage);
+			if (index >= 0) {
+				tags.getStageTimes().addAndGet(index, nanos);
+			}
+		}
+	}
+	
+	private static void recordRows(String stage, RequestTags tags, int rows) {
+		ROWS.computeIfAbsent(new Key(tags.getResourceType(), tags.getOperation(), stage), k -> new LongAdder())
+		        .add(rows);
+	}
+	
+	private static <V> Iterable<Map.Entry<Key, V>> sorted(Map<Key, V> metrics) {
+		return () -> metrics.entrySet().stream().sorted(Map.Entry.comparingByKey(KEY_ORDER)).iterator();
+	}
+	
+	private static double toSeconds(long nanos) {
+		return nanos / 1e9;
+	}
+	
+	private static String escape(String labelValue) {
+		return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+	
+	/**
+	 * Times a stage of a request, see {@link #startTimer(String)}
+	 */
+	public static final class Timer implements AutoCloseable {
+		
+		private final String stage;
+		
+		private final RequestTags tags;
+		
+		private final long start;
+		
+		private boolean stopped = false;
+		
+		private Timer(String stage, RequestTags tags, long start) {
+			this.stage = stage;
+			this.tags = tags;
+			this.start = start;
+		}
+		
+		/**
+		 * Records the time since the timer was started, unless it was already recorded
+		 */
+		@Override
+		public void close() {
+			if (!stopped) {
+				stopped = true;
+				record(stage, tags, System.nanoTime() - start);
+			}
+		}
+	}
+	
+	@Value
+	private static class RequestTags {
+		
+		String resourceType;
+		
+		String operation;
+		
+		// the time spent by the request in each of the STAGES, if it is being added up
+		AtomicLongArray stageTimes;
+	}
+	
+	@Value
+	private static class Key {
+		
+		String resourceType;
+		
+		String operation;
+		
+		String stage;
+		
+		String toLabels() {
+			return "resource_type=\"" + escape(resourceType) + "\",operation=\"" + escape(operation) + "\",stage=\""
+			        + escape(stage) + "\"";
+		}
+	}
+}
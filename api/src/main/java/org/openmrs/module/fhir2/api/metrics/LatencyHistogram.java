@@ -0,0 +1,126 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of latencies in nanoseconds, laid out like an HdrHistogram. <br/>
+ * Each power of two is split into {@value #SUB_BUCKET_COUNT} buckets of equal width, so every
+ * recorded value is kept to within about 6% of its actual value, however large, while the whole
+ * histogram is a fixed array of a few hundred counters. Recording a value does not lock or allocate,
+ * so the histogram can be updated on every request.
+ */
+public class LatencyHistogram {
+	
+	private static final int SUB_BUCKET_BITS = 4;
+	
+	static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+	
+	// 2^40ns is a little over 18 minutes; anything longer is recorded as this
+	private static final int MAX_EXPONENT = 40;
+	
+	static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+	
+	private static final int BUCKET_COUNT = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+	
+	private final LongAdder count = new LongAdder();
+	
+	private final LongAdder sum = new LongAdder();
+	
+	private final AtomicLong max = new AtomicLong();
+	
+	/**
+	 * @param nanos the latency to record, in nanoseconds
+	 */
+	public void record(long nanos) {
+		long value = Math.min(Math.max(nanos, 0L), MAX_VALUE);
+		counts.incrementAndGet(bucketOf(value));
+		count.increment();
+		sum.add(value);
+		max.accumulateAndGet(value, Math::max);
+	}
+	
+	public long getCount() {
+		return count.sum();
+	}
+	
+	/**
+	 * @return the sum of the recorded latencies, in nanoseconds
+	 */
+	public long getSum() {
+		return sum.sum();
+	}
+	
+	/**
+	 * @return the largest recorded latency, in nanoseconds
+	 */
+	public long getMax() {
+		return max.get();
+	}
+	
+	/**
+	 * Gets the latency at the given quantile, as the highest value of the bucket it falls in, so that
+	 * the result is never lower than the actual value
+	 *
+	 * @param quantile the quantile to get, between 0 and 1
+	 * @return the latency at the quantile, in nanoseconds, or 0 if nothing was recorded
+	 */
+	public long getValueAtQuantile(double quantile) {
+		long[] snapshot = new long[BUCKET_COUNT];
+		long total = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		
+		if (total == 0) {
+			return 0;
+		}
+		
+		long target = Math.max(1L, (long) Math.ceil(quantile * total));
+		long seen = 0;
+		for (int i = 0; i < BUCKET_COUNT; i++) {
+			seen += snapshot[i];
+			if (seen >= target) {
+				return Math.min(highestValueOf(i), getMax());
+			}
+		}
+		
+		return getMax();
+	}
+	
+	static int bucketOf(long value) {
+		if (value < SUB_BUCKET_COUNT) {
+			return (int) value;
+		}
+		
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - SUB_BUCKET_BITS;
+		return (shift + 1) * SUB_BUCKET_COUNT + (int) (value >> shift) - SUB_BUCKET_COUNT;
+	}
+	
+	static long lowestValueOf(int bucket) {
+		if (bucket < SUB_BUCKET_COUNT) {
+			return bucket;
+		}
+		
+		int shift = bucket / SUB_BUCKET_COUNT - 1;
+		return (long) (bucket % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT) << shift;
+	}
+	
+	static long highestValueOf(int bucket) {
+		return bucket + 1 < BUCKET_COUNT ? lowestValueOf(bucket + 1) - 1 : MAX_VALUE;
+	}
+}
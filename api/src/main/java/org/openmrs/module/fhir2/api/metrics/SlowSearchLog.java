@@ -0,0 +1,292 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.metrics;
+
+import javax.annotation.Nonnull;
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.engine.query.spi.HQLQueryPlan;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+
+/**
+ * Keeps the searches which took longer than a threshold, so that slow searches can be found without
+ * matching the database's slow query log against the access log. <br/>
+ * A request is traced from {@link #startTrace(long)} until {@link #endTrace()}, which the REST layer
+ * calls when a request starts and completes, so that the count query, which HAPI runs before
+ * fetching the first page, is part of the trace. While the request is traced, the DAOs report each
+ * query they run with {@link #recordQuery(EntityManager, TypedQuery)}, including the queries run on
+ * other threads for work wrapped with {@link #traced(Supplier)}, and the search reports its
+ * parameters and the number of resources it returned with {@link #recordSearch(String, int, int)}.
+ * Searches which took at least the threshold are logged as warnings by this class, so that they can
+ * be sent to their own rolling file, and the last {@value #CAPACITY} of them are held in memory to be
+ * read with {@link #getSlowest(int)}. <br/>
+ * Searches are described by the shape of their parameters, without the values searched for, so that
+ * the log does not hold patient data. Likewise, only the HQL and SQL of the queries are kept, not
+ * the values bound to them. The SQL is only worked out for searches which are slow.
+ */
+@Slf4j
+public final class SlowSearchLog {
+	
+	static final int CAPACITY = 100;
+	
+	private static final String[] STAGES = { FhirMetrics.QUERY, FhirMetrics.COUNT, FhirMetrics.TRANSLATE,
+	        FhirMetrics.INCLUDE, FhirMetrics.REVINCLUDE };
+	
+	private static final ThreadLocal<Trace> TRACE = new ThreadLocal<>();
+	
+	private static final Deque<SlowSearch> SLOW_SEARCHES = new ArrayDeque<>(CAPACITY);
+	
+	private SlowSearchLog() {
+	}
+	
+	/**
+	 * Starts tracing the request the current thread is handling, unless it is already traced. The times
+	 * of the stages of the request are also added up from now, see
+	 * {@link FhirMetrics#accumulateRequestTimes()}.
+	 *
+	 * @param thresholdMillis the time, in milliseconds, from which a search is slow
+	 * @return true if a trace was started, and so must be ended with {@link #endTrace()}
+	 */
+	public static boolean startTrace(long thresholdMillis) {
+		if (TRACE.get() != null || thresholdMillis <= 0) {
+			return false;
+		}
+		
+		TRACE.set(new Trace(thresholdMillis, System.nanoTime()));
+		FhirMetrics.accumulateRequestTimes();
+		return true;
+	}
+	
+	/**
+	 * @return true if the request the current thread is handling is traced
+	 */
+	public static boolean isTraced() {
+		return TRACE.get() != null;
+	}
+	
+	/**
+	 * Notes a query run for the request traced by the current thread, if any
+	 *
+	 * @param entityManager the entity manager running the query
+	 * @param query the query
+	 */
+	public static void recordQuery(@Nonnull EntityManager entityManager, @Nonnull TypedQuery<?> query) {
+		Trace trace = TRACE.get();
+		if (trace != null) {
+			trace.queries.add(new TracedQuery(query.unwrap(Query.class).getQueryString(),
+			        entityManager.unwrap(SessionImplementor.class)));
+		}
+	}
+	
+	/**
+	 * Notes the search made by the request traced by the current thread, if any. Searches made to
+	 * resolve another search, e.g., for a {@code _revinclude}, complete before it, so the last search
+	 * noted is the one the request was made for.
+	 *
+	 * @param search the shape of the search
+	 * @param rows the number of results returned
+	 * @param includedRows the number of resources included with the results
+	 */
+	public static void recordSearch(@Nonnull String search, int rows, int includedRows) {
+		Trace trace = TRACE.get();
+		if (trace != null) {
+			trace.search = new TracedSearch(search, rows, includedRows);
+		}
+	}
+	
+	/**
+	 * Wraps work so that the queries it runs are added to the trace of the request the current thread
+	 * is handling, whichever thread the work is run on
+	 *
+	 * @param work the work to trace
+	 * @return the traced work
+	 */
+	public static <R> Supplier<R> traced(@Nonnull Supplier<R> work) {
+		Trace trace = TRACE.get();
+		if (trace == null) {
+			return work;
+		}
+		
+		return () -> {
+			Trace previousTrace = TRACE.get();
+			TRACE.set(trace);
+			try {
+				return work.get();
+			}
+			finally {
+				if (previousTrace == null) {
+					TRACE.remove();
+				} else {
+					TRACE.set(previousTrace);
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Stops tracing the request of the current thread, and keeps its search if it took at least the
+	 * threshold. Requests which did not search are not kept.
+	 */
+	public static void endTrace() {
+		Trace trace = TRACE.get();
+		if (trace != null) {
+			endTrace(System.nanoTime() - trace.start);
+		}
+	}
+	
+	static void endTrace(long nanos) {
+		Trace trace = TRACE.get();
+		TRACE.remove();
+		
+		if (trace == null || trace.search == null || nanos < trace.thresholdMillis * 1_000_000L) {
+			return;
+		}
+		
+		Map<String, Long> stageNanos = new LinkedHashMap<>();
+		for (String stage : STAGES) {
+			long stageTime = FhirMetrics.getRequestTime(stage);
+			if (stageTime >= 0) {
+				stageNanos.put(stage, stageTime);
+			}
+		}
+		
+		List<TracedQuery> queries;
+		synchronized (trace.queries) {
+			queries = new ArrayList<>(trace.queries);
+		}
+		
+		TracedSearch search = trace.search;
+		SlowSearch slowSearch = new SlowSearch(new Date(), search.getSearch(), nanos, search.getRows(),
+		        search.getIncludedRows(), Collections.unmodifiableMap(stageNanos),
+		        Collections.unmodifiableList(queries.stream().map(TracedQuery::getHql).collect(Collectors.toList())),
+		        Collections.unmodifiableList(queries.stream().map(TracedQuery::toSql).collect(Collectors.toList())));
+		
+		synchronized (SLOW_SEARCHES) {
+			if (SLOW_SEARCHES.size() == CAPACITY) {
+				SLOW_SEARCHES.removeFirst();
+			}
+			
+			SLOW_SEARCHES.addLast(slowSearch);
+		}
+		
+		log.warn("Slow FHIR search: {}", slowSearch);
+	}
+	
+	/**
+	 * @param limit the maximum number of searches to return
+	 * @return the slowest of the recent slow searches, slowest first
+	 */
+	public static List<SlowSearch> getSlowest(int limit) {
+		List<SlowSearch> slowSearches;
+		synchronized (SLOW_SEARCHES) {
+			slowSearches = new ArrayList<>(SLOW_SEARCHES);
+		}
+		
+		return slowSearches.stream().sorted(Comparator.comparingLong(SlowSearch::getNanos).reversed())
+		        .limit(Math.max(limit, 0)).collect(Collectors.toList());
+	}
+	
+	/**
+	 * Discards the recent slow searches
+	 */
+	public static void clear() {
+		synchronized (SLOW_SEARCHES) {
+			SLOW_SEARCHES.clear();
+		}
+	}
+	
+	/**
+	 * A search which took at least the threshold
+	 */
+	@Value
+	public static class SlowSearch {
+		
+		Date timestamp;
+		
+		// the shape of the parameters of the search, see SearchShape
+		String search;
+		
+		long nanos;
+		
+		int rows;
+		
+		int includedRows;
+		
+		// the time spent in each stage of the request, if the stages were timed
+		Map<String, Long> stageNanos;
+		
+		List<String> queries;
+		
+		List<String> sql;
+	}
+	
+	private static class Trace {
+		
+		private final long thresholdMillis;
+		
+		private final long start;
+		
+		// queries may be added by the threads resolving includes for the request
+		private final List<TracedQuery> queries = Collections.synchronizedList(new ArrayList<>());
+		
+		private volatile TracedSearch search;
+		
+		private Trace(long thresholdMillis, long start) {
+			this.thresholdMillis = thresholdMillis;
+			this.start = start;
+		}
+	}
+	
+	@Value
+	private static class TracedSearch {
+		
+		String search;
+		
+		int rows;
+		
+		int includedRows;
+	}
+	
+	@Value
+	private static class TracedQuery {
+		
+		String hql;
+		
+		SessionImplementor session;
+		
+		String toSql() {
+			try {
+				HQLQueryPlan plan = session.getFactory().getQueryPlanCache().getHQLQueryPlan(hql, false,
+				    session.getLoadQueryInfluencers().getEnabledFilters());
+				return String.join("; ", plan.getSqlStrings());
+			}
+			catch (RuntimeException e) {
+				log.debug("Could not translate query {} to SQL", hql, e);
+				return null;
+			}
+		}
+	}
+}
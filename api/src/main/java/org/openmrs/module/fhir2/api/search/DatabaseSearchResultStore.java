@@ -0,0 +1,279 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirDao;
+import org.openmrs.module.fhir2.api.dao.FhirStoredSearchDao;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.translators.OpenmrsFhirTranslator;
+import org.openmrs.module.fhir2.model.FhirStoredSearch;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+/**
+ * A {@link SearchResultStore} which persists searches to the {@code fhir_stored_search} table so
+ * that a search started on one node can be paged through on any node which shares the database.
+ * <br/>
+ * Only the {@link SearchParameterMap} and the names of the Spring beans used to run the search are
+ * stored, so only searches served by a {@link SearchQueryBundleProvider} can be persisted. Any other
+ * bundle provider, e.g., the combined results of two searches, is held in memory on the current
+ * node.
+ */
+@Slf4j
+@Component
+public class DatabaseSearchResultStore implements SearchResultStore {
+	
+	private static final String FHIR_VERSION_R3 = "R3";
+	
+	private static final String FHIR_VERSION_R4 = "R4";
+	
+	private static final long PURGE_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirStoredSearchDao storedSearchDao;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private ApplicationContext applicationContext;
+	
+	private volatile MemorySearchResultStore localStore;
+	
+	private final AtomicLong hits = new AtomicLong();
+	
+	private final AtomicLong misses = new AtomicLong();
+	
+	private final AtomicLong expirations = new AtomicLong();
+	
+	private final AtomicLong lastPurge = new AtomicLong();
+	
+	@Override
+	public String store(@Nonnull IBundleProvider bundleProvider) {
+		purgeExpired();
+		
+		FhirStoredSearch storedSearch = toStoredSearch(bundleProvider);
+		if (storedSearch == null) {
+			return getLocalStore().store(bundleProvider);
+		}
+		
+		storedSearchDao.saveStoredSearch(storedSearch);
+		return storedSearch.getSearchId();
+	}
+	
+	@Override
+	public IBundleProvider retrieve(@Nonnull String searchId) {
+		IBundleProvider bundleProvider = getLocalStore().retrieve(searchId);
+		if (bundleProvider != null) {
+			return bundleProvider;
+		}
+		
+		FhirStoredSearch storedSearch = storedSearchDao.getStoredSearch(searchId).orElse(null);
+		if (storedSearch == null || storedSearch.getExpirationDate().before(new Date())) {
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		bundleProvider = fromStoredSearch(storedSearch);
+		if (bundleProvider == null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		
+		hits.incrementAndGet();
+		storedSearchDao.updateExpirationDate(searchId, new Date(System.currentTimeMillis() + getTimeToLive()));
+		return bundleProvider;
+	}
+	
+	@Override
+	public SearchResultStoreStatistics getStatistics() {
+		SearchResultStoreStatistics local = getLocalStore().getStatistics();
+		
+		long oldestSearchAge = storedSearchDao.getOldestStoredSearchDate()
+		        .map(date -> System.currentTimeMillis() - date.getTime()).orElse(0L);
+		return new SearchResultStoreStatistics(storedSearchDao.getStoredSearchCount() + local.getSize(),
+		        Math.max(oldestSearchAge, local.getOldestSearchAge()), hits.get() + local.getHits(), misses.get(),
+		        local.getEvictions(), expirations.get() + local.getExpirations());
+	}
+	
+	protected FhirStoredSearch toStoredSearch(IBundleProvider bundleProvider) {
+		String fhirVersion = FHIR_VERSION_R4;
+		if (bundleProvider instanceof SearchQueryBundleProviderR3Wrapper) {
+			fhirVersion = FHIR_VERSION_R3;
+			bundleProvider = ((SearchQueryBundleProviderR3Wrapper) bundleProvider).getBundleProvider();
+		}
+		
+		if (!(bundleProvider instanceof SearchQueryBundleProvider)) {
+			return null;
+		}
+		
+		SearchQueryBundleProvider<?, ?> searchQueryBundleProvider = (SearchQueryBundleProvider<?, ?>) bundleProvider;
+		String daoBean = getBeanName(FhirDao.class, searchQueryBundleProvider.getDao());
+		String translatorBean = getBeanName(OpenmrsFhirTranslator.class, searchQueryBundleProvider.getTranslator());
+		String searchQueryIncludeBean = getBeanName(SearchQueryInclude.class,
+		    searchQueryBundleProvider.getSearchQueryInclude());
+		if (daoBean == null || translatorBean == null || searchQueryIncludeBean == null) {
+			log.debug("Could not find the beans used for search {}, storing it in memory", bundleProvider.getUuid());
+			return null;
+		}
+		
+		byte[] searchParameters;
+		try {
+			searchParameters = serialize(searchQueryBundleProvider.getSearchParameterMap());
+		}
+		catch (IOException e) {
+			log.warn("Could not serialize the parameters for search {}, storing it in memory", bundleProvider.getUuid(),
+			    e);
+			return null;
+		}
+		
+		Date now = new Date();
+		FhirStoredSearch storedSearch = new FhirStoredSearch();
+		storedSearch.setSearchId(bundleProvider.getUuid());
+		storedSearch.setFhirVersion(fhirVersion);
+		storedSearch.setDaoBean(daoBean);
+		storedSearch.setTranslatorBean(translatorBean);
+		storedSearch.setSearchQueryIncludeBean(searchQueryIncludeBean);
+		storedSearch.setSearchParameters(searchParameters);
+		storedSearch.setTotal(bundleProvider.size());
+		storedSearch.setDateCreated(now);
+		storedSearch.setExpirationDate(new Date(now.getTime() + getTimeToLive()));
+		return storedSearch;
+	}
+	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	protected IBundleProvider fromStoredSearch(FhirStoredSearch storedSearch) {
+		SearchParameterMap searchParameterMap;
+		try {
+			searchParameterMap = (SearchParameterMap) deserialize(storedSearch.getSearchParameters());
+		}
+		catch (IOException | ClassNotFoundException | ClassCastException e) {
+			log.warn("Could not restore the parameters for search {}", storedSearch.getSearchId(), e);
+			return null;
+		}
+		
+		if (!applicationContext.containsBean(storedSearch.getDaoBean())
+		        || !applicationContext.containsBean(storedSearch.getTranslatorBean())
+		        || !applicationContext.containsBean(storedSearch.getSearchQueryIncludeBean())) {
+			log.warn("Could not find the beans used to run search {}", storedSearch.getSearchId());
+			return null;
+		}
+		
+		IBundleProvider result = SearchQueryBundleProvider.restore(searchParameterMap,
+		    applicationContext.getBean(storedSearch.getDaoBean(), FhirDao.class),
+		    applicationContext.getBean(storedSearch.getTranslatorBean(), OpenmrsFhirTranslator.class),
+		    globalPropertyService,
+		    applicationContext.getBean(storedSearch.getSearchQueryIncludeBean(), SearchQueryInclude.class),
+		    storedSearch.getSearchId(), storedSearch.getDateCreated(), storedSearch.getTotal());
+		
+		if (FHIR_VERSION_R3.equals(storedSearch.getFhirVersion())) {
+			result = new SearchQueryBundleProviderR3Wrapper(result);
+		}
+		
+		return result;
+	}
+	
+	protected long getTimeToLive() {
+		return TimeUnit.SECONDS.toMillis(globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_PAGING_STORE_TIME_TO_LIVE, 1800));
+	}
+	
+	private void purgeExpired() {
+		long now = System.currentTimeMillis();
+		long previousPurge = lastPurge.get();
+		if (now - previousPurge < PURGE_INTERVAL || !lastPurge.compareAndSet(previousPurge, now)) {
+			return;
+		}
+		
+		expirations.addAndGet(storedSearchDao.deleteExpiredStoredSearches(new Date(now)));
+	}
+	
+	private MemorySearchResultStore getLocalStore() {
+		if (localStore == null) {
+			synchronized (this) {
+				if (localStore == null) {
+					localStore = new MemorySearchResultStore(
+					        globalPropertyService.getGlobalPropertyAsInteger(
+					            FhirConstants.OPENMRS_FHIR_PAGING_STORE_MAXIMUM_SIZE, 100),
+					        getTimeToLive());
+				}
+			}
+		}
+		
+		return localStore;
+	}
+	
+	private <B> String getBeanName(Class<B> type, Object bean) {
+		for (Map.Entry<String, B> entry : applicationContext.getBeansOfType(type).entrySet()) {
+			if (entry.getValue() == bean) {
+				return entry.getKey();
+			}
+		}
+		
+		return null;
+	}
+	
+	private static byte[] serialize(Object object) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(object);
+		}
+		
+		return bytes.toByteArray();
+	}
+	
+	private static Object deserialize(byte[] bytes) throws IOException, ClassNotFoundException {
+		try (ObjectInputStream in = new ModuleObjectInputStream(new ByteArrayInputStream(bytes))) {
+			return in.readObject();
+		}
+	}
+	
+	/**
+	 * Resolves classes using the module's class loader, which can see both the module's classes and
+	 * the HAPI parameter types held by a {@link SearchParameterMap}
+	 */
+	private static class ModuleObjectInputStream extends ObjectInputStream {
+		
+		ModuleObjectInputStream(InputStream in) throws IOException {
+			super(in);
+		}
+		
+		@Override
+		protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+			try {
+				return Class.forName(desc.getName(), false, DatabaseSearchResultStore.class.getClassLoader());
+			}
+			catch (ClassNotFoundException e) {
+				return super.resolveClass(desc);
+			}
+		}
+	}
+}
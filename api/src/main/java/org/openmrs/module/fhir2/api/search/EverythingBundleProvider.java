@@ -0,0 +1,284 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.Getter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.openmrs.Auditable;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirDao;
+import org.openmrs.module.fhir2.api.search.param.PropParam;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.translators.OpenmrsFhirTranslator;
+import org.openmrs.module.fhir2.api.util.FhirUtils;
+
+/**
+ * The {@link IBundleProvider} used for the {@code $everything} operation. <br/>
+ * Rather than loading every matching resource up front, the results are made up of a number of
+ * sources which are each paged lazily, one after the other: the resources matching the search, and
+ * then the resources of each {@code _revinclude} type which reference them. The resources which
+ * reference the matching resources are found for {@value #UUID_PAGE_SIZE} matching resources at a
+ * time, so that the uuids of every matching resource are never held at once. The size of each source
+ * is counted the first time the provider is used, so the total stays stable while the client pages
+ * through the results. <br/>
+ * The resources {@code _include}d by the resources matching the search are not a source of their
+ * own, as counting them would mean fetching and translating every matching resource. Instead, like
+ * any other search, each page of matching resources is returned with the resources it includes,
+ * which are not counted in the total.
+ */
+public class EverythingBundleProvider<T extends OpenmrsObject & Auditable, U extends IBaseResource> implements IBundleProvider {
+	
+	private static final int UUID_PAGE_SIZE = 500;
+	
+	private final SearchParameterMap searchParameterMap;
+	
+	private final FhirDao<T> dao;
+	
+	private final SearchQueryInclude<U> searchQueryInclude;
+	
+	private final FhirGlobalPropertyService globalPropertyService;
+	
+	private final SearchQueryBundleProvider<T, U> primaryProvider;
+	
+	@Getter
+	private final IPrimitiveType<Date> published;
+	
+	@Getter
+	private final String uuid;
+	
+	private transient Integer pageSize;
+	
+	private transient List<IBundleProvider> sources;
+	
+	private transient int[] sourceSizes;
+	
+	private transient Integer size;
+	
+	// the reverse included bundle providers for the last page of uuids used
+	private transient int revIncludedUuidFrom = -1;
+	
+	private transient List<IBundleProvider> revIncludedProviders;
+	
+	public EverythingBundleProvider(SearchParameterMap searchParameterMap, FhirDao<T> dao,
+	    OpenmrsFhirTranslator<T, U> translator, FhirGlobalPropertyService globalPropertyService,
+	    SearchQueryInclude<U> searchQueryInclude) {
+		this.searchParameterMap = searchParameterMap;
+		this.dao = dao;
+		this.searchQueryInclude = searchQueryInclude;
+		this.globalPropertyService = globalPropertyService;
+		this.published = InstantDt.withCurrentTime();
+		this.uuid = FhirUtils.newUuid();
+		// the reverse included resources are served by their own sources
+		this.primaryProvider = new SearchQueryBundleProvider<>(searchParameterMap, dao, translator,
+		        globalPropertyService, new PageIncludes());
+	}
+	
+	@Nonnull
+	@Override
+	public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+		int total = size();
+		int firstResult = Math.max(fromIndex, 0);
+		int lastResult = toIndex < 0 ? total : Math.min(toIndex, total);
+		
+		List<IBaseResource> resources = new ArrayList<>();
+		// resources a source includes alongside its own page are added after all the requested resources
+		List<IBaseResource> includedResources = new ArrayList<>();
+		
+		int offset = 0;
+		for (int i = 0; i < sources.size() && offset < lastResult; i++) {
+			int sourceFrom = Math.max(firstResult - offset, 0);
+			int sourceTo = Math.min(lastResult - offset, sourceSizes[i]);
+			
+			if (sourceFrom < sourceTo) {
+				List<IBaseResource> sourceResources = sources.get(i).getResources(sourceFrom, sourceTo);
+				int requested = Math.min(sourceTo - sourceFrom, sourceResources.size());
+				resources.addAll(sourceResources.subList(0, requested));
+				includedResources.addAll(sourceResources.subList(requested, sourceResources.size()));
+			}
+			
+			offset += sourceSizes[i];
+		}
+		
+		resources.addAll(includedResources);
+		return resources;
+	}
+	
+	@Override
+	public Integer preferredPageSize() {
+		if (pageSize == null) {
+			pageSize = globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_DEFAULT_PAGE_SIZE, 10);
+		}
+		
+		return pageSize;
+	}
+	
+	@Nullable
+	@Override
+	public Integer size() {
+		if (size == null) {
+			initSources();
+		}
+		
+		return size;
+	}
+	
+	private void initSources() {
+		List<IBundleProvider> sources = new ArrayList<>();
+		sources.add(primaryProvider);
+		
+		if (!searchParameterMap.getParameters(FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER).isEmpty()) {
+			for (int uuidFrom = 0;; uuidFrom += UUID_PAGE_SIZE) {
+				List<String> uuids = getUuidPage(uuidFrom);
+				List<IBundleProvider> pageProviders = getRevIncludedProviders(uuidFrom, uuids);
+				for (int i = 0; i < pageProviders.size(); i++) {
+					Integer sourceSize = pageProviders.get(i).size();
+					if (sourceSize != null && sourceSize > 0) {
+						sources.add(new RevIncludedSource(uuidFrom, i, sourceSize));
+					}
+				}
+				
+				if (uuids.size() < UUID_PAGE_SIZE) {
+					break;
+				}
+			}
+		}
+		
+		int[] sourceSizes = new int[sources.size()];
+		long total = 0;
+		for (int i = 0; i < sources.size(); i++) {
+			Integer sourceSize = sources.get(i).size();
+			sourceSizes[i] = sourceSize == null ? 0 : sourceSize;
+			total += sourceSizes[i];
+		}
+		
+		this.sources = sources;
+		this.sourceSizes = sourceSizes;
+		this.size = (int) Math.min(total, Integer.MAX_VALUE);
+	}
+	
+	private List<String> getUuidPage(int uuidFrom) {
+		SearchParameterMap uuidParams = searchParameterMap.withoutPaging();
+		uuidParams.setFromIndex(uuidFrom);
+		uuidParams.setToIndex(uuidFrom + UUID_PAGE_SIZE);
+		return dao.getSearchResultUuids(uuidParams);
+	}
+	
+	private List<IBundleProvider> getRevIncludedProviders(int uuidFrom, List<String> uuids) {
+		if (revIncludedProviders == null || revIncludedUuidFrom != uuidFrom) {
+			if (uuids == null) {
+				uuids = getUuidPage(uuidFrom);
+			}
+			
+			revIncludedProviders = uuids.isEmpty() ? Collections.emptyList()
+			        : searchQueryInclude.getRevIncludedBundleProviders(uuids, searchParameterMap);
+			revIncludedUuidFrom = uuidFrom;
+		}
+		
+		return revIncludedProviders;
+	}
+	
+	/**
+	 * The resources of one {@code _revinclude} type which reference one page of the uuids of the
+	 * matching resources. The page of uuids is fetched again when the resources are wanted, rather than
+	 * being held from when the source was counted.
+	 */
+	private class RevIncludedSource implements IBundleProvider {
+		
+		private final int uuidFrom;
+		
+		private final int index;
+		
+		private final int size;
+		
+		private RevIncludedSource(int uuidFrom, int index, int size) {
+			this.uuidFrom = uuidFrom;
+			this.index = index;
+			this.size = size;
+		}
+		
+		@Nonnull
+		@Override
+		public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+			List<IBundleProvider> pageProviders = getRevIncludedProviders(uuidFrom, null);
+			return index < pageProviders.size() ? pageProviders.get(index).getResources(fromIndex, toIndex)
+			        : Collections.emptyList();
+		}
+		
+		@Override
+		public IPrimitiveType<Date> getPublished() {
+			return published;
+		}
+		
+		@Override
+		public String getUuid() {
+			return null;
+		}
+		
+		@Override
+		public Integer preferredPageSize() {
+			return EverythingBundleProvider.this.preferredPageSize();
+		}
+		
+		@Override
+		public Integer size() {
+			return size;
+		}
+	}
+	
+	/**
+	 * A {@link SearchQueryInclude} which only adds the resources {@code _include}d by a page of the
+	 * resources matching the search
+	 */
+	private class PageIncludes implements SearchQueryInclude<U> {
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public Set<IBaseResource> getIncludedResources(List<U> resourceList, SearchParameterMap theParams) {
+			// every _include of the search, however many times the parameter was added
+			Set<Include> includes = new HashSet<>();
+			for (PropParam<Object> include : searchParameterMap.getParameters(FhirConstants.INCLUDE_SEARCH_HANDLER)) {
+				if (include.getParam() instanceof Collection) {
+					includes.addAll((Collection<Include>) include.getParam());
+				}
+			}
+			
+			if (includes.isEmpty() || resourceList.isEmpty()) {
+				return Collections.emptySet();
+			}
+			
+			SearchParameterMap includeParams = new SearchParameterMap()
+			        .addParameter(FhirConstants.INCLUDE_SEARCH_HANDLER, includes);
+			return searchQueryInclude.getIncludedResources(resourceList, includeParams);
+		}
+		
+		@Override
+		public List<IBundleProvider> getRevIncludedBundleProviders(Collection<String> resourceIds,
+		        SearchParameterMap theParams) {
+			return Collections.emptyList();
+		}
+	}
+}
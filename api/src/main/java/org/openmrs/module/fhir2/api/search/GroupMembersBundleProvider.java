@@ -0,0 +1,104 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.Getter;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.instance.model.api.IPrimitiveType;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirGroupDao;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.openmrs.module.fhir2.api.translators.GroupMemberTranslator;
+import org.openmrs.module.fhir2.api.util.FhirUtils;
+
+/**
+ * The {@link IBundleProvider} used for the {@code $members} operation. Each page of members is read
+ * with one query for the ids of the members on that page and one query loading those patients, so
+ * the cost of a page does not depend on the size of the group.
+ */
+public class GroupMembersBundleProvider implements IBundleProvider {
+	
+	private final String groupUuid;
+	
+	private final FhirGroupDao groupDao;
+	
+	private final GroupMemberTranslator groupMemberTranslator;
+	
+	private final FhirGlobalPropertyService globalPropertyService;
+	
+	@Getter
+	private final IPrimitiveType<Date> published;
+	
+	@Getter
+	private final String uuid;
+	
+	private transient Integer pageSize;
+	
+	private transient Integer size;
+	
+	public GroupMembersBundleProvider(String groupUuid, FhirGroupDao groupDao,
+	    GroupMemberTranslator groupMemberTranslator, FhirGlobalPropertyService globalPropertyService) {
+		this.groupUuid = groupUuid;
+		this.groupDao = groupDao;
+		this.groupMemberTranslator = groupMemberTranslator;
+		this.globalPropertyService = globalPropertyService;
+		this.published = InstantDt.withCurrentTime();
+		this.uuid = FhirUtils.newUuid();
+	}
+	
+	@Nonnull
+	@Override
+	public List<IBaseResource> getResources(int fromIndex, int toIndex) {
+		int firstResult = Math.max(fromIndex, 0);
+		int lastResult = toIndex < 0 ? size() : Math.min(toIndex, size());
+		if (firstResult >= lastResult) {
+			return new ArrayList<>();
+		}
+		
+		List<Integer> memberIds;
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.QUERY)) {
+			memberIds = groupDao.getMemberIds(groupUuid, firstResult, lastResult - firstResult);
+		}
+		FhirMetrics.recordRows(FhirMetrics.QUERY, memberIds.size());
+		
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.TRANSLATE)) {
+			return new ArrayList<>(groupMemberTranslator.toFhirResources(memberIds));
+		}
+	}
+	
+	@Override
+	public Integer preferredPageSize() {
+		if (pageSize == null) {
+			pageSize = globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_DEFAULT_PAGE_SIZE, 10);
+		}
+		
+		return pageSize;
+	}
+	
+	@Override
+	public Integer size() {
+		if (size == null) {
+			try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.COUNT)) {
+				size = groupDao.getMemberCount(groupUuid);
+			}
+		}
+		
+		return size;
+	}
+}
@@ -0,0 +1,30 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+
+/**
+ * An {@link IBundleProvider} which can be paged using the opaque page ids returned from
+ * {@link IBundleProvider#getNextPageId()} rather than by offset. The paging provider uses this to
+ * resume a stored search at the page requested by the client.
+ */
+public interface KeysetBundleProvider extends IBundleProvider {
+	
+	/**
+	 * Returns a bundle provider for the same search positioned at the supplied page id
+	 *
+	 * @param pageId a page id previously returned by {@link IBundleProvider#getNextPageId()}
+	 * @return a bundle provider whose results start at the requested page
+	 */
+	IBundleProvider forPage(@Nonnull String pageId);
+}
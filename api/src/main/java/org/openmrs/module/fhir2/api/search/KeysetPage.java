@@ -0,0 +1,32 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import java.util.List;
+
+import lombok.Data;
+import org.openmrs.module.fhir2.api.search.param.KeysetCursor;
+
+/**
+ * Holds a single page of results fetched using keyset pagination along with the cursor needed to
+ * fetch the following page
+ *
+ * @param <T> the type of the results
+ */
+@Data
+public class KeysetPage<T> {
+	
+	private final List<T> results;
+	
+	/**
+	 * The position of the last result on this page or {@code null} if this is the last page
+	 */
+	private final KeysetCursor nextCursor;
+}
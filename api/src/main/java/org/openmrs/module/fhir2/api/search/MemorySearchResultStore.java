@@ -0,0 +1,134 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.AllArgsConstructor;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.fhir2.api.util.FhirUtils;
+
+/**
+ * A {@link SearchResultStore} which holds searches in memory on the current node. <br/>
+ * At most {@code maximumSize} searches are held, with the least recently accessed search evicted
+ * to make room for a new one, and searches which have not been accessed within the time to live are
+ * removed. Searches are stored under the {@link IBundleProvider#getUuid()} of the bundle provider
+ * where it has one.
+ */
+public class MemorySearchResultStore implements SearchResultStore {
+	
+	private final int maximumSize;
+	
+	private final long timeToLive;
+	
+	private final LongSupplier clock;
+	
+	// access-ordered, so the first entry is always the least recently accessed
+	private final LinkedHashMap<String, StoredSearch> searches = new LinkedHashMap<>(16, 0.75f, true);
+	
+	private long hits = 0;
+	
+	private long misses = 0;
+	
+	private long evictions = 0;
+	
+	private long expirations = 0;
+	
+	/**
+	 * @param maximumSize the maximum number of searches to hold
+	 * @param timeToLive the time in milliseconds after which a search that has not been accessed is
+	 *            removed
+	 */
+	public MemorySearchResultStore(int maximumSize, long timeToLive) {
+		this(maximumSize, timeToLive, System::currentTimeMillis);
+	}
+	
+	MemorySearchResultStore(int maximumSize, long timeToLive, LongSupplier clock) {
+		this.maximumSize = maximumSize;
+		this.timeToLive = timeToLive;
+		this.clock = clock;
+	}
+	
+	@Override
+	public synchronized String store(@Nonnull IBundleProvider bundleProvider) {
+		long now = clock.getAsLong();
+		removeExpired(now);
+		
+		String searchId = bundleProvider.getUuid();
+		if (StringUtils.isBlank(searchId)) {
+			searchId = FhirUtils.newUuid();
+		}
+		
+		searches.put(searchId, new StoredSearch(bundleProvider, now, now));
+		
+		Iterator<StoredSearch> iterator = searches.values().iterator();
+		while (searches.size() > maximumSize && iterator.hasNext()) {
+			iterator.next();
+			iterator.remove();
+			evictions++;
+		}
+		
+		return searchId;
+	}
+	
+	@Override
+	public synchronized IBundleProvider retrieve(@Nonnull String searchId) {
+		long now = clock.getAsLong();
+		removeExpired(now);
+		
+		StoredSearch search = searches.get(searchId);
+		if (search == null) {
+			misses++;
+			return null;
+		}
+		
+		hits++;
+		search.lastAccessed = now;
+		return search.bundleProvider;
+	}
+	
+	@Override
+	public synchronized SearchResultStoreStatistics getStatistics() {
+		long now = clock.getAsLong();
+		removeExpired(now);
+		
+		long oldestSearchAge = searches.values().stream().mapToLong(search -> now - search.created).max().orElse(0);
+		return new SearchResultStoreStatistics(searches.size(), oldestSearchAge, hits, misses, evictions, expirations);
+	}
+	
+	private void removeExpired(long now) {
+		Iterator<Map.Entry<String, StoredSearch>> iterator = searches.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (now - iterator.next().getValue().lastAccessed < timeToLive) {
+				// every later entry has been accessed more recently
+				break;
+			}
+			
+			iterator.remove();
+			expirations++;
+		}
+	}
+	
+	@AllArgsConstructor
+	private static class StoredSearch {
+		
+		private final IBundleProvider bundleProvider;
+		
+		private final long created;
+		
+		private long lastAccessed;
+	}
+}
@@ -10,7 +10,6 @@
 package org.openmrs.module.fhir2.api.search;
 
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
-import ca.uhn.fhir.rest.server.SimpleBundleProvider;
 import lombok.Setter;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.openmrs.Auditable;
@@ -40,19 +39,22 @@ public class SearchQuery<T extends OpenmrsObject & Auditable, U extends IBaseRes
 	 *
 	 * @param theParams search params.
 	 * @param dao generic dao
-	 * @param translator generic translator In case of $everything operation, package the results in
-	 *            SimpleBundleProvider to include count of _include and _revinclude resources in the
-	 *            total resources count and prevent paging
+	 * @param translator generic translator In case of $everything operation, the results are served by
+	 *            an {@link EverythingBundleProvider} so that the _revinclude resources are counted in
+	 *            the total and paged along with the matching resources, while each page carries the
+	 *            resources its matching resources _include, uncounted. Other searches
+	 *            honour the {@code _total} mode of the current request, see
+	 *            {@link SearchTotalModeHolder}
 	 * @return IBundleProvider
 	 */
 	public IBundleProvider getQueryResults(SearchParameterMap theParams, O dao, V translator, W searchQueryInclude) {
 		if (!theParams.getParameters(FhirConstants.EVERYTHING_SEARCH_HANDLER).isEmpty()) {
-			SimpleBundleProvider result = new SimpleBundleProvider(
-			        new SearchQueryBundleProvider<>(theParams, dao, translator, globalPropertyService, searchQueryInclude)
-			                .getAllResources());
-			
-			result.setPreferredPageSize(result.size());
-			return result;
+			return new EverythingBundleProvider<>(theParams, dao, translator, globalPropertyService,
+			        searchQueryInclude);
+		}
+		
+		if (theParams.getSearchTotalMode() == null) {
+			theParams.setSearchTotalMode(SearchTotalModeHolder.get());
 		}
 		
 		return new SearchQueryBundleProvider<>(theParams, dao, translator, globalPropertyService, searchQueryInclude);
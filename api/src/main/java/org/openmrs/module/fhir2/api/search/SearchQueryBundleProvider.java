@@ -19,7 +19,9 @@ import java.util.List;
 import java.util.Set;
 
 import ca.uhn.fhir.model.primitive.InstantDt;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.instance.model.api.IBaseResource;
@@ -29,23 +31,48 @@ import org.openmrs.OpenmrsObject;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
 import org.openmrs.module.fhir2.api.dao.FhirDao;
+import org.openmrs.module.fhir2.api.dao.internals.SearchShape;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.openmrs.module.fhir2.api.metrics.SlowSearchLog;
+import org.openmrs.module.fhir2.api.search.param.KeysetCursor;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.module.fhir2.api.translators.OpenmrsFhirTranslator;
 import org.openmrs.module.fhir2.api.util.FhirUtils;
+import org.springframework.aop.framework.AopProxyUtils;
 import org.springframework.transaction.annotation.Transactional;
 
+/**
+ * The {@link IBundleProvider} used for most FHIR searches. Results are fetched from the
+ * {@link FhirDao} one page at a time and translated to FHIR resources. <br/>
+ * When keyset pagination is enabled (via the {@link FhirConstants#OPENMRS_FHIR_KEYSET_PAGING}
+ * global property) and supported by the {@link FhirDao} for the current search, the links to
+ * subsequent pages carry an opaque page id identifying the last result of the current page rather
+ * than an offset, so that every page can be fetched as cheaply as the first. <br/>
+ * Searches sent with {@code _total=none} are never counted. Instead, one more result than needed is
+ * read for each page to tell whether there is a next page. With {@code _total=estimate}, the results
+ * are only counted up to the {@link FhirConstants#OPENMRS_FHIR_ESTIMATED_TOTAL_LIMIT} global
+ * property, and larger searches are treated as though {@code _total=none} had been sent.
+ */
 @Slf4j
-public class SearchQueryBundleProvider<T extends OpenmrsObject & Auditable, U extends IBaseResource> implements IBundleProvider, Serializable {
+public class SearchQueryBundleProvider<T extends OpenmrsObject & Auditable, U extends IBaseResource> implements KeysetBundleProvider, Serializable {
+	
+	private static final long serialVersionUID = 5L;
 	
-	private static final long serialVersionUID = 4L;
+	/**
+	 * The page id used for the first page of a search when paging using keyset pagination
+	 */
+	public static final String FIRST_PAGE_ID = "first";
 	
+	@Getter(AccessLevel.PACKAGE)
 	private final FhirDao<T> dao;
 	
 	@Getter
 	private final IPrimitiveType<Date> published;
 	
+	@Getter(AccessLevel.PACKAGE)
 	private final SearchParameterMap searchParameterMap;
 	
+	@Getter(AccessLevel.PACKAGE)
 	private final OpenmrsFhirTranslator<T, U> translator;
 	
 	@Getter
@@ -57,30 +84,74 @@ public class SearchQueryBundleProvider<T extends OpenmrsObject & Auditable, U ex
 	
 	private transient Integer size;
 	
+	private transient boolean sizeChecked;
+	
+	// the least number of results a search with _total=estimate has when there are too many to count
+	private transient Integer minimumSize;
+	
+	@Getter(AccessLevel.PACKAGE)
 	private final SearchQueryInclude<U> searchQueryInclude;
 	
+	private final KeysetCursor keysetCursor;
+	
+	private transient Boolean keysetPaging;
+	
+	private transient KeysetCursor nextKeysetCursor;
+	
 	public SearchQueryBundleProvider(SearchParameterMap searchParameterMap, FhirDao<T> dao,
 	    OpenmrsFhirTranslator<T, U> translator, FhirGlobalPropertyService globalPropertyService,
 	    SearchQueryInclude<U> searchQueryInclude) {
+		this(searchParameterMap, dao, translator, globalPropertyService, searchQueryInclude, FhirUtils.newUuid(),
+		        InstantDt.withCurrentTime(), null);
+	}
+	
+	private SearchQueryBundleProvider(SearchParameterMap searchParameterMap, FhirDao<T> dao,
+	    OpenmrsFhirTranslator<T, U> translator, FhirGlobalPropertyService globalPropertyService,
+	    SearchQueryInclude<U> searchQueryInclude, String uuid, IPrimitiveType<Date> published,
+	    KeysetCursor keysetCursor) {
 		this.dao = dao;
-		this.published = InstantDt.withCurrentTime();
+		this.published = published;
 		this.searchParameterMap = searchParameterMap;
 		this.translator = translator;
-		this.uuid = FhirUtils.newUuid();
+		this.uuid = uuid;
 		this.globalPropertyService = globalPropertyService;
 		this.searchQueryInclude = searchQueryInclude;
+		this.keysetCursor = keysetCursor;
+	}
+	
+	/**
+	 * Recreates the bundle provider for a search which was stored outside of the current JVM, e.g., by
+	 * the {@link DatabaseSearchResultStore}
+	 *
+	 * @param size the total number of results, if known, to avoid re-running the count query
+	 */
+	static <T extends OpenmrsObject & Auditable, U extends IBaseResource> SearchQueryBundleProvider<T, U> restore(
+	        SearchParameterMap searchParameterMap, FhirDao<T> dao, OpenmrsFhirTranslator<T, U> translator,
+	        FhirGlobalPropertyService globalPropertyService, SearchQueryInclude<U> searchQueryInclude, String uuid,
+	        Date published, Integer size) {
+		SearchQueryBundleProvider<T, U> result = new SearchQueryBundleProvider<>(searchParameterMap, dao, translator,
+		        globalPropertyService, searchQueryInclude, uuid, new InstantDt(published), null);
+		result.size = size;
+		return result;
 	}
 	
 	@Transactional(readOnly = true)
 	@Override
 	@Nonnull
 	public List<IBaseResource> getResources(int fromIndex, int toIndex) {
-		searchParameterMap.setFromIndex(fromIndex);
-		searchParameterMap.setToIndex(toIndex);
-		
-		List<U> resources = translator.toFhirResources(dao.getSearchResults(searchParameterMap));
-		
-		Set<IBaseResource> includedResources = searchQueryInclude.getIncludedResources(resources, this.searchParameterMap);
+		List<U> resources = null;
+		Set<IBaseResource> includedResources = null;
+		try {
+			resources = getPage(fromIndex, toIndex);
+			includedResources = searchQueryInclude.getIncludedResources(resources, this.searchParameterMap);
+		}
+		finally {
+			if (SlowSearchLog.isTraced()) {
+				SlowSearchLog.recordSearch(
+				    SearchShape.of(AopProxyUtils.ultimateTargetClass(dao), searchParameterMap),
+				    resources == null ? 0 : resources.size(), includedResources == null ? 0 : includedResources.size());
+			}
+		}
 		
 		List<IBaseResource> resultList = new ArrayList<>(resources.size() + includedResources.size());
 		resultList.addAll(resources);
@@ -89,6 +160,81 @@ public class SearchQueryBundleProvider<T extends OpenmrsObject & Auditable, U ex
 		return resultList;
 	}
 	
+	private List<U> getPage(int fromIndex, int toIndex) {
+		searchParameterMap.setFromIndex(fromIndex);
+		searchParameterMap.setToIndex(toIndex);
+		
+		List<T> results;
+		boolean findLastPage = size == null && !isTotalCounted();
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.QUERY)) {
+			// an offset into a search that was not resumed from a page id, e.g., when this provider is wrapped by
+			// another provider, can only be served using offset pagination
+			if (isKeysetPaging() && (keysetCursor != null || fromIndex <= 0)) {
+				searchParameterMap.setKeysetCursor(keysetCursor);
+				
+				KeysetPage<T> page = dao.getKeysetSearchResults(searchParameterMap);
+				nextKeysetCursor = page.getNextCursor();
+				results = page.getResults();
+			} else {
+				searchParameterMap.setKeysetCursor(null);
+				
+				if (findLastPage && toIndex != Integer.MAX_VALUE && toIndex >= fromIndex) {
+					// the extra result only tells us whether there is another page
+					searchParameterMap.setToIndex(toIndex + 1);
+					results = dao.getSearchResults(searchParameterMap);
+					searchParameterMap.setToIndex(toIndex);
+					
+					if (results.size() > toIndex - fromIndex) {
+						results = results.subList(0, toIndex - fromIndex);
+						if (minimumSize != null) {
+							minimumSize = Math.max(minimumSize, Math.max(fromIndex, 0) + results.size() + 1);
+						}
+					} else {
+						size = Math.max(fromIndex, 0) + results.size();
+					}
+				} else {
+					results = dao.getSearchResults(searchParameterMap);
+				}
+			}
+		}
+		FhirMetrics.recordRows(FhirMetrics.QUERY, results.size());
+		
+		try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.TRANSLATE)) {
+			return translator.toFhirResources(results);
+		}
+	}
+	
+	@Override
+	public String getCurrentPageId() {
+		if (!isKeysetPaging()) {
+			return null;
+		}
+		
+		return keysetCursor == null ? FIRST_PAGE_ID : keysetCursor.encode();
+	}
+	
+	@Override
+	public String getNextPageId() {
+		if (!isKeysetPaging() || nextKeysetCursor == null) {
+			return null;
+		}
+		
+		return nextKeysetCursor.encode();
+	}
+	
+	@Override
+	public IBundleProvider forPage(@Nonnull String pageId) {
+		KeysetCursor cursor = FIRST_PAGE_ID.equals(pageId) ? null : KeysetCursor.decode(pageId);
+		
+		SearchQueryBundleProvider<T, U> result = new SearchQueryBundleProvider<>(searchParameterMap, dao, translator,
+		        globalPropertyService, searchQueryInclude, uuid, published, cursor);
+		// the total does not depend on the page, so avoid re-running the count query for every page
+		result.size = size;
+		result.sizeChecked = sizeChecked;
+		result.minimumSize = minimumSize;
+		return result;
+	}
+	
 	@Override
 	public Integer preferredPageSize() {
 		if (pageSize == null) {
@@ -101,9 +247,70 @@ public class SearchQueryBundleProvider<T extends OpenmrsObject & Auditable, U ex
 	@Override
 	@Nullable
 	public Integer size() {
+		if (size == null && !sizeChecked) {
+			sizeChecked = true;
+			
+			SearchTotalModeEnum searchTotalMode = searchParameterMap.getSearchTotalMode();
+			if (searchTotalMode == SearchTotalModeEnum.ESTIMATED) {
+				int limit = globalPropertyService
+				        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_ESTIMATED_TOTAL_LIMIT, 1000);
+				try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.COUNT)) {
+					size = dao.getSearchResultsCount(searchParameterMap, limit);
+				}
+				
+				if (size == null) {
+					minimumSize = limit + 1;
+				}
+			} else if (searchTotalMode != SearchTotalModeEnum.NONE) {
+				try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.COUNT)) {
+					size = dao.getSearchResultsCount(searchParameterMap);
+				}
+			}
+		}
+		
+		recordMinimumSize();
+		return size;
+	}
+	
+	/**
+	 * When there are too many results to estimate the total, {@link #size()} returns {@code null} so
+	 * that HAPI keeps paging through the results, and the least number of results the search is known
+	 * to have is passed on to be reported as the total instead, see {@link SearchTotalModeHolder}
+	 */
+	private void recordMinimumSize() {
+		if (size == null && minimumSize != null) {
+			SearchTotalModeHolder.setMinimumTotal(minimumSize);
+		}
+	}
+	
+	/**
+	 * Unlike {@link #size()}, always works out the total, whatever {@code _total} mode was requested.
+	 * This is needed where the results of this search are paged together with those of another
+	 * search.
+	 *
+	 * @return the total number of results
+	 */
+	int getExactSize() {
 		if (size == null) {
-			size = dao.getSearchResultsCount(searchParameterMap);
+			try (FhirMetrics.Timer ignored = FhirMetrics.startTimer(FhirMetrics.COUNT)) {
+				size = dao.getSearchResultsCount(searchParameterMap);
+			}
 		}
 		return size;
 	}
+	
+	private boolean isTotalCounted() {
+		SearchTotalModeEnum searchTotalMode = searchParameterMap.getSearchTotalMode();
+		return searchTotalMode == null || searchTotalMode == SearchTotalModeEnum.ACCURATE;
+	}
+	
+	private boolean isKeysetPaging() {
+		if (keysetPaging == null) {
+			keysetPaging = Boolean.parseBoolean(
+			    globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_KEYSET_PAGING, "false"))
+			        && dao.supportsKeysetPagination(searchParameterMap);
+		}
+		
+		return keysetPaging;
+	}
 }
@@ -21,6 +21,8 @@ import java.util.Objects;
 import java.util.stream.Collectors;
 
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import lombok.AccessLevel;
+import lombok.Getter;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r4.model.Condition;
@@ -29,10 +31,11 @@ import org.hl7.fhir.r4.model.Task;
 import org.openmrs.module.fhir2.api.util.FhirUtils;
 import org.openmrs.module.fhir2.providers.util.TaskVersionConverter;
 
-public class SearchQueryBundleProviderR3Wrapper implements IBundleProvider, Serializable {
+public class SearchQueryBundleProviderR3Wrapper implements KeysetBundleProvider, Serializable {
 	
 	private static final long serialVersionUID = 1L;
 	
+	@Getter(AccessLevel.PACKAGE)
 	private final IBundleProvider bundleProvider;
 	
 	public SearchQueryBundleProviderR3Wrapper(IBundleProvider bundleProvider) {
@@ -54,6 +57,15 @@ public class SearchQueryBundleProviderR3Wrapper implements IBundleProvider, Seri
 		return bundleProvider.getPreviousPageId();
 	}
 	
+	@Override
+	public IBundleProvider forPage(@Nonnull String pageId) {
+		if (bundleProvider instanceof KeysetBundleProvider) {
+			return new SearchQueryBundleProviderR3Wrapper(((KeysetBundleProvider) bundleProvider).forPage(pageId));
+		}
+		
+		return this;
+	}
+	
 	@Override
 	public IPrimitiveType<Date> getPublished() {
 		return bundleProvider.getPublished();
@@ -9,9 +9,11 @@
  */
 package org.openmrs.module.fhir2.api.search;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 
@@ -25,4 +27,15 @@ public interface SearchQueryInclude<U extends IBaseResource> {
 	 * @return A {@link Set} of resources to be included
 	 */
 	Set<IBaseResource> getIncludedResources(List<U> resourceList, SearchParameterMap theParams);
+	
+	/**
+	 * Gets a bundle provider for each _revinclude of the FHIR Search query being run, so that the
+	 * resources which reference the results can be paged through rather than fetched all at once
+	 *
+	 * @param resourceIds The ids of the resources that are the result of the FHIR Search query being run
+	 * @param theParams The {@link SearchParameterMap} for the FHIR Search query being run
+	 * @return A {@link List} of bundle providers, one for each supported _revinclude, in the order of
+	 *         the _revinclude parameters
+	 */
+	List<IBundleProvider> getRevIncludedBundleProviders(Collection<String> resourceIds, SearchParameterMap theParams);
 }
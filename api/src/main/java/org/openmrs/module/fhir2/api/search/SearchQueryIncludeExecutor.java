@@ -0,0 +1,245 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import lombok.AccessLevel;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.Daemon;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.DaemonToken;
+import org.openmrs.module.fhir2.FhirActivator;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.SlowSearchLog;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Runs the independent branches of {@code _include} and {@code _revinclude} resolution, either one
+ * after another on the calling thread or concurrently on a bounded pool of threads, depending on the
+ * {@link FhirConstants#OPENMRS_FHIR_INCLUDE_PARALLELISM} global property. <br/>
+ * Each branch run on the pool gets its own session and read-only transaction. As a
+ * {@link UserContext} may not be shared between threads, each branch runs on a daemon thread which
+ * takes on the identity of the calling user, so that privilege checks behave as they would for the
+ * caller. The queries a branch runs are added to the caller's trace in the {@link SlowSearchLog}.
+ * Results are always returned in the order the branches were supplied, regardless of the order in
+ * which they complete.
+ */
+@Slf4j
+@Component
+public class SearchQueryIncludeExecutor {
+	
+	private static final int QUEUE_SIZE_PER_THREAD = 16;
+	
+	// how long the caller waits for all of its branches before giving up on them
+	private static final long TIMEOUT_SECONDS = 300;
+	
+	// set on the threads running a branch, so that includes resolved by the branch do not wait on the pool
+	private static final ThreadLocal<Boolean> IN_BRANCH = ThreadLocal.withInitial(() -> false);
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private PlatformTransactionManager transactionManager;
+	
+	private ThreadPoolExecutor executor;
+	
+	/**
+	 * Runs the supplied branches and returns their results
+	 *
+	 * @param branches the branches to run
+	 * @return the result of each branch, in the same order as the branches
+	 */
+	public <R> List<R> invokeAll(@Nonnull List<Supplier<R>> branches) {
+		List<R> results = new ArrayList<>(branches.size());
+		
+		String systemId = Context.isAuthenticated() ? Context.getAuthenticatedUser().getSystemId() : null;
+		ThreadPoolExecutor executor = branches.size() > 1 && !IN_BRANCH.get() && systemId != null ? getExecutor()
+		        : null;
+		if (executor == null) {
+			branches.forEach(branch -> results.add(branch.get()));
+			return results;
+		}
+		
+		Thread caller = Thread.currentThread();
+		
+		List<Future<R>> futures = new ArrayList<>(branches.size());
+		try {
+			for (Supplier<R> branch : branches) {
+				futures.add(executor.submit(toCallable(SlowSearchLog.traced(branch), caller, systemId)));
+			}
+			
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+			for (Future<R> future : futures) {
+				results.add(future.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS));
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InternalErrorException("Interrupted while resolving included resources", e);
+		}
+		catch (TimeoutException e) {
+			throw new InternalErrorException("Timed out while resolving included resources", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			
+			throw new InternalErrorException("Could not resolve included resources", e.getCause());
+		}
+		finally {
+			futures.forEach(future -> future.cancel(true));
+		}
+		
+		return results;
+	}
+	
+	/**
+	 * Stops the pool once the branches already submitted to it have run. Branches submitted to it
+	 * afterwards run on the thread which submits them.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+	
+	protected <R> Callable<R> toCallable(Supplier<R> branch, Thread caller, String systemId) {
+		return () -> {
+			// when the pool is saturated or stopped, the branch runs on the caller, which already has a session
+			if (Thread.currentThread() == caller) {
+				return branch.get();
+			}
+			
+			AtomicReference<R> result = new AtomicReference<>();
+			AtomicReference<RuntimeException> failure = new AtomicReference<>();
+			runAs(systemId, () -> {
+				IN_BRANCH.set(true);
+				try {
+					TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+					transactionTemplate.setReadOnly(true);
+					result.set(transactionTemplate.execute(status -> branch.get()));
+				}
+				catch (RuntimeException e) {
+					failure.set(e);
+				}
+				finally {
+					IN_BRANCH.remove();
+				}
+			});
+			
+			if (failure.get() != null) {
+				throw failure.get();
+			}
+			
+			return result.get();
+		};
+	}
+	
+	/**
+	 * Runs a branch as the user who requested it, on a daemon thread with a session and user context of
+	 * its own
+	 *
+	 * @param systemId the system id of the user who requested the branch
+	 * @param task the branch to run
+	 */
+	protected void runAs(@Nonnull String systemId, @Nonnull Runnable task) {
+		DaemonToken daemonToken = FhirActivator.getDaemonToken();
+		if (daemonToken == null) {
+			throw new IllegalStateException(
+			        "Includes cannot be resolved concurrently until the FHIR2 module has started");
+		}
+		
+		Daemon.runInDaemonThreadAndWait(() -> {
+			Context.becomeUser(systemId);
+			task.run();
+		}, daemonToken);
+	}
+	
+	protected synchronized ThreadPoolExecutor getExecutor() {
+		int parallelism = globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1);
+		if (parallelism <= 1) {
+			// the pool is kept, its threads stop once they have been idle for long enough
+			return null;
+		}
+		
+		if (executor == null) {
+			executor = new ThreadPoolExecutor(parallelism, parallelism, 60L, TimeUnit.SECONDS,
+			        new ArrayBlockingQueue<>(parallelism * QUEUE_SIZE_PER_THREAD), new IncludeThreadFactory(),
+			        new RunOnCallerPolicy());
+			executor.allowCoreThreadTimeOut(true);
+		} else if (executor.getMaximumPoolSize() != parallelism) {
+			log.debug("Resizing include pool from {} to {} threads", executor.getMaximumPoolSize(), parallelism);
+			// the pool is resized in place, so that the branches requests have already submitted to it still run
+			if (parallelism > executor.getMaximumPoolSize()) {
+				executor.setMaximumPoolSize(parallelism);
+				executor.setCorePoolSize(parallelism);
+			} else {
+				executor.setCorePoolSize(parallelism);
+				executor.setMaximumPoolSize(parallelism);
+			}
+		}
+		
+		return executor;
+	}
+	
+	/**
+	 * Runs rejected branches on the thread which submitted them. Unlike
+	 * {@link ThreadPoolExecutor.CallerRunsPolicy}, this also runs branches rejected because the pool has
+	 * been shut down, which would otherwise never complete.
+	 */
+	private static class RunOnCallerPolicy implements RejectedExecutionHandler {
+		
+		@Override
+		public void rejectedExecution(Runnable runnable, ThreadPoolExecutor executor) {
+			runnable.run();
+		}
+	}
+	
+	private static class IncludeThreadFactory implements ThreadFactory {
+		
+		private final AtomicInteger threadNumber = new AtomicInteger();
+		
+		@Override
+		public Thread newThread(@Nonnull Runnable runnable) {
+			Thread thread = new Thread(runnable, "fhir2-include-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
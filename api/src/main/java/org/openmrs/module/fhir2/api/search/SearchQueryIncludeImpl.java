@@ -10,6 +10,7 @@
 package org.openmrs.module.fhir2.api.search;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -17,6 +18,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 import ca.uhn.fhir.model.api.Include;
@@ -55,6 +57,7 @@ import org.openmrs.module.fhir2.api.FhirObservationService;
 import org.openmrs.module.fhir2.api.FhirPatientService;
 import org.openmrs.module.fhir2.api.FhirPractitionerService;
 import org.openmrs.module.fhir2.api.FhirServiceRequestService;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
 import org.openmrs.module.fhir2.api.search.param.DiagnosticReportSearchParams;
 import org.openmrs.module.fhir2.api.search.param.EncounterSearchParams;
 import org.openmrs.module.fhir2.api.search.param.FhirAllergyIntoleranceSearchParams;
@@ -115,45 +118,70 @@ public class SearchQueryIncludeImpl<U extends IBaseResource> implements SearchQu
 	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
 	private FhirMedicationDispenseService medicationDispenseService;
 	
-	@SuppressWarnings("unchecked")
+	@Getter(AccessLevel.PROTECTED)
+	@Setter(value = AccessLevel.PROTECTED, onMethod_ = @Autowired)
+	private SearchQueryIncludeExecutor includeExecutor;
+	
 	@Override
 	public Set<IBaseResource> getIncludedResources(List<U> resourceList, SearchParameterMap theParams) {
-		List<PropParam<Object>> includeParamList = theParams.getParameters(FhirConstants.INCLUDE_SEARCH_HANDLER);
-		List<PropParam<Object>> revIncludeParamList = theParams.getParameters(FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER);
+		Set<Include> includeSet = getIncludes(theParams, FhirConstants.INCLUDE_SEARCH_HANDLER);
+		Set<Include> revIncludeSet = getIncludes(theParams, FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER);
 		
-		Set<Include> includeSet = new LinkedHashSet<>(0);
-		Set<Include> revIncludeSet = new LinkedHashSet<>(0);
+		List<Supplier<Collection<? extends IBaseResource>>> branches = new ArrayList<>();
+		branches.addAll(getIncludeBranches(resourceList, includeSet));
+		branches.addAll(getRevIncludeBranches(resourceList, includeSet, revIncludeSet));
 		
-		if (CollectionUtils.isNotEmpty(includeParamList)) {
-			includeSet = (Set<Include>) includeParamList.get(0).getParam();
-		}
+		// the branches are independent of each other, so may be resolved concurrently
+		Set<IBaseResource> resourcesToBeReturned = new LinkedHashSet<>();
+		includeExecutor.invokeAll(branches).forEach(resourcesToBeReturned::addAll);
 		
-		if (CollectionUtils.isNotEmpty(revIncludeParamList)) {
-			revIncludeSet = (Set<Include>) revIncludeParamList.get(0).getParam();
+		return resourcesToBeReturned;
+	}
+	
+	@Override
+	public List<IBundleProvider> getRevIncludedBundleProviders(Collection<String> resourceIds,
+	        SearchParameterMap theParams) {
+		Set<Include> includeSet = getIncludes(theParams, FhirConstants.INCLUDE_SEARCH_HANDLER);
+		Set<Include> revIncludeSet = getIncludes(theParams, FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER);
+		
+		if (resourceIds.isEmpty() || revIncludeSet.isEmpty()) {
+			return Collections.emptyList();
 		}
 		
-		Set<? extends IBaseResource> _includeResources = handleInclude(resourceList, includeSet);
-		Set<? extends IBaseResource> _revIncludeResources = handleRevInclude(resourceList, includeSet, revIncludeSet);
+		ReferenceAndListParam referenceParams = toReferenceParams(resourceIds);
 		
-		Set<IBaseResource> resourcesToBeReturned = new LinkedHashSet<>();
-		resourcesToBeReturned.addAll(_includeResources);
-		resourcesToBeReturned.addAll(_revIncludeResources);
+		List<IBundleProvider> bundleProviders = new ArrayList<>(revIncludeSet.size());
+		revIncludeSet.forEach(revIncludeParam -> Optional
+		        .ofNullable(handleRevIncludeParam(includeSet, revIncludeSet, referenceParams, revIncludeParam))
+		        .ifPresent(bundleProviders::add));
 		
-		return resourcesToBeReturned;
+		return bundleProviders;
 	}
 	
-	protected Set<? extends IBaseResource> handleInclude(List<U> resourceList, Set<Include> includeSet) {
-		Set<IBaseResource> includedResourcesSet = new LinkedHashSet<>();
+	@SuppressWarnings("unchecked")
+	protected Set<Include> getIncludes(SearchParameterMap theParams, String key) {
+		List<PropParam<Object>> includeParamList = theParams.getParameters(key);
+		
+		if (CollectionUtils.isEmpty(includeParamList) || includeParamList.get(0).getParam() == null) {
+			return Collections.emptySet();
+		}
 		
+		return (Set<Include>) includeParamList.get(0).getParam();
+	}
+	
+	protected List<Supplier<Collection<? extends IBaseResource>>> getIncludeBranches(List<U> resourceList,
+	        Set<Include> includeSet) {
 		if (CollectionUtils.isEmpty(includeSet)) {
-			return includedResourcesSet;
+			return Collections.emptyList();
 		}
 		
-		includeSet.forEach((includeParam) -> {
-			Optional.ofNullable(handleIncludeParam(resourceList, includeParam)).ifPresent(includedResourcesSet::addAll);
-		});
+		List<Supplier<Collection<? extends IBaseResource>>> branches = new ArrayList<>(includeSet.size());
+		includeSet.forEach(includeParam -> branches.add(FhirMetrics.timed(FhirMetrics.INCLUDE, () -> {
+			Set<? extends IBaseResource> resources = handleIncludeParam(resourceList, includeParam);
+			return resources == null ? Collections.emptySet() : resources;
+		})));
 		
-		return includedResourcesSet;
+		return branches;
 	}
 	
 	protected Set<? extends IBaseResource> handleIncludeParam(List<U> resourceList, Include includeParam) {
@@ -190,29 +218,34 @@ public class SearchQueryIncludeImpl<U extends IBaseResource> implements SearchQu
 		return null;
 	}
 	
-	protected Set<IBaseResource> handleRevInclude(List<U> resourceList, Set<Include> includeSet,
-	        Set<Include> revIncludeSet) {
-		Set<IBaseResource> revIncludedResourcesSet = new LinkedHashSet<>();
-		
+	protected List<Supplier<Collection<? extends IBaseResource>>> getRevIncludeBranches(List<U> resourceList,
+	        Set<Include> includeSet, Set<Include> revIncludeSet) {
 		if (CollectionUtils.isEmpty(revIncludeSet)) {
-			return revIncludedResourcesSet;
+			return Collections.emptyList();
 		}
 		
-		ReferenceAndListParam referenceParams = new ReferenceAndListParam();
-		ReferenceOrListParam params = new ReferenceOrListParam();
-		resourceList.forEach(resource -> params.addOr(new ReferenceParam(resource.getIdElement().getIdPart())));
-		referenceParams.addAnd(params);
+		ReferenceAndListParam referenceParams = toReferenceParams(
+		    resourceList.stream().map(resource -> resource.getIdElement().getIdPart()).collect(Collectors.toList()));
 		
-		revIncludeSet.forEach(revIncludeParam -> {
+		List<Supplier<Collection<? extends IBaseResource>>> branches = new ArrayList<>(revIncludeSet.size());
+		revIncludeSet.forEach(revIncludeParam -> branches.add(FhirMetrics.timed(FhirMetrics.REVINCLUDE, () -> {
 			IBundleProvider bundleProvider = handleRevIncludeParam(includeSet, revIncludeSet, referenceParams,
 			    revIncludeParam);
 			
-			if (bundleProvider != null && !bundleProvider.isEmpty()) {
-				revIncludedResourcesSet.addAll(bundleProvider.getResources(0, -1));
+			if (bundleProvider == null || bundleProvider.isEmpty()) {
+				return Collections.emptyList();
 			}
-		});
+			
+			return bundleProvider.getResources(0, -1);
+		})));
 		
-		return revIncludedResourcesSet;
+		return branches;
+	}
+	
+	protected ReferenceAndListParam toReferenceParams(Collection<String> resourceIds) {
+		ReferenceOrListParam params = new ReferenceOrListParam();
+		resourceIds.forEach(resourceId -> params.addOr(new ReferenceParam(resourceId)));
+		return new ReferenceAndListParam().addAnd(params);
 	}
 	
 	protected IBundleProvider handleRevIncludeParam(Set<Include> includeSet, Set<Include> revIncludeSet,
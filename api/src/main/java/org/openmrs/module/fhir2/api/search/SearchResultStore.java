@@ -0,0 +1,43 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import javax.annotation.Nonnull;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+
+/**
+ * Stores the {@link IBundleProvider}s for searches whose results span more than one page so that
+ * later pages can be served. Implementations are expected to bound the number of searches they hold
+ * and to expire searches which have not been accessed recently.
+ */
+public interface SearchResultStore {
+	
+	/**
+	 * Stores the supplied search
+	 *
+	 * @param bundleProvider the bundle provider for the search
+	 * @return the id that can be used to retrieve the search
+	 */
+	String store(@Nonnull IBundleProvider bundleProvider);
+	
+	/**
+	 * Retrieves a previously stored search
+	 *
+	 * @param searchId the id returned when the search was stored
+	 * @return the bundle provider for the search or {@code null} if the search is unknown or has expired
+	 */
+	IBundleProvider retrieve(@Nonnull String searchId);
+	
+	/**
+	 * @return the current statistics for this store
+	 */
+	SearchResultStoreStatistics getStatistics();
+}
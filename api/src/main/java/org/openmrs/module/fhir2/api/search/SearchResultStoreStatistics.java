@@ -0,0 +1,67 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.Data;
+
+/**
+ * A point-in-time view of the state of a {@link SearchResultStore}
+ */
+@Data
+public class SearchResultStoreStatistics {
+	
+	/**
+	 * The number of searches currently held
+	 */
+	private final long size;
+	
+	/**
+	 * The age in milliseconds of the oldest search currently held or 0 if the store is empty
+	 */
+	private final long oldestSearchAge;
+	
+	/**
+	 * The number of stored searches which were found when requested
+	 */
+	private final long hits;
+	
+	/**
+	 * The number of requested searches which were either never stored or had already been removed
+	 */
+	private final long misses;
+	
+	/**
+	 * The number of searches removed to keep the store within its maximum size
+	 */
+	private final long evictions;
+	
+	/**
+	 * The number of searches removed because they were not accessed within the time to live
+	 */
+	private final long expirations;
+	
+	/**
+	 * @return these statistics keyed by the names of the metrics they are written as
+	 * @see org.openmrs.module.fhir2.api.metrics.FhirMetrics#registerStatistics
+	 */
+	public Map<String, Number> toMetrics() {
+		Map<String, Number> metrics = new LinkedHashMap<>();
+		metrics.put("fhir2_search_result_store_searches", size);
+		metrics.put("fhir2_search_result_store_oldest_search_age_seconds", oldestSearchAge / 1000.0);
+		metrics.put("fhir2_search_result_store_hits_total", hits);
+		metrics.put("fhir2_search_result_store_misses_total", misses);
+		metrics.put("fhir2_search_result_store_evictions_total", evictions);
+		metrics.put("fhir2_search_result_store_expirations_total", expirations);
+		return metrics;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
+
+/**
+ * Holds the value of the {@code _total} parameter sent with the request being handled by the
+ * current thread. The resource providers do not declare the parameter, so it is set by the REST
+ * layer for the duration of each request and picked up by {@link SearchQuery} when a search is
+ * run. <br/>
+ * It also holds the least number of results a search run with {@code _total=estimate} is known to
+ * have when it has too many results to count, so that the REST layer can report it as the total of
+ * the bundle without the paging of the search being limited to it.
+ */
+public final class SearchTotalModeHolder {
+	
+	private static final ThreadLocal<SearchTotalModeEnum> SEARCH_TOTAL_MODE = new ThreadLocal<>();
+	
+	private static final ThreadLocal<Integer> MINIMUM_TOTAL = new ThreadLocal<>();
+	
+	private SearchTotalModeHolder() {
+	}
+	
+	/**
+	 * @return the {@code _total} mode requested for the current request or {@code null} if none was
+	 *         requested
+	 */
+	public static SearchTotalModeEnum get() {
+		return SEARCH_TOTAL_MODE.get();
+	}
+	
+	public static void set(SearchTotalModeEnum searchTotalMode) {
+		if (searchTotalMode == null) {
+			SEARCH_TOTAL_MODE.remove();
+		} else {
+			SEARCH_TOTAL_MODE.set(searchTotalMode);
+		}
+	}
+	
+	/**
+	 * @return the least number of results the search run for the current request is known to have, or
+	 *         {@code null} if its total is known or was not estimated
+	 */
+	public static Integer getMinimumTotal() {
+		return MINIMUM_TOTAL.get();
+	}
+	
+	public static void setMinimumTotal(int minimumTotal) {
+		Integer current = MINIMUM_TOTAL.get();
+		MINIMUM_TOTAL.set(current == null ? minimumTotal : Math.max(current, minimumTotal));
+	}
+	
+	public static void clear() {
+		SEARCH_TOTAL_MODE.remove();
+		MINIMUM_TOTAL.remove();
+	}
+}
@@ -40,9 +40,9 @@ public class TwoSearchQueryBundleProvider implements IBundleProvider {
 	
 	private transient Integer count;
 	
-	private final int firstProviderSize;
+	private transient Integer firstProviderSize;
 	
-	private final int secondProviderSize;
+	private transient Integer secondProviderSize;
 	
 	@Getter
 	private final IPrimitiveType<Date> published;
@@ -57,8 +57,6 @@ public class TwoSearchQueryBundleProvider implements IBundleProvider {
 		this.published = InstantDt.withCurrentTime();
 		this.uuid = FhirUtils.newUuid();
 		this.globalPropertyService = globalPropertyService;
-		this.firstProviderSize = Optional.ofNullable(firstProvider.size()).orElse(Integer.MAX_VALUE);
-		this.secondProviderSize = Optional.ofNullable(secondProvider.size()).orElse(Integer.MAX_VALUE);
 	}
 	
 	@Transactional(readOnly = true)
@@ -78,6 +76,7 @@ public class TwoSearchQueryBundleProvider implements IBundleProvider {
 		// NPE-safe unboxing
 		int lastResult = Integer.MAX_VALUE;
 		lastResult = size == null ? lastResult : size;
+		int firstProviderSize = getFirstProviderSize();
 		
 		if (toIndex - firstResult > 0) {
 			lastResult = Math.min(lastResult, toIndex);
@@ -132,6 +131,8 @@ public class TwoSearchQueryBundleProvider implements IBundleProvider {
 	@Override
 	public Integer size() {
 		if (count == null) {
+			int firstProviderSize = getFirstProviderSize();
+			int secondProviderSize = getSecondProviderSize();
 			if (firstProviderSize == Integer.MAX_VALUE || secondProviderSize == Integer.MAX_VALUE) {
 				return Integer.MAX_VALUE;
 			} else {
@@ -146,4 +147,30 @@ public class TwoSearchQueryBundleProvider implements IBundleProvider {
 		
 		return count;
 	}
+	
+	private int getFirstProviderSize() {
+		if (firstProviderSize == null) {
+			firstProviderSize = getExactSize(firstProvider);
+		}
+		
+		return firstProviderSize;
+	}
+	
+	private int getSecondProviderSize() {
+		if (secondProviderSize == null) {
+			secondProviderSize = getExactSize(secondProvider);
+		}
+		
+		return secondProviderSize;
+	}
+	
+	// the results of both providers can only be paged together if we know where the first one ends, so
+	// the size is needed here even if the search was run with _total=none
+	private static int getExactSize(IBundleProvider provider) {
+		if (provider instanceof SearchQueryBundleProvider) {
+			return ((SearchQueryBundleProvider<?, ?>) provider).getExactSize();
+		}
+		
+		return Optional.ofNullable(provider.size()).orElse(Integer.MAX_VALUE);
+	}
 }
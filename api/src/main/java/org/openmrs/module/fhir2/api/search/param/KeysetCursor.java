@@ -0,0 +1,201 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search.param;
+
+import javax.annotation.Nonnull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.ToString;
+
+/**
+ * A {@code KeysetCursor} marks a position in an ordered search result for keyset (or "seek")
+ * pagination. It holds the values of every sort key of the last row of a page, the final key always
+ * being the id of the row, so that the following page can be fetched using a
+ * {@code (sortKey, id) > (?, ?)} predicate rather than an {@code OFFSET}. <br/>
+ * <br/>
+ * Cursors are exchanged with clients as opaque, URL-safe strings via {@link #encode()} and
+ * {@link #decode(String)}. The encoding is a simple typed binary format rather than Java
+ * serialization so that decoding a client-supplied value cannot instantiate arbitrary classes.
+ */
+@Getter
+@ToString
+@EqualsAndHashCode
+public class KeysetCursor implements Serializable {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final byte VERSION = 1;
+	
+	private static final byte TYPE_NULL = 0;
+	
+	private static final byte TYPE_INTEGER = 1;
+	
+	private static final byte TYPE_LONG = 2;
+	
+	private static final byte TYPE_STRING = 3;
+	
+	private static final byte TYPE_DATE = 4;
+	
+	private static final byte TYPE_DOUBLE = 5;
+	
+	private static final byte TYPE_BOOLEAN = 6;
+	
+	private static final byte TYPE_BIG_DECIMAL = 7;
+	
+	private final List<Object> sortKeys;
+	
+	public KeysetCursor(@Nonnull List<?> sortKeys) {
+		this.sortKeys = Collections.unmodifiableList(new ArrayList<>(sortKeys));
+	}
+	
+	/**
+	 * Creates a cursor from the trailing elements of a row returned by a query which selects a value
+	 * followed by each of the sort keys, i.e., {@code row[1..n]}.
+	 *
+	 * @param row the row to take the sort keys from
+	 * @return a cursor positioned at that row
+	 */
+	public static KeysetCursor fromRow(@Nonnull Object[] row) {
+		return new KeysetCursor(Arrays.asList(row).subList(1, row.length));
+	}
+	
+	/**
+	 * @return the number of sort keys held by this cursor
+	 */
+	public int size() {
+		return sortKeys.size();
+	}
+	
+	/**
+	 * Encodes this cursor as an opaque, URL-safe string suitable for use as a page id
+	 *
+	 * @return the encoded cursor
+	 * @throws IllegalStateException if one of the sort keys has a type that cannot be encoded
+	 */
+	public String encode() {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			out.writeShort(sortKeys.size());
+			for (Object key : sortKeys) {
+				writeKey(out, key);
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalStateException("Unable to encode keyset cursor", e);
+		}
+		
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+	}
+	
+	/**
+	 * Decodes a cursor previously produced by {@link #encode()}
+	 *
+	 * @param encoded the encoded cursor
+	 * @return the decoded cursor
+	 * @throws InvalidRequestException if the supplied value is not a valid cursor
+	 */
+	public static KeysetCursor decode(@Nonnull String encoded) {
+		byte[] bytes;
+		try {
+			bytes = Base64.getUrlDecoder().decode(encoded);
+		}
+		catch (IllegalArgumentException e) {
+			throw new InvalidRequestException("Invalid page id: " + encoded, e);
+		}
+		
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			if (in.readByte() != VERSION) {
+				throw new InvalidRequestException("Unsupported page id: " + encoded);
+			}
+			
+			int count = in.readUnsignedShort();
+			List<Object> keys = new ArrayList<>(count);
+			for (int i = 0; i < count; i++) {
+				keys.add(readKey(in));
+			}
+			
+			return new KeysetCursor(keys);
+		}
+		catch (IOException | NumberFormatException e) {
+			throw new InvalidRequestException("Invalid page id: " + encoded, e);
+		}
+	}
+	
+	private static void writeKey(DataOutputStream out, Object key) throws IOException {
+		if (key == null) {
+			out.writeByte(TYPE_NULL);
+		} else if (key instanceof Integer || key instanceof Short || key instanceof Byte) {
+			out.writeByte(TYPE_INTEGER);
+			out.writeInt(((Number) key).intValue());
+		} else if (key instanceof Long) {
+			out.writeByte(TYPE_LONG);
+			out.writeLong((Long) key);
+		} else if (key instanceof String) {
+			out.writeByte(TYPE_STRING);
+			out.writeUTF((String) key);
+		} else if (key instanceof Date) {
+			out.writeByte(TYPE_DATE);
+			out.writeLong(((Date) key).getTime());
+		} else if (key instanceof Double || key instanceof Float) {
+			out.writeByte(TYPE_DOUBLE);
+			out.writeDouble(((Number) key).doubleValue());
+		} else if (key instanceof Boolean) {
+			out.writeByte(TYPE_BOOLEAN);
+			out.writeBoolean((Boolean) key);
+		} else if (key instanceof BigDecimal) {
+			out.writeByte(TYPE_BIG_DECIMAL);
+			out.writeUTF(key.toString());
+		} else {
+			throw new IllegalStateException(
+			        "Cannot use a value of type " + key.getClass().getName() + " as a keyset pagination key");
+		}
+	}
+	
+	private static Object readKey(DataInputStream in) throws IOException {
+		byte type = in.readByte();
+		switch (type) {
+			case TYPE_NULL:
+				return null;
+			case TYPE_INTEGER:
+				return in.readInt();
+			case TYPE_LONG:
+				return in.readLong();
+			case TYPE_STRING:
+				return in.readUTF();
+			case TYPE_DATE:
+				return new Date(in.readLong());
+			case TYPE_DOUBLE:
+				return in.readDouble();
+			case TYPE_BOOLEAN:
+				return in.readBoolean();
+			case TYPE_BIG_DECIMAL:
+				return new BigDecimal(in.readUTF());
+			default:
+				throw new IOException("Unknown keyset key type " + type);
+		}
+	}
+}
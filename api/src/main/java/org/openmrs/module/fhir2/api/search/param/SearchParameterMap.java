@@ -18,6 +18,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
 import com.google.common.reflect.TypeToken;
 import lombok.AllArgsConstructor;
@@ -45,6 +46,22 @@ public class SearchParameterMap implements Serializable {
 	@Setter
 	private int toIndex = Integer.MAX_VALUE;
 	
+	/**
+	 * When set, searches using keyset pagination return the results following this position in the
+	 * result set instead of the results from {@link #getFromIndex()}
+	 */
+	@Getter
+	@Setter
+	private KeysetCursor keysetCursor;
+	
+	/**
+	 * How the total number of results should be worked out, as requested by the {@code _total}
+	 * parameter. When {@code null}, the total is counted exactly.
+	 */
+	@Getter
+	@Setter
+	private SearchTotalModeEnum searchTotalMode;
+	
 	private final Map<String, List<PropParam<?>>> params = new LinkedCaseInsensitiveMap<>();
 	
 	/**
@@ -105,6 +122,21 @@ public class SearchParameterMap implements Serializable {
 		return result;
 	}
 	
+	/**
+	 * Copies the parameters and sort order of this map, leaving out which page of results is wanted,
+	 * i.e., the {@link #getFromIndex()}, {@link #getToIndex()}, {@link #getKeysetCursor()} and
+	 * {@link #getSearchTotalMode()}
+	 *
+	 * @return A new {@link org.openmrs.module.fhir2.api.search.param.SearchParameterMap} for the same
+	 *         search
+	 */
+	public SearchParameterMap withoutPaging() {
+		SearchParameterMap result = new SearchParameterMap();
+		result.sortSpec = sortSpec;
+		params.forEach((key, value) -> result.params.put(key, new ArrayList<>(value)));
+		return result;
+	}
+	
 	/**
 	 * Sets {@link ca.uhn.fhir.rest.api.SortSpec}
 	 *
@@ -11,6 +11,9 @@ package org.openmrs.module.fhir2.api.translators;
 
 import javax.annotation.Nonnull;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.openmrs.module.fhir2.model.GroupMember;
 
 public interface GroupMemberTranslator extends OpenmrsFhirUpdatableTranslator<Integer, GroupMember> {
@@ -24,6 +27,15 @@ public interface GroupMemberTranslator extends OpenmrsFhirUpdatableTranslator<In
 	@Override
 	GroupMember toFhirResource(@Nonnull Integer patientId);
 	
+	/**
+	 * Maps OpenMRS patient ids to FHIR resources, loading all of the patients with a single query
+	 *
+	 * @param patientIds the OpenMRS patient ids to translate
+	 * @return the corresponding FHIR resources, in the order of the ids
+	 */
+	@Override
+	List<GroupMember> toFhirResources(Collection<Integer> patientIds);
+	
 	/**
 	 * Maps a FHIR resource to an OpenMRS data element
 	 *
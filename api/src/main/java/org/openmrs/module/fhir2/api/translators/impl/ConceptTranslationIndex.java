@@ -0,0 +1,475 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.translators.impl;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.event.spi.PostDeleteEvent;
+import org.hibernate.event.spi.PostInsertEvent;
+import org.hibernate.event.spi.PostUpdateEvent;
+import org.hibernate.persister.entity.EntityPersister;
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.Duration;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirConceptSourceService;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.internals.PostCommitListeners;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.openmrs.module.fhir2.model.FhirConceptSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Holds the codes each concept is translated to, keyed by concept id, so that translating a concept
+ * does not have to walk its mappings again. <br/>
+ * Entries are immutable and shared between threads, and each translation builds a new
+ * {@link CodeableConcept} from them, so nothing needs to be deep-copied. The index is bounded by the
+ * approximate memory its entries use, set in megabytes by
+ * {@link FhirConstants#OPENMRS_FHIR_CONCEPT_INDEX_MAX_MEMORY}, and can be filled when the module
+ * starts by setting {@link FhirConstants#OPENMRS_FHIR_CONCEPT_INDEX_PRELOAD} to true. <br/>
+ * A Hibernate listener drops the entry of a concept when the concept, one of its names or one of
+ * its mappings is committed, and drops every entry when a reference term, map type, concept source
+ * or FHIR concept source is committed. Changes made directly in the database, or by another server
+ * sharing it, are not seen.
+ */
+@Slf4j
+@Component
+public class ConceptTranslationIndex {
+	
+	private static final int DEFAULT_MAX_MEMORY = 16;
+	
+	private static final int PRELOAD_BATCH_SIZE = 500;
+	
+	private static final String SAME_AS = "SAME-AS";
+
+	private static final String STATISTICS_COMPONENT = "concept_translation_index";
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirConceptSourceService conceptSourceService;
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = { @Autowired, @Qualifier("sessionFactory") })
+	private SessionFactory sessionFactory;
+	
+	private volatile Configuration configuration = new Configuration(0, null);
+	
+	// the url of each concept source, keyed by the uuid of the concept source
+	private volatile Map<String, String> sourceUrls;
+	
+	// counts the changes seen, so that entries built while a change is committed are not kept
+	private long changeCount;
+	
+	@PostConstruct
+	public void registerListener() {
+		if (!PostCommitListeners.register(sessionFactory, new ConceptListener(this))) {
+			log.warn("Cannot listen for concept changes, so concept translations will not be indexed");
+			return;
+		}
+	}
+	
+	@PostConstruct
+	public void registerStatistics() {
+		FhirMetrics.registerCacheStatistics(STATISTICS_COMPONENT, this::getStats);
+	}
+	
+	@PreDestroy
+	public void unregisterStatistics() {
+		FhirMetrics.unregisterStatistics(STATISTICS_COMPONENT);
+	}
+	
+	/**
+	 * @param concept the concept to translate
+	 * @return the codes the concept is translated to, from the index if it holds them
+	 */
+	public Entry get(@Nonnull Concept concept) {
+		Cache<Integer, Entry> cache = getCache();
+		Integer conceptId = concept.getConceptId();
+		if (cache == null || conceptId == null) {
+			return buildEntry(concept, getSourceUrls());
+		}
+		
+		Entry entry = cache.getIfPresent(conceptId);
+		if (entry == null) {
+			long builtAt;
+			synchronized (this) {
+				builtAt = changeCount;
+			}
+			
+			entry = buildEntry(concept, getSourceUrls());
+			synchronized (this) {
+				if (changeCount == builtAt) {
+					cache.put(conceptId, entry);
+				}
+			}
+		}
+		
+		Locale locale = Context.getLocale();
+		return entry.getLocale().equals(locale) ? entry : entry.withDisplay(concept.getDisplayString(), locale);
+	}
+	
+	/**
+	 * Fills the index with the translations of concepts which are not retired, in order of concept id,
+	 * until it is full. This clears the current session after each batch of concepts, so it should only
+	 * be run in a session of its own.
+	 */
+	@Transactional(readOnly = true)
+	public void preload() {
+		Cache<Integer, Entry> cache = getCache();
+		if (cache == null) {
+			return;
+		}
+		
+		Session session = sessionFactory.getCurrentSession();
+		List<Integer> conceptIds = session
+		        .createQuery("select c.conceptId from Concept c where c.retired = false order by c.conceptId",
+		            Integer.class)
+		        .getResultList();
+		log.info("Preloading the translations of {} concepts", conceptIds.size());
+		
+		Map<String, String> sourceUrls = getSourceUrls();
+		for (int i = 0; i < conceptIds.size() && cache.stats().evictionCount() == 0; i += PRELOAD_BATCH_SIZE) {
+			List<Integer> batch = conceptIds.subList(i, Math.min(i + PRELOAD_BATCH_SIZE, conceptIds.size()));
+			// names and mappings are fetched separately, as fetching both multiplies the rows returned
+			session.createQuery("select distinct c from Concept c left join fetch c.names where c.conceptId in :ids",
+			    Concept.class).setParameter("ids", batch).getResultList();
+			List<Concept> concepts = session.createQuery("select distinct c from Concept c "
+			        + "left join fetch c.conceptMappings m left join fetch m.conceptReferenceTerm t "
+			        + "left join fetch t.conceptSource left join fetch m.conceptMapType where c.conceptId in :ids",
+			    Concept.class).setParameter("ids", batch).getResultList();
+			
+			for (Concept concept : concepts) {
+				long builtAt;
+				synchronized (this) {
+					builtAt = changeCount;
+				}
+				
+				Entry entry = buildEntry(concept, sourceUrls);
+				synchronized (this) {
+					if (changeCount == builtAt) {
+						cache.put(concept.getConceptId(), entry);
+					}
+				}
+			}
+			
+			session.clear();
+		}
+		
+		log.info("Preloaded the translations of {} concepts", cache.size());
+	}
+	
+	/**
+	 * @return true if {@link #preload()} should be run when the module starts
+	 */
+	public boolean isPreloadEnabled() {
+		return Boolean.parseBoolean(
+		    globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_CONCEPT_INDEX_PRELOAD, "false"));
+	}
+	
+	/**
+	 * @return the number of hits, misses and evictions since the index was last configured
+	 */
+	public CacheStats getStats() {
+		Cache<Integer, Entry> cache = configuration.cache;
+		return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+	}
+	
+	public synchronized void invalidate(Integer conceptId) {
+		changeCount++;
+		Cache<Integer, Entry> cache = configuration.cache;
+		if (cache != null && conceptId != null) {
+			cache.invalidate(conceptId);
+		}
+	}
+	
+	public synchronized void invalidateAll() {
+		changeCount++;
+		sourceUrls = null;
+		Cache<Integer, Entry> cache = configuration.cache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+	
+	private Map<String, String> getSourceUrls() {
+		Map<String, String> sourceUrls = this.sourceUrls;
+		if (sourceUrls == null) {
+			sourceUrls = toSourceUrls(conceptSourceService.getFhirConceptSources());
+			this.sourceUrls = sourceUrls;
+		}
+		
+		return sourceUrls;
+	}
+	
+	private Cache<Integer, Entry> getCache() {
+		int maxMemory = globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_CONCEPT_INDEX_MAX_MEMORY, DEFAULT_MAX_MEMORY);
+		
+		Configuration configuration = this.configuration;
+		if (configuration.maxMemory == maxMemory) {
+			return configuration.cache;
+		}
+		
+		synchronized (this) {
+			if (this.configuration.maxMemory != maxMemory) {
+				log.debug("Configuring concept translation index with a maximum size of {}MB", maxMemory);
+				this.configuration = new Configuration(maxMemory, maxMemory > 0 ? buildCache(maxMemory) : null);
+			}
+			
+			return this.configuration.cache;
+		}
+	}
+	
+	private static Cache<Integer, Entry> buildCache(int maxMemory) {
+		return CacheBuilder.newBuilder().maximumWeight(maxMemory * 1024L * 1024L)
+		        .weigher((Integer conceptId, Entry entry) -> entry.getWeight()).recordStats().build();
+	}
+	
+	/**
+	 * @param fhirConceptSources the configured FHIR concept sources
+	 * @return the url of each concept source, keyed by the uuid of the concept source
+	 */
+	static Map<String, String> toSourceUrls(Collection<FhirConceptSource> fhirConceptSources) {
+		Map<String, String> sourceUrls = new HashMap<>();
+		for (FhirConceptSource fhirConceptSource : fhirConceptSources) {
+			if (fhirConceptSource.getConceptSource() != null && fhirConceptSource.getUrl() != null) {
+				sourceUrls.putIfAbsent(fhirConceptSource.getConceptSource().getUuid(), fhirConceptSource.getUrl());
+			}
+		}
+		
+		return sourceUrls;
+	}
+	
+	/**
+	 * Works out the codes a concept is translated to. For each system, the concept is translated to
+	 * the code it is mapped to, if it has only one mapping to that system, or to the code of its
+	 * SAME-AS mapping.
+	 *
+	 * @param concept the concept to translate
+	 * @param sourceUrls the url of each concept source, keyed by the uuid of the concept source
+	 * @return the entry for the concept
+	 */
+	static Entry buildEntry(Concept concept, Map<String, String> sourceUrls) {
+		// map of <systemUrl, <mapType, code>>
+		// ie { "http://loinc.org" : { "SAME-AS" : "108-5", "NARROWER-THAN": "108-8" }}
+		Map<String, Map<String, String>> systemUrlToCodeMap = new LinkedHashMap<>();
+		for (ConceptMap mapping : concept.getConceptMappings()) {
+			ConceptMapType mapType = mapping.getConceptMapType();
+			ConceptReferenceTerm crt = mapping.getConceptReferenceTerm();
+			if (mapType != null && crt != null) {
+				boolean sameAs = mapType.getUuid() != null
+				        && mapType.getUuid().equals(ConceptMapType.SAME_AS_MAP_TYPE_UUID);
+				sameAs = sameAs || (mapType.getName() != null && mapType.getName().equalsIgnoreCase(SAME_AS));
+				String sourceUrl = getSourceUrl(crt.getConceptSource(), sourceUrls);
+				if (sourceUrl != null) {
+					systemUrlToCodeMap.computeIfAbsent(sourceUrl, k -> new HashMap<>())
+					        .put(sameAs ? SAME_AS : mapType.getName(), crt.getCode());
+				}
+			}
+		}
+		
+		List<Code> codes = new ArrayList<>(systemUrlToCodeMap.size());
+		systemUrlToCodeMap.forEach((systemUrl, mapTypeToCodeMap) -> {
+			if (mapTypeToCodeMap.size() == 1) {
+				codes.add(new Code(systemUrl, mapTypeToCodeMap.values().iterator().next()));
+			} else if (mapTypeToCodeMap.containsKey(SAME_AS)) {
+				codes.add(new Code(systemUrl, mapTypeToCodeMap.get(SAME_AS)));
+			}
+		});
+		
+		return new Entry(concept.getUuid(), concept.getDisplayString(), Context.getLocale(),
+		        Collections.unmodifiableList(codes));
+	}
+	
+	private static String getSourceUrl(ConceptSource conceptSource, Map<String, String> sourceUrls) {
+		if (conceptSource == null) {
+			return null;
+		}
+		
+		String sourceUrl = sourceUrls.get(conceptSource.getUuid());
+		if (sourceUrl == null && Duration.SNOMED_CT_CONCEPT_SOURCE_HL7_CODE.equals(conceptSource.getHl7Code())) {
+			sourceUrl = FhirConstants.SNOMED_SYSTEM_URI;
+		}
+		
+		return sourceUrl;
+	}
+	
+	/**
+	 * The translation of a concept: its uuid, its name in the locale the entry was built for, and the
+	 * code it is translated to in each system
+	 */
+	@Getter
+	@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+	public static final class Entry {
+		
+		// rough sizes, in bytes, of the objects making up an entry, excluding the system urls, which are shared
+		private static final int ENTRY_SIZE = 96;
+		
+		private static final int CODE_SIZE = 32;
+		
+		private static final int STRING_SIZE = 40;
+		
+		private final String uuid;
+		
+		private final String display;
+		
+		private final Locale locale;
+		
+		private final List<Code> codes;
+		
+		/**
+		 * @return a new {@link CodeableConcept} holding the uuid of the concept followed by its codes
+		 */
+		public CodeableConcept toCodeableConcept() {
+			CodeableConcept codeableConcept = new CodeableConcept();
+			codeableConcept.setText(display);
+			codeableConcept.addCoding().setCode(uuid).setDisplay(display);
+			for (Code code : codes) {
+				codeableConcept.addCoding().setSystem(code.getSystem()).setCode(code.getCode());
+			}
+			
+			return codeableConcept;
+		}
+		
+		Entry withDisplay(String display, Locale locale) {
+			return new Entry(uuid, display, locale, codes);
+		}
+		
+		int getWeight() {
+			int weight = ENTRY_SIZE + sizeOf(uuid) + sizeOf(display);
+			for (Code code : codes) {
+				weight += CODE_SIZE + sizeOf(code.getCode());
+			}
+			
+			return weight;
+		}
+		
+		private static int sizeOf(String value) {
+			return value == null ? 0 : STRING_SIZE + 2 * value.length();
+		}
+	}
+	
+	@Getter
+	@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+	public static final class Code {
+		
+		private final String system;
+		
+		private final String code;
+	}
+	
+	@RequiredArgsConstructor
+	private static final class Configuration {
+		
+		private final int maxMemory;
+		
+		private final Cache<Integer, Entry> cache;
+	}
+	
+	/**
+	 * Passes committed changes to concepts and their mappings to the index. The listener only holds the
+	 * index it was created for, and it is replaced by the listener of the next index if the module is
+	 * restarted.
+	 */
+	private static class ConceptListener implements PostCommitListeners.Listener {
+		
+		private static final long serialVersionUID = 1L;
+		
+		private final transient ConceptTranslationIndex index;
+		
+		private ConceptListener(ConceptTranslationIndex index) {
+			this.index = index;
+		}
+		
+		@Override
+		public void onPostInsert(PostInsertEvent event) {
+			onChange(event.getEntity());
+		}
+		
+		@Override
+		public void onPostUpdate(PostUpdateEvent event) {
+			onChange(event.getEntity());
+		}
+		
+		@Override
+		public void onPostDelete(PostDeleteEvent event) {
+			onChange(event.getEntity());
+		}
+		
+		@Override
+		public void onPostInsertCommitFailed(PostInsertEvent event) {
+		}
+		
+		@Override
+		public void onPostUpdateCommitFailed(PostUpdateEvent event) {
+		}
+		
+		@Override
+		public void onPostDeleteCommitFailed(PostDeleteEvent event) {
+		}
+		
+		@Override
+		public boolean requiresPostCommitHanding(EntityPersister persister) {
+			Class<?> entityClass = persister.getMappedClass();
+			return Concept.class.isAssignableFrom(entityClass) || ConceptName.class.isAssignableFrom(entityClass)
+			        || ConceptMap.class.isAssignableFrom(entityClass) || isSharedByConcepts(entityClass);
+		}
+		
+		private void onChange(Object entity) {
+			if (entity instanceof Concept) {
+				index.invalidate(((Concept) entity).getConceptId());
+			} else if (entity instanceof ConceptName && ((ConceptName) entity).getConcept() != null) {
+				index.invalidate(((ConceptName) entity).getConcept().getConceptId());
+			} else if (entity instanceof ConceptMap && ((ConceptMap) entity).getConcept() != null) {
+				index.invalidate(((ConceptMap) entity).getConcept().getConceptId());
+			} else if (entity != null && isSharedByConcepts(entity.getClass())) {
+				index.invalidateAll();
+			}
+		}
+		
+		private static boolean isSharedByConcepts(Class<?> entityClass) {
+			return ConceptReferenceTerm.class.isAssignableFrom(entityClass)
+			        || ConceptMapType.class.isAssignableFrom(entityClass)
+			        || ConceptSource.class.isAssignableFrom(entityClass)
+			        || FhirConceptSource.class.isAssignableFrom(entityClass);
+		}
+	}
+}
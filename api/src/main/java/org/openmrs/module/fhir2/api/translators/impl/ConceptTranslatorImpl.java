@@ -13,7 +13,6 @@ import static lombok.AccessLevel.PROTECTED;
 
 import javax.annotation.Nonnull;
 
-import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -29,23 +28,17 @@ import org.openmrs.ConceptMap;
 import org.openmrs.ConceptMapType;
 import org.openmrs.ConceptReferenceTerm;
 import org.openmrs.ConceptSource;
-import org.openmrs.Duration;
-import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.FhirConceptService;
 import org.openmrs.module.fhir2.api.FhirConceptSourceService;
+import org.openmrs.module.fhir2.api.dao.internals.ConceptCodeResolver;
 import org.openmrs.module.fhir2.api.translators.ConceptTranslator;
-import org.openmrs.module.fhir2.model.FhirConceptSource;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Component;
 
 @Component
 @Slf4j
 public class ConceptTranslatorImpl implements ConceptTranslator {
 	
-	private static final String CACHE_NAME = "fhir2ConceptToCodeableConcept";
-	
 	@Getter(PROTECTED)
 	@Setter(value = PROTECTED, onMethod_ = @Autowired)
 	private FhirConceptService conceptService;
@@ -54,8 +47,11 @@ public class ConceptTranslatorImpl implements ConceptTranslator {
 	@Setter(value = PROTECTED, onMethod_ = @Autowired)
 	private FhirConceptSourceService conceptSourceService;
 	
-	@Setter(value = PROTECTED, onMethod_ = { @Autowired(required = false) })
-	private CacheManager cacheManager;
+	@Setter(value = PROTECTED, onMethod_ = @Autowired)
+	private ConceptTranslationIndex conceptTranslationIndex;
+	
+	@Setter(value = PROTECTED, onMethod_ = @Autowired)
+	private ConceptCodeResolver conceptCodeResolver;
 	
 	@Override
 	public CodeableConcept toFhirResource(@Nonnull Concept concept) {
@@ -63,60 +59,15 @@ public class ConceptTranslatorImpl implements ConceptTranslator {
 			return null;
 		}
 		
-		Cache cache = cacheManager != null ? cacheManager.getCache(CACHE_NAME) : null;
-		if (cache != null) {
-			CodeableConcept cached = cache.get(concept, CodeableConcept.class);
-			if (cached != null) {
-				return cached.copy();
-			}
-		}
-		
-		CodeableConcept codeableConcept = buildCodeableConcept(concept);
-		
-		if (cache != null) {
-			cache.put(concept, codeableConcept);
-		}
-		
-		return codeableConcept.copy();
-	}
-	
-	private CodeableConcept buildCodeableConcept(Concept concept) {
-		Collection<FhirConceptSource> allFhirConceptSources = conceptSourceService.getFhirConceptSources();
-		CodeableConcept codeableConcept = new CodeableConcept();
-		codeableConcept.setText(concept.getDisplayString());
-		addConceptCoding(codeableConcept.addCoding(), null, concept.getUuid(), concept);
-		//map of <systemUrl ,<mapType , code>> ie { "http://loinc.org” : { "SAME-AS" : "108-5", "NARROWER-THAN": "108-8" }}
-		Map<String, Map<String, String>> systemUrlToCodeMap = new HashMap<>();
-		for (ConceptMap mapping : concept.getConceptMappings()) {
-			if (mapping.getConceptMapType() != null) {
-				ConceptMapType mapType = mapping.getConceptMapType();
-				boolean sameAs = mapType.getUuid() != null && mapType.getUuid().equals(ConceptMapType.SAME_AS_MAP_TYPE_UUID);
-				sameAs = sameAs || (mapType.getName() != null && mapType.getName().equalsIgnoreCase("SAME-AS"));
-				ConceptReferenceTerm crt = mapping.getConceptReferenceTerm();
-				String sourceUrl = getSourceUrl(crt.getConceptSource(), allFhirConceptSources);
-				if (sourceUrl != null) {
-					if (sameAs) {
-						addSystemToCodeMap(systemUrlToCodeMap, sourceUrl, "SAME-AS", crt.getCode());
-					} else {
-						addSystemToCodeMap(systemUrlToCodeMap, sourceUrl, mapType.getName(), crt.getCode());
-					}
-				}
-			}
+		ConceptTranslationIndex.Entry entry;
+		if (conceptTranslationIndex != null) {
+			entry = conceptTranslationIndex.get(concept);
+		} else {
+			entry = ConceptTranslationIndex.buildEntry(concept,
+			    ConceptTranslationIndex.toSourceUrls(conceptSourceService.getFhirConceptSources()));
 		}
 		
-		for (String systemUrl : systemUrlToCodeMap.keySet()) {
-			Map<String, String> mapTypeToCodeMap = systemUrlToCodeMap.get(systemUrl);
-			if (mapTypeToCodeMap != null) {
-				if (mapTypeToCodeMap.size() == 1) {
-					for (String mapType : mapTypeToCodeMap.keySet()) {
-						addConceptCoding(codeableConcept.addCoding(), systemUrl, mapTypeToCodeMap.get(mapType), concept);
-					}
-				} else if (mapTypeToCodeMap.size() > 1 && mapTypeToCodeMap.containsKey("SAME-AS")) {
-					addConceptCoding(codeableConcept.addCoding(), systemUrl, mapTypeToCodeMap.get("SAME-AS"), concept);
-				}
-			}
-		}
-		return codeableConcept;
+		return entry.toCodeableConcept();
 	}
 	
 	@Override
@@ -129,6 +80,15 @@ public class ConceptTranslatorImpl implements ConceptTranslator {
 						if (c != null) {
 							return c;
 						}
+					} else if (conceptCodeResolver != null && conceptCodeResolver.isEnabled()) {
+						Optional<Integer> conceptId = conceptCodeResolver.getConceptId(coding.getSystem(),
+						    coding.getCode());
+						if (conceptId.isPresent()) {
+							Concept c = conceptService.get(conceptId.get());
+							if (c != null) {
+								return c;
+							}
+						}
 					} else {
 						Optional<ConceptSource> conceptSource = conceptSourceService
 						        .getConceptSourceByUrl(coding.getSystem());
@@ -156,25 +116,6 @@ public class ConceptTranslatorImpl implements ConceptTranslator {
 		return null;
 	}
 	
-	private void addConceptCoding(Coding coding, String system, String code, Concept concept) {
-		coding.setSystem(system);
-		coding.setCode(code);
-		if (system == null) {
-			coding.setDisplay(concept.getDisplayString());
-		}
-	}
-	
-	private void addSystemToCodeMap(Map<String, Map<String, String>> systemUrlToCodeMap, String systemUrl, String mapType,
-	        String code) {
-		if (systemUrlToCodeMap.containsKey(systemUrl)) {
-			systemUrlToCodeMap.get(systemUrl).put(mapType, code);
-		} else {
-			Map<String, String> mapTypeToCodeMap = new HashMap<>();
-			mapTypeToCodeMap.put(mapType, code);
-			systemUrlToCodeMap.put(systemUrl, mapTypeToCodeMap);
-		}
-	}
-	
 	private void addConceptsToMap(Map<String, Concept> mapTypeToConceptMap, List<Concept> allMatchingConcepts,
 	        ConceptSource conceptSource, String code) {
 		allMatchingConcepts.forEach(concept -> {
@@ -194,23 +135,4 @@ public class ConceptTranslatorImpl implements ConceptTranslator {
 			}
 		});
 	}
-	
-	private String getSourceUrl(ConceptSource conceptSource, Collection<FhirConceptSource> fhirConceptSources) {
-		String sourceUrl = null;
-		if (conceptSource != null) {
-			FhirConceptSource fhirConceptSource = fhirConceptSources.stream().filter(fcs -> fcs.getConceptSource() != null)
-			        .filter(fcs -> fcs.getConceptSource().getUuid().equals(conceptSource.getUuid())).findFirst()
-			        .orElse(null);
-			
-			if (fhirConceptSource != null && fhirConceptSource.getUrl() != null) {
-				sourceUrl = fhirConceptSource.getUrl();
-			} else {
-				sourceUrl = Duration.SNOMED_CT_CONCEPT_SOURCE_HL7_CODE.equals(conceptSource.getHl7Code())
-				        ? FhirConstants.SNOMED_SYSTEM_URI
-				        : null;
-			}
-		}
-		
-		return sourceUrl;
-	}
 }
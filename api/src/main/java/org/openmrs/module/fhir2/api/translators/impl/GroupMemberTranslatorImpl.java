@@ -14,8 +14,17 @@ import static org.apache.commons.lang3.Validate.notNull;
 
 import javax.annotation.Nonnull;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
 import lombok.Getter;
 import lombok.Setter;
+import org.openmrs.Patient;
 import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
 import org.openmrs.module.fhir2.api.translators.GroupMemberTranslator;
 import org.openmrs.module.fhir2.api.translators.PatientReferenceTranslator;
@@ -40,6 +49,20 @@ public class GroupMemberTranslatorImpl implements GroupMemberTranslator {
 		return new GroupMember(patientReferenceTranslator.toFhirResource(patientDao.getPatientById(memberId)));
 	}
 	
+	@Override
+	public List<GroupMember> toFhirResources(Collection<Integer> patientIds) {
+		if (patientIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		
+		Map<Integer, Patient> patients = patientDao.getPatientsByIds(patientIds).stream()
+		        .collect(Collectors.toMap(Patient::getPatientId, Function.identity()));
+		
+		return patientIds.stream().distinct().map(patients::get).filter(Objects::nonNull)
+		        .map(patient -> new GroupMember(patientReferenceTranslator.toFhirResource(patient)))
+		        .collect(Collectors.toList());
+	}
+	
 	@Override
 	public Integer toOpenmrsType(@Nonnull GroupMember groupMember) {
 		notNull(groupMember, "GroupMember object cannot not be null");
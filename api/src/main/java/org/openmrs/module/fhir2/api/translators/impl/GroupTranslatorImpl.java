@@ -16,13 +16,19 @@ import static org.openmrs.module.fhir2.api.translators.impl.FhirTranslatorUtils.
 
 import javax.annotation.Nonnull;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.hl7.fhir.r4.model.Group;
 import org.openmrs.Cohort;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirGroupDao;
 import org.openmrs.module.fhir2.api.translators.GroupMemberTranslator;
 import org.openmrs.module.fhir2.api.translators.GroupTranslator;
 import org.openmrs.module.fhir2.model.GroupMember;
@@ -33,23 +39,58 @@ import org.springframework.stereotype.Component;
 @Component
 public class GroupTranslatorImpl extends BaseGroupTranslator implements GroupTranslator {
 	
+	private static final int DEFAULT_MEMBERS_LIMIT = 100;
+	
 	@Getter(PROTECTED)
 	@Setter(value = PROTECTED, onMethod_ = @Autowired)
 	private GroupMemberTranslator groupMemberTranslator;
 	
+	@Getter(PROTECTED)
+	@Setter(value = PROTECTED, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Getter(PROTECTED)
+	@Setter(value = PROTECTED, onMethod_ = @Autowired)
+	private FhirGroupDao groupDao;
+	
+	/**
+	 * Translates a cohort to a Group. Only the first members of the cohort, up to the limit set by
+	 * {@link FhirConstants#OPENMRS_FHIR_GROUP_MEMBERS_LIMIT}, are included; all of the members of large
+	 * cohorts can be paged through with the {@code $members} operation. The members of saved cohorts are
+	 * counted and fetched by the database, so that their memberships are not all loaded.
+	 */
 	@Override
 	public Group toFhirResource(@Nonnull Cohort cohort) {
 		notNull(cohort, "Cohort object should not be null");
 		Group group = super.toFhirResource(cohort);
 		
-		Set<Integer> memberIds = cohort.getMemberIds();
-		log.info("Number of members {} ", memberIds.size());
-		group.setQuantity(cohort.size());
-		memberIds.forEach(id -> {
-			Group.GroupMemberComponent groupMemberComponent = new Group.GroupMemberComponent();
-			groupMemberComponent.setEntity(groupMemberTranslator.toFhirResource(id).getEntity());
-			group.addMember(groupMemberComponent);
-		});
+		int memberCount;
+		Set<Integer> unsavedMemberIds = null;
+		if (cohort.getCohortId() == null) {
+			unsavedMemberIds = cohort.getMemberIds();
+			memberCount = unsavedMemberIds.size();
+		} else {
+			memberCount = groupDao.getMemberCount(cohort.getUuid());
+		}
+		
+		log.debug("Number of members {} ", memberCount);
+		group.setQuantity(memberCount);
+		
+		if (memberCount > 0) {
+			int membersLimit = Math.max(globalPropertyService.getGlobalPropertyAsInteger(
+			    FhirConstants.OPENMRS_FHIR_GROUP_MEMBERS_LIMIT, DEFAULT_MEMBERS_LIMIT), 0);
+			List<Integer> includedMemberIds;
+			if (unsavedMemberIds != null) {
+				includedMemberIds = unsavedMemberIds.stream().sorted().limit(membersLimit).collect(Collectors.toList());
+			} else if (membersLimit > 0) {
+				includedMemberIds = groupDao.getMemberIds(cohort.getUuid(), 0, membersLimit);
+			} else {
+				includedMemberIds = Collections.emptyList();
+			}
+			
+			groupMemberTranslator.toFhirResources(includedMemberIds).forEach(
+			    member -> group.addMember(new Group.GroupMemberComponent().setEntity(member.getEntity())));
+		}
 		
 		group.getMeta().setLastUpdated(getLastUpdated(cohort));
 		group.getMeta().setVersionId(getVersionId(cohort));
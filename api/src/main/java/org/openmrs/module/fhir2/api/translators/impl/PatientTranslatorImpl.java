@@ -25,6 +25,8 @@ import java.util.stream.Collectors;
 import lombok.Getter;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.hibernate.collection.spi.PersistentCollection;
 import org.hl7.fhir.exceptions.FHIRException;
 import org.hl7.fhir.r4.model.Address;
 import org.hl7.fhir.r4.model.BooleanType;
@@ -153,10 +155,28 @@ public class PatientTranslatorImpl implements PatientTranslator {
 			return Collections.emptyList();
 		}
 		
+		// when the attributes were fetched along with the page of patients, avoid another query per patient
+		Set<PersonAttribute> attributes = patient.getAttributes();
+		if (attributes instanceof PersistentCollection && Hibernate.isInitialized(attributes)) {
+			if (Boolean.TRUE.equals(patient.getPersonVoided())) {
+				return Collections.emptyList();
+			}
+			
+			return attributes.stream()
+			        .filter(attribute -> isActiveAttributeOfType(attribute, personContactAttributeType))
+			        .map(telecomTranslator::toFhirResource).collect(Collectors.toList());
+		}
+		
 		return fhirPersonDao.getActiveAttributesByPersonAndAttributeTypeUuid(patient, personContactAttributeType).stream()
 		        .map(telecomTranslator::toFhirResource).collect(Collectors.toList());
 	}
 	
+	private static boolean isActiveAttributeOfType(PersonAttribute attribute, String attributeTypeUuid) {
+		return !Boolean.TRUE.equals(attribute.getVoided()) && attribute.getAttributeType() != null
+		        && attributeTypeUuid.equals(attribute.getAttributeType().getUuid())
+		        && !Boolean.TRUE.equals(attribute.getAttributeType().getRetired());
+	}
+	
 	@Override
 	public org.openmrs.Patient toOpenmrsType(@Nonnull Patient fhirPatient) {
 		notNull(fhirPatient, "The Patient object should not be null");
@@ -0,0 +1,174 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.util;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import lombok.AccessLevel;
+import lombok.EqualsAndHashCode;
+import lombok.RequiredArgsConstructor;
+import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.hl7.fhir.instance.model.api.IAnyResource;
+import org.hl7.fhir.r4.model.Resource;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * A bounded cache of translated FHIR resources, keyed by the resource type, the uuid of the OpenMRS
+ * object and its version id, as returned by
+ * {@link org.openmrs.module.fhir2.api.translators.impl.FhirTranslatorUtils#getVersionId}. A read
+ * which finds the current version of an object here can skip loading and translating it. <br/>
+ * The cache is disabled unless {@link FhirConstants#OPENMRS_FHIR_RESOURCE_CACHE_MAX_SIZE} is set to
+ * a positive number. The version of an object only changes when the object itself is saved, so a
+ * resource which includes data from other objects, like the names of a patient, may be served
+ * stale until it expires after {@link FhirConstants#OPENMRS_FHIR_RESOURCE_CACHE_TIME_TO_LIVE}
+ * seconds. <br/>
+ * Resources are copied both when they are added and when they are returned, so callers are free to
+ * modify them.
+ */
+@Slf4j
+@Component
+public class TranslatedResourceCache {
+	
+	private static final int DEFAULT_TIME_TO_LIVE = 300;
+	
+	private static final String STATISTICS_COMPONENT = "translated_resource_cache";
+	
+	@Setter(value = AccessLevel.PACKAGE, onMethod_ = @Autowired)
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	private volatile Configuration configuration = new Configuration(0, 0, null);
+	
+	@PostConstruct
+	public void registerStatistics() {
+		FhirMetrics.registerCacheStatistics(STATISTICS_COMPONENT, this::getStats);
+	}
+	
+	@PreDestroy
+	public void unregisterStatistics() {
+		FhirMetrics.unregisterStatistics(STATISTICS_COMPONENT);
+	}
+	
+	/**
+	 * @return true if resources should be looked up in and added to this cache
+	 */
+	public boolean isEnabled() {
+		return getCache() != null;
+	}
+	
+	/**
+	 * @param resourceClass the type of the resource
+	 * @param uuid the uuid of the OpenMRS object the resource was translated from
+	 * @param versionId the current version id of the OpenMRS object
+	 * @return a copy of the cached resource, or {@code null} if this version has not been cached
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends IAnyResource> T get(@Nonnull Class<? super T> resourceClass, @Nonnull String uuid,
+	        @Nonnull String versionId) {
+		Cache<Key, Resource> cache = getCache();
+		if (cache == null) {
+			return null;
+		}
+		
+		Resource resource = cache.getIfPresent(new Key(resourceClass.getName(), uuid, versionId));
+		return resource == null ? null : (T) resource.copy();
+	}
+	
+	/**
+	 * Adds a translated resource to the cache. Resources which are not R4 resources are ignored.
+	 *
+	 * @param resourceClass the type of the resource
+	 * @param uuid the uuid of the OpenMRS object the resource was translated from
+	 * @param versionId the version id of the OpenMRS object the resource was translated from
+	 * @param resource the translated resource
+	 */
+	public <T extends IAnyResource> void put(@Nonnull Class<? super T> resourceClass, @Nonnull String uuid,
+	        @Nonnull String versionId, @Nonnull T resource) {
+		Cache<Key, Resource> cache = getCache();
+		if (cache != null && resource instanceof Resource) {
+			cache.put(new Key(resourceClass.getName(), uuid, versionId), ((Resource) resource).copy());
+		}
+	}
+	
+	/**
+	 * @return the number of hits, misses and evictions since the cache was last configured
+	 */
+	public CacheStats getStats() {
+		Cache<Key, Resource> cache = configuration.cache;
+		return cache == null ? new CacheStats(0, 0, 0, 0, 0, 0) : cache.stats();
+	}
+	
+	public void invalidateAll() {
+		Cache<Key, Resource> cache = configuration.cache;
+		if (cache != null) {
+			cache.invalidateAll();
+		}
+	}
+	
+	private Cache<Key, Resource> getCache() {
+		int maxSize = globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_RESOURCE_CACHE_MAX_SIZE, 0);
+		int timeToLive = globalPropertyService.getGlobalPropertyAsInteger(
+		    FhirConstants.OPENMRS_FHIR_RESOURCE_CACHE_TIME_TO_LIVE, DEFAULT_TIME_TO_LIVE);
+		
+		Configuration configuration = this.configuration;
+		if (configuration.maxSize == maxSize && configuration.timeToLive == timeToLive) {
+			return configuration.cache;
+		}
+		
+		synchronized (this) {
+			if (this.configuration.maxSize != maxSize || this.configuration.timeToLive != timeToLive) {
+				log.debug("Configuring translated resource cache with a maximum size of {} and time to live of {}s",
+				    maxSize, timeToLive);
+				this.configuration = new Configuration(maxSize, timeToLive,
+				        maxSize > 0 && timeToLive > 0 ? buildCache(maxSize, timeToLive) : null);
+			}
+			
+			return this.configuration.cache;
+		}
+	}
+	
+	private static Cache<Key, Resource> buildCache(int maxSize, int timeToLive) {
+		return CacheBuilder.newBuilder().maximumSize(maxSize).expireAfterWrite(timeToLive, TimeUnit.SECONDS)
+		        .recordStats().build();
+	}
+	
+	@RequiredArgsConstructor
+	private static final class Configuration {
+		
+		private final int maxSize;
+		
+		private final int timeToLive;
+		
+		private final Cache<Key, Resource> cache;
+	}
+	
+	@EqualsAndHashCode
+	@RequiredArgsConstructor
+	private static final class Key {
+		
+		private final String resourceType;
+		
+		private final String uuid;
+		
+		private final String versionId;
+	}
+}
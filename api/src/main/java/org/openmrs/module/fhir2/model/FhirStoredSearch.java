@@ -0,0 +1,72 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.model;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Lob;
+import javax.persistence.Table;
+
+import java.util.Date;
+
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.NoArgsConstructor;
+
+/**
+ * A search whose results span more than one page, persisted so that any node sharing the database
+ * can serve later pages. The search itself is recorded as the serialized
+ * {@link org.openmrs.module.fhir2.api.search.param.SearchParameterMap} together with the names of
+ * the Spring beans used to run it.
+ */
+@Data
+@NoArgsConstructor
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+@Entity
+@Table(name = "fhir_stored_search")
+public class FhirStoredSearch {
+	
+	@EqualsAndHashCode.Include
+	@Id
+	@GeneratedValue(strategy = GenerationType.AUTO)
+	@Column(name = "stored_search_id")
+	private Integer id;
+	
+	@Column(name = "search_id", nullable = false, unique = true, length = 38)
+	private String searchId;
+	
+	@Column(name = "fhir_version", nullable = false, length = 10)
+	private String fhirVersion;
+	
+	@Column(name = "dao_bean", nullable = false)
+	private String daoBean;
+	
+	@Column(name = "translator_bean", nullable = false)
+	private String translatorBean;
+	
+	@Column(name = "search_query_include_bean", nullable = false)
+	private String searchQueryIncludeBean;
+	
+	@Lob
+	@Column(name = "search_parameters", nullable = false)
+	private byte[] searchParameters;
+	
+	@Column(name = "total")
+	private Integer total;
+	
+	@Column(name = "date_created", nullable = false)
+	private Date dateCreated;
+	
+	@Column(name = "expiration_date", nullable = false)
+	private Date expirationDate;
+}
@@ -184,4 +184,33 @@ public class ObservationFhirResourceProvider implements IResourceProvider {
 		
 		return new SearchQueryBundleProviderR3Wrapper(observationService.getLastnEncountersObservations(max, searchParams));
 	}
+	
+	/**
+	 * The $lastn-patients operation fetches the most recent `N` observations for each code for each of
+	 * the specified patients, so the latest observations of many patients can be fetched at once.
+	 *
+	 * @param max The value of `N`, default value should be one
+	 * @param subjectParam The references to the patients
+	 * @param patientParam Another way to reference the patients
+	 * @param category The category to which the observation should belong
+	 * @param code The code(s) to which the observation should belong
+	 * @return a bundle of the most recent `N` observations for each code, grouped by patient
+	 */
+	@Operation(name = "lastn-patients", idempotent = true, type = Observation.class, bundleType = BundleTypeEnum.SEARCHSET)
+	public IBundleProvider getLastnPatientsObservations(@OperationParam(name = "max") NumberParam max,
+	        @OperationParam(name = Observation.SP_SUBJECT) ReferenceAndListParam subjectParam,
+	        @OperationParam(name = Observation.SP_PATIENT) ReferenceAndListParam patientParam,
+	        @OperationParam(name = Observation.SP_CATEGORY) TokenAndListParam category,
+	        @OperationParam(name = Observation.SP_CODE) TokenAndListParam code) {
+		if (patientParam != null) {
+			subjectParam = patientParam;
+		}
+		
+		ObservationSearchParams searchParams = new ObservationSearchParams();
+		searchParams.setPatient(subjectParam);
+		searchParams.setCategory(category);
+		searchParams.setCode(code);
+		
+		return new SearchQueryBundleProviderR3Wrapper(observationService.getLastnPatientsObservations(max, searchParams));
+	}
 }
@@ -0,0 +1,167 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.providers.r4;
+
+import static lombok.AccessLevel.PACKAGE;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.InternalErrorException;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import lombok.Setter;
+import org.apache.commons.lang3.StringUtils;
+import org.hl7.fhir.r4.model.InstantType;
+import org.hl7.fhir.r4.model.StringType;
+import org.openmrs.module.fhir2.api.FhirBulkExportService;
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Provides the system level FHIR bulk data {@code $export} operation, together with the operations
+ * used to poll an export, download its files and cancel it. The {@code $export} operations for
+ * patients and groups are provided by {@link PatientFhirResourceProvider} and
+ * {@link GroupFhirResourceProvider}.
+ */
+@Component("bulkExportFhirR4Provider")
+public class BulkExportFhirProvider {
+	
+	static final String PARAM_OUTPUT_FORMAT = "_outputFormat";
+	
+	static final String PARAM_JOB_ID = "_jobId";
+	
+	static final String PARAM_FILE = "_file";
+	
+	private static final Collection<String> OUTPUT_FORMATS = Arrays.asList(Constants.CT_FHIR_NDJSON,
+	    "application/ndjson", "ndjson");
+	
+	// how long, in seconds, clients are asked to wait before polling a running export again
+	private static final String RETRY_AFTER = "10";
+	
+	private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+	
+	@Setter(value = PACKAGE, onMethod_ = @Autowired)
+	private FhirBulkExportService bulkExportService;
+	
+	@Operation(name = "$export", idempotent = true, manualResponse = true)
+	public void export(@OperationParam(name = Constants.PARAM_TYPE) StringType type,
+	        @OperationParam(name = Constants.PARAM_SINCE) InstantType since,
+	        @OperationParam(name = PARAM_OUTPUT_FORMAT) StringType outputFormat, RequestDetails requestDetails,
+	        HttpServletResponse response) {
+		startExport(bulkExportService, BulkExportJob.Level.SYSTEM, null, type, since, outputFormat, requestDetails,
+		    response);
+	}
+	
+	@Operation(name = "$export-poll-status", idempotent = true, manualResponse = true)
+	public void exportPollStatus(@OperationParam(name = PARAM_JOB_ID, min = 1) StringType jobId,
+	        RequestDetails requestDetails, HttpServletResponse response) throws IOException {
+		BulkExportJob job = bulkExportService.getJob(jobId.getValue());
+		
+		switch (job.getStatus()) {
+			case ACCEPTED:
+			case IN_PROGRESS:
+				response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+				String progress = job.getCurrentResourceType() == null ? job.getStatus().name()
+				        : "Exporting " + job.getCurrentResourceType();
+				response.setHeader(Constants.HEADER_X_PROGRESS, progress);
+				response.setHeader(Constants.HEADER_RETRY_AFTER, RETRY_AFTER);
+				return;
+			case ERROR:
+				throw new InternalErrorException("Export " + job.getId() + " failed: " + job.getError());
+			case COMPLETE:
+				break;
+			default:
+				throw new ResourceNotFoundException("Could not find export with the id " + job.getId());
+		}
+		
+		String downloadUrl = requestDetails.getFhirServerBase() + "/$export-download?" + PARAM_JOB_ID + "="
+		        + job.getId() + "&" + PARAM_FILE + "=";
+		
+		ObjectNode manifest = OBJECT_MAPPER.createObjectNode();
+		manifest.put("transactionTime", new InstantType(job.getTransactionTime()).getValueAsString());
+		manifest.put("request", job.getRequest());
+		manifest.put("requiresAccessToken", true);
+		addOutputs(manifest.putArray("output"), job.getOutputs(), downloadUrl);
+		addOutputs(manifest.putArray("error"), job.getErrors(), downloadUrl);
+		
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(Constants.CT_JSON + Constants.CHARSET_UTF8_CTSUFFIX);
+		OBJECT_MAPPER.writeValue(response.getOutputStream(), manifest);
+	}
+	
+	@Operation(name = "$export-download", idempotent = true, manualResponse = true)
+	public void exportDownload(@OperationParam(name = PARAM_JOB_ID, min = 1) StringType jobId,
+	        @OperationParam(name = PARAM_FILE, min = 1) StringType file, HttpServletResponse response)
+	        throws IOException {
+		Path path = bulkExportService.getOutputFile(jobId.getValue(), file.getValue());
+		
+		response.setStatus(HttpServletResponse.SC_OK);
+		response.setContentType(Constants.CT_FHIR_NDJSON + Constants.CHARSET_UTF8_CTSUFFIX);
+		response.setContentLengthLong(Files.size(path));
+		try (OutputStream out = response.getOutputStream()) {
+			Files.copy(path, out);
+		}
+	}
+	
+	@Operation(name = "$export-cancel", manualResponse = true)
+	public void exportCancel(@OperationParam(name = PARAM_JOB_ID, min = 1) StringType jobId,
+	        HttpServletResponse response) {
+		bulkExportService.deleteJob(jobId.getValue());
+		response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+	}
+	
+	/**
+	 * Validates the parameters of an {@code $export} request and starts the export, responding with
+	 * the location to poll for its status
+	 */
+	static void startExport(FhirBulkExportService bulkExportService, BulkExportJob.Level level, String groupId,
+	        StringType type, InstantType since, StringType outputFormat, RequestDetails requestDetails,
+	        HttpServletResponse response) {
+		if (outputFormat != null && outputFormat.hasValue() && !OUTPUT_FORMATS.contains(outputFormat.getValue())) {
+			throw new InvalidRequestException("Unsupported " + PARAM_OUTPUT_FORMAT + ": " + outputFormat.getValue());
+		}
+		
+		Collection<String> resourceTypes = null;
+		if (type != null && type.hasValue()) {
+			resourceTypes = Arrays.stream(type.getValue().split(",")).map(String::trim).filter(StringUtils::isNotBlank)
+			        .collect(Collectors.toList());
+		}
+		
+		BulkExportJob job = bulkExportService.startExport(level, groupId, resourceTypes,
+		    since == null ? null : since.getValue(), requestDetails.getCompleteUrl());
+		
+		response.setStatus(Constants.STATUS_HTTP_202_ACCEPTED);
+		response.setHeader(Constants.HEADER_CONTENT_LOCATION,
+		    requestDetails.getFhirServerBase() + "/$export-poll-status?" + PARAM_JOB_ID + "=" + job.getId());
+	}
+	
+	private static void addOutputs(ArrayNode array, Collection<BulkExportJob.Output> outputs, String downloadUrl) {
+		for (BulkExportJob.Output output : outputs) {
+			array.addObject().put("type", output.getType()).put("url", downloadUrl + output.getFileName()).put("count",
+			    output.getCount());
+		}
+	}
+}
@@ -13,18 +13,22 @@ import static lombok.AccessLevel.PACKAGE;
 import static lombok.AccessLevel.PROTECTED;
 
 import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
 
 import ca.uhn.fhir.rest.annotation.Create;
 import ca.uhn.fhir.rest.annotation.Delete;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Read;
 import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
 import ca.uhn.fhir.rest.param.ReferenceAndListParam;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
@@ -34,11 +38,15 @@ import lombok.Setter;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.r4.model.Group;
 import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Practitioner;
+import org.hl7.fhir.r4.model.StringType;
+import org.openmrs.module.fhir2.api.FhirBulkExportService;
 import org.openmrs.module.fhir2.api.FhirGroupMemberService;
 import org.openmrs.module.fhir2.api.FhirGroupService;
 import org.openmrs.module.fhir2.api.annotations.R4Provider;
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
 import org.openmrs.module.fhir2.providers.util.FhirProviderUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -55,6 +63,9 @@ public class GroupFhirResourceProvider implements IResourceProvider {
 	@Setter(value = PACKAGE, onMethod_ = @Autowired)
 	private FhirGroupMemberService groupMemberService;
 	
+	@Setter(value = PACKAGE, onMethod_ = @Autowired)
+	private FhirBulkExportService bulkExportService;
+	
 	@Override
 	public Class<? extends IBaseResource> getResourceType() {
 		return Group.class;
@@ -103,6 +114,16 @@ public class GroupFhirResourceProvider implements IResourceProvider {
 		return groupMemberService.getGroupMembers(groupId.getIdPart());
 	}
 	
+	@Operation(name = "$export", idempotent = true, manualResponse = true)
+	public void exportGroup(@IdParam @Nonnull IdType groupId,
+	        @OperationParam(name = Constants.PARAM_TYPE) StringType type,
+	        @OperationParam(name = Constants.PARAM_SINCE) InstantType since,
+	        @OperationParam(name = BulkExportFhirProvider.PARAM_OUTPUT_FORMAT) StringType outputFormat,
+	        RequestDetails requestDetails, HttpServletResponse response) {
+		BulkExportFhirProvider.startExport(bulkExportService, BulkExportJob.Level.GROUP, groupId.getIdPart(), type,
+		    since, outputFormat, requestDetails, response);
+	}
+	
 	@Search
 	@SuppressWarnings("unused")
 	public IBundleProvider searchForGroups(@OptionalParam(name = Group.SP_MANAGING_ENTITY, chainWhitelist = { "",
@@ -13,6 +13,7 @@ import static lombok.AccessLevel.PACKAGE;
 import static lombok.AccessLevel.PROTECTED;
 
 import javax.annotation.Nonnull;
+import javax.servlet.http.HttpServletResponse;
 
 import java.util.HashSet;
 
@@ -23,6 +24,7 @@ import ca.uhn.fhir.rest.annotation.Delete;
 import ca.uhn.fhir.rest.annotation.IdParam;
 import ca.uhn.fhir.rest.annotation.IncludeParam;
 import ca.uhn.fhir.rest.annotation.Operation;
+import ca.uhn.fhir.rest.annotation.OperationParam;
 import ca.uhn.fhir.rest.annotation.OptionalParam;
 import ca.uhn.fhir.rest.annotation.Patch;
 import ca.uhn.fhir.rest.annotation.Read;
@@ -30,6 +32,7 @@ import ca.uhn.fhir.rest.annotation.ResourceParam;
 import ca.uhn.fhir.rest.annotation.Search;
 import ca.uhn.fhir.rest.annotation.Sort;
 import ca.uhn.fhir.rest.annotation.Update;
+import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.MethodOutcome;
 import ca.uhn.fhir.rest.api.PatchTypeEnum;
 import ca.uhn.fhir.rest.api.SortSpec;
@@ -51,15 +54,19 @@ import org.hl7.fhir.r4.model.AllergyIntolerance;
 import org.hl7.fhir.r4.model.DiagnosticReport;
 import org.hl7.fhir.r4.model.Encounter;
 import org.hl7.fhir.r4.model.IdType;
+import org.hl7.fhir.r4.model.InstantType;
 import org.hl7.fhir.r4.model.MedicationDispense;
 import org.hl7.fhir.r4.model.MedicationRequest;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.hl7.fhir.r4.model.Patient;
 import org.hl7.fhir.r4.model.ServiceRequest;
+import org.hl7.fhir.r4.model.StringType;
 import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirBulkExportService;
 import org.openmrs.module.fhir2.api.FhirPatientService;
 import org.openmrs.module.fhir2.api.annotations.R4Provider;
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
 import org.openmrs.module.fhir2.api.search.param.OpenmrsPatientSearchParams;
 import org.openmrs.module.fhir2.api.search.param.PatientSearchParams;
 import org.openmrs.module.fhir2.providers.util.FhirProviderUtils;
@@ -74,6 +81,9 @@ public class PatientFhirResourceProvider implements IResourceProvider {
 	@Setter(value = PACKAGE, onMethod_ = @Autowired)
 	private FhirPatientService patientService;
 	
+	@Setter(value = PACKAGE, onMethod_ = @Autowired)
+	private FhirBulkExportService bulkExportService;
+	
 	@Override
 	public Class<? extends IBaseResource> getResourceType() {
 		return Patient.class;
@@ -184,7 +194,7 @@ public class PatientFhirResourceProvider implements IResourceProvider {
 	
 	/**
 	 * The $everything operation fetches all the information related the specified patient
-	 * 
+	 *
 	 * @param patientId The id of the patient
 	 * @return a bundle of resources which reference to or are referenced from the patient
 	 */
@@ -209,4 +219,20 @@ public class PatientFhirResourceProvider implements IResourceProvider {
 	public IBundleProvider getPatientEverything() {
 		return patientService.getPatientEverything();
 	}
+	
+	/**
+	 * The $export operation starts a bulk data export of the resources of all patients
+	 *
+	 * @param type the resource types to export, separated by commas
+	 * @param since if set, only resources changed after this time are exported
+	 * @param outputFormat the format of the exported files, which must be NDJSON
+	 */
+	@Operation(name = "$export", idempotent = true, type = Patient.class, manualResponse = true)
+	public void exportPatients(@OperationParam(name = Constants.PARAM_TYPE) StringType type,
+	        @OperationParam(name = Constants.PARAM_SINCE) InstantType since,
+	        @OperationParam(name = BulkExportFhirProvider.PARAM_OUTPUT_FORMAT) StringType outputFormat,
+	        RequestDetails requestDetails, HttpServletResponse response) {
+		BulkExportFhirProvider.startExport(bulkExportService, BulkExportJob.Level.PATIENT, null, type, since,
+		    outputFormat, requestDetails, response);
+	}
 }
@@ -10,6 +10,8 @@
 package org.openmrs.module.fhir2.api.dao.impl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
@@ -33,6 +35,8 @@ public class FhirGroupDaoImplTest extends BaseFhirContextSensitiveTest {
 	
 	private static final String COHORT_INITIAL_DATA_XML = "org/openmrs/module/fhir2/api/dao/impl/FhirCohortDaoImplTest_initial_data.xml";
 	
+	private static final String COHORT_MEMBERS_DATA_XML = "org/openmrs/module/fhir2/api/dao/impl/FhirGroupDaoImplTest_members.xml";
+	
 	private static final String COHORT_NAME = "Covid19 patients";
 	
 	private FhirGroupDaoImpl dao;
@@ -94,6 +98,16 @@ public class FhirGroupDaoImplTest extends BaseFhirContextSensitiveTest {
 		assertThat(result.getVoidReason(), equalTo("Voided via FHIR API"));
 	}
 	
+	@Test
+	public void getMemberIds_shouldReturnPagesOfActiveMembersOrderedByPatientId() throws Exception {
+		executeDataSet(COHORT_MEMBERS_DATA_XML);
+		
+		assertThat(dao.getMemberCount(COHORT_UUID), equalTo(3));
+		assertThat(dao.getMemberIds(COHORT_UUID, 0, 2), contains(2, 4));
+		assertThat(dao.getMemberIds(COHORT_UUID, 2, 2), contains(6));
+		assertThat(dao.getMemberIds(BAD_COHORT_UUID, 0, 2), empty());
+	}
+	
 	@Test
 	public void shouldReturnNullIfGroupToDeleteDoesNotExist() {
 		Cohort result = dao.delete(BAD_COHORT_UUID);
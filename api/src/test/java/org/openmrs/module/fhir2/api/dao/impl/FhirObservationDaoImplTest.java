@@ -10,16 +10,32 @@
 package org.openmrs.module.fhir2.api.dao.impl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
 import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 import static org.openmrs.util.PrivilegeConstants.GET_OBS;
 
+import java.sql.DatabaseMetaData;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
+import ca.uhn.fhir.rest.param.NumberParam;
+import ca.uhn.fhir.rest.param.ReferenceAndListParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringParam;
 import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
 import ca.uhn.fhir.rest.param.TokenParam;
 import org.junit.Before;
 import org.junit.Test;
@@ -31,6 +47,7 @@ import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.dao.FhirObservationDao;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
 
 public class FhirObservationDaoImplTest extends BaseFhirContextSensitiveTest {
 	
@@ -42,6 +59,8 @@ public class FhirObservationDaoImplTest extends BaseFhirContextSensitiveTest {
 	
 	private static final String OBS_CONCEPT_ID = "5089";
 	
+	private static final String PATIENT_UUID = "5946f880-b197-400b-9caa-a3c661d23041";
+	
 	@Autowired
 	private FhirObservationDao dao;
 	
@@ -106,6 +125,128 @@ public class FhirObservationDaoImplTest extends BaseFhirContextSensitiveTest {
 		}
 	}
 	
+	@Test
+	public void getSearchResults_shouldReturnTheSameLastnResultsWithAndWithoutWindowFunctions() {
+		FhirObservationDaoImpl daoImpl = AopTestUtils.getUltimateTargetObject(dao);
+		boolean windowFunctionsSupported = daoImpl.isWindowFunctionsSupported();
+		try {
+			daoImpl.setWindowFunctionsSupported(true);
+			List<String> ranked = dao.getSearchResults(lastnSearchParams()).stream().map(Obs::getUuid)
+			        .collect(Collectors.toList());
+			int rankedCount = dao.getSearchResultsCount(lastnSearchParams());
+			
+			daoImpl.setWindowFunctionsSupported(false);
+			List<String> inMemory = dao.getSearchResults(lastnSearchParams()).stream().map(Obs::getUuid)
+			        .collect(Collectors.toList());
+			int inMemoryCount = dao.getSearchResultsCount(lastnSearchParams());
+			
+			assertThat(ranked.size(), equalTo(16));
+			assertThat(ranked, equalTo(inMemory));
+			assertThat(rankedCount, equalTo(inMemoryCount));
+		}
+		finally {
+			daoImpl.setWindowFunctionsSupported(windowFunctionsSupported);
+		}
+	}
+	
+	@Test
+	public void getSearchResults_shouldReturnTheSameLastnPatientsResultsWithAndWithoutWindowFunctions() {
+		FhirObservationDaoImpl daoImpl = AopTestUtils.getUltimateTargetObject(dao);
+		boolean windowFunctionsSupported = daoImpl.isWindowFunctionsSupported();
+		try {
+			daoImpl.setWindowFunctionsSupported(true);
+			List<String> ranked = dao.getSearchResults(lastnPatientsSearchParams()).stream().map(Obs::getUuid)
+			        .collect(Collectors.toList());
+			int rankedCount = dao.getSearchResultsCount(lastnPatientsSearchParams());
+			
+			daoImpl.setWindowFunctionsSupported(false);
+			List<String> inMemory = dao.getSearchResults(lastnPatientsSearchParams()).stream().map(Obs::getUuid)
+			        .collect(Collectors.toList());
+			int inMemoryCount = dao.getSearchResultsCount(lastnPatientsSearchParams());
+			
+			assertThat(ranked.size(), equalTo(16));
+			assertThat(ranked, equalTo(inMemory));
+			assertThat(rankedCount, equalTo(inMemoryCount));
+		}
+		finally {
+			daoImpl.setWindowFunctionsSupported(windowFunctionsSupported);
+		}
+	}
+	
+	@Test
+	public void getSearchResults_shouldRankLastnResultsFilteredByCodeWithWindowFunctions() {
+		FhirObservationDaoImpl daoImpl = AopTestUtils.getUltimateTargetObject(dao);
+		boolean windowFunctionsSupported = daoImpl.isWindowFunctionsSupported();
+		try {
+			daoImpl.setWindowFunctionsSupported(true);
+			Optional<List<Obs>> ranked = daoImpl.getRankedLastnSearchResults(lastnCodeSearchParams());
+			
+			daoImpl.setWindowFunctionsSupported(false);
+			List<String> inMemory = dao.getSearchResults(lastnCodeSearchParams()).stream().map(Obs::getUuid)
+			        .collect(Collectors.toList());
+			
+			assertThat(ranked.isPresent(), is(true));
+			assertThat(inMemory, not(empty()));
+			assertThat(ranked.get().stream().map(Obs::getUuid).collect(Collectors.toList()), equalTo(inMemory));
+		}
+		finally {
+			daoImpl.setWindowFunctionsSupported(windowFunctionsSupported);
+		}
+	}
+	
+	@Test
+	public void streamSearchResults_shouldStreamTheLastnResults() {
+		List<String> expected = dao.getSearchResults(lastnSearchParams()).stream().map(Obs::getUuid)
+		        .collect(Collectors.toList());
+		
+		List<String> streamed = new ArrayList<>();
+		dao.streamSearchResults(lastnSearchParams(), obs -> streamed.add(obs.getUuid()));
+		
+		assertThat(streamed.size(), equalTo(16));
+		assertThat(streamed, equalTo(expected));
+	}
+	
+	@Test
+	public void supportsWindowFunctions_shouldDetectMariaDbReportedAsMySql() throws Exception {
+		DatabaseMetaData metaData = mock(DatabaseMetaData.class);
+		when(metaData.getDatabaseProductName()).thenReturn("MySQL");
+		when(metaData.getDatabaseMajorVersion()).thenReturn(5);
+		when(metaData.getDatabaseProductVersion()).thenReturn("5.5.5-10.6.12-MariaDB-log");
+		
+		assertThat(FhirObservationDaoImpl.supportsWindowFunctions(metaData), is(true));
+		
+		when(metaData.getDatabaseProductVersion()).thenReturn("5.5.5-10.1.48-MariaDB");
+		
+		assertThat(FhirObservationDaoImpl.supportsWindowFunctions(metaData), is(false));
+	}
+	
+	private static SearchParameterMap lastnSearchParams() {
+		ReferenceAndListParam patient = new ReferenceAndListParam()
+		        .addAnd(new ReferenceOrListParam().add(new ReferenceParam().setValue(PATIENT_UUID)));
+		TokenAndListParam category = new TokenAndListParam().addAnd(new TokenParam().setValue("laboratory"));
+		
+		return new SearchParameterMap().addParameter(FhirConstants.CATEGORY_SEARCH_HANDLER, category)
+		        .addParameter(FhirConstants.MAX_SEARCH_HANDLER, new NumberParam(2))
+		        .addParameter(FhirConstants.PATIENT_REFERENCE_SEARCH_HANDLER, patient)
+		        .addParameter(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER, new StringParam());
+	}
+	
+	private static SearchParameterMap lastnCodeSearchParams() {
+		ReferenceAndListParam patient = new ReferenceAndListParam()
+		        .addAnd(new ReferenceOrListParam().add(new ReferenceParam().setValue(PATIENT_UUID)));
+		TokenAndListParam code = new TokenAndListParam().addAnd(
+		    new TokenOrListParam().add(new TokenParam().setValue("5242")).add(new TokenParam().setValue("5085")));
+		
+		return new SearchParameterMap().addParameter(FhirConstants.CODED_SEARCH_HANDLER, code)
+		        .addParameter(FhirConstants.MAX_SEARCH_HANDLER, new NumberParam(2))
+		        .addParameter(FhirConstants.PATIENT_REFERENCE_SEARCH_HANDLER, patient)
+		        .addParameter(FhirConstants.LASTN_OBSERVATION_SEARCH_HANDLER, new StringParam());
+	}
+	
+	private static SearchParameterMap lastnPatientsSearchParams() {
+		return lastnSearchParams().addParameter(FhirConstants.LASTN_PATIENTS_SEARCH_HANDLER, new StringParam());
+	}
+	
 	private static SearchParameterMap observationSearchParams() {
 		TokenAndListParam code = new TokenAndListParam();
 		TokenParam codingToken = new TokenParam();
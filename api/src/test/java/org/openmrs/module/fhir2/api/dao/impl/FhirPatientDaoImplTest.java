@@ -10,22 +10,40 @@
 package org.openmrs.module.fhir2.api.dao.impl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
 import ca.uhn.fhir.rest.param.HasAndListParam;
 import ca.uhn.fhir.rest.param.HasOrListParam;
 import ca.uhn.fhir.rest.param.HasParam;
 import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.EntityEntry;
+import org.hibernate.engine.spi.PersistenceContext;
+import org.hibernate.engine.spi.SessionImplementor;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.Location;
 import org.openmrs.Patient;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
 import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.dao.internals.CohortMembershipIndex;
+import org.openmrs.module.fhir2.api.search.KeysetPage;
+import org.openmrs.module.fhir2.api.search.param.KeysetCursor;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -60,10 +78,14 @@ public class FhirPatientDaoImplTest extends BaseFhirContextSensitiveTest {
 	@Autowired
 	private SessionFactory sessionFactory;
 	
+	@Autowired
+	private CohortMembershipIndex cohortMembershipIndex;
+	
 	@Before
 	public void setup() throws Exception {
 		dao = new FhirPatientDaoImpl();
 		dao.setSessionFactory(sessionFactory);
+		dao.setCohortMembershipIndex(cohortMembershipIndex);
 		for (String search_data : PATIENT_SEARCH_DATA_FILES) {
 			executeDataSet(search_data);
 		}
@@ -114,6 +136,26 @@ public class FhirPatientDaoImplTest extends BaseFhirContextSensitiveTest {
 		assertThat(result.get(3).getUuid(), equalTo(PATIENT4_GROUP_A));
 	}
 	
+	@Test
+	public void getSearchResultUuids_shouldReturnPagesOfUuidsInUuidOrder() {
+		HasAndListParam groupParam = new HasAndListParam().addAnd(
+		    new HasOrListParam().add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)));
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam);
+		List<String> allUuids = dao.getSearchResultUuids(theParams).stream().sorted().collect(Collectors.toList());
+		
+		theParams.setFromIndex(0);
+		theParams.setToIndex(2);
+		List<String> firstPage = dao.getSearchResultUuids(theParams);
+		theParams.setFromIndex(2);
+		theParams.setToIndex(4);
+		List<String> secondPage = dao.getSearchResultUuids(theParams);
+		
+		List<String> pagedUuids = new ArrayList<>(firstPage);
+		pagedUuids.addAll(secondPage);
+		assertThat(allUuids, hasSize(4));
+		assertThat(pagedUuids, equalTo(allUuids));
+	}
+	
 	@Test
 	public void getSearchResults_shouldReturnPatientsFromTwoGroupsSearchResults() {
 		HasAndListParam groupParam = new HasAndListParam().addAnd(
@@ -131,6 +173,51 @@ public class FhirPatientDaoImplTest extends BaseFhirContextSensitiveTest {
 		assertThat(result.get(4).getUuid(), equalTo(PATIENT1_GROUP_C));
 	}
 	
+	@Test
+	public void getSearchResults_shouldReturnPatientsInAGroupFromEachAndedParameter() {
+		HasAndListParam groupParam = new HasAndListParam()
+		        .addAnd(new HasOrListParam()
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)))
+		        .addAnd(new HasOrListParam()
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A))
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_C)));
+		
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam);
+		
+		assertThat(dao.getSearchResults(theParams).stream().map(Patient::getUuid).collect(Collectors.toList()),
+		    contains(PATIENT1_GROUP_A, PATIENT2_GROUP_A, PATIENT3_GROUP_A, PATIENT4_GROUP_A));
+	}
+	
+	@Test
+	public void getSearchResults_shouldQueryTheGroupMembersWhenThereAreTooManyPatientIds() {
+		dao.setMaxPatientIdParameters(0);
+		HasAndListParam groupParam = new HasAndListParam()
+		        .addAnd(new HasOrListParam()
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A))
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_C)))
+		        .addAnd(new HasOrListParam()
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_C)));
+		
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam);
+		
+		assertThat(dao.getSearchResults(theParams).stream().map(Patient::getUuid).collect(Collectors.toList()),
+		    contains(PATIENT1_GROUP_C));
+		assertThat(dao.getSearchResultsCount(theParams), equalTo(1));
+	}
+	
+	@Test
+	public void getSearchResults_shouldReturnEmptyListWhenAndedGroupsHaveNoCommonMembers() {
+		HasAndListParam groupParam = new HasAndListParam()
+		        .addAnd(new HasOrListParam()
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)))
+		        .addAnd(new HasOrListParam()
+		                .add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_C)));
+		
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam);
+		
+		assertThat(dao.getSearchResults(theParams), empty());
+	}
+	
 	@Test
 	public void getSearchResults_shouldReturnEmptyList() {
 		HasAndListParam groupParam = new HasAndListParam().addAnd(
@@ -142,4 +229,135 @@ public class FhirPatientDaoImplTest extends BaseFhirContextSensitiveTest {
 		assertThat(result, notNullValue());
 		assertThat(result, empty());
 	}
+	
+	@Test
+	public void streamSearchResults_shouldPassSearchResultsToConsumerInOrder() {
+		HasAndListParam groupParam = new HasAndListParam().addAnd(
+		    new HasOrListParam().add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)));
+		
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam);
+		List<String> result = new ArrayList<>();
+		dao.streamSearchResults(theParams, patient -> result.add(patient.getUuid()));
+		
+		assertThat(result, contains(PATIENT1_GROUP_A, PATIENT2_GROUP_A, PATIENT3_GROUP_A, PATIENT4_GROUP_A));
+	}
+	
+	@Test
+	public void streamSearchResults_shouldReadEveryPageWithoutClearingTheSession() {
+		FhirPatientDaoImpl pagingDao = getPagingDao(3);
+		Location location = Context.getLocationService().getLocation(1);
+		
+		HasAndListParam groupParam = new HasAndListParam().addAnd(
+		    new HasOrListParam().add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)));
+		
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam);
+		List<String> result = new ArrayList<>();
+		pagingDao.streamSearchResults(theParams, patient -> result.add(patient.getUuid()));
+		
+		assertThat(result, contains(PATIENT1_GROUP_A, PATIENT2_GROUP_A, PATIENT3_GROUP_A, PATIENT4_GROUP_A));
+		assertThat(sessionFactory.getCurrentSession().contains(location), is(true));
+	}
+	
+	@Test
+	public void streamSearchResults_shouldKeepTheSessionSizeFlatAcrossPages() {
+		FhirPatientDaoImpl pagingDao = getPagingDao(1);
+		Location location = Context.getLocationService().getLocation(1);
+		PersistenceContext persistenceContext = sessionFactory.getCurrentSession().unwrap(SessionImplementor.class)
+		        .getPersistenceContext();
+		int managedBefore = persistenceContext.getNumberOfManagedEntities();
+		
+		HasAndListParam groupParam = new HasAndListParam().addAnd(
+		    new HasOrListParam().add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)));
+		List<Integer> patientsInSession = new ArrayList<>();
+		pagingDao.streamSearchResults(
+		    new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam),
+		    patient -> patientsInSession.add(countPatients(persistenceContext)));
+		
+		assertThat(patientsInSession, contains(1, 1, 1, 1));
+		assertThat(persistenceContext.getNumberOfManagedEntities(), equalTo(managedBefore));
+		assertThat(sessionFactory.getCurrentSession().contains(location), is(true));
+	}
+	
+	@Test
+	public void streamSearchResults_shouldClearASessionItOwnsAfterEachPage() {
+		FhirPatientDaoImpl pagingDao = getPagingDao(1);
+		sessionFactory.getCurrentSession().clear();
+		PersistenceContext persistenceContext = sessionFactory.getCurrentSession().unwrap(SessionImplementor.class)
+		        .getPersistenceContext();
+		
+		HasAndListParam groupParam = new HasAndListParam().addAnd(
+		    new HasOrListParam().add(new HasParam(FhirConstants.GROUP, FhirConstants.INCLUDE_MEMBER_PARAM, "id", GROUP_A)));
+		List<Integer> patientsInSession = new ArrayList<>();
+		pagingDao.streamSearchResults(
+		    new SearchParameterMap().addParameter(FhirConstants.HAS_SEARCH_HANDLER, groupParam),
+		    patient -> patientsInSession.add(countPatients(persistenceContext)));
+		
+		assertThat(patientsInSession, contains(1, 1, 1, 1));
+		assertThat(persistenceContext.getNumberOfManagedEntities(), equalTo(0));
+	}
+	
+	@Test
+	public void getKeysetSearchResults_shouldSortNullsFirstWhenAscending() throws Exception {
+		List<Patient> result = getKeysetPages(new SortSpec("death-date", SortOrderEnum.ASC));
+		
+		assertThat(result, hasSize(dao.getSearchResultsCount(new SearchParameterMap())));
+		assertThat(new HashSet<>(result), hasSize(result.size()));
+		assertThat(result.get(0).getDeathDate(), nullValue());
+		assertThat(result.get(result.size() - 1).getUuid(), equalTo(PATIENT_UUID));
+	}
+	
+	@Test
+	public void getKeysetSearchResults_shouldSortNullsLastWhenDescending() throws Exception {
+		List<Patient> result = getKeysetPages(new SortSpec("death-date", SortOrderEnum.DESC));
+		
+		assertThat(result, hasSize(dao.getSearchResultsCount(new SearchParameterMap())));
+		assertThat(new HashSet<>(result), hasSize(result.size()));
+		assertThat(result.get(0).getUuid(), equalTo(PATIENT_UUID));
+		assertThat(result.get(result.size() - 1).getDeathDate(), nullValue());
+	}
+	
+	private List<Patient> getKeysetPages(SortSpec sort) throws Exception {
+		// the latest death date, with pages of two patients positioned on both null and non-null sort keys
+		try (Statement statement = getConnection().createStatement()) {
+			statement.executeUpdate("update person set death_date = '2099-01-01 00:00:00' where person_id = 4");
+		}
+		
+		SearchParameterMap theParams = new SearchParameterMap().setSortSpec(sort);
+		List<Patient> result = new ArrayList<>();
+		KeysetCursor cursor = null;
+		do {
+			theParams.setFromIndex(0);
+			theParams.setToIndex(2);
+			theParams.setKeysetCursor(cursor);
+			KeysetPage<Patient> page = dao.getKeysetSearchResults(theParams);
+			result.addAll(page.getResults());
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+		
+		return result;
+	}
+	
+	private FhirPatientDaoImpl getPagingDao(int fetchSize) {
+		FhirPatientDaoImpl pagingDao = new FhirPatientDaoImpl() {
+			
+			@Override
+			protected int getStreamingFetchSize() {
+				return fetchSize;
+			}
+		};
+		pagingDao.setSessionFactory(sessionFactory);
+		pagingDao.setCohortMembershipIndex(cohortMembershipIndex);
+		return pagingDao;
+	}
+	
+	private int countPatients(PersistenceContext persistenceContext) {
+		int patients = 0;
+		for (Map.Entry<Object, EntityEntry> entry : persistenceContext.reentrantSafeEntityEntries()) {
+			if (entry.getKey() instanceof Patient) {
+				patients++;
+			}
+		}
+		
+		return patients;
+	}
 }
@@ -0,0 +1,94 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+
+import java.util.Date;
+import java.util.Optional;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
+import org.openmrs.module.fhir2.model.FhirStoredSearch;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class FhirStoredSearchDaoImplTest extends BaseFhirContextSensitiveTest {
+	
+	private static final String SEARCH_ID = "2d5a6a1e-9d2c-4a0f-8f1a-3c2b8e0a7b61";
+	
+	@Autowired
+	private SessionFactory sessionFactory;
+	
+	private FhirStoredSearchDaoImpl dao;
+	
+	@Before
+	public void setup() {
+		dao = new FhirStoredSearchDaoImpl();
+		dao.setSessionFactory(sessionFactory);
+	}
+	
+	@Test
+	public void shouldSaveAndRetrieveStoredSearch() {
+		dao.saveStoredSearch(newStoredSearch(SEARCH_ID, new Date(System.currentTimeMillis() + 60000)));
+		
+		Optional<FhirStoredSearch> result = dao.getStoredSearch(SEARCH_ID);
+		
+		assertThat(result.isPresent(), is(true));
+		assertThat(result.get().getDaoBean(), equalTo("fhirPatientDaoImpl"));
+		assertThat(result.get().getSearchParameters(), equalTo(new byte[] { 1, 2, 3 }));
+		assertThat(result.get().getTotal(), equalTo(42));
+	}
+	
+	@Test
+	public void shouldReturnEmptyForUnknownSearch() {
+		assertThat(dao.getStoredSearch(SEARCH_ID).isPresent(), is(false));
+	}
+	
+	@Test
+	public void shouldDeleteExpiredStoredSearches() {
+		Date now = new Date();
+		dao.saveStoredSearch(newStoredSearch(SEARCH_ID, new Date(now.getTime() - 1000)));
+		dao.saveStoredSearch(newStoredSearch("f0e1b6a4-5d61-4c55-8d2d-9a1f7cb3c2d8", new Date(now.getTime() + 60000)));
+		
+		assertThat(dao.deleteExpiredStoredSearches(now), equalTo(1));
+		assertThat(dao.getStoredSearch(SEARCH_ID).isPresent(), is(false));
+		assertThat(dao.getStoredSearchCount(), equalTo(1L));
+	}
+	
+	@Test
+	public void shouldUpdateExpirationDate() {
+		dao.saveStoredSearch(newStoredSearch(SEARCH_ID, new Date(System.currentTimeMillis() - 1000)));
+		Date expirationDate = new Date(System.currentTimeMillis() + 60000);
+		
+		dao.updateExpirationDate(SEARCH_ID, expirationDate);
+		sessionFactory.getCurrentSession().clear();
+		
+		assertThat(dao.deleteExpiredStoredSearches(new Date()), equalTo(0));
+		assertThat(dao.getStoredSearch(SEARCH_ID).isPresent(), is(true));
+	}
+	
+	private FhirStoredSearch newStoredSearch(String searchId, Date expirationDate) {
+		FhirStoredSearch storedSearch = new FhirStoredSearch();
+		storedSearch.setSearchId(searchId);
+		storedSearch.setFhirVersion("R4");
+		storedSearch.setDaoBean("fhirPatientDaoImpl");
+		storedSearch.setTranslatorBean("patientTranslatorImpl");
+		storedSearch.setSearchQueryIncludeBean("searchQueryIncludeImpl");
+		storedSearch.setSearchParameters(new byte[] { 1, 2, 3 });
+		storedSearch.setTotal(42);
+		storedSearch.setDateCreated(new Date());
+		storedSearch.setExpirationDate(expirationDate);
+		return storedSearch;
+	}
+}
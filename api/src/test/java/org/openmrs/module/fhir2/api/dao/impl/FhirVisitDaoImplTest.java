@@ -11,6 +11,7 @@ package org.openmrs.module.fhir2.api.dao.impl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.junit.Assert.fail;
@@ -23,6 +24,7 @@ import org.openmrs.api.APIAuthenticationException;
 import org.openmrs.api.context.Context;
 import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
 import org.openmrs.module.fhir2.api.dao.FhirVisitDao;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.springframework.beans.factory.ObjectFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 
@@ -80,4 +82,28 @@ public class FhirVisitDaoImplTest extends BaseFhirContextSensitiveTest {
 			Context.removeProxyPrivilege(GET_VISITS);
 		}
 	}
+	
+	@Test
+	public void getKeysetSearchResults_shouldRequireGetVisitPrivilege() {
+		SearchParameterMap theParams = new SearchParameterMap();
+		theParams.setToIndex(1);
+		
+		Context.logout();
+		
+		try {
+			dao.getKeysetSearchResults(theParams);
+			fail("Expected APIAuthenticationException for missing privilege, but it was not thrown");
+		}
+		catch (APIAuthenticationException ignored) {
+			// this is the happy path
+		}
+		
+		try {
+			Context.addProxyPrivilege(GET_VISITS);
+			assertThat(dao.getKeysetSearchResults(theParams).getResults(), hasSize(1));
+		}
+		finally {
+			Context.removeProxyPrivilege(GET_VISITS);
+		}
+	}
 }
@@ -0,0 +1,87 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static co.unruly.matchers.OptionalMatchers.contains;
+import static co.unruly.matchers.OptionalMatchers.empty;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+
+import org.hibernate.SessionFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
+import org.openmrs.module.fhir2.model.FhirConceptSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+public class ConceptCodeResolverTest extends BaseFhirContextSensitiveTest {
+	
+	private static final String CONCEPT_DATA_XML = "org/openmrs/api/include/ConceptServiceTest-initialConcepts.xml";
+	
+	private static final String CONCEPT_FHIR_DATA_XML = "org/openmrs/module/fhir2/api/dao/impl/FhirConceptDaoImplTest_initial_data.xml";
+	
+	private static final String LOINC_URL = "http://loinc.org";
+	
+	@Autowired
+	@Qualifier("conceptService")
+	private ConceptService conceptService;
+	
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+	
+	@Autowired
+	private ConceptCodeResolver resolver;
+	
+	@Before
+	public void setup() throws Exception {
+		executeDataSet(CONCEPT_DATA_XML);
+		executeDataSet(CONCEPT_FHIR_DATA_XML);
+		
+		FhirConceptSource loinc = new FhirConceptSource();
+		loinc.setName("LOINC");
+		loinc.setUrl(LOINC_URL);
+		loinc.setConceptSource(conceptService.getConceptSourceByName("LOINC"));
+		loinc.setCreator(Context.getAuthenticatedUser());
+		loinc.setDateCreated(new Date());
+		sessionFactory.getCurrentSession().save(loinc);
+	}
+	
+	@Test
+	public void getConceptIds_shouldReturnConceptsWithAnyMappingToTheCodes() {
+		assertThat(resolver.getConceptIds(LOINC_URL, Collections.singletonList("1000-1")), equalTo(new int[] { 3, 4 }));
+		assertThat(resolver.getConceptIds(LOINC_URL, Arrays.asList("NOT-SAME-AS", "missing")),
+		    equalTo(new int[] { 3 }));
+	}
+	
+	@Test
+	public void getConceptIds_shouldReturnNothingForAnUnknownSystem() {
+		assertThat(resolver.getConceptIds("http://example.com", Collections.singletonList("1000-1")),
+		    equalTo(new int[0]));
+	}
+	
+	@Test
+	public void getConceptId_shouldPreferTheConceptWithASameAsMapping() {
+		assertThat(resolver.getConceptId(LOINC_URL, "1000-1"), contains(equalTo(3)));
+	}
+	
+	@Test
+	public void getConceptId_shouldReturnTheOnlyConceptMappedToTheCode() {
+		assertThat(resolver.getConceptId(LOINC_URL, "not-same-as"), contains(equalTo(3)));
+		assertThat(resolver.getConceptId(LOINC_URL, "NOT-SAME-AS"), empty());
+	}
+}
@@ -0,0 +1,28 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class InClauseValuesTest {
+	
+	@Test
+	public void pad_shouldRepeatTheLastValueUpToAPowerOfTwo() {
+		assertThat(InClauseValues.pad(Arrays.asList(1, 2, 3)), contains(1, 2, 3, 3));
+		assertThat(InClauseValues.pad(Arrays.asList(1, 2, 3, 4)), contains(1, 2, 3, 4));
+		assertThat(InClauseValues.pad(Collections.singletonList(1)), contains(1));
+	}
+}
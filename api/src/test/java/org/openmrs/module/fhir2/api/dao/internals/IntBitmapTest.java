@@ -0,0 +1,93 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.util.stream.IntStream;
+
+import org.junit.Test;
+
+public class IntBitmapTest {
+	
+	@Test
+	public void add_shouldAddEachValueOnce() {
+		IntBitmap bitmap = new IntBitmap();
+		
+		assertThat(bitmap.add(5), equalTo(true));
+		assertThat(bitmap.add(5), equalTo(false));
+		assertThat(bitmap.add(70000), equalTo(true));
+		
+		assertThat(bitmap.contains(5), equalTo(true));
+		assertThat(bitmap.contains(6), equalTo(false));
+		assertThat(bitmap.getCardinality(), equalTo(2));
+	}
+	
+	@Test
+	public void remove_shouldRemoveValues() {
+		IntBitmap bitmap = IntBitmap.of(1, 2, 3);
+		
+		assertThat(bitmap.remove(2), equalTo(true));
+		assertThat(bitmap.remove(2), equalTo(false));
+		assertThat(bitmap.remove(-1), equalTo(false));
+		
+		assertThat(bitmap.toArray(), equalTo(new int[] { 1, 3 }));
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void add_shouldRejectNegativeValues() {
+		new IntBitmap().add(-1);
+	}
+	
+	@Test
+	public void toArray_shouldReturnValuesInAscendingOrder() {
+		IntBitmap bitmap = IntBitmap.of(200000, 3, 65536, 1, 65535);
+		
+		assertThat(bitmap.toArray(), equalTo(new int[] { 1, 3, 65535, 65536, 200000 }));
+	}
+	
+	@Test
+	public void and_shouldReturnValuesInBothSets() {
+		IntBitmap sparse = IntBitmap.of(2, 4, 10000, 70000, 70001);
+		IntBitmap dense = IntBitmap.of(IntStream.range(0, 10000).map(i -> i * 2).toArray());
+		
+		assertThat(sparse.and(IntBitmap.of(4, 70001, 9)).toArray(), equalTo(new int[] { 4, 70001 }));
+		assertThat(sparse.and(dense).toArray(), equalTo(new int[] { 2, 4, 10000 }));
+		assertThat(dense.and(sparse).toArray(), equalTo(new int[] { 2, 4, 10000 }));
+		assertThat(dense.and(dense).getCardinality(), equalTo(10000));
+	}
+	
+	@Test
+	public void or_shouldReturnValuesInEitherSet() {
+		IntBitmap evens = IntBitmap.of(IntStream.range(0, 3000).map(i -> i * 2).toArray());
+		IntBitmap odds = IntBitmap.of(IntStream.range(0, 3000).map(i -> i * 2 + 1).toArray());
+		
+		IntBitmap result = evens.or(odds).or(IntBitmap.of(100000));
+		
+		assertThat(result.getCardinality(), equalTo(6001));
+		assertThat(result.contains(5999), equalTo(true));
+		assertThat(result.contains(6000), equalTo(false));
+		assertThat(result.contains(100000), equalTo(true));
+		assertThat(evens.getCardinality(), equalTo(3000));
+	}
+	
+	@Test
+	public void remove_shouldKeepValuesWhenADenseChunkBecomesSparse() {
+		IntBitmap bitmap = IntBitmap.of(IntStream.range(0, 4097).toArray());
+		
+		bitmap.remove(0);
+		bitmap.remove(4096);
+		
+		assertThat(bitmap.getCardinality(), equalTo(4095));
+		assertThat(bitmap.toArray(), equalTo(IntStream.range(1, 4096).toArray()));
+		assertThat(bitmap, equalTo(IntBitmap.of(IntStream.range(1, 4096).toArray())));
+	}
+}
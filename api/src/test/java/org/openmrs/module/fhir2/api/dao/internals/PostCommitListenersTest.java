@@ -0,0 +1,81 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.DuplicationStrategy;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.event.spi.EventType;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class PostCommitListenersTest {
+	
+	@Mock
+	private SessionFactoryImplementor sessionFactory;
+	
+	@Mock
+	private ServiceRegistryImplementor serviceRegistry;
+	
+	@Mock
+	private EventListenerRegistry eventListenerRegistry;
+	
+	@Before
+	public void setup() {
+		when(sessionFactory.getServiceRegistry()).thenReturn(serviceRegistry);
+		when(serviceRegistry.getService(EventListenerRegistry.class)).thenReturn(eventListenerRegistry);
+	}
+	
+	@Test
+	public void register_shouldAppendTheListenerForCommittedChanges() {
+		PostCommitListeners.Listener listener = mock(PostCommitListeners.Listener.class);
+		
+		assertThat(PostCommitListeners.register(sessionFactory, listener), is(true));
+		
+		verify(eventListenerRegistry).appendListeners(EventType.POST_COMMIT_INSERT, listener);
+		verify(eventListenerRegistry).appendListeners(EventType.POST_COMMIT_UPDATE, listener);
+		verify(eventListenerRegistry).appendListeners(EventType.POST_COMMIT_DELETE, listener);
+	}
+	
+	@Test
+	public void register_shouldReplaceListenersOfTheSameClassWithOneStrategy() {
+		PostCommitListeners.register(sessionFactory, mock(PostCommitListeners.Listener.class));
+		PostCommitListeners.register(sessionFactory, mock(PostCommitListeners.Listener.class));
+		
+		ArgumentCaptor<DuplicationStrategy> strategies = ArgumentCaptor.forClass(DuplicationStrategy.class);
+		verify(eventListenerRegistry, times(2)).addDuplicationStrategy(strategies.capture());
+		DuplicationStrategy strategy = strategies.getAllValues().get(0);
+		assertThat(strategies.getAllValues().get(1), equalTo(strategy));
+		assertThat(strategy.getAction(), equalTo(DuplicationStrategy.Action.REPLACE_ORIGINAL));
+		assertThat(strategy.areMatch(new StringBuilder(), new StringBuilder()), is(true));
+		assertThat(strategy.areMatch(new StringBuilder(), "original"), is(false));
+	}
+	
+	@Test
+	public void register_shouldNotRegisterListenersWithoutASessionFactoryImplementor() {
+		assertThat(PostCommitListeners.register(mock(SessionFactory.class), mock(PostCommitListeners.Listener.class)),
+		    is(false));
+	}
+}
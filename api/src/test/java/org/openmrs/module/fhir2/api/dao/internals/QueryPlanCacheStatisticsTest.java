@@ -0,0 +1,80 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+
+import java.util.Collections;
+
+import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.dao.FhirLocationDao;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+public class QueryPlanCacheStatisticsTest extends BaseFhirContextSensitiveTest {
+	
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+	
+	@Autowired
+	private FhirLocationDao locationDao;
+	
+	@Autowired
+	private QueryPlanCacheStatistics queryPlanCacheStatistics;
+	
+	private boolean statisticsEnabled;
+	
+	@Before
+	public void setup() {
+		statisticsEnabled = sessionFactory.getStatistics().isStatisticsEnabled();
+	}
+	
+	@After
+	public void tearDown() {
+		sessionFactory.getStatistics().setStatisticsEnabled(statisticsEnabled);
+	}
+	
+	@Test
+	public void getMetrics_shouldCountAPlanCacheHitForASecondSearchOfTheSameShape() {
+		Statistics statistics = sessionFactory.getStatistics();
+		statistics.setStatisticsEnabled(true);
+		statistics.clear();
+		
+		locationDao.getSearchResults(searchByName("Test"));
+		long hits = queryPlanCacheStatistics.getMetrics().get("fhir2_cache_hits_total").longValue();
+		locationDao.getSearchResults(searchByName("Unknown"));
+		
+		assertThat(queryPlanCacheStatistics.getMetrics().get("fhir2_cache_hits_total").longValue(), greaterThan(hits));
+	}
+	
+	@Test
+	public void getMetrics_shouldReturnNothingWhileStatisticsAreDisabled() {
+		sessionFactory.getStatistics().setStatisticsEnabled(false);
+		
+		assertThat(queryPlanCacheStatistics.getMetrics(), equalTo(Collections.emptyMap()));
+	}
+	
+	private static SearchParameterMap searchByName(String name) {
+		return new SearchParameterMap().addParameter(FhirConstants.NAME_SEARCH_HANDLER,
+		    new StringAndListParam().addAnd(new StringParam(name)));
+	}
+}
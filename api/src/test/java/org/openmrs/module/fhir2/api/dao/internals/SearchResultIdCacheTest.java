@@ -0,0 +1,142 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import ca.uhn.fhir.rest.param.StringParam;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.event.service.spi.EventListenerRegistry;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.Person;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchResultIdCacheTest {
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private SessionFactoryImplementor sessionFactory;
+	
+	@Mock
+	private ServiceRegistryImplementor serviceRegistry;
+	
+	@Mock
+	private EventListenerRegistry eventListenerRegistry;
+	
+	private SearchResultIdCache cache;
+	
+	private final AtomicInteger searches = new AtomicInteger();
+	
+	@Before
+	public void setup() {
+		when(sessionFactory.getServiceRegistry()).thenReturn(serviceRegistry);
+		when(serviceRegistry.getService(EventListenerRegistry.class)).thenReturn(eventListenerRegistry);
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_TTL, 0))
+		        .thenReturn(60);
+		when(globalPropertyService.getGlobalPropertyAsInteger(
+		    eq(FhirConstants.OPENMRS_FHIR_SEARCH_RESULT_ID_CACHE_MAX_IDS), anyInt())).thenReturn(3);
+		
+		cache = new SearchResultIdCache();
+		cache.setGlobalPropertyService(globalPropertyService);
+		cache.setSessionFactory(sessionFactory);
+		cache.registerListener();
+	}
+	
+	@Test
+	public void getResultIds_shouldRunTheSearchOnceForEveryPage() {
+		SearchParameterMap theParams = search("Doe");
+		
+		assertThat(cache.getResultIds(getClass(), Person.class, theParams, results(1, 2, 3)),
+		    equalTo(new int[] { 1, 2, 3 }));
+		
+		theParams.setFromIndex(2);
+		theParams.setToIndex(4);
+		assertThat(cache.getResultIds(getClass(), Person.class, theParams, results(1, 2, 3)),
+		    equalTo(new int[] { 1, 2, 3 }));
+		assertThat(cache.getResultIds(getClass(), Person.class, search("Doe"), results(1, 2, 3)),
+		    equalTo(new int[] { 1, 2, 3 }));
+		assertThat(searches.get(), equalTo(1));
+		
+		cache.getResultIds(getClass(), Person.class, search("Smith"), results(4));
+		assertThat(searches.get(), equalTo(2));
+	}
+	
+	@Test
+	public void invalidate_shouldDropTheResultsOfSearchesForRelatedTypes() {
+		cache.getResultIds(getClass(), Person.class, search("Doe"), results(1));
+		cache.getResultIds(getClass(), Obs.class, search("Doe"), results(2));
+		
+		cache.invalidate(Patient.class);
+		
+		cache.getResultIds(getClass(), Person.class, search("Doe"), results(1));
+		cache.getResultIds(getClass(), Obs.class, search("Doe"), results(2));
+		assertThat(searches.get(), equalTo(3));
+	}
+	
+	@Test
+	public void getResultIds_shouldNotKeepSearchesWithTooManyResults() {
+		IntFunction<List<Integer>> tooManyResults = maxIds -> {
+			searches.incrementAndGet();
+			return null;
+		};
+		
+		assertThat(cache.getResultIds(getClass(), Person.class, search("Doe"), tooManyResults), nullValue());
+		assertThat(cache.getResultIds(getClass(), Person.class, search("Doe"), tooManyResults), nullValue());
+		assertThat(searches.get(), equalTo(1));
+	}
+	
+	@Test
+	public void invalidate_shouldNotRunSearchesWithTooManyResultsAgain() {
+		IntFunction<List<Integer>> tooManyResults = maxIds -> {
+			searches.incrementAndGet();
+			// a change committed while the search runs
+			cache.invalidate(Person.class);
+			return null;
+		};
+		
+		assertThat(cache.getResultIds(getClass(), Person.class, search("Doe"), tooManyResults), nullValue());
+		cache.invalidate(Patient.class);
+		assertThat(cache.getResultIds(getClass(), Person.class, search("Doe"), tooManyResults), nullValue());
+		assertThat(searches.get(), equalTo(1));
+	}
+	
+	private IntFunction<List<Integer>> results(Integer... ids) {
+		return maxIds -> {
+			searches.incrementAndGet();
+			return Arrays.asList(ids);
+		};
+	}
+	
+	private static SearchParameterMap search(String name) {
+		return new SearchParameterMap().addParameter(FhirConstants.NAME_SEARCH_HANDLER, new StringParam(name));
+	}
+}
@@ -0,0 +1,52 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.internals;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.junit.Test;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+
+public class SearchShapeTest {
+	
+	@Test
+	public void of_shouldDependOnTheSortOrder() {
+		SearchParameterMap ascending = search(new TokenParam("1000")).setSortSpec(new SortSpec("date"));
+		SearchParameterMap descending = search(new TokenParam("1000"))
+		        .setSortSpec(new SortSpec("date", SortOrderEnum.DESC));
+		
+		assertThat(SearchShape.of(getClass(), ascending), not(equalTo(SearchShape.of(getClass(), descending))));
+	}
+	
+	@Test
+	public void of_shouldNotDependOnTheValuesSearchedFor() {
+		assertThat(SearchShape.of(getClass(), search(new TokenParam("1000"))),
+		    equalTo(SearchShape.of(getClass(), search(new TokenParam("5089")))));
+	}
+	
+	@Test
+	public void of_shouldDependOnWhetherATokenHasASystem() {
+		assertThat(SearchShape.of(getClass(), search(new TokenParam("1000"))),
+		    not(equalTo(SearchShape.of(getClass(), search(new TokenParam("http://loinc.org", "5089-1"))))));
+	}
+	
+	private static SearchParameterMap search(TokenParam code) {
+		return new SearchParameterMap().addParameter(FhirConstants.CODED_SEARCH_HANDLER,
+		    new TokenAndListParam().addAnd(new TokenOrListParam().add(code)));
+	}
+}
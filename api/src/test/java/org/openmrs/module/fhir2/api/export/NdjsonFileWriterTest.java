@@ -0,0 +1,54 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.export;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class NdjsonFileWriterTest {
+	
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void shouldWriteOneLinePerResource() throws Exception {
+		Path file = folder.newFile("Patient.ndjson").toPath();
+		
+		List<String> lines = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			lines.add("{\"resourceType\":\"Patient\",\"id\":\"" + i + "\",\"name\":[{\"family\":\"Dö\"}]}");
+		}
+		// larger than the buffer, so it is written straight to the file
+		lines.add("{\"resourceType\":\"Patient\",\"text\":\"" + StringUtils.repeat('x', 100 * 1024) + "\"}");
+		lines.add("{\"resourceType\":\"Patient\",\"id\":\"last\"}");
+		
+		long count;
+		try (NdjsonFileWriter writer = new NdjsonFileWriter(file)) {
+			for (String line : lines) {
+				writer.write(line);
+			}
+			count = writer.getCount();
+		}
+		
+		assertThat(count, equalTo((long) lines.size()));
+		assertThat(Files.readAllLines(file, StandardCharsets.UTF_8), equalTo(lines));
+	}
+}
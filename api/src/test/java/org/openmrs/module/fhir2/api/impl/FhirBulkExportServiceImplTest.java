@@ -0,0 +1,235 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.emptyArray;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.when;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
+import ca.uhn.fhir.rest.server.exceptions.ResourceNotFoundException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.Location;
+import org.openmrs.User;
+import org.openmrs.api.context.Context;
+import org.openmrs.api.context.UserContext;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirLocationDao;
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
+import org.openmrs.module.fhir2.api.translators.LocationTranslator;
+
+@RunWith(MockitoJUnitRunner.class)
+public class FhirBulkExportServiceImplTest {
+	
+	private static final String OWNER_UUID = "c98a1558-e131-11de-babe-001e378eb67e";
+	
+	private static final String OWNER_SYSTEM_ID = "2-6";
+	
+	private static final String OTHER_USER_UUID = "6f1a5cb8-2bd4-4a4a-a8e3-5e7c4d2a1b90";
+	
+	private static final String LOCATION_UUID = "c0938432-1691-11df-97a5-7038c432aabf";
+	
+	@Rule
+	public TemporaryFolder exportDirectory = new TemporaryFolder();
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private FhirLocationDao locationDao;
+	
+	@Mock
+	private LocationTranslator locationTranslator;
+	
+	@Mock
+	private UserContext userContext;
+	
+	@Mock
+	private User owner;
+	
+	@Mock
+	private User otherUser;
+	
+	private final List<String> runAsSystemIds = Collections.synchronizedList(new ArrayList<>());
+	
+	private FhirBulkExportServiceImpl bulkExportService;
+	
+	@Before
+	public void setup() {
+		bulkExportService = new FhirBulkExportServiceImpl() {
+			
+			@Override
+			protected void runAs(String systemId, Runnable task) {
+				runAsSystemIds.add(systemId);
+				task.run();
+			}
+			
+			@Override
+			protected Path getExportDirectory() {
+				return exportDirectory.getRoot().toPath();
+			}
+		};
+		bulkExportService.setGlobalPropertyService(globalPropertyService);
+		bulkExportService.setFhirContext(FhirContext.forR4());
+		bulkExportService.setLocationDao(locationDao);
+		bulkExportService.setLocationTranslator(locationTranslator);
+		
+		Context.setUserContext(userContext);
+	}
+	
+	@After
+	public void tearDown() {
+		bulkExportService.shutdown();
+		Context.clearUserContext();
+	}
+	
+	@Test
+	public void startExport_shouldRunTheExportAsTheUserWhoStartedIt() throws Exception {
+		BulkExportJob job = startLocationExport();
+		
+		assertThat(job.getOwner(), equalTo(OWNER_UUID));
+		assertThat(runAsSystemIds, contains(OWNER_SYSTEM_ID));
+		assertThat(job.getStatus(), equalTo(BulkExportJob.Status.COMPLETE));
+		assertThat(job.getOutputs().size(), equalTo(1));
+		assertThat(job.getOutputs().get(0).getCount(), equalTo(1L));
+		
+		Path file = bulkExportService.getOutputFile(job.getId(), job.getOutputs().get(0).getFileName());
+		assertThat(Files.readAllLines(file).get(0), equalTo("{\"resourceType\":\"Location\",\"id\":\"" + LOCATION_UUID
+		        + "\"}"));
+	}
+	
+	@Test
+	public void getJob_shouldReturnTheJobToTheUserWhoStartedIt() throws Exception {
+		BulkExportJob job = startLocationExport();
+		
+		assertThat(bulkExportService.getJob(job.getId()), sameInstance(job));
+	}
+	
+	@Test
+	public void getJob_shouldRejectOtherUsers() throws Exception {
+		BulkExportJob job = startLocationExport();
+		String fileName = job.getOutputs().get(0).getFileName();
+		
+		when(otherUser.getUuid()).thenReturn(OTHER_USER_UUID);
+		when(userContext.getAuthenticatedUser()).thenReturn(otherUser);
+		
+		assertThrows(ForbiddenOperationException.class, () -> bulkExportService.getJob(job.getId()));
+		assertThrows(ForbiddenOperationException.class, () -> bulkExportService.getOutputFile(job.getId(), fileName));
+		assertThrows(ForbiddenOperationException.class, () -> bulkExportService.deleteJob(job.getId()));
+	}
+	
+	@Test
+	public void getJob_shouldReturnTheJobToSuperUsers() throws Exception {
+		BulkExportJob job = startLocationExport();
+		
+		when(otherUser.isSuperUser()).thenReturn(true);
+		when(userContext.getAuthenticatedUser()).thenReturn(otherUser);
+		
+		assertThat(bulkExportService.getJob(job.getId()), sameInstance(job));
+	}
+	
+	@Test
+	public void deleteJob_shouldDeleteTheExportAndItsFiles() throws Exception {
+		BulkExportJob job = startLocationExport();
+		Path file = bulkExportService.getOutputFile(job.getId(), job.getOutputs().get(0).getFileName());
+		
+		bulkExportService.deleteJob(job.getId());
+		
+		assertThat(Files.exists(file), is(false));
+		assertThrows(ResourceNotFoundException.class, () -> bulkExportService.getJob(job.getId()));
+	}
+	
+	@Test
+	public void runJob_shouldDeleteTheFilesOfAnExportCancelledAfterItsLastResource() {
+		BulkExportJob job = newLocationJob();
+		doAnswer(invocation -> {
+			job.cancel();
+			return null;
+		}).when(locationDao).streamSearchResults(any(), any());
+		
+		bulkExportService.runJob(job);
+		
+		assertThat(job.getStatus(), equalTo(BulkExportJob.Status.CANCELLED));
+		assertThat(exportDirectory.getRoot().list(), emptyArray());
+	}
+	
+	@Test
+	public void runJob_shouldNotRecordTheCauseOfAFailureOnTheJob() {
+		BulkExportJob job = newLocationJob();
+		doThrow(new IllegalStateException("Table location is locked")).when(locationDao).streamSearchResults(any(),
+		    any());
+		
+		bulkExportService.runJob(job);
+		
+		assertThat(job.getStatus(), equalTo(BulkExportJob.Status.ERROR));
+		assertThat(job.getError(), equalTo(FhirBulkExportServiceImpl.EXPORT_FAILED_MESSAGE));
+	}
+	
+	private BulkExportJob newLocationJob() {
+		return new BulkExportJob("1e3ab5b4-4a54-4e2e-9b3c-0c5f5a6f7d11", BulkExportJob.Level.SYSTEM, null,
+		        Collections.singletonList(FhirConstants.LOCATION), null, "http://localhost/$export", OWNER_UUID,
+		        new Date());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private BulkExportJob startLocationExport() throws InterruptedException {
+		Location location = new Location();
+		location.setUuid(LOCATION_UUID);
+		org.hl7.fhir.r4.model.Location fhirLocation = new org.hl7.fhir.r4.model.Location();
+		fhirLocation.setId(LOCATION_UUID);
+		
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_EXPORT_TIME_TO_LIVE, 86400))
+		        .thenReturn(86400);
+		when(owner.getUuid()).thenReturn(OWNER_UUID);
+		when(owner.getSystemId()).thenReturn(OWNER_SYSTEM_ID);
+		when(userContext.getAuthenticatedUser()).thenReturn(owner);
+		when(locationTranslator.toFhirResource(location)).thenReturn(fhirLocation);
+		doAnswer(invocation -> {
+			((Consumer<Location>) invocation.getArgument(1)).accept(location);
+			return null;
+		}).when(locationDao).streamSearchResults(any(), any());
+		
+		BulkExportJob job = bulkExportService.startExport(BulkExportJob.Level.SYSTEM, null,
+		    Collections.singletonList(FhirConstants.LOCATION), null, "http://localhost/$export");
+		
+		long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (!job.isFinished() && System.nanoTime() < timeout) {
+			Thread.sleep(10);
+		}
+		
+		return job;
+	}
+}
@@ -18,6 +18,8 @@ import static org.hamcrest.Matchers.hasProperty;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -45,6 +47,7 @@ import org.openmrs.module.fhir2.api.search.SearchQueryInclude;
 import org.openmrs.module.fhir2.api.search.param.LocationSearchParams;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.module.fhir2.api.translators.LocationTranslator;
+import org.openmrs.module.fhir2.api.util.TranslatedResourceCache;
 
 @RunWith(MockitoJUnitRunner.class)
 public class FhirLocationServiceImplTest {
@@ -80,6 +83,9 @@ public class FhirLocationServiceImplTest {
 	@Mock
 	private FhirGlobalPropertyService globalPropertyService;
 	
+	@Mock
+	private TranslatedResourceCache translatedResourceCache;
+	
 	@Mock
 	SearchQueryInclude<Location> searchQueryInclude;
 	
@@ -142,6 +148,34 @@ public class FhirLocationServiceImplTest {
 		assertThat(result.getDescription(), equalTo(LOCATION_DESCRIPTION));
 	}
 	
+	@Test
+	public void getLocationByUuid_shouldReturnCachedLocationForCurrentVersion() {
+		fhirLocationService.setTranslatedResourceCache(translatedResourceCache);
+		when(translatedResourceCache.isEnabled()).thenReturn(true);
+		when(locationDao.getVersionId(LOCATION_UUID)).thenReturn("1");
+		when(translatedResourceCache.get(Location.class, LOCATION_UUID, "1")).thenReturn(fhirLocation);
+		
+		Location result = fhirLocationService.get(LOCATION_UUID);
+		
+		assertThat(result, equalTo(fhirLocation));
+		verify(locationDao, never()).get(LOCATION_UUID);
+	}
+	
+	@Test
+	public void getLocationByUuid_shouldCacheTranslatedLocation() {
+		fhirLocationService.setTranslatedResourceCache(translatedResourceCache);
+		when(translatedResourceCache.isEnabled()).thenReturn(true);
+		when(locationDao.getVersionId(LOCATION_UUID)).thenReturn(null);
+		when(locationDao.get(LOCATION_UUID)).thenReturn(location);
+		when(locationTranslator.toFhirResource(location)).thenReturn(fhirLocation);
+		
+		Location result = fhirLocationService.get(LOCATION_UUID);
+		
+		assertThat(result, equalTo(fhirLocation));
+		verify(translatedResourceCache).put(Location.class, LOCATION_UUID,
+		    String.valueOf(location.getDateCreated().getTime()), fhirLocation);
+	}
+	
 	@Test
 	public void searchForLocations_shouldReturnLocationsByParameters() {
 		List<org.openmrs.Location> locations = new ArrayList<>();
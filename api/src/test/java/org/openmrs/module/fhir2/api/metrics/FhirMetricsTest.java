@@ -0,0 +1,162 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.google.common.cache.CacheStats;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FhirMetricsTest {
+	
+	@Before
+	@After
+	public void reset() {
+		FhirMetrics.endRequest();
+		FhirMetrics.reset();
+	}
+	
+	@Test
+	public void histogram_shouldKeepQuantilesWithinTheBucketWidth() {
+		LatencyHistogram histogram = new LatencyHistogram();
+		for (long value = 1; value <= 10_000; value++) {
+			histogram.record(value * 1000);
+		}
+		
+		assertThat(histogram.getCount(), equalTo(10_000L));
+		assertThat(histogram.getMax(), equalTo(10_000_000L));
+		assertThat(histogram.getValueAtQuantile(0.5), greaterThanOrEqualTo(5_000_000L));
+		assertThat(histogram.getValueAtQuantile(0.5), lessThanOrEqualTo(5_000_000L * 107 / 100));
+		assertThat(histogram.getValueAtQuantile(0.99), greaterThanOrEqualTo(9_900_000L));
+		assertThat(histogram.getValueAtQuantile(0.99), lessThanOrEqualTo(10_000_000L));
+		assertThat(histogram.getValueAtQuantile(1.0), equalTo(10_000_000L));
+	}
+	
+	@Test
+	public void histogram_shouldPlaceEveryValueInsideItsBucket() {
+		long[] values = { 0, 1, 15, 16, 17, 31, 32, 1023, 1024, 123_456_789, LatencyHistogram.MAX_VALUE };
+		for (long value : values) {
+			int bucket = LatencyHistogram.bucketOf(value);
+			assertThat(LatencyHistogram.lowestValueOf(bucket), lessThanOrEqualTo(value));
+			assertThat(LatencyHistogram.highestValueOf(bucket), greaterThanOrEqualTo(value));
+		}
+	}
+	
+	@Test
+	public void startTimer_shouldTagTimesWithTheCurrentRequest() {
+		FhirMetrics.startRequest("Patient", "search-type");
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		FhirMetrics.endRequest();
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		
+		assertThat(FhirMetrics.getHistogram(FhirMetrics.QUERY, "Patient", "search-type").getCount(), equalTo(1L));
+		assertThat(FhirMetrics.getHistogram(FhirMetrics.QUERY, FhirMetrics.NONE, FhirMetrics.NONE).getCount(),
+		    equalTo(1L));
+	}
+	
+	@Test
+	public void startTimer_shouldRecordOnlyOnce() {
+		FhirMetrics.Timer timer = FhirMetrics.startTimer(FhirMetrics.TRANSLATE);
+		timer.close();
+		timer.close();
+		
+		assertThat(FhirMetrics.getHistogram(FhirMetrics.TRANSLATE, FhirMetrics.NONE, FhirMetrics.NONE).getCount(),
+		    equalTo(1L));
+	}
+	
+	@Test
+	public void timed_shouldTagWorkRunOnAnotherThreadWithTheRequest() {
+		FhirMetrics.startRequest("Encounter", "search-type");
+		List<String> result = CompletableFuture
+		        .supplyAsync(FhirMetrics.timed(FhirMetrics.INCLUDE, () -> Arrays.asList("a", "b", "c"))).join();
+		
+		assertThat(result.size(), equalTo(3));
+		assertThat(FhirMetrics.getHistogram(FhirMetrics.INCLUDE, "Encounter", "search-type"), notNullValue());
+		assertThat(FhirMetrics.getHistogram(FhirMetrics.INCLUDE, FhirMetrics.NONE, FhirMetrics.NONE), nullValue());
+	}
+	
+	@Test
+	public void writePrometheus_shouldWriteTheCollectedMetrics() throws IOException {
+		FhirMetrics.startRequest("Observation", "search-type");
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		FhirMetrics.recordRows(FhirMetrics.QUERY, 42);
+		
+		StringWriter writer = new StringWriter();
+		FhirMetrics.writePrometheus(writer);
+		String output = writer.toString();
+		
+		String labels = "resource_type=\"Observation\",operation=\"search-type\",stage=\"query\"";
+		assertThat(output, containsString("# TYPE fhir2_stage_duration_seconds summary\n"));
+		assertThat(output, containsString("fhir2_stage_duration_seconds{" + labels + ",quantile=\"0.99\"} "));
+		assertThat(output, containsString("fhir2_stage_duration_seconds_count{" + labels + "} 1\n"));
+		assertThat(output, containsString("fhir2_stage_duration_max_seconds{" + labels + "} "));
+		assertThat(output, containsString("fhir2_stage_rows_total{" + labels + "} 42\n"));
+		assertThat(output, not(containsString("stage=\"translate\"")));
+	}
+	
+	@Test
+	public void writePrometheus_shouldWriteTheStatisticsOfEachComponentGroupedByMetric() throws IOException {
+		FhirMetrics.registerStatistics("first_cache", () -> Collections.singletonMap("fhir2_cache_hits_total", 3L));
+		FhirMetrics.registerStatistics("second_cache", () -> Collections.singletonMap("fhir2_cache_hits_total", 5L));
+		FhirMetrics.registerStatistics("store", () -> Collections.singletonMap("fhir2_store_size", 7));
+		FhirMetrics.registerStatistics("broken", () -> {
+			throw new IllegalStateException();
+		});
+		try {
+			StringWriter writer = new StringWriter();
+			FhirMetrics.writePrometheus(writer);
+			
+			assertThat(writer.toString(),
+			    containsString("# TYPE fhir2_cache_hits_total counter\n"
+			            + "fhir2_cache_hits_total{component=\"first_cache\"} 3\n"
+			            + "fhir2_cache_hits_total{component=\"second_cache\"} 5\n"));
+			assertThat(writer.toString(),
+			    containsString("# TYPE fhir2_store_size gauge\nfhir2_store_size{component=\"store\"} 7\n"));
+		}
+		finally {
+			FhirMetrics.unregisterStatistics("first_cache");
+			FhirMetrics.unregisterStatistics("second_cache");
+			FhirMetrics.unregisterStatistics("store");
+			FhirMetrics.unregisterStatistics("broken");
+		}
+	}
+	
+	@Test
+	public void writePrometheus_shouldWriteTheStatisticsOfRegisteredCaches() throws IOException {
+		FhirMetrics.registerCacheStatistics("test_cache", () -> new CacheStats(3, 2, 0, 0, 0, 1));
+		try {
+			StringWriter writer = new StringWriter();
+			FhirMetrics.writePrometheus(writer);
+			
+			assertThat(writer.toString(), containsString("fhir2_cache_hits_total{component=\"test_cache\"} 3\n"));
+			assertThat(writer.toString(), containsString("fhir2_cache_misses_total{component=\"test_cache\"} 2\n"));
+			assertThat(writer.toString(), containsString("fhir2_cache_evictions_total{component=\"test_cache\"} 1\n"));
+		}
+		finally {
+			FhirMetrics.unregisterStatistics("test_cache");
+		}
+	}
+}
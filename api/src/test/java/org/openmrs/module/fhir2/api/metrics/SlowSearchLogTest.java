@@ -0,0 +1,172 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.metrics;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasKey;
+import static org.hamcrest.Matchers.hasSize;
+import static org.mockito.Mockito.when;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.query.Query;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SlowSearchLogTest {
+	
+	private static final String HQL = "select generatedAlias0 from Patient as generatedAlias0";
+	
+	@Mock
+	private EntityManager entityManager;
+	
+	@Mock
+	private TypedQuery<Object> typedQuery;
+	
+	@Mock
+	private Query<Object> query;
+	
+	@Mock
+	private SessionImplementor session;
+	
+	@Before
+	@After
+	public void reset() {
+		SlowSearchLog.endTrace();
+		SlowSearchLog.clear();
+		FhirMetrics.endRequest();
+	}
+	
+	@Test
+	public void endTrace_shouldKeepSearchesSlowerThanTheThreshold() {
+		when(typedQuery.unwrap(Query.class)).thenReturn(query);
+		when(query.getQueryString()).thenReturn(HQL);
+		when(entityManager.unwrap(SessionImplementor.class)).thenReturn(session);
+		
+		FhirMetrics.startRequest("Patient", "search-type");
+		assertThat(SlowSearchLog.startTrace(1000), equalTo(true));
+		SlowSearchLog.recordQuery(entityManager, typedQuery);
+		FhirMetrics.startTimer(FhirMetrics.COUNT).close();
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		SlowSearchLog.recordSearch("PatientDao|name:=StringParam,", 10, 2);
+		SlowSearchLog.endTrace(1_500_000_000L);
+		
+		List<SlowSearchLog.SlowSearch> slowest = SlowSearchLog.getSlowest(10);
+		assertThat(slowest, hasSize(1));
+		assertThat(slowest.get(0).getSearch(), equalTo("PatientDao|name:=StringParam,"));
+		assertThat(slowest.get(0).getNanos(), equalTo(1_500_000_000L));
+		assertThat(slowest.get(0).getRows(), equalTo(10));
+		assertThat(slowest.get(0).getIncludedRows(), equalTo(2));
+		assertThat(slowest.get(0).getQueries(), contains(HQL));
+		assertThat(slowest.get(0).getStageNanos(), hasKey(FhirMetrics.COUNT));
+		assertThat(slowest.get(0).getStageNanos(), hasKey(FhirMetrics.QUERY));
+	}
+	
+	@Test
+	public void endTrace_shouldNotKeepSearchesFasterThanTheThreshold() {
+		SlowSearchLog.startTrace(1000);
+		SlowSearchLog.recordSearch("PatientDao", 10, 0);
+		SlowSearchLog.endTrace(999_999_999L);
+		
+		assertThat(SlowSearchLog.getSlowest(10), empty());
+		assertThat(SlowSearchLog.isTraced(), equalTo(false));
+	}
+	
+	@Test
+	public void endTrace_shouldNotKeepRequestsWithoutASearch() {
+		SlowSearchLog.startTrace(1000);
+		SlowSearchLog.endTrace(1_500_000_000L);
+		
+		assertThat(SlowSearchLog.getSlowest(10), empty());
+	}
+	
+	@Test
+	public void recordSearch_shouldKeepTheLastSearchOfTheRequest() {
+		SlowSearchLog.startTrace(1000);
+		SlowSearchLog.recordSearch("EncounterDao", 1, 0);
+		SlowSearchLog.recordSearch("PatientDao", 10, 1);
+		SlowSearchLog.endTrace(1_500_000_000L);
+		
+		assertThat(SlowSearchLog.getSlowest(10).get(0).getSearch(), equalTo("PatientDao"));
+	}
+	
+	@Test
+	public void startTrace_shouldNotStartATraceWithinATrace() {
+		assertThat(SlowSearchLog.startTrace(1000), equalTo(true));
+		assertThat(SlowSearchLog.startTrace(1000), equalTo(false));
+		SlowSearchLog.endTrace();
+		
+		assertThat(SlowSearchLog.startTrace(1000), equalTo(true));
+		SlowSearchLog.endTrace();
+	}
+	
+	@Test
+	public void startTrace_shouldNotStartATraceWhenTheLogIsDisabled() {
+		assertThat(SlowSearchLog.startTrace(0), equalTo(false));
+		assertThat(SlowSearchLog.isTraced(), equalTo(false));
+	}
+	
+	@Test
+	public void traced_shouldAddTheQueriesOfOtherThreadsToTheTrace() throws Exception {
+		when(typedQuery.unwrap(Query.class)).thenReturn(query);
+		when(query.getQueryString()).thenReturn(HQL);
+		when(entityManager.unwrap(SessionImplementor.class)).thenReturn(session);
+		
+		SlowSearchLog.startTrace(1000);
+		Supplier<Boolean> branch = SlowSearchLog.traced(() -> {
+			SlowSearchLog.recordQuery(entityManager, typedQuery);
+			return SlowSearchLog.isTraced();
+		});
+		
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			assertThat(executor.submit(branch::get).get(), equalTo(true));
+			assertThat(executor.submit(SlowSearchLog::isTraced).get(), equalTo(false));
+		}
+		finally {
+			executor.shutdownNow();
+		}
+		
+		SlowSearchLog.recordSearch("PatientDao", 10, 0);
+		SlowSearchLog.endTrace(1_500_000_000L);
+		
+		assertThat(SlowSearchLog.getSlowest(10).get(0).getQueries(), contains(HQL));
+	}
+	
+	@Test
+	public void getSlowest_shouldReturnTheSlowestRecentSearchesFirst() {
+		for (int i = 1; i <= SlowSearchLog.CAPACITY + 5; i++) {
+			SlowSearchLog.startTrace(1000);
+			SlowSearchLog.recordSearch("search " + i, 0, 0);
+			SlowSearchLog.endTrace(i * 1_000_000_000L);
+		}
+		
+		List<String> slowest = SlowSearchLog.getSlowest(3).stream().map(SlowSearchLog.SlowSearch::getSearch)
+		        .collect(Collectors.toList());
+		assertThat(slowest, contains("search 105", "search 104", "search 103"));
+		assertThat(SlowSearchLog.getSlowest(Integer.MAX_VALUE), hasSize(SlowSearchLog.CAPACITY));
+	}
+}
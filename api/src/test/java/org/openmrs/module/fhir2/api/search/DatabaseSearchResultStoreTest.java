@@ -0,0 +1,199 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Optional;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringOrListParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirDao;
+import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
+import org.openmrs.module.fhir2.api.dao.FhirStoredSearchDao;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.translators.OpenmrsFhirTranslator;
+import org.openmrs.module.fhir2.api.translators.PatientTranslator;
+import org.openmrs.module.fhir2.model.FhirStoredSearch;
+import org.springframework.context.ApplicationContext;
+
+@RunWith(MockitoJUnitRunner.Silent.class)
+public class DatabaseSearchResultStoreTest {
+	
+	private static final String DAO_BEAN = "fhirPatientDaoImpl";
+	
+	private static final String TRANSLATOR_BEAN = "patientTranslatorImpl";
+	
+	private static final String SEARCH_QUERY_INCLUDE_BEAN = "searchQueryIncludeImpl";
+	
+	@Mock
+	private FhirStoredSearchDao storedSearchDao;
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private ApplicationContext applicationContext;
+	
+	@Mock
+	private FhirPatientDao patientDao;
+	
+	@Mock
+	private PatientTranslator patientTranslator;
+	
+	@Mock
+	private SearchQueryInclude<Patient> searchQueryInclude;
+	
+	private DatabaseSearchResultStore store;
+	
+	private SearchParameterMap searchParameterMap;
+	
+	@Before
+	@SuppressWarnings("rawtypes")
+	public void setup() {
+		store = new DatabaseSearchResultStore();
+		store.setStoredSearchDao(storedSearchDao);
+		store.setGlobalPropertyService(globalPropertyService);
+		store.setApplicationContext(applicationContext);
+		
+		when(globalPropertyService.getGlobalPropertyAsInteger(anyString(), anyInt()))
+		        .thenAnswer(invocation -> invocation.getArgument(1));
+		when(applicationContext.getBeansOfType(FhirDao.class))
+		        .thenReturn(Collections.<String, FhirDao> singletonMap(DAO_BEAN, patientDao));
+		when(applicationContext.getBeansOfType(OpenmrsFhirTranslator.class)).thenReturn(
+		    Collections.<String, OpenmrsFhirTranslator> singletonMap(TRANSLATOR_BEAN, patientTranslator));
+		when(applicationContext.getBeansOfType(SearchQueryInclude.class)).thenReturn(
+		    Collections.<String, SearchQueryInclude> singletonMap(SEARCH_QUERY_INCLUDE_BEAN, searchQueryInclude));
+		when(applicationContext.containsBean(anyString())).thenReturn(true);
+		when(applicationContext.getBean(DAO_BEAN, FhirDao.class)).thenReturn(patientDao);
+		when(applicationContext.getBean(TRANSLATOR_BEAN, OpenmrsFhirTranslator.class)).thenReturn(patientTranslator);
+		when(applicationContext.getBean(SEARCH_QUERY_INCLUDE_BEAN, SearchQueryInclude.class))
+		        .thenReturn(searchQueryInclude);
+		
+		searchParameterMap = new SearchParameterMap().addParameter(FhirConstants.NAME_SEARCH_HANDLER,
+		    FhirConstants.NAME_PROPERTY,
+		    new StringAndListParam().addAnd(new StringOrListParam().add(new StringParam("Doe"))));
+	}
+	
+	@Test
+	public void shouldPersistSearchQueryBundleProvider() {
+		SearchQueryBundleProvider<?, ?> bundleProvider = new SearchQueryBundleProvider<>(searchParameterMap, patientDao,
+		        patientTranslator, globalPropertyService, searchQueryInclude);
+		when(patientDao.getSearchResultsCount(any())).thenReturn(25);
+		
+		String searchId = store.store(bundleProvider);
+		
+		ArgumentCaptor<FhirStoredSearch> captor = ArgumentCaptor.forClass(FhirStoredSearch.class);
+		verify(storedSearchDao).saveStoredSearch(captor.capture());
+		FhirStoredSearch storedSearch = captor.getValue();
+		assertThat(searchId, equalTo(bundleProvider.getUuid()));
+		assertThat(storedSearch.getSearchId(), equalTo(bundleProvider.getUuid()));
+		assertThat(storedSearch.getFhirVersion(), equalTo("R4"));
+		assertThat(storedSearch.getDaoBean(), equalTo(DAO_BEAN));
+		assertThat(storedSearch.getTranslatorBean(), equalTo(TRANSLATOR_BEAN));
+		assertThat(storedSearch.getSearchQueryIncludeBean(), equalTo(SEARCH_QUERY_INCLUDE_BEAN));
+		assertThat(storedSearch.getTotal(), equalTo(25));
+		assertThat(storedSearch.getExpirationDate().after(storedSearch.getDateCreated()), equalTo(true));
+	}
+	
+	@Test
+	public void shouldRestorePersistedSearch() {
+		SearchQueryBundleProvider<?, ?> bundleProvider = new SearchQueryBundleProvider<>(searchParameterMap, patientDao,
+		        patientTranslator, globalPropertyService, searchQueryInclude);
+		when(patientDao.getSearchResultsCount(any())).thenReturn(25);
+		store.store(bundleProvider);
+		ArgumentCaptor<FhirStoredSearch> captor = ArgumentCaptor.forClass(FhirStoredSearch.class);
+		verify(storedSearchDao).saveStoredSearch(captor.capture());
+		when(storedSearchDao.getStoredSearch(bundleProvider.getUuid())).thenReturn(Optional.of(captor.getValue()));
+		
+		IBundleProvider result = store.retrieve(bundleProvider.getUuid());
+		
+		assertThat(result, instanceOf(SearchQueryBundleProvider.class));
+		assertThat(result.getUuid(), equalTo(bundleProvider.getUuid()));
+		assertThat(result.size(), equalTo(25));
+		assertThat(((SearchQueryBundleProvider<?, ?>) result).getSearchParameterMap()
+		        .getParameters(FhirConstants.NAME_SEARCH_HANDLER).get(0).getPropertyName(),
+		    equalTo(FhirConstants.NAME_PROPERTY));
+		assertThat(((SearchQueryBundleProvider<?, ?>) result).getDao(), sameInstance(patientDao));
+		verify(storedSearchDao).updateExpirationDate(eq(bundleProvider.getUuid()), any(Date.class));
+	}
+	
+	@Test
+	public void shouldRestoreR3Wrapper() {
+		SearchQueryBundleProviderR3Wrapper bundleProvider = new SearchQueryBundleProviderR3Wrapper(
+		        new SearchQueryBundleProvider<>(searchParameterMap, patientDao, patientTranslator,
+		                globalPropertyService, searchQueryInclude));
+		store.store(bundleProvider);
+		ArgumentCaptor<FhirStoredSearch> captor = ArgumentCaptor.forClass(FhirStoredSearch.class);
+		verify(storedSearchDao).saveStoredSearch(captor.capture());
+		assertThat(captor.getValue().getFhirVersion(), equalTo("R3"));
+		when(storedSearchDao.getStoredSearch(bundleProvider.getUuid())).thenReturn(Optional.of(captor.getValue()));
+		
+		IBundleProvider result = store.retrieve(bundleProvider.getUuid());
+		
+		assertThat(result, instanceOf(SearchQueryBundleProviderR3Wrapper.class));
+		assertThat(result.getUuid(), equalTo(bundleProvider.getUuid()));
+	}
+	
+	@Test
+	public void shouldKeepOtherBundleProvidersInMemory() {
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider();
+		
+		String searchId = store.store(bundleProvider);
+		
+		verify(storedSearchDao, never()).saveStoredSearch(any());
+		assertThat(searchId, notNullValue());
+		assertThat(store.retrieve(searchId), sameInstance(bundleProvider));
+	}
+	
+	@Test
+	public void shouldReturnNullForExpiredSearch() {
+		FhirStoredSearch storedSearch = new FhirStoredSearch();
+		storedSearch.setSearchId("expired-search");
+		storedSearch.setExpirationDate(new Date(System.currentTimeMillis() - 1000));
+		when(storedSearchDao.getStoredSearch("expired-search")).thenReturn(Optional.of(storedSearch));
+		
+		assertThat(store.retrieve("expired-search"), nullValue());
+		assertThat(store.getStatistics().getMisses(), equalTo(1L));
+	}
+	
+	@Test
+	public void shouldReturnNullForUnknownSearch() {
+		when(storedSearchDao.getStoredSearch(anyString())).thenReturn(Optional.empty());
+		
+		assertThat(store.retrieve("unknown-search"), nullValue());
+	}
+}
@@ -0,0 +1,204 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import ca.uhn.fhir.model.api.Include;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.api.translators.PatientTranslator;
+
+@RunWith(MockitoJUnitRunner.class)
+public class EverythingBundleProviderTest {
+	
+	private static final String PATIENT_UUID = "a3b0b0a6-0b4f-4c5b-9bd2-54a5d7c6e0f1";
+	
+	@Mock
+	private FhirPatientDao dao;
+	
+	@Mock
+	private PatientTranslator translator;
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private SearchQueryInclude<Patient> searchQueryInclude;
+	
+	@Mock
+	private IBundleProvider revIncludeProvider;
+	
+	private Patient patient;
+	
+	private EverythingBundleProvider<org.openmrs.Patient, Patient> bundleProvider;
+	
+	@Before
+	public void setup() {
+		HashSet<Include> revIncludes = new HashSet<>();
+		revIncludes.add(new Include(FhirConstants.OBSERVATION + ":" + FhirConstants.INCLUDE_PATIENT_PARAM));
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.EVERYTHING_SEARCH_HANDLER, "")
+		        .addParameter(FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER, revIncludes);
+		
+		patient = new Patient();
+		patient.setId(PATIENT_UUID);
+		
+		when(dao.getSearchResultsCount(any())).thenReturn(1);
+		when(dao.getSearchResultUuids(any())).thenReturn(Collections.singletonList(PATIENT_UUID));
+		
+		bundleProvider = new EverythingBundleProvider<>(theParams, dao, translator, globalPropertyService,
+		        searchQueryInclude);
+	}
+	
+	@Test
+	public void shouldCountResourcesFromEverySource() {
+		Observation first = new Observation();
+		Observation second = new Observation();
+		when(searchQueryInclude.getRevIncludedBundleProviders(eq(Collections.singletonList(PATIENT_UUID)), any()))
+		        .thenReturn(Collections.singletonList(new SimpleBundleProvider(Arrays.asList(first, second))));
+		
+		assertThat(bundleProvider.size(), equalTo(3));
+	}
+	
+	@Test
+	public void shouldPageAcrossSources() {
+		org.openmrs.Patient openmrsPatient = new org.openmrs.Patient();
+		Observation first = new Observation();
+		Observation second = new Observation();
+		when(searchQueryInclude.getRevIncludedBundleProviders(eq(Collections.singletonList(PATIENT_UUID)), any()))
+		        .thenReturn(Collections.singletonList(new SimpleBundleProvider(Arrays.asList(first, second))));
+		when(dao.getSearchResults(any())).thenReturn(Collections.singletonList(openmrsPatient));
+		when(translator.toFhirResources(anyCollection())).thenReturn(Collections.singletonList(patient));
+		
+		List<IBaseResource> firstPage = bundleProvider.getResources(0, 2);
+		List<IBaseResource> secondPage = bundleProvider.getResources(2, 4);
+		
+		assertThat(firstPage, contains(patient, first));
+		assertThat(secondPage, contains(second));
+	}
+	
+	@Test
+	public void shouldOnlyFetchSourcesOnTheRequestedPage() {
+		org.openmrs.Patient openmrsPatient = new org.openmrs.Patient();
+		when(revIncludeProvider.size()).thenReturn(40000);
+		when(searchQueryInclude.getRevIncludedBundleProviders(eq(Collections.singletonList(PATIENT_UUID)), any()))
+		        .thenReturn(Collections.singletonList(revIncludeProvider));
+		when(dao.getSearchResults(any())).thenReturn(Collections.singletonList(openmrsPatient));
+		when(translator.toFhirResources(anyCollection())).thenReturn(Collections.singletonList(patient));
+		
+		assertThat(bundleProvider.size(), equalTo(40001));
+		assertThat(bundleProvider.getResources(0, 1), contains(patient));
+		verify(revIncludeProvider, never()).getResources(anyInt(), anyInt());
+	}
+	
+	@Test
+	public void shouldReturnIncludedResourcesWithEachPageWithoutCountingThem() {
+		HashSet<Include> includes = new HashSet<>();
+		includes.add(new Include(FhirConstants.PATIENT + ":" + FhirConstants.INCLUDE_LOCATION_PARAM));
+		HashSet<Include> revIncludes = new HashSet<>();
+		revIncludes.add(new Include(FhirConstants.OBSERVATION + ":" + FhirConstants.INCLUDE_PATIENT_PARAM));
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.EVERYTHING_SEARCH_HANDLER, "")
+		        .addParameter(FhirConstants.INCLUDE_SEARCH_HANDLER, includes)
+		        .addParameter(FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER, revIncludes);
+		bundleProvider = new EverythingBundleProvider<>(theParams, dao, translator, globalPropertyService,
+		        searchQueryInclude);
+		
+		assertThat(bundleProvider.size(), equalTo(1));
+		verifyNoInteractions(translator);
+		
+		org.openmrs.Patient openmrsPatient = new org.openmrs.Patient();
+		Location location = new Location();
+		when(dao.getSearchResults(any())).thenReturn(Collections.singletonList(openmrsPatient));
+		when(translator.toFhirResources(anyCollection())).thenReturn(Collections.singletonList(patient));
+		when(searchQueryInclude.getIncludedResources(eq(Collections.singletonList(patient)), any()))
+		        .thenReturn(Collections.singleton(location));
+		
+		assertThat(bundleProvider.getResources(0, 1), contains(patient, location));
+	}
+	
+	@Test
+	public void shouldFindRevIncludedResourcesForOnePageOfMatchingResourcesAtATime() {
+		List<String> firstUuids = IntStream.range(0, 500).mapToObj(i -> "patient-" + i).collect(Collectors.toList());
+		List<String> secondUuids = Collections.singletonList(PATIENT_UUID);
+		Observation observation = new Observation();
+		when(dao.getSearchResultsCount(any())).thenReturn(501);
+		when(dao.getSearchResultUuids(any())).thenAnswer(invocation -> {
+			SearchParameterMap uuidParams = invocation.getArgument(0);
+			return uuidParams.getFromIndex() == 0 ? firstUuids : secondUuids;
+		});
+		when(searchQueryInclude.getRevIncludedBundleProviders(eq(firstUuids), any())).thenReturn(
+		    Collections.singletonList(new SimpleBundleProvider(Arrays.asList(new Observation(), new Observation()))));
+		when(searchQueryInclude.getRevIncludedBundleProviders(eq(secondUuids), any())).thenReturn(
+		    Collections.singletonList(new SimpleBundleProvider(Collections.singletonList(observation))));
+		
+		assertThat(bundleProvider.size(), equalTo(504));
+		assertThat(bundleProvider.getResources(503, 504), contains(observation));
+	}
+	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shouldIncludeTheResourcesOfEveryInclude() {
+		Include locationInclude = new Include(FhirConstants.PATIENT + ":" + FhirConstants.INCLUDE_LOCATION_PARAM);
+		Include linkInclude = new Include(FhirConstants.PATIENT + ":" + FhirConstants.INCLUDE_LINK_PARAM);
+		HashSet<Include> locationIncludes = new HashSet<>(Collections.singleton(locationInclude));
+		HashSet<Include> linkIncludes = new HashSet<>(Collections.singleton(linkInclude));
+		HashSet<Include> revIncludes = new HashSet<>();
+		revIncludes.add(new Include(FhirConstants.OBSERVATION + ":" + FhirConstants.INCLUDE_PATIENT_PARAM));
+		SearchParameterMap theParams = new SearchParameterMap().addParameter(FhirConstants.EVERYTHING_SEARCH_HANDLER, "")
+		        .addParameter(FhirConstants.INCLUDE_SEARCH_HANDLER, locationIncludes)
+		        .addParameter(FhirConstants.INCLUDE_SEARCH_HANDLER, linkIncludes)
+		        .addParameter(FhirConstants.REVERSE_INCLUDE_SEARCH_HANDLER, revIncludes);
+		bundleProvider = new EverythingBundleProvider<>(theParams, dao, translator, globalPropertyService,
+		        searchQueryInclude);
+		when(dao.getSearchResults(any())).thenReturn(Collections.singletonList(new org.openmrs.Patient()));
+		when(translator.toFhirResources(anyCollection())).thenReturn(Collections.singletonList(patient));
+		
+		bundleProvider.getResources(0, 1);
+		
+		ArgumentCaptor<SearchParameterMap> includeParams = ArgumentCaptor.forClass(SearchParameterMap.class);
+		verify(searchQueryInclude).getIncludedResources(any(), includeParams.capture());
+		Set<Include> includes = (Set<Include>) includeParams.getValue()
+		        .getParameters(FhirConstants.INCLUDE_SEARCH_HANDLER).get(0).getParam();
+		assertThat(includes, containsInAnyOrder(locationInclude, linkInclude));
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import org.junit.Before;
+import org.junit.Test;
+
+public class MemorySearchResultStoreTest {
+	
+	private static final String SEARCH_UUID = "f3a1b3a4-16a0-4cb5-a1ce-6f3d7e1c2a11";
+	
+	private static final long TIME_TO_LIVE = 1000L;
+	
+	private final AtomicLong now = new AtomicLong(10000L);
+	
+	private MemorySearchResultStore store;
+	
+	@Before
+	public void setup() {
+		store = new MemorySearchResultStore(2, TIME_TO_LIVE, now::get);
+	}
+	
+	@Test
+	public void shouldStoreSearchUsingBundleProviderUuid() {
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider(Collections.emptyList(), SEARCH_UUID);
+		
+		assertThat(store.store(bundleProvider), equalTo(SEARCH_UUID));
+		assertThat(store.retrieve(SEARCH_UUID), sameInstance(bundleProvider));
+	}
+	
+	@Test
+	public void shouldEvictLeastRecentlyAccessedSearchWhenFull() {
+		String firstSearchId = store.store(new SimpleBundleProvider());
+		String secondSearchId = store.store(new SimpleBundleProvider());
+		store.retrieve(firstSearchId);
+		String thirdSearchId = store.store(new SimpleBundleProvider());
+		
+		assertThat(store.retrieve(firstSearchId), notNullValue());
+		assertThat(store.retrieve(secondSearchId), nullValue());
+		assertThat(store.retrieve(thirdSearchId), notNullValue());
+		assertThat(store.getStatistics().getEvictions(), equalTo(1L));
+	}
+	
+	@Test
+	public void shouldExpireSearchesNotAccessedWithinTimeToLive() {
+		String searchId = store.store(new SimpleBundleProvider());
+		
+		now.addAndGet(TIME_TO_LIVE);
+		
+		assertThat(store.retrieve(searchId), nullValue());
+		assertThat(store.getStatistics().getExpirations(), equalTo(1L));
+	}
+	
+	@Test
+	public void shouldExtendTimeToLiveWhenSearchIsAccessed() {
+		String searchId = store.store(new SimpleBundleProvider());
+		
+		now.addAndGet(TIME_TO_LIVE - 1);
+		assertThat(store.retrieve(searchId), notNullValue());
+		
+		now.addAndGet(TIME_TO_LIVE - 1);
+		assertThat(store.retrieve(searchId), notNullValue());
+	}
+	
+	@Test
+	public void shouldReportStatistics() {
+		String searchId = store.store(new SimpleBundleProvider());
+		now.addAndGet(500L);
+		store.retrieve(searchId);
+		store.retrieve(SEARCH_UUID);
+		
+		SearchResultStoreStatistics statistics = store.getStatistics();
+		
+		assertThat(statistics.getSize(), equalTo(1L));
+		assertThat(statistics.getOldestSearchAge(), equalTo(500L));
+		assertThat(statistics.getHits(), equalTo(1L));
+		assertThat(statistics.getMisses(), equalTo(1L));
+	}
+}
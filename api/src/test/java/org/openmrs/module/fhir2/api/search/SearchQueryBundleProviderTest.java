@@ -14,27 +14,37 @@ import static org.hamcrest.Matchers.empty;
 import static org.hamcrest.Matchers.equalTo;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
 import org.exparity.hamcrest.date.DateMatchers;
 import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IPrimitiveType;
 import org.hl7.fhir.r4.model.Observation;
+import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openmrs.Obs;
+import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
 import org.openmrs.module.fhir2.api.dao.FhirObservationDao;
+import org.openmrs.module.fhir2.api.search.param.KeysetCursor;
 import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
 import org.openmrs.module.fhir2.api.translators.ObservationTranslator;
 
@@ -61,6 +71,11 @@ public class SearchQueryBundleProviderTest {
 		        globalPropertyService, searchQueryInclude);
 	}
 	
+	@After
+	public void tearDown() {
+		SearchTotalModeHolder.clear();
+	}
+	
 	@Test
 	public void shouldReturnPreferredPageSize() {
 		when(globalPropertyService.getGlobalPropertyAsInteger(anyString(), anyInt())).thenReturn(10);
@@ -89,4 +104,110 @@ public class SearchQueryBundleProviderTest {
 		assertThat(searchQueryBundleProvider.getUuid(), not(equalTo(new SearchQueryBundleProvider<>(new SearchParameterMap(),
 		        observationDao, translator, globalPropertyService, searchQueryInclude).getUuid())));
 	}
+	
+	@Test
+	public void shouldNotCountResultsWhenTotalIsNone() {
+		SearchParameterMap theParams = new SearchParameterMap();
+		theParams.setSearchTotalMode(SearchTotalModeEnum.NONE);
+		searchQueryBundleProvider = new SearchQueryBundleProvider<>(theParams, observationDao, translator,
+		        globalPropertyService, searchQueryInclude);
+		when(observationDao.getSearchResults(any())).thenAnswer(invocation -> {
+			SearchParameterMap params = invocation.getArgument(0);
+			// a page of two results is requested with one extra result
+			if (params.getFromIndex() == 0 && params.getToIndex() == 3) {
+				return Arrays.asList(new Obs(), new Obs(), new Obs());
+			}
+			
+			return Collections.singletonList(new Obs());
+		});
+		
+		assertThat(searchQueryBundleProvider.size(), nullValue());
+		
+		searchQueryBundleProvider.getResources(0, 2);
+		assertThat(searchQueryBundleProvider.size(), nullValue());
+		
+		searchQueryBundleProvider.getResources(2, 4);
+		assertThat(searchQueryBundleProvider.size(), equalTo(3));
+		verify(observationDao, never()).getSearchResultsCount(any());
+	}
+	
+	@Test
+	public void shouldCountResultsUpToLimitWhenTotalIsEstimate() {
+		SearchParameterMap theParams = new SearchParameterMap();
+		theParams.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		searchQueryBundleProvider = new SearchQueryBundleProvider<>(theParams, observationDao, translator,
+		        globalPropertyService, searchQueryInclude);
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_ESTIMATED_TOTAL_LIMIT, 1000))
+		        .thenReturn(100);
+		when(observationDao.getSearchResultsCount(theParams, 100)).thenReturn(null);
+		
+		assertThat(searchQueryBundleProvider.size(), nullValue());
+		assertThat(searchQueryBundleProvider.size(), nullValue());
+		verify(observationDao).getSearchResultsCount(theParams, 100);
+		verify(observationDao, never()).getSearchResultsCount(theParams);
+	}
+	
+	@Test
+	public void shouldReportTheLeastNumberOfResultsWhenThereAreTooManyToEstimate() {
+		SearchParameterMap theParams = new SearchParameterMap();
+		theParams.setSearchTotalMode(SearchTotalModeEnum.ESTIMATED);
+		searchQueryBundleProvider = new SearchQueryBundleProvider<>(theParams, observationDao, translator,
+		        globalPropertyService, searchQueryInclude);
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_ESTIMATED_TOTAL_LIMIT, 1000))
+		        .thenReturn(2);
+		when(observationDao.getSearchResultsCount(theParams, 2)).thenReturn(null);
+		when(observationDao.getSearchResults(any())).thenReturn(Arrays.asList(new Obs(), new Obs(), new Obs()));
+		
+		assertThat(searchQueryBundleProvider.size(), nullValue());
+		assertThat(SearchTotalModeHolder.getMinimumTotal(), equalTo(3));
+		
+		// the extra result read with the second page shows there are more than four results
+		searchQueryBundleProvider.getResources(2, 4);
+		assertThat(searchQueryBundleProvider.size(), nullValue());
+		assertThat(SearchTotalModeHolder.getMinimumTotal(), equalTo(5));
+	}
+	
+	@Test
+	public void shouldNotReturnPageIdsWhenKeysetPagingIsDisabled() {
+		when(observationDao.getSearchResults(any())).thenReturn(Collections.emptyList());
+		
+		searchQueryBundleProvider.getResources(0, 10);
+		
+		assertThat(searchQueryBundleProvider.getCurrentPageId(), nullValue());
+		assertThat(searchQueryBundleProvider.getNextPageId(), nullValue());
+	}
+	
+	@Test
+	public void shouldReturnPageIdsWhenKeysetPagingIsEnabled() {
+		KeysetCursor nextCursor = new KeysetCursor(Arrays.asList(new Date(), 42));
+		when(globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_KEYSET_PAGING, "false"))
+		        .thenReturn("true");
+		when(observationDao.supportsKeysetPagination(any())).thenReturn(true);
+		when(observationDao.getKeysetSearchResults(any()))
+		        .thenReturn(new KeysetPage<>(Collections.singletonList(new Obs()), nextCursor));
+		
+		searchQueryBundleProvider.getResources(0, 10);
+		
+		assertThat(searchQueryBundleProvider.getCurrentPageId(), equalTo(SearchQueryBundleProvider.FIRST_PAGE_ID));
+		assertThat(searchQueryBundleProvider.getNextPageId(), equalTo(nextCursor.encode()));
+	}
+	
+	@Test
+	public void shouldResumeSearchFromPageId() {
+		KeysetCursor cursor = new KeysetCursor(Arrays.asList("Doe", 42));
+		when(globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_KEYSET_PAGING, "false"))
+		        .thenReturn("true");
+		when(observationDao.supportsKeysetPagination(any())).thenReturn(true);
+		when(observationDao.getKeysetSearchResults(any())).thenReturn(new KeysetPage<>(Collections.emptyList(), null));
+		
+		IBundleProvider page = searchQueryBundleProvider.forPage(cursor.encode());
+		page.getResources(0, 10);
+		
+		ArgumentCaptor<SearchParameterMap> captor = ArgumentCaptor.forClass(SearchParameterMap.class);
+		verify(observationDao).getKeysetSearchResults(captor.capture());
+		assertThat(captor.getValue().getKeysetCursor(), equalTo(cursor));
+		assertThat(page.getUuid(), equalTo(searchQueryBundleProvider.getUuid()));
+		assertThat(page.getCurrentPageId(), equalTo(cursor.encode()));
+		assertThat(page.getNextPageId(), nullValue());
+	}
 }
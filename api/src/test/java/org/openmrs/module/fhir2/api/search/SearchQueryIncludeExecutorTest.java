@@ -0,0 +1,153 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.openmrs.api.context.Context;
+import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class SearchQueryIncludeExecutorTest extends BaseFhirContextSensitiveTest {
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	private final List<String> runAsSystemIds = Collections.synchronizedList(new ArrayList<>());
+	
+	private SearchQueryIncludeExecutor executor;
+	
+	@Before
+	public void setup() {
+		globalPropertyService = mock(FhirGlobalPropertyService.class);
+		
+		executor = new SearchQueryIncludeExecutor() {
+			
+			@Override
+			protected void runAs(String systemId, Runnable task) {
+				runAsSystemIds.add(systemId);
+				Context.openSession();
+				try {
+					task.run();
+				}
+				finally {
+					Context.closeSession();
+				}
+			}
+		};
+		executor.setGlobalPropertyService(globalPropertyService);
+		executor.setTransactionManager(transactionManager);
+	}
+	
+	@After
+	public void tearDown() {
+		executor.shutdown();
+	}
+	
+	@Test
+	public void shouldRunBranchesOnCallingThreadByDefault() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1))
+		        .thenReturn(1);
+		Supplier<Thread> branch = Thread::currentThread;
+		
+		List<Thread> results = executor.invokeAll(Arrays.asList(branch, branch));
+		
+		assertThat(results, everyItem(equalTo(Thread.currentThread())));
+	}
+	
+	@Test
+	public void shouldReturnResultsInBranchOrderWhenRunConcurrently() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1))
+		        .thenReturn(3);
+		
+		List<String> results = executor.invokeAll(Arrays.<Supplier<String>> asList(() -> {
+			try {
+				Thread.sleep(200);
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return "slow";
+		}, () -> "fast", () -> "fastest"));
+		
+		assertThat(results, contains("slow", "fast", "fastest"));
+	}
+	
+	@Test
+	public void shouldRunConcurrentBranchesAsTheCallingUserWithoutSharingItsUserContext() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1))
+		        .thenReturn(2);
+		Supplier<Thread> branch = Thread::currentThread;
+		
+		List<Thread> results = executor.invokeAll(Arrays.asList(branch, branch));
+		
+		assertThat(results, everyItem(not(equalTo(Thread.currentThread()))));
+		assertThat(runAsSystemIds, contains(Context.getAuthenticatedUser().getSystemId(),
+		    Context.getAuthenticatedUser().getSystemId()));
+	}
+	
+	@Test
+	public void shouldResizeThePoolWithoutStoppingIt() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1))
+		        .thenReturn(2, 3);
+		
+		ThreadPoolExecutor pool = executor.getExecutor();
+		
+		assertThat(executor.getExecutor(), sameInstance(pool));
+		assertThat(pool.isShutdown(), equalTo(false));
+		assertThat(pool.getMaximumPoolSize(), equalTo(3));
+	}
+	
+	@Test
+	public void shouldRunBranchesSubmittedAfterShutdownOnTheCallingThread() throws Exception {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1))
+		        .thenReturn(2);
+		ThreadPoolExecutor pool = executor.getExecutor();
+		executor.shutdown();
+		
+		Future<Thread> future = pool.submit(() -> Thread.currentThread());
+		
+		assertThat(future.isDone(), equalTo(true));
+		assertThat(future.get(), equalTo(Thread.currentThread()));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void shouldRethrowExceptionFromConcurrentBranch() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_INCLUDE_PARALLELISM, 1))
+		        .thenReturn(2);
+		
+		executor.invokeAll(Arrays.<Supplier<String>> asList(() -> "result", () -> {
+			throw new IllegalStateException();
+		}));
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.search.param;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.junit.Test;
+
+public class KeysetCursorTest {
+	
+	@Test
+	public void shouldRoundTripSortKeys() {
+		Date date = new Date(1577836800000L);
+		KeysetCursor cursor = new KeysetCursor(
+		        Arrays.asList("Doe", date, 12L, 1.5d, true, new BigDecimal("2.50"), null, 42));
+		
+		KeysetCursor result = KeysetCursor.decode(cursor.encode());
+		
+		assertThat(result, equalTo(cursor));
+		assertThat(result.getSortKeys(), contains("Doe", date, 12L, 1.5d, true, new BigDecimal("2.50"), null, 42));
+	}
+	
+	@Test
+	public void shouldEncodeAsUrlSafeString() {
+		KeysetCursor cursor = new KeysetCursor(Arrays.asList("??>>//++", 1));
+		
+		assertThat(cursor.encode().matches("[A-Za-z0-9_-]+"), equalTo(true));
+	}
+	
+	@Test
+	public void shouldCreateCursorFromTrailingElementsOfRow() {
+		KeysetCursor cursor = KeysetCursor.fromRow(new Object[] { new Object(), "Doe", 42 });
+		
+		assertThat(cursor.getSortKeys(), hasSize(2));
+		assertThat(cursor.getSortKeys(), contains("Doe", 42));
+	}
+	
+	@Test
+	public void shouldProduceDifferentPageIdsForDifferentPositions() {
+		assertThat(new KeysetCursor(Arrays.asList("Doe", 1)).encode(),
+		    not(equalTo(new KeysetCursor(Arrays.asList("Doe", 2)).encode())));
+	}
+	
+	@Test
+	public void shouldDecodeNullKey() {
+		KeysetCursor cursor = KeysetCursor.decode(new KeysetCursor(Arrays.asList(null, 7)).encode());
+		
+		assertThat(cursor.getSortKeys().get(0), nullValue());
+	}
+	
+	@Test(expected = InvalidRequestException.class)
+	public void shouldThrowInvalidRequestExceptionForInvalidBase64() {
+		KeysetCursor.decode("not a cursor!");
+	}
+	
+	@Test(expected = InvalidRequestException.class)
+	public void shouldThrowInvalidRequestExceptionForTruncatedCursor() {
+		String encoded = new KeysetCursor(Arrays.asList("Doe", 42)).encode();
+		
+		KeysetCursor.decode(encoded.substring(0, encoded.length() - 4));
+	}
+	
+	@Test(expected = IllegalStateException.class)
+	public void shouldThrowIllegalStateExceptionForUnsupportedKeyType() {
+		new KeysetCursor(Arrays.asList(new Object())).encode();
+	}
+}
@@ -0,0 +1,135 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.translators.impl;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.empty;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.Concept;
+import org.openmrs.ConceptMap;
+import org.openmrs.ConceptMapType;
+import org.openmrs.ConceptName;
+import org.openmrs.ConceptReferenceTerm;
+import org.openmrs.ConceptSource;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.FhirTestConstants;
+import org.openmrs.module.fhir2.api.FhirConceptSourceService;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.model.FhirConceptSource;
+import org.openmrs.util.LocaleUtility;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConceptTranslationIndexTest {
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private FhirConceptSourceService conceptSourceService;
+	
+	private ConceptTranslationIndex index;
+	
+	private Concept concept;
+	
+	@Before
+	public void setup() {
+		LocaleUtility.setLocalesAllowedListCache(Arrays.asList(Locale.ENGLISH));
+		index = new ConceptTranslationIndex();
+		index.setGlobalPropertyService(globalPropertyService);
+		index.setConceptSourceService(conceptSourceService);
+		
+		ConceptSource loinc = new ConceptSource();
+		FhirConceptSource fhirLoinc = new FhirConceptSource();
+		fhirLoinc.setConceptSource(loinc);
+		fhirLoinc.setUrl(FhirTestConstants.LOINC_SYSTEM_URL);
+		when(conceptSourceService.getFhirConceptSources()).thenReturn(Collections.singletonList(fhirLoinc));
+		
+		ConceptMapType sameAs = new ConceptMapType();
+		sameAs.setName("SAME-AS");
+		
+		concept = new Concept(1);
+		concept.addName(new ConceptName("concept-name", Locale.ENGLISH));
+		concept.addConceptMapping(new ConceptMap(new ConceptReferenceTerm(loinc, "1000-1", null), sameAs));
+	}
+	
+	@Test
+	public void get_shouldReturnIndexedEntryUntilConceptIsInvalidated() {
+		setMaxMemory(1);
+		
+		ConceptTranslationIndex.Entry entry = index.get(concept);
+		
+		assertThat(entry.getCodes(), hasSize(1));
+		assertThat(entry.getCodes().get(0).getSystem(), equalTo(FhirTestConstants.LOINC_SYSTEM_URL));
+		assertThat(entry.getCodes().get(0).getCode(), equalTo("1000-1"));
+		assertThat(index.get(concept), sameInstance(entry));
+		
+		concept.getConceptMappings().clear();
+		index.invalidate(1);
+		
+		assertThat(index.get(concept), not(sameInstance(entry)));
+		assertThat(index.get(concept).getCodes(), empty());
+	}
+	
+	@Test
+	public void invalidateAll_shouldLookUpConceptSourcesAgain() {
+		setMaxMemory(1);
+		
+		index.get(concept);
+		index.invalidateAll();
+		index.get(concept);
+		
+		verify(conceptSourceService, times(2)).getFhirConceptSources();
+	}
+	
+	@Test
+	public void get_shouldNotIndexEntriesWhenDisabled() {
+		setMaxMemory(0);
+		
+		ConceptTranslationIndex.Entry entry = index.get(concept);
+		
+		assertThat(index.get(concept), not(sameInstance(entry)));
+		assertThat(index.getStats().requestCount(), equalTo(0L));
+	}
+	
+	@Test
+	public void toCodeableConcept_shouldReturnANewCodeableConceptEachTime() {
+		setMaxMemory(1);
+		ConceptTranslationIndex.Entry entry = index.get(concept);
+		
+		entry.toCodeableConcept().getCodingFirstRep().setCode("changed");
+		
+		assertThat(entry.toCodeableConcept().getText(), equalTo("concept-name"));
+		assertThat(entry.toCodeableConcept().getCodingFirstRep().getCode(), equalTo(concept.getUuid()));
+		assertThat(entry.toCodeableConcept().getCoding(), hasSize(2));
+	}
+	
+	private void setMaxMemory(int maxMemory) {
+		when(globalPropertyService.getGlobalPropertyAsInteger(eq(FhirConstants.OPENMRS_FHIR_CONCEPT_INDEX_MAX_MEMORY),
+		    anyInt())).thenReturn(maxMemory);
+	}
+}
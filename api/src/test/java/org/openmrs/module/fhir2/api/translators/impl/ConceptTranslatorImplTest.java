@@ -20,6 +20,8 @@ import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 
 import java.util.ArrayList;
@@ -41,12 +43,13 @@ import org.openmrs.ConceptMapType;
 import org.openmrs.ConceptName;
 import org.openmrs.ConceptReferenceTerm;
 import org.openmrs.ConceptSource;
+import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.FhirTestConstants;
 import org.openmrs.module.fhir2.api.FhirConceptService;
 import org.openmrs.module.fhir2.api.FhirConceptSourceService;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
 import org.openmrs.module.fhir2.model.FhirConceptSource;
 import org.openmrs.util.LocaleUtility;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 
 @RunWith(MockitoJUnitRunner.class)
 public class ConceptTranslatorImplTest {
@@ -61,6 +64,9 @@ public class ConceptTranslatorImplTest {
 	@Mock
 	private FhirConceptSourceService conceptSourceService;
 	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
 	private ConceptTranslatorImpl conceptTranslator;
 	
 	private ConceptMapType sameAs;
@@ -425,7 +431,7 @@ public class ConceptTranslatorImplTest {
 	@Test
 	public void shouldReturnDifferentInstancesForSameConceptWhenCached() {
 		// given
-		conceptTranslator.setCacheManager(new ConcurrentMapCacheManager("fhir2ConceptToCodeableConcept"));
+		useConceptTranslationIndex();
 		
 		// when
 		CodeableConcept result1 = conceptTranslator.toFhirResource(concept);
@@ -442,7 +448,7 @@ public class ConceptTranslatorImplTest {
 	@Test
 	public void shouldNotShareMutationsBetweenCachedInstances() {
 		// given
-		conceptTranslator.setCacheManager(new ConcurrentMapCacheManager("fhir2ConceptToCodeableConcept"));
+		useConceptTranslationIndex();
 		
 		// when
 		CodeableConcept result1 = conceptTranslator.toFhirResource(concept);
@@ -454,6 +460,30 @@ public class ConceptTranslatorImplTest {
 		assertThat(result2.getText(), not(equalTo("modified text")));
 	}
 	
+	@Test
+	public void shouldTranslateIndexedConceptWithoutReadingItsMappingsAgain() {
+		useConceptTranslationIndex();
+		concept.setConceptId(1);
+		addMapping(sameAs, loinc, "1000-1");
+		
+		conceptTranslator.toFhirResource(concept);
+		concept.getConceptMappings().clear();
+		CodeableConcept result = conceptTranslator.toFhirResource(concept);
+		
+		assertThat(result.getCoding(), hasSize(2));
+		assertThat(result.getCoding(), hasItem(hasProperty("code", equalTo("1000-1"))));
+	}
+	
+	private void useConceptTranslationIndex() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(eq(FhirConstants.OPENMRS_FHIR_CONCEPT_INDEX_MAX_MEMORY),
+		    anyInt())).thenReturn(1);
+		
+		ConceptTranslationIndex conceptTranslationIndex = new ConceptTranslationIndex();
+		conceptTranslationIndex.setGlobalPropertyService(globalPropertyService);
+		conceptTranslationIndex.setConceptSourceService(conceptSourceService);
+		conceptTranslator.setConceptTranslationIndex(conceptTranslationIndex);
+	}
+	
 	private void addMapping(ConceptMapType mapType, ConceptSource conceptSource, String code) {
 		ConceptMap m = new ConceptMap();
 		m.setConceptMapType(mapType);
@@ -10,11 +10,19 @@
 package org.openmrs.module.fhir2.api.translators.impl;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
 import org.hl7.fhir.r4.model.Group;
 import org.hl7.fhir.r4.model.Reference;
 import org.junit.Before;
@@ -73,6 +81,23 @@ public class GroupMemberTranslatorImplTest {
 		assertThat(component.hasEntity(), is(true));
 	}
 	
+	@Test
+	public void shouldTranslateCohortMembersWithOneQuery() {
+		Patient patient1 = new Patient(1);
+		Patient patient2 = new Patient(2);
+		Reference patientReference1 = new Reference().setReference("Patient/1");
+		Reference patientReference2 = new Reference().setReference("Patient/2");
+		when(patientDao.getPatientsByIds(Arrays.asList(2, 1, 3))).thenReturn(Arrays.asList(patient1, patient2));
+		when(patientReferenceTranslator.toFhirResource(patient1)).thenReturn(patientReference1);
+		when(patientReferenceTranslator.toFhirResource(patient2)).thenReturn(patientReference2);
+		
+		List<GroupMember> members = groupMemberTranslator.toFhirResources(Arrays.asList(2, 1, 3));
+		
+		assertThat(members.stream().map(GroupMember::getEntity).collect(Collectors.toList()),
+		    contains(patientReference2, patientReference1));
+		verify(patientDao, never()).getPatientById(anyInt());
+	}
+	
 	@Test
 	public void shouldTranslateGroupMemberComponentToOpenMRSType() {
 		Reference patientReference = mock(Reference.class);
@@ -14,9 +14,12 @@ import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 
@@ -32,6 +35,9 @@ import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 import org.openmrs.Cohort;
 import org.openmrs.User;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.dao.FhirGroupDao;
 import org.openmrs.module.fhir2.api.translators.GroupMemberTranslator;
 import org.openmrs.module.fhir2.api.translators.PractitionerReferenceTranslator;
 import org.openmrs.module.fhir2.model.GroupMember;
@@ -49,6 +55,12 @@ public class GroupTranslatorImplTest {
 	@Mock
 	private PractitionerReferenceTranslator<User> practitionerReferenceTranslator;
 	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private FhirGroupDao groupDao;
+	
 	private GroupTranslatorImpl groupTranslator;
 	
 	@Before
@@ -56,6 +68,8 @@ public class GroupTranslatorImplTest {
 		groupTranslator = new GroupTranslatorImpl();
 		groupTranslator.setGroupMemberTranslator(groupMemberTranslator);
 		groupTranslator.setPractitionerReferenceTranslator(practitionerReferenceTranslator);
+		groupTranslator.setGlobalPropertyService(globalPropertyService);
+		groupTranslator.setGroupDao(groupDao);
 	}
 	
 	@Test
@@ -150,23 +164,55 @@ public class GroupTranslatorImplTest {
 	}
 	
 	@Test
-	@Ignore
 	public void shouldTranslateCohortMembersToFHIRGroupMembers() {
 		Cohort cohort = mock(Cohort.class);
-		Reference patientReference = mock(Reference.class);
-		Group.GroupMemberComponent groupMemberComponent = mock(Group.GroupMemberComponent.class);
+		Reference patientReference = new Reference().setReference("Patient/1");
 		when(cohort.getMemberIds()).thenReturn(new HashSet<>(Arrays.asList(1, 2, 3)));
-		//when(groupMemberTranslator.toFhirResource(anyInt())).thenReturn(new GroupMember(groupMemberComponent.getEntity()));
-		when(groupMemberComponent.hasEntity()).thenReturn(true);
-		when(groupMemberComponent.getEntity()).thenReturn(patientReference);
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_GROUP_MEMBERS_LIMIT, 100))
+		        .thenReturn(100);
+		when(groupMemberTranslator.toFhirResources(Arrays.asList(1, 2, 3)))
+		        .thenReturn(Collections.singletonList(new GroupMember(patientReference)));
 		
 		Group group = groupTranslator.toFhirResource(cohort);
 		assertThat(group, notNullValue());
+		assertThat(group.getQuantity(), is(3));
 		assertThat(group.hasMember(), is(true));
 		assertThat(group.getMemberFirstRep().hasEntity(), is(true));
 		assertThat(group.getMemberFirstRep().getEntity(), is(patientReference));
 	}
 	
+	@Test
+	public void shouldOnlyTranslateMembersUpToTheMembersLimit() {
+		Cohort cohort = mock(Cohort.class);
+		when(cohort.getMemberIds()).thenReturn(new HashSet<>(Arrays.asList(3, 1, 2)));
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_GROUP_MEMBERS_LIMIT, 100))
+		        .thenReturn(2);
+		when(groupMemberTranslator.toFhirResources(Arrays.asList(1, 2))).thenReturn(
+		    Arrays.asList(new GroupMember(new Reference("Patient/1")), new GroupMember(new Reference("Patient/2"))));
+		
+		Group group = groupTranslator.toFhirResource(cohort);
+		assertThat(group.getQuantity(), is(3));
+		assertThat(group.getMember(), hasSize(2));
+	}
+	
+	@Test
+	public void shouldCountAndFetchTheMembersOfSavedCohortsFromTheDatabase() {
+		Cohort cohort = mock(Cohort.class);
+		when(cohort.getCohortId()).thenReturn(1);
+		when(cohort.getUuid()).thenReturn(COHORT_UUID);
+		when(groupDao.getMemberCount(COHORT_UUID)).thenReturn(3);
+		when(groupDao.getMemberIds(COHORT_UUID, 0, 2)).thenReturn(Arrays.asList(1, 2));
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_GROUP_MEMBERS_LIMIT, 100))
+		        .thenReturn(2);
+		when(groupMemberTranslator.toFhirResources(Arrays.asList(1, 2))).thenReturn(
+		    Arrays.asList(new GroupMember(new Reference("Patient/1")), new GroupMember(new Reference("Patient/2"))));
+		
+		Group group = groupTranslator.toFhirResource(cohort);
+		assertThat(group.getQuantity(), is(3));
+		assertThat(group.getMember(), hasSize(2));
+		verify(cohort, never()).getMemberIds();
+	}
+	
 	@Test
 	@Ignore
 	public void shouldTranslateFHIRGroupMembersToOpenMRSCohortMembers() {
@@ -20,6 +20,8 @@ import static org.hamcrest.Matchers.is;
 import static org.hamcrest.Matchers.not;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.mockito.hamcrest.MockitoHamcrest.argThat;
 
@@ -31,6 +33,8 @@ import java.util.List;
 import ca.uhn.fhir.model.api.TemporalPrecisionEnum;
 import com.google.common.collect.Sets;
 import org.exparity.hamcrest.date.DateMatchers;
+import org.hibernate.collection.internal.PersistentSet;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
 import org.hl7.fhir.r4.model.Address;
 import org.hl7.fhir.r4.model.BooleanType;
 import org.hl7.fhir.r4.model.ContactPoint;
@@ -490,6 +494,35 @@ public class PatientTranslatorImplTest {
 		assertThat(contactPoints, notNullValue());
 	}
 	
+	@Test
+	@SuppressWarnings("unchecked")
+	public void shouldUseFetchedAttributesForPatientContactPoints() {
+		PersonAttributeType attributeType = new PersonAttributeType();
+		attributeType.setUuid(PERSON_ATTRIBUTE_TYPE_UUID);
+		PersonAttribute personAttribute = new PersonAttribute();
+		personAttribute.setUuid(PERSON_ATTRIBUTE_UUID);
+		personAttribute.setValue(PERSON_ATTRIBUTE_VALUE);
+		personAttribute.setAttributeType(attributeType);
+		PersonAttribute otherAttribute = new PersonAttribute();
+		otherAttribute.setAttributeType(new PersonAttributeType());
+		
+		org.openmrs.Patient patient = new org.openmrs.Patient();
+		patient.setAttributes(new PersistentSet((SharedSessionContractImplementor) null,
+		        Sets.newHashSet(personAttribute, otherAttribute)));
+		
+		ContactPoint contactPoint = new ContactPoint();
+		contactPoint.setValue(PERSON_ATTRIBUTE_VALUE);
+		when(globalPropertyService.getGlobalProperty(FhirConstants.PERSON_CONTACT_POINT_ATTRIBUTE_TYPE))
+		        .thenReturn(PERSON_ATTRIBUTE_TYPE_UUID);
+		when(telecomTranslator.toFhirResource(personAttribute)).thenReturn(contactPoint);
+		
+		List<ContactPoint> contactPoints = patientTranslator.getPatientContactDetails(patient);
+		
+		assertThat(contactPoints, hasSize(1));
+		assertThat(contactPoints.get(0).getValue(), equalTo(PERSON_ATTRIBUTE_VALUE));
+		verify(fhirPersonDao, never()).getActiveAttributesByPersonAndAttributeTypeUuid(any(), any());
+	}
+	
 	@Test
 	public void shouldTranslateOpenMrsDateChangedToLastUpdatedDate() {
 		org.openmrs.Patient patient = new org.openmrs.Patient();
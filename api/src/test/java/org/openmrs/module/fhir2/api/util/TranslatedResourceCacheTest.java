@@ -0,0 +1,107 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.not;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+import org.hl7.fhir.r4.model.Location;
+import org.hl7.fhir.r4.model.Patient;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class TranslatedResourceCacheTest {
+	
+	private static final String UUID = "c5bb3d4a-fbd3-4e4e-9a4c-6e1d5b4c6f21";
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	private TranslatedResourceCache cache;
+	
+	private Location location;
+	
+	@Before
+	public void setup() {
+		cache = new TranslatedResourceCache();
+		cache.setGlobalPropertyService(globalPropertyService);
+		
+		when(globalPropertyService
+		        .getGlobalPropertyAsInteger(eq(FhirConstants.OPENMRS_FHIR_RESOURCE_CACHE_TIME_TO_LIVE), anyInt()))
+		                .thenReturn(300);
+		
+		location = new Location();
+		location.setId(UUID);
+		location.setName("Test location");
+	}
+	
+	@Test
+	public void get_shouldReturnCopyOfCachedResourceForSameVersion() {
+		enableCache();
+		cache.put(Location.class, UUID, "1", location);
+		
+		Location result = cache.get(Location.class, UUID, "1");
+		
+		assertThat(result.getName(), equalTo("Test location"));
+		assertThat(result, not(sameInstance(location)));
+		assertThat(cache.getStats().hitCount(), equalTo(1L));
+	}
+	
+	@Test
+	public void get_shouldReturnNullForOtherVersionsAndTypes() {
+		enableCache();
+		cache.put(Location.class, UUID, "1", location);
+		
+		assertThat(cache.get(Location.class, UUID, "2"), nullValue());
+		assertThat(cache.get(Patient.class, UUID, "1"), nullValue());
+		assertThat(cache.getStats().missCount(), equalTo(2L));
+	}
+	
+	@Test
+	public void get_shouldNotReturnChangesMadeToResourceAfterItWasCached() {
+		enableCache();
+		cache.put(Location.class, UUID, "1", location);
+		location.setName("Changed");
+		
+		Location result = cache.get(Location.class, UUID, "1");
+		result.setDescription("Changed");
+		
+		assertThat(cache.<Location> get(Location.class, UUID, "1").getName(), equalTo("Test location"));
+		assertThat(cache.<Location> get(Location.class, UUID, "1").hasDescription(), equalTo(false));
+	}
+	
+	@Test
+	public void shouldBeDisabledByDefault() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_RESOURCE_CACHE_MAX_SIZE, 0))
+		        .thenReturn(0);
+		
+		cache.put(Location.class, UUID, "1", location);
+		
+		assertThat(cache.isEnabled(), equalTo(false));
+		assertThat(cache.get(Location.class, UUID, "1"), nullValue());
+	}
+	
+	private void enableCache() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_RESOURCE_CACHE_MAX_SIZE, 0))
+		        .thenReturn(10);
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.providers.r4;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.equalTo;
+import static org.junit.Assert.assertThrows;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.Date;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.ForbiddenOperationException;
+import org.hl7.fhir.r4.model.StringType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirBulkExportService;
+import org.openmrs.module.fhir2.api.export.BulkExportJob;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@RunWith(MockitoJUnitRunner.class)
+public class BulkExportFhirProviderTest {
+	
+	private static final String JOB_ID = "e9b0e4b5-3a5b-4a44-8d6f-3f3a7b2c9d10";
+	
+	private static final String SERVER_BASE = "http://localhost/ws/fhir2/R4";
+	
+	private static final String REQUEST_URL = SERVER_BASE + "/$export?_type=Location";
+	
+	private static final String OWNER_UUID = "c98a1558-e131-11de-babe-001e378eb67e";
+	
+	@Mock
+	private FhirBulkExportService bulkExportService;
+	
+	@Mock
+	private RequestDetails requestDetails;
+	
+	private BulkExportFhirProvider provider;
+	
+	private BulkExportJob job;
+	
+	private final MockHttpServletResponse response = new MockHttpServletResponse();
+	
+	@Before
+	public void setup() {
+		provider = new BulkExportFhirProvider();
+		provider.setBulkExportService(bulkExportService);
+		
+		job = new BulkExportJob(JOB_ID, BulkExportJob.Level.SYSTEM, null,
+		        Collections.singletonList(FhirConstants.LOCATION), null, REQUEST_URL, OWNER_UUID, new Date());
+	}
+	
+	@Test
+	public void export_shouldStartTheExportAndReturnWhereToPollForIt() {
+		when(requestDetails.getCompleteUrl()).thenReturn(REQUEST_URL);
+		when(requestDetails.getFhirServerBase()).thenReturn(SERVER_BASE);
+		when(bulkExportService.startExport(BulkExportJob.Level.SYSTEM, null,
+		    Collections.singletonList(FhirConstants.LOCATION), null, REQUEST_URL)).thenReturn(job);
+		
+		provider.export(new StringType(FhirConstants.LOCATION), null, null, requestDetails, response);
+		
+		assertThat(response.getStatus(), equalTo(Constants.STATUS_HTTP_202_ACCEPTED));
+		assertThat(response.getHeader(Constants.HEADER_CONTENT_LOCATION),
+		    equalTo(SERVER_BASE + "/$export-poll-status?_jobId=" + JOB_ID));
+	}
+	
+	@Test
+	public void exportPollStatus_shouldReportAnExportWhichIsStillRunning() throws Exception {
+		job.setStatus(BulkExportJob.Status.IN_PROGRESS);
+		job.setCurrentResourceType(FhirConstants.LOCATION);
+		when(bulkExportService.getJob(JOB_ID)).thenReturn(job);
+		
+		provider.exportPollStatus(new StringType(JOB_ID), requestDetails, response);
+		
+		assertThat(response.getStatus(), equalTo(Constants.STATUS_HTTP_202_ACCEPTED));
+		assertThat(response.getHeader(Constants.HEADER_X_PROGRESS), equalTo("Exporting " + FhirConstants.LOCATION));
+	}
+	
+	@Test
+	public void exportPollStatus_shouldReturnTheManifestOfACompleteExport() throws Exception {
+		job.getOutputs().add(new BulkExportJob.Output(FhirConstants.LOCATION, "Location.ndjson", 2));
+		job.setStatus(BulkExportJob.Status.COMPLETE);
+		when(bulkExportService.getJob(JOB_ID)).thenReturn(job);
+		when(requestDetails.getFhirServerBase()).thenReturn(SERVER_BASE);
+		
+		provider.exportPollStatus(new StringType(JOB_ID), requestDetails, response);
+		
+		assertThat(response.getStatus(), equalTo(200));
+		String downloadUrl = SERVER_BASE + "/$export-download?_jobId=" + JOB_ID + "&_file=Location.ndjson";
+		assertThat(response.getContentAsString(), containsString("\"url\":\"" + downloadUrl + "\",\"count\":2"));
+	}
+	
+	@Test
+	public void exportPollStatus_shouldRejectUsersWhoDidNotStartTheExport() {
+		when(bulkExportService.getJob(JOB_ID)).thenThrow(new ForbiddenOperationException("Forbidden"));
+		
+		assertThrows(ForbiddenOperationException.class,
+		    () -> provider.exportPollStatus(new StringType(JOB_ID), requestDetails, response));
+	}
+	
+	@Test
+	public void exportDownload_shouldRejectUsersWhoDidNotStartTheExport() {
+		when(bulkExportService.getOutputFile(JOB_ID, "Location.ndjson"))
+		        .thenThrow(new ForbiddenOperationException("Forbidden"));
+		
+		assertThrows(ForbiddenOperationException.class,
+		    () -> provider.exportDownload(new StringType(JOB_ID), new StringType("Location.ndjson"), response));
+	}
+	
+	@Test
+	public void exportCancel_shouldCancelTheExport() {
+		provider.exportCancel(new StringType(JOB_ID), response);
+		
+		verify(bulkExportService).deleteJob(JOB_ID);
+		assertThat(response.getStatus(), equalTo(Constants.STATUS_HTTP_202_ACCEPTED));
+	}
+}
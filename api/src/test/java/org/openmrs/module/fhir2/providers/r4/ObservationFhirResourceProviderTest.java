@@ -64,6 +64,8 @@ public class ObservationFhirResourceProviderTest extends BaseFhirProvenanceResou
 	
 	private static final String PATIENT_UUID = "5946f880-b197-400b-9caa-a3c661d23041";
 	
+	private static final String SECOND_PATIENT_UUID = "da7f524f-27ce-4bb2-86d6-6d1d05312bd5";
+	
 	private static final String OBSERVATION_UUID = "1223h34-34nj3-34nj34-34nj";
 	
 	private static final String WRONG_OBSERVATION_UUID = "hj243h34-cb4vsd-34xxx34-ope4jj";
@@ -370,6 +372,38 @@ public class ObservationFhirResourceProviderTest extends BaseFhirProvenanceResou
 		
 	}
 	
+	@Test
+	public void getLastnPatientsObservations_shouldReturnRecentNObservationsForEachPatient() {
+		NumberParam max = new NumberParam(2);
+		ReferenceAndListParam referenceParam = new ReferenceAndListParam()
+		        .addAnd(new ReferenceOrListParam().add(new ReferenceParam().setValue(PATIENT_UUID))
+		                .add(new ReferenceParam().setValue(SECOND_PATIENT_UUID)));
+		
+		TokenAndListParam categories = new TokenAndListParam().addAnd(new TokenParam().setValue("laboratory"));
+		
+		TokenAndListParam code = new TokenAndListParam().addAnd(
+		    new TokenParam().setSystem(FhirTestConstants.LOINC_SYSTEM_URL).setValue(LOINC_SYSTOLIC_BP),
+		    new TokenParam().setSystem(FhirTestConstants.CIEL_SYSTEM_URN).setValue(CIEL_DIASTOLIC_BP));
+		
+		ObservationSearchParams searchParams = new ObservationSearchParams();
+		searchParams.setPatient(referenceParam);
+		searchParams.setCategory(categories);
+		searchParams.setCode(code);
+		
+		when(observationService.getLastnPatientsObservations(max, searchParams))
+		        .thenReturn(new MockIBundleProvider<>(Collections.singletonList(observation), 10, 1));
+		
+		IBundleProvider results = resourceProvider.getLastnPatientsObservations(max, null, referenceParam, categories,
+		    code);
+		
+		List<IBaseResource> resultList = get(results);
+		
+		assertThat(results, notNullValue());
+		assertThat(resultList, hasSize(equalTo(1)));
+		assertThat(resultList.get(0).fhirType(), equalTo(FhirConstants.OBSERVATION));
+		assertThat(resultList.get(0).getIdElement().getIdPart(), equalTo(OBSERVATION_UUID));
+	}
+	
 	@Test
 	public void getLastn_shouldReturnFirstRecentObservationsWhenMaxIsMissing() {
 		ReferenceAndListParam referenceParam = new ReferenceAndListParam();
@@ -0,0 +1,157 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.api.dao.impl;
+
+import javax.persistence.TypedQuery;
+import javax.persistence.criteria.CriteriaQuery;
+
+import java.util.concurrent.TimeUnit;
+
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.ReferenceAndListParam;
+import ca.uhn.fhir.rest.param.ReferenceOrListParam;
+import ca.uhn.fhir.rest.param.ReferenceParam;
+import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringOrListParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Auditable;
+import org.openmrs.Obs;
+import org.openmrs.OpenmrsObject;
+import org.openmrs.Patient;
+import org.openmrs.module.fhir2.api.dao.FhirObservationDao;
+import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
+import org.openmrs.module.fhir2.api.dao.internals.OpenmrsFhirCriteriaContext;
+import org.openmrs.module.fhir2.api.search.param.ObservationSearchParams;
+import org.openmrs.module.fhir2.api.search.param.PatientSearchParams;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.benchmarks.BaseFhirBenchmarkContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.AopTestUtils;
+
+/**
+ * Builds the queries for representative searches the way {@link BaseFhirDao#getSearchResults} does,
+ * without running them. Creating the query renders it to HQL and looks up its plan in Hibernate's
+ * query plan cache, so this covers both building the criteria and generating the SQL. This class is
+ * in the package of the DAOs to reach the methods they use to build their queries.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SearchCriteriaBenchmark {
+	
+	// patient 7 from the standard test data
+	private static final String PATIENT_UUID = "5946f880-b197-400b-9caa-a3c661d23041";
+	
+	@State(Scope.Thread)
+	public static class Daos extends BaseFhirBenchmarkContext {
+		
+		@Autowired
+		FhirPatientDao patientDao;
+		
+		@Autowired
+		FhirObservationDao observationDao;
+		
+		FhirPatientDaoImpl patientDaoImpl;
+		
+		FhirObservationDaoImpl observationDaoImpl;
+		
+		SearchParameterMap patientSearch;
+		
+		SearchParameterMap observationSearch;
+		
+		SearchParameterMap observationSearchBySystem;
+		
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			setUpContext();
+			
+			patientDaoImpl = AopTestUtils.getUltimateTargetObject(patientDao);
+			observationDaoImpl = AopTestUtils.getUltimateTargetObject(observationDao);
+			
+			PatientSearchParams patientSearchParams = new PatientSearchParams();
+			patientSearchParams
+			        .setName(new StringAndListParam().addAnd(new StringOrListParam().add(new StringParam("Joh"))));
+			patientSearchParams
+			        .setGender(new TokenAndListParam().addAnd(new TokenOrListParam().add(new TokenParam("male"))));
+			patientSearchParams.setBirthDate(new DateRangeParam("ge1970-01-01", "lt2000-01-01"));
+			patientSearchParams.setSort(new SortSpec("family"));
+			patientSearch = patientSearchParams.toSearchParameterMap();
+			
+			ObservationSearchParams observationSearchParams = new ObservationSearchParams();
+			observationSearchParams.setPatient(new ReferenceAndListParam()
+			        .addAnd(new ReferenceOrListParam().add(new ReferenceParam("Patient/" + PATIENT_UUID))));
+			observationSearchParams.setCode(new TokenAndListParam().addAnd(new TokenOrListParam()
+			        .add(new TokenParam("5089")).add(new TokenParam("5090")).add(new TokenParam("5092"))));
+			observationSearchParams.setDate(new DateRangeParam("ge2008-01-01", "lt2021-01-01"));
+			observationSearchParams.setSort(new SortSpec("date", SortOrderEnum.DESC));
+			observationSearch = observationSearchParams.toSearchParameterMap();
+			
+			observationSearchParams.setCode(new TokenAndListParam().addAnd(
+			    new TokenOrListParam().add("http://loinc.org", "5089-1").add("http://loinc.org", "8480-6")));
+			observationSearchBySystem = observationSearchParams.toSearchParameterMap();
+		}
+		
+		@Setup(Level.Iteration)
+		public void setUpIteration() {
+			openSession();
+		}
+		
+		@TearDown(Level.Iteration)
+		public void tearDownIteration() {
+			closeSession();
+		}
+	}
+	
+	@Benchmark
+	public TypedQuery<Patient> patientSearch(Daos daos) {
+		return buildQuery(daos.patientDaoImpl, daos.patientSearch);
+	}
+	
+	@Benchmark
+	public TypedQuery<Obs> observationSearch(Daos daos) {
+		return buildQuery(daos.observationDaoImpl, daos.observationSearch);
+	}
+	
+	@Benchmark
+	public TypedQuery<Obs> observationSearchBySystem(Daos daos) {
+		return buildQuery(daos.observationDaoImpl, daos.observationSearchBySystem);
+	}
+	
+	private static <T extends OpenmrsObject & Auditable> TypedQuery<T> buildQuery(BaseFhirDao<T> dao,
+	        SearchParameterMap theParams) {
+		OpenmrsFhirCriteriaContext<T, T> criteriaContext = dao.getSearchResultCriteria(theParams);
+		dao.handleSort(criteriaContext, theParams.getSortSpec());
+		dao.handleIdPropertyOrdering(criteriaContext, dao.getIdPropertyName(criteriaContext.getEntityManager()));
+		
+		CriteriaQuery<T> criteriaQuery = criteriaContext.finalizeQuery();
+		criteriaQuery.select(criteriaContext.getRoot());
+		
+		return criteriaContext.getEntityManager().createQuery(criteriaQuery);
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.benchmarks;
+
+import org.openmrs.api.context.Context;
+import org.openmrs.module.fhir2.BaseFhirContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.TestContextManager;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.DefaultTransactionDefinition;
+
+/**
+ * Base class for the state of benchmarks which need the module's Spring context. <br/>
+ * The context is the one used by the context sensitive tests, backed by the same in-memory database,
+ * so the benchmarks run offline. Subclasses are JMH {@code @State} classes which have their beans
+ * injected by {@link #setUpContext(String...)} and call {@link #openSession()} and
+ * {@link #closeSession()} around each iteration, as JMH does not promise to run every iteration on
+ * the thread which set up the state.
+ */
+public abstract class BaseFhirBenchmarkContext extends BaseFhirContextSensitiveTest {
+	
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+	
+	private TransactionStatus transaction;
+	
+	/**
+	 * Loads the Spring context, injects the beans of this state and loads the standard test data
+	 * followed by the given data sets
+	 *
+	 * @param dataSets the classpath locations of the data sets the benchmark needs
+	 */
+	protected void setUpContext(String... dataSets) throws Exception {
+		new TestContextManager(getClass()).prepareTestInstance(this);
+		Context.openSession();
+		
+		TransactionStatus setupTransaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+		try {
+			baseSetupWithStandardDataAndAuthentication();
+			setupBaseFhirContextSensitive();
+			for (String dataSet : dataSets) {
+				executeDataSet(dataSet);
+			}
+			
+			setUpData();
+			transactionManager.commit(setupTransaction);
+		}
+		catch (Exception e) {
+			transactionManager.rollback(setupTransaction);
+			throw e;
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+	
+	/**
+	 * Called once the data sets are loaded, in the same transaction, to set up any other data the
+	 * benchmark needs
+	 */
+	protected void setUpData() throws Exception {
+	}
+	
+	/**
+	 * Opens a session for the current thread, authenticates it and starts a transaction, which is
+	 * rolled back by {@link #closeSession()}
+	 */
+	protected void openSession() {
+		Context.openSession();
+		authenticate();
+		transaction = transactionManager.getTransaction(new DefaultTransactionDefinition());
+	}
+	
+	protected void closeSession() {
+		try {
+			if (transaction != null) {
+				transactionManager.rollback(transaction);
+				transaction = null;
+			}
+		}
+		finally {
+			Context.closeSession();
+		}
+	}
+}
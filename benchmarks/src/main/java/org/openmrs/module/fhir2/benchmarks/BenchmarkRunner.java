@@ -0,0 +1,36 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.benchmarks;
+
+import java.util.Arrays;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the GC profiler, so that the allocation rate of each benchmark is
+ * reported alongside its timings. Takes the same arguments as the JMH command line, e.g., a regular
+ * expression selecting the benchmarks to run.
+ */
+public class BenchmarkRunner {
+	
+	public static void main(String[] args) throws Exception {
+		// exec:exec passes all the arguments given to it as a single argument
+		String[] jmhArgs = Arrays.stream(args).map(String::trim).filter(arg -> !arg.isEmpty())
+		        .flatMap(arg -> Arrays.stream(arg.split("\\s+"))).toArray(String[]::new);
+		
+		Options options = new OptionsBuilder().parent(new CommandLineOptions(jmhArgs)).addProfiler(GCProfiler.class)
+		        .build();
+		new Runner(options).run();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import ca.uhn.fhir.rest.api.SortOrderEnum;
+import ca.uhn.fhir.rest.api.SortSpec;
+import ca.uhn.fhir.rest.param.DateRangeParam;
+import ca.uhn.fhir.rest.param.StringAndListParam;
+import ca.uhn.fhir.rest.param.StringOrListParam;
+import ca.uhn.fhir.rest.param.StringParam;
+import ca.uhn.fhir.rest.param.TokenAndListParam;
+import ca.uhn.fhir.rest.param.TokenOrListParam;
+import ca.uhn.fhir.rest.param.TokenParam;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.module.fhir2.api.dao.FhirObservationDao;
+import org.openmrs.module.fhir2.api.dao.FhirPatientDao;
+import org.openmrs.module.fhir2.api.search.param.ObservationSearchParams;
+import org.openmrs.module.fhir2.api.search.param.PatientSearchParams;
+import org.openmrs.module.fhir2.api.search.param.SearchParameterMap;
+import org.openmrs.module.fhir2.testdata.SyntheticDataGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+
+/**
+ * Runs searches through the DAOs against a dataset loaded by {@link SyntheticDataGenerator}, so
+ * the time spent in the database is measured at a size closer to production than the standard test
+ * data. The number of patients can be set with JMH's {@code -p patients=...} argument.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratedDataSearchBenchmark {
+	
+	private static final int PAGE_SIZE = 10;
+	
+	@State(Scope.Thread)
+	public static class Daos extends BaseFhirBenchmarkContext {
+		
+		@Param({ "1000" })
+		int patients;
+		
+		@Autowired
+		FhirPatientDao patientDao;
+		
+		@Autowired
+		FhirObservationDao observationDao;
+		
+		SearchParameterMap patientSearch;
+		
+		SearchParameterMap observationSearch;
+		
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			setUpContext();
+			
+			PatientSearchParams patientSearchParams = new PatientSearchParams();
+			patientSearchParams
+			        .setName(new StringAndListParam().addAnd(new StringOrListParam().add(new StringParam("Amina"))));
+			patientSearchParams.setSort(new SortSpec("family"));
+			patientSearch = firstPage(patientSearchParams.toSearchParameterMap());
+			
+			ObservationSearchParams observationSearchParams = new ObservationSearchParams();
+			observationSearchParams.setCode(
+			    new TokenAndListParam().addAnd(new TokenOrListParam().add(new TokenParam("5089"))));
+			observationSearchParams.setDate(new DateRangeParam("ge2018-01-01", "lt2020-01-01"));
+			observationSearchParams.setSort(new SortSpec("date", SortOrderEnum.DESC));
+			observationSearch = firstPage(observationSearchParams.toSearchParameterMap());
+		}
+		
+		@Override
+		protected void setUpData() throws Exception {
+			new SyntheticDataGenerator(42L).patients(patients).generate(getConnection());
+		}
+		
+		@Setup(Level.Iteration)
+		public void setUpIteration() {
+			openSession();
+		}
+		
+		@TearDown(Level.Iteration)
+		public void tearDownIteration() {
+			closeSession();
+		}
+		
+		private static SearchParameterMap firstPage(SearchParameterMap theParams) {
+			theParams.setFromIndex(0);
+			theParams.setToIndex(PAGE_SIZE);
+			return theParams;
+		}
+	}
+	
+	@Benchmark
+	public List<Patient> patientSearch(Daos daos) {
+		return daos.patientDao.getSearchResults(daos.patientSearch);
+	}
+	
+	@Benchmark
+	public int patientSearchCount(Daos daos) {
+		return daos.patientDao.getSearchResultsCount(daos.patientSearch);
+	}
+	
+	@Benchmark
+	public List<Obs> observationSearch(Daos daos) {
+		return daos.observationDao.getSearchResults(daos.observationSearch);
+	}
+	
+	@Benchmark
+	public int observationSearchCount(Daos daos) {
+		return daos.observationDao.getSearchResultsCount(daos.observationSearch);
+	}
+}
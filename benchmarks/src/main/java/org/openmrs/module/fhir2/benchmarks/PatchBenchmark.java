@@ -0,0 +1,94 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.benchmarks;
+
+import static org.openmrs.module.fhir2.api.util.GeneralUtils.inputStreamToString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import ca.uhn.fhir.context.FhirContext;
+import org.hl7.fhir.r4.model.Patient;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.module.fhir2.api.util.JsonPatchUtils;
+import org.openmrs.module.fhir2.api.util.XmlPatchUtils;
+
+/**
+ * Applies the patches used by the Patient integration tests to a generated patient, as the
+ * resource providers do for PATCH requests. These need no database.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class PatchBenchmark {
+	
+	private static final String JSON_PATCH_PATIENT_PATH = "org/openmrs/module/fhir2/providers/Patient_json_patch.json";
+	
+	private static final String JSON_MERGE_PATCH_PATIENT_PATH = "org/openmrs/module/fhir2/providers/Patient_patch.json";
+	
+	private static final String XML_PATCH_PATIENT_PATH = "org/openmrs/module/fhir2/providers/Patient_xmlpatch.xml";
+	
+	private FhirContext fhirContext;
+	
+	private Patient patient;
+	
+	private String jsonPatch;
+	
+	private String jsonMergePatch;
+	
+	private String xmlPatch;
+	
+	@Setup(Level.Trial)
+	public void setUp() throws IOException {
+		fhirContext = FhirContext.forR4();
+		patient = new SyntheticData(42L).newFhirPatient();
+		jsonPatch = readResource(JSON_PATCH_PATIENT_PATH);
+		jsonMergePatch = readResource(JSON_MERGE_PATCH_PATIENT_PATH);
+		xmlPatch = readResource(XML_PATCH_PATIENT_PATH);
+	}
+	
+	@Benchmark
+	public Patient jsonPatch() {
+		return JsonPatchUtils.applyJsonPatch(fhirContext, patient, jsonPatch);
+	}
+	
+	@Benchmark
+	public Patient jsonMergePatch() {
+		return JsonPatchUtils.applyJsonMergePatch(fhirContext, patient, jsonMergePatch);
+	}
+	
+	@Benchmark
+	public Patient xmlPatch() {
+		return XmlPatchUtils.applyXmlPatch(fhirContext, patient, xmlPatch);
+	}
+	
+	private String readResource(String path) throws IOException {
+		try (InputStream is = getClass().getClassLoader().getResourceAsStream(path)) {
+			Objects.requireNonNull(is);
+			return inputStreamToString(is, StandardCharsets.UTF_8);
+		}
+	}
+}
@@ -0,0 +1,128 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.benchmarks;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.Random;
+import java.util.UUID;
+
+import org.hl7.fhir.r4.model.Address;
+import org.hl7.fhir.r4.model.ContactPoint;
+import org.hl7.fhir.r4.model.Enumerations;
+import org.hl7.fhir.r4.model.HumanName;
+import org.hl7.fhir.r4.model.Identifier;
+import org.openmrs.Concept;
+import org.openmrs.Encounter;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.PatientIdentifier;
+import org.openmrs.PatientIdentifierType;
+import org.openmrs.PersonAddress;
+import org.openmrs.PersonName;
+
+/**
+ * Generates OpenMRS objects and FHIR resources with plausible values for the benchmarks. The values
+ * are drawn from a seeded {@link Random}, so every run of a benchmark sees the same objects.
+ */
+public class SyntheticData {
+	
+	private static final String[] GIVEN_NAMES = { "Amina", "Brian", "Chidi", "Daniela", "Esther", "Felix", "Grace",
+	        "Hassan", "Imani", "Joseph", "Kwame", "Lucia", "Moses", "Nadia", "Omar", "Priya" };
+	
+	private static final String[] FAMILY_NAMES = { "Achieng", "Banda", "Chanda", "Dlamini", "Etienne", "Fernandes",
+	        "Gitau", "Haddad", "Ivanova", "Juma", "Kamau", "Lungu", "Mensah", "Nkosi", "Otieno", "Perez" };
+	
+	private static final String[] CITIES = { "Eldoret", "Kampala", "Kigali", "Lilongwe", "Lusaka", "Maputo", "Mombasa",
+	        "Nairobi" };
+	
+	private final Random random;
+	
+	public SyntheticData(long seed) {
+		this.random = new Random(seed);
+	}
+	
+	public Patient newPatient(PatientIdentifierType identifierType) {
+		Patient patient = new Patient();
+		patient.setUuid(newUuid());
+		patient.setGender(random.nextBoolean() ? "M" : "F");
+		patient.setBirthdate(newBirthdate());
+		patient.setDateCreated(newDate());
+		
+		PersonName name = new PersonName(pick(GIVEN_NAMES), null, pick(FAMILY_NAMES));
+		name.setUuid(newUuid());
+		name.setPreferred(true);
+		patient.addName(name);
+		
+		PersonAddress address = new PersonAddress();
+		address.setUuid(newUuid());
+		address.setPreferred(true);
+		address.setAddress1(random.nextInt(1000) + " Hospital Road");
+		address.setCityVillage(pick(CITIES));
+		address.setPostalCode(String.valueOf(10000 + random.nextInt(90000)));
+		address.setCountry("Kenya");
+		patient.addAddress(address);
+		
+		PatientIdentifier identifier = new PatientIdentifier(String.valueOf(100000 + random.nextInt(900000)),
+		        identifierType, null);
+		identifier.setUuid(newUuid());
+		identifier.setPreferred(true);
+		patient.addIdentifier(identifier);
+		
+		return patient;
+	}
+	
+	public Obs newNumericObs(Encounter encounter, Concept concept) {
+		Obs obs = new Obs(encounter.getPatient(), concept, newDate(), encounter.getLocation());
+		obs.setUuid(newUuid());
+		obs.setEncounter(encounter);
+		obs.setValueNumeric(40 + random.nextInt(8000) / 100.0);
+		obs.setStatus(Obs.Status.FINAL);
+		obs.setDateCreated(obs.getObsDatetime());
+		return obs;
+	}
+	
+	public org.hl7.fhir.r4.model.Patient newFhirPatient() {
+		org.hl7.fhir.r4.model.Patient patient = new org.hl7.fhir.r4.model.Patient();
+		patient.setId(newUuid());
+		patient.setActive(true);
+		patient.setGender(random.nextBoolean() ? Enumerations.AdministrativeGender.MALE
+		        : Enumerations.AdministrativeGender.FEMALE);
+		patient.setBirthDate(newBirthdate());
+		patient.addName(new HumanName().addGiven(pick(GIVEN_NAMES)).setFamily(pick(FAMILY_NAMES)));
+		patient.addAddress(new Address().addLine(random.nextInt(1000) + " Hospital Road").setCity(pick(CITIES))
+		        .setPostalCode(String.valueOf(10000 + random.nextInt(90000))).setCountry("Kenya"));
+		patient.addIdentifier(new Identifier().setValue(String.valueOf(100000 + random.nextInt(900000))));
+		patient.addTelecom(new ContactPoint().setSystem(ContactPoint.ContactPointSystem.PHONE)
+		        .setValue("+254 7" + (10000000 + random.nextInt(90000000))));
+		return patient;
+	}
+	
+	private String newUuid() {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+	
+	private Date newBirthdate() {
+		return toDate(LocalDate.of(1940 + random.nextInt(80), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+	}
+	
+	private Date newDate() {
+		return toDate(LocalDate.of(2020, 1, 1).plusDays(random.nextInt(1500)));
+	}
+	
+	private String pick(String[] values) {
+		return values[random.nextInt(values.length)];
+	}
+	
+	private static Date toDate(LocalDate date) {
+		return Date.from(date.atStartOfDay(ZoneId.systemDefault()).toInstant());
+	}
+}
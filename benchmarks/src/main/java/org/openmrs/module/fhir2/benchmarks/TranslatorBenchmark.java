@@ -0,0 +1,228 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hl7.fhir.r4.model.CodeableConcept;
+import org.hl7.fhir.r4.model.Immunization;
+import org.hl7.fhir.r4.model.Observation;
+import org.hl7.fhir.r4.model.ValueSet;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openmrs.Concept;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.ConceptService;
+import org.openmrs.api.EncounterService;
+import org.openmrs.api.ObsService;
+import org.openmrs.api.PatientService;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.translators.ConceptTranslator;
+import org.openmrs.module.fhir2.api.translators.ImmunizationTranslator;
+import org.openmrs.module.fhir2.api.translators.ObservationTranslator;
+import org.openmrs.module.fhir2.api.translators.PatientTranslator;
+import org.openmrs.module.fhir2.api.translators.ValueSetTranslator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+
+/**
+ * Translates OpenMRS objects to FHIR resources and back with the translators used by the resource
+ * providers. The patients and observations are generated, the immunizations and value sets are
+ * loaded from the test data of the module.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TranslatorBenchmark {
+	
+	private static final String IMMUNIZATIONS_METADATA_XML = "org/openmrs/module/fhir2/Immunization_metadata.xml";
+	
+	private static final String IMMUNIZATIONS_INITIAL_DATA_XML = "org/openmrs/module/fhir2/api/services/impl/FhirImmunizationService_initial_data.xml";
+	
+	private static final String PRACTITIONER_INITIAL_DATA_XML = "org/openmrs/module/fhir2/api/dao/impl/FhirPractitionerDaoImplTest_initial_data.xml";
+	
+	private static final String VALUE_SET_INITIAL_DATA_XML = "org/openmrs/module/fhir2/api/dao/impl/ValueSetFhirResourceProviderIntegrationTest_initial_data.xml";
+	
+	private static final String IMMUNIZATION_UUID = "9353776b-dead-4588-8723-d687197d8438";
+	
+	private static final String VALUE_SET_UUID = "378e63b1-6c75-46ed-95e3-797b48ddc9f8";
+	
+	// the numeric weight concept from the standard test data
+	private static final int WEIGHT_CONCEPT_ID = 5089;
+	
+	private static final int ENCOUNTER_ID = 3;
+	
+	@State(Scope.Thread)
+	public static class Translators extends BaseFhirBenchmarkContext {
+		
+		@Autowired
+		PatientTranslator patientTranslator;
+		
+		@Autowired
+		ObservationTranslator observationTranslator;
+		
+		@Autowired
+		ImmunizationTranslator immunizationTranslator;
+		
+		@Autowired
+		ConceptTranslator conceptTranslator;
+		
+		@Autowired
+		ValueSetTranslator valueSetTranslator;
+		
+		@Autowired
+		PatientService patientService;
+		
+		@Autowired
+		EncounterService encounterService;
+		
+		@Autowired
+		ConceptService conceptService;
+		
+		@Autowired
+		ObsService obsService;
+		
+		@Autowired
+		@Qualifier("adminService")
+		AdministrationService administrationService;
+		
+		@Setup(Level.Trial)
+		public void setUp() throws Exception {
+			setUpContext(IMMUNIZATIONS_METADATA_XML, IMMUNIZATIONS_INITIAL_DATA_XML, PRACTITIONER_INITIAL_DATA_XML,
+			    VALUE_SET_INITIAL_DATA_XML);
+		}
+		
+		@Override
+		protected void setUpData() {
+			administrationService.setGlobalProperty(FhirConstants.IMMUNIZATIONS_ENCOUNTER_TYPE_PROPERTY,
+			    "29c02aff-9a93-46c9-bf6f-48b552fcb1fa");
+			administrationService.setGlobalProperty(FhirConstants.ADMINISTERING_ENCOUNTER_ROLE_PROPERTY,
+			    "546cce2d-6d58-4097-ba92-206c1a2a0462");
+		}
+		
+		@Setup(Level.Iteration)
+		public void setUpIteration() {
+			openSession();
+		}
+		
+		@TearDown(Level.Iteration)
+		public void tearDownIteration() {
+			closeSession();
+		}
+	}
+	
+	@State(Scope.Thread)
+	public static class Data {
+		
+		Patient patient;
+		
+		org.hl7.fhir.r4.model.Patient fhirPatient;
+		
+		Obs observation;
+		
+		Observation fhirObservation;
+		
+		Obs immunization;
+		
+		Immunization fhirImmunization;
+		
+		Concept concept;
+		
+		CodeableConcept codeableConcept;
+		
+		Concept valueSetConcept;
+		
+		ValueSet valueSet;
+		
+		@Setup(Level.Iteration)
+		public void setUp(Translators translators) {
+			SyntheticData syntheticData = new SyntheticData(42L);
+			
+			patient = syntheticData.newPatient(translators.patientService.getPatientIdentifierType(1));
+			fhirPatient = translators.patientTranslator.toFhirResource(patient);
+			
+			concept = translators.conceptService.getConcept(WEIGHT_CONCEPT_ID);
+			codeableConcept = translators.conceptTranslator.toFhirResource(concept);
+			
+			observation = syntheticData.newNumericObs(translators.encounterService.getEncounter(ENCOUNTER_ID), concept);
+			fhirObservation = translators.observationTranslator.toFhirResource(observation);
+			
+			immunization = translators.obsService.getObsByUuid(IMMUNIZATION_UUID);
+			fhirImmunization = translators.immunizationTranslator.toFhirResource(immunization);
+			
+			valueSetConcept = translators.conceptService.getConceptByUuid(VALUE_SET_UUID);
+			valueSet = translators.valueSetTranslator.toFhirResource(valueSetConcept);
+		}
+	}
+	
+	@Benchmark
+	public org.hl7.fhir.r4.model.Patient patientToFhir(Translators translators, Data data) {
+		return translators.patientTranslator.toFhirResource(data.patient);
+	}
+	
+	@Benchmark
+	public Patient patientToOpenmrs(Translators translators, Data data) {
+		return translators.patientTranslator.toOpenmrsType(data.fhirPatient);
+	}
+	
+	@Benchmark
+	public Observation observationToFhir(Translators translators, Data data) {
+		return translators.observationTranslator.toFhirResource(data.observation);
+	}
+	
+	@Benchmark
+	public Obs observationToOpenmrs(Translators translators, Data data) {
+		return translators.observationTranslator.toOpenmrsType(data.fhirObservation);
+	}
+	
+	@Benchmark
+	public Immunization immunizationToFhir(Translators translators, Data data) {
+		return translators.immunizationTranslator.toFhirResource(data.immunization);
+	}
+	
+	@Benchmark
+	public Obs immunizationToOpenmrs(Translators translators, Data data) {
+		return translators.immunizationTranslator.toOpenmrsType(data.fhirImmunization);
+	}
+	
+	@Benchmark
+	public CodeableConcept conceptToFhir(Translators translators, Data data) {
+		return translators.conceptTranslator.toFhirResource(data.concept);
+	}
+	
+	@Benchmark
+	public Concept conceptToOpenmrs(Translators translators, Data data) {
+		return translators.conceptTranslator.toOpenmrsType(data.codeableConcept);
+	}
+	
+	@Benchmark
+	public ValueSet valueSetToFhir(Translators translators, Data data) {
+		return translators.valueSetTranslator.toFhirResource(data.valueSetConcept);
+	}
+	
+	@Benchmark
+	public Concept valueSetToOpenmrs(Translators translators, Data data) {
+		return translators.valueSetTranslator.toOpenmrsType(data.valueSet);
+	}
+}
@@ -9,6 +9,9 @@
  */
 package org.openmrs.module.fhir2;
 
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.springframework.http.HttpHeaders.ACCEPT;
 import static org.springframework.http.HttpHeaders.CONTENT_TYPE;
 import static org.springframework.http.HttpHeaders.IF_MATCH;
@@ -23,6 +26,7 @@ import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.stream.Collectors;
 
 import ca.uhn.fhir.context.FhirContext;
@@ -30,22 +34,31 @@ import ca.uhn.fhir.parser.DataFormatException;
 import ca.uhn.fhir.parser.IParser;
 import ca.uhn.fhir.rest.api.RequestTypeEnum;
 import ca.uhn.fhir.rest.server.IResourceProvider;
+import ca.uhn.fhir.util.BundleUtil;
 import ca.uhn.fhir.validation.FhirValidator;
 import ca.uhn.fhir.validation.SingleValidationMessage;
+import lombok.AccessLevel;
+import lombok.Getter;
 import lombok.SneakyThrows;
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
 import org.hamcrest.TypeSafeMatcher;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.hl7.fhir.instance.model.api.IBaseBundle;
 import org.hl7.fhir.instance.model.api.IBaseOperationOutcome;
+import org.hl7.fhir.instance.model.api.IBaseResource;
 import org.hl7.fhir.instance.model.api.IDomainResource;
 import org.junit.Before;
+import org.junit.Rule;
+import org.junit.rules.TestName;
 import org.openmrs.api.cache.CacheConfig;
 import org.openmrs.module.fhir2.api.util.FhirGlobalPropertyHolder;
 import org.openmrs.module.fhir2.web.servlet.FhirRestServlet;
 import org.openmrs.web.test.BaseModuleWebContextSensitiveTest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -59,6 +72,8 @@ import org.springframework.web.context.WebApplicationContext;
 @ContextConfiguration(classes = IntegrationTestConfiguration.class, inheritLocations = false)
 public abstract class BaseFhirIntegrationTest<T extends IResourceProvider, U extends IDomainResource> extends BaseModuleWebContextSensitiveTest {
 	
+	private static final int STATEMENT_COUNT_PAGE_SIZE = 10;
+	
 	private ServletConfig servletConfig;
 	
 	private IParser jsonParser;
@@ -73,6 +88,20 @@ public abstract class BaseFhirIntegrationTest<T extends IResourceProvider, U ext
 	@Autowired
 	private ConfigurableApplicationContext ctx;
 	
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+	
+	@Rule
+	public TestName testName = new TestName();
+	
+	/**
+	 * The SQL statements, queries, entity loads and collection fetches of the last request made by this
+	 * test
+	 */
+	@Getter(AccessLevel.PROTECTED)
+	private StatementCounts lastStatementCounts;
+	
 	// This must be implemented by subclasses
 	public abstract T getResourceProvider();
 	
@@ -191,6 +220,37 @@ public abstract class BaseFhirIntegrationTest<T extends IResourceProvider, U ext
 		return new FhirRequestBuilder(RequestTypeEnum.DELETE, "http://localhost:8080/ms/" + getServletName() + uri);
 	}
 	
+	/**
+	 * Makes the given search for a page of one resource and for a page of several, failing the test unless both
+	 * prepare the same number of SQL statements, so that statements run for each resource returned, such as lazy
+	 * loading the collections of each result, are caught. The search is made once beforehand and the session is
+	 * cleared before each page, so that neither page finds the entities loaded for the other.
+	 *
+	 * @param searchUri the search to make, without a {@code _count} parameter
+	 */
+	public void assertStatementsDoNotGrowWithPageSize(@Nonnull String searchUri) throws Exception {
+		String countParameter = (searchUri.contains("?") ? "&" : "?") + "_count=";
+		get(searchUri).accept(FhirMediaTypes.JSON).go();
+		
+		sessionFactory.getCurrentSession().flush();
+		sessionFactory.getCurrentSession().clear();
+		get(searchUri + countParameter + 1).accept(FhirMediaTypes.JSON).go();
+		StatementCounts singleResource = lastStatementCounts;
+		
+		sessionFactory.getCurrentSession().clear();
+		get(searchUri + countParameter + STATEMENT_COUNT_PAGE_SIZE).accept(FhirMediaTypes.JSON).go();
+		StatementCounts page = lastStatementCounts;
+		
+		assertThat(searchUri + " must return more than one resource to compare page sizes", page.getResources(),
+		    greaterThan(singleResource.getResources()));
+		assertThat(String.format(
+		    "%s prepared %d SQL statements (%d queries, %d entity loads, %d collection fetches) to return %d resources,"
+		            + " but %d statements to return %d resource",
+		    searchUri, page.getStatements(), page.getQueries(), page.getEntityLoads(), page.getCollectionFetches(),
+		    page.getResources(), singleResource.getStatements(), singleResource.getResources()), page.getStatements(),
+		    equalTo(singleResource.getStatements()));
+	}
+	
 	public U readResponse(MockHttpServletResponse response) throws UnsupportedEncodingException {
 		MediaType mediaType = MediaType.parseMediaType(response.getContentType());
 		try {
@@ -430,10 +490,83 @@ public abstract class BaseFhirIntegrationTest<T extends IResourceProvider, U ext
 			return this;
 		}
 		
+		/**
+		 * Makes the request, recording the work Hibernate does to handle it, which is reported to
+		 * {@code target/statement-counts.csv}
+		 */
 		public MockHttpServletResponse go() throws ServletException, IOException {
 			MockHttpServletResponse response = new MockHttpServletResponse();
-			servlet.service(request, response);
+			
+			Statistics statistics = sessionFactory.getStatistics();
+			boolean statisticsEnabled = statistics.isStatisticsEnabled();
+			statistics.clear();
+			statistics.setStatisticsEnabled(true);
+			try {
+				servlet.service(request, response);
+			}
+			finally {
+				statistics.setStatisticsEnabled(statisticsEnabled);
+			}
+			
+			lastStatementCounts = StatementCounts.of(getEndpoint(), countResources(response), statistics);
+			lastStatementCounts
+			        .report(BaseFhirIntegrationTest.this.getClass().getSimpleName() + "." + testName.getMethodName());
+			
 			return response;
 		}
+		
+		// the method, the path with any ids replaced and the names of the query parameters
+		private String getEndpoint() {
+			String path = request.getRequestURI();
+			int servletNameIndex = path.indexOf("/" + getServletName() + "/");
+			if (servletNameIndex >= 0) {
+				path = path.substring(servletNameIndex + getServletName().length() + 1);
+			}
+			
+			String[] segments = path.split("/");
+			for (int i = 2; i < segments.length; i++) {
+				if (!segments[i].startsWith("_") && !segments[i].startsWith("$")) {
+					segments[i] = "{id}";
+				}
+			}
+			
+			StringBuilder endpoint = new StringBuilder(request.getMethod()).append(' ')
+			        .append(String.join("/", segments));
+			if (request.getQueryString() != null && !request.getQueryString().isEmpty()) {
+				endpoint.append('?').append(Arrays.stream(request.getQueryString().split("&"))
+				        .map(parameter -> parameter.split("=", 2)[0]).distinct().sorted()
+				        .collect(Collectors.joining("&")));
+			}
+			
+			return endpoint.toString();
+		}
+		
+		private int countResources(MockHttpServletResponse response) throws UnsupportedEncodingException {
+			String content = response.getContentAsString();
+			if (content.isEmpty() || response.getContentType() == null) {
+				return 0;
+			}
+			
+			IBaseResource resource;
+			try {
+				MediaType mediaType = MediaType.parseMediaType(response.getContentType());
+				if (mediaType.isCompatibleWith(FhirMediaTypes.XML)
+				        || mediaType.isCompatibleWith(MediaType.APPLICATION_XML)
+				        || mediaType.isCompatibleWith(MediaType.TEXT_XML)) {
+					resource = xmlParser.parseResource(content);
+				} else {
+					resource = jsonParser.parseResource(content);
+				}
+			}
+			catch (DataFormatException e) {
+				return 0;
+			}
+			
+			if (resource instanceof IBaseBundle) {
+				return BundleUtil.toListOfResources(getFhirContext(), (IBaseBundle) resource).size();
+			}
+			
+			return resource instanceof IBaseOperationOutcome ? 0 : 1;
+		}
 	}
 }
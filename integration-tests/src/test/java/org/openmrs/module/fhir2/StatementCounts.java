@@ -0,0 +1,82 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import lombok.Value;
+import org.hibernate.stat.Statistics;
+
+/**
+ * The work Hibernate did to handle a single request made by a {@link BaseFhirIntegrationTest}, taken
+ * from the session factory's {@link Statistics}
+ */
+@Value
+public class StatementCounts {
+	
+	private static final Path REPORT = Paths.get("target", "statement-counts.csv");
+	
+	private static final AtomicBoolean REPORT_STARTED = new AtomicBoolean(false);
+	
+	// the method, path and query parameter names of the request, e.g. "GET /Patient?family"
+	String endpoint;
+	
+	// the number of resources in the response, counting each resource in a bundle
+	int resources;
+	
+	// the number of SQL statements prepared
+	long statements;
+	
+	// the number of HQL and criteria queries run
+	long queries;
+	
+	long entityLoads;
+	
+	long collectionFetches;
+	
+	static StatementCounts of(String endpoint, int resources, Statistics statistics) {
+		return new StatementCounts(endpoint, resources, statistics.getPrepareStatementCount(),
+		        statistics.getQueryExecutionCount(), statistics.getEntityLoadCount(),
+		        statistics.getCollectionFetchCount());
+	}
+	
+	/**
+	 * Appends these counts to {@code target/statement-counts.csv}, which is started again by the first
+	 * request of each test run
+	 *
+	 * @param test the name of the test which made the request
+	 */
+	void report(String test) {
+		try {
+			boolean first = REPORT_STARTED.compareAndSet(false, true);
+			Files.createDirectories(REPORT.getParent());
+			try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(REPORT, StandardCharsets.UTF_8,
+			    StandardOpenOption.CREATE, first ? StandardOpenOption.TRUNCATE_EXISTING : StandardOpenOption.APPEND))) {
+				if (first) {
+					writer.println("test,endpoint,resources,statements,queries,entity_loads,collection_fetches");
+				}
+				
+				writer.printf("%s,\"%s\",%d,%d,%d,%d,%d%n", test, endpoint, resources, statements, queries, entityLoads,
+				    collectionFetches);
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
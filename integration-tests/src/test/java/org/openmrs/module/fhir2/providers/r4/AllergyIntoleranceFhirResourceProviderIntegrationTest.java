@@ -523,6 +523,8 @@ public class AllergyIntoleranceFhirResourceProviderIntegrationTest extends BaseF
 	
 	@Test
 	public void shouldSearchForExistingAllergyAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/AllergyIntolerance");
+		
 		MockHttpServletResponse response = get("/AllergyIntolerance").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -627,6 +627,8 @@ public class ConditionResourceProviderIntegrationTest extends BaseFhirR4Integrat
 	
 	@Test
 	public void shouldSearchForAllConditionsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Condition");
+		
 		MockHttpServletResponse response = get("/Condition").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
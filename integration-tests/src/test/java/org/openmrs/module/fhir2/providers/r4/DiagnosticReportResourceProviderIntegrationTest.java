@@ -554,6 +554,8 @@ public class DiagnosticReportResourceProviderIntegrationTest extends BaseFhirR4I
 	
 	@Test
 	public void shouldSearchForAllDiagnosticReportsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/DiagnosticReport");
+		
 		MockHttpServletResponse response = get("/DiagnosticReport").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -1017,6 +1017,8 @@ public class EncounterFhirResourceProviderIntegrationTest extends BaseFhirR4Inte
 		
 		executeDataSet(MEDICATION_REQUEST_QUERY_INITIAL_DATA_XML); // additional test data from the fhe FHIR Enocounter DAO test we use to test the encountersWithMedicationRequests query
 		
+		assertStatementsDoNotGrowWithPageSize("/Encounter/?_query=encountersWithMedicationRequests");
+		
 		MockHttpServletResponse response = get("/Encounter/?_query=encountersWithMedicationRequests")
 		        .accept(FhirMediaTypes.JSON).go();
 		
@@ -611,6 +611,8 @@ public class ImmunizationFhirResourceProviderIntegrationTest extends BaseFhirR4I
 	
 	@Test
 	public void shouldSearchForExistingImmunizationAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Immunization");
+		
 		MockHttpServletResponse response = get("/Immunization").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -537,6 +537,8 @@ public class LocationFhirResourceProviderIntegrationTest extends BaseFhirR4Integ
 	
 	@Test
 	public void shouldSearchForExistingLocationsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Location");
+		
 		MockHttpServletResponse response = get("/Location").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -122,6 +122,8 @@ public class MedicationDispenseFhirResourceProviderIntegrationTest extends BaseF
 	
 	@Test
 	public void shouldSearchForExistingMedicationDispensesAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/MedicationDispense");
+		
 		MockHttpServletResponse response = get("/MedicationDispense").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
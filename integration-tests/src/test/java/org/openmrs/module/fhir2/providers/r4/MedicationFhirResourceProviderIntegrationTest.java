@@ -499,6 +499,8 @@ public class MedicationFhirResourceProviderIntegrationTest extends BaseFhirR4Int
 	
 	@Test
 	public void shouldSearchForExistingMedicationsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Medication");
+		
 		MockHttpServletResponse response = get("/Medication").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
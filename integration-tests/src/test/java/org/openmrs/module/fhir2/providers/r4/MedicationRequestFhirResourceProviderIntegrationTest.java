@@ -220,6 +220,8 @@ public class MedicationRequestFhirResourceProviderIntegrationTest extends BaseFh
 	
 	@Test
 	public void shouldSearchForExistingMedicationRequestsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/MedicationRequest");
+		
 		MockHttpServletResponse response = get("/MedicationRequest").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -41,15 +41,20 @@ import java.util.stream.Collectors;
 
 import lombok.AccessLevel;
 import lombok.Getter;
+import org.hibernate.SessionFactory;
 import org.hl7.fhir.r4.model.Bundle;
 import org.hl7.fhir.r4.model.Observation;
 import org.hl7.fhir.r4.model.OperationOutcome;
 import org.junit.Before;
 import org.junit.Test;
+import org.openmrs.GlobalProperty;
+import org.openmrs.api.AdministrationService;
+import org.openmrs.api.context.Context;
 import org.openmrs.module.fhir2.BaseFhirIntegrationTest;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.dao.FhirEncounterDao;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.http.HttpStatus;
 import org.springframework.mock.web.MockHttpServletResponse;
 
@@ -100,6 +105,13 @@ public class ObservationFhirResourceProviderIntegrationTest extends BaseFhirR4In
 	@Autowired
 	private FhirEncounterDao encounterDao;
 	
+	@Autowired
+	private AdministrationService adminService;
+	
+	@Autowired
+	@Qualifier("sessionFactory")
+	private SessionFactory sessionFactory;
+	
 	@Before
 	@Override
 	public void setup() throws Exception {
@@ -347,6 +359,8 @@ public class ObservationFhirResourceProviderIntegrationTest extends BaseFhirR4In
 	
 	@Test
 	public void shouldSearchForExistingObservationsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Observation");
+		
 		MockHttpServletResponse response = get("/Observation").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -366,6 +380,26 @@ public class ObservationFhirResourceProviderIntegrationTest extends BaseFhirR4In
 		assertThat(entries, everyItem(hasResource(validResource())));
 	}
 	
+	@Test
+	public void shouldNotPrepareMoreStatementsToSearchForMoreObservations() throws Exception {
+		// warms the application caches, such as the concept sources, for every concept on the larger page
+		get("/Observation?_count=10").accept(FhirMediaTypes.JSON).go();
+		
+		clearHibernateCaches();
+		MockHttpServletResponse response = get("/Observation?_count=2").accept(FhirMediaTypes.JSON).go();
+		
+		assertThat(response, isOk());
+		assertThat(readBundleResponse(response).getEntry(), hasSize(2));
+		long smallPageStatements = getLastStatementCounts().getStatements();
+		
+		clearHibernateCaches();
+		response = get("/Observation?_count=10").accept(FhirMediaTypes.JSON).go();
+		
+		assertThat(response, isOk());
+		assertThat(readBundleResponse(response).getEntry(), hasSize(10));
+		assertThat(getLastStatementCounts().getStatements(), lessThanOrEqualTo(smallPageStatements));
+	}
+	
 	@Test
 	public void shouldSearchForFilteredObservationsAsJson() throws Exception {
 		MockHttpServletResponse response = get("/Observation?subject.name=Chebaskwony&_sort=-date")
@@ -485,6 +519,46 @@ public class ObservationFhirResourceProviderIntegrationTest extends BaseFhirR4In
 		}
 	}
 	
+	@Test
+	public void shouldPageThroughSearchesWithTooManyResultsToEstimate() throws Exception {
+		MockHttpServletResponse response = get("/Observation?subject.name=Chebaskwony&_sort=-date")
+		        .accept(FhirMediaTypes.JSON).go();
+		int total = readBundleResponse(response).getTotal();
+		assertThat(total, greaterThanOrEqualTo(3));
+		
+		GlobalProperty estimatedTotalLimit = new GlobalProperty(FhirConstants.OPENMRS_FHIR_ESTIMATED_TOTAL_LIMIT, "1");
+		adminService.saveGlobalProperty(estimatedTotalLimit);
+		
+		response = get("/Observation?subject.name=Chebaskwony&_sort=-date&_total=estimate&_count=2")
+		        .accept(FhirMediaTypes.JSON).go();
+		
+		assertThat(response, isOk());
+		Bundle results = readBundleResponse(response);
+		// the limit is exceeded, so the total is the least number of results the search is known to have
+		assertThat(results.getTotal(), allOf(greaterThanOrEqualTo(3), lessThanOrEqualTo(total)));
+		
+		List<Observation> observations = results.getEntry().stream().map(Bundle.BundleEntryComponent::getResource)
+		        .filter(it -> it instanceof Observation).map(it -> (Observation) it).collect(Collectors.toList());
+		
+		Bundle.BundleLinkComponent link = results.getLink("next");
+		assertThat(link, notNullValue());
+		while (link != null) {
+			URL url = new URL(link.getUrl());
+			response = get("?" + url.getQuery()).accept(FhirMediaTypes.JSON).go();
+			
+			assertThat(response, isOk());
+			results = readBundleResponse(response);
+			
+			observations.addAll(results.getEntry().stream().map(Bundle.BundleEntryComponent::getResource)
+			        .filter(it -> it instanceof Observation).map(it -> (Observation) it).collect(Collectors.toList()));
+			
+			link = results.getLink("next");
+		}
+		
+		assertThat(observations, hasSize(total));
+		assertThat(results.getTotal(), equalTo(total));
+	}
+	
 	@Test
 	public void shouldSupportMultiplePagesAsXML() throws Exception {
 		MockHttpServletResponse response = get("/Observation?subject.name=Chebaskwony&_sort=-date")
@@ -1658,4 +1732,11 @@ public class ObservationFhirResourceProviderIntegrationTest extends BaseFhirR4In
 		
 		return distinctEncounterDatetime;
 	}
+	
+	// the entities of earlier requests would otherwise be found without a statement
+	private void clearHibernateCaches() {
+		Context.flushSession();
+		Context.clearSession();
+		sessionFactory.getCache().evictAllRegions();
+	}
 }
@@ -554,6 +554,8 @@ public class PatientFhirResourceProviderIntegrationTest extends BaseFhirR4Integr
 	
 	@Test
 	public void shouldSearchForAllPatientsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Patient");
+		
 		MockHttpServletResponse response = get("/Patient").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -474,6 +474,8 @@ public class PersonFhirResourceProviderIntegrationTest extends BaseFhirR4Integra
 	
 	@Test
 	public void shouldSearchForAllPersonsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Person");
+		
 		MockHttpServletResponse response = get("/Person").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -476,6 +476,8 @@ public class PractitionerFhirResourceProviderIntegrationTest extends BaseFhirR4I
 	
 	@Test
 	public void shouldSearchForAllPractitionersAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Practitioner");
+		
 		MockHttpServletResponse response = get("/Practitioner").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -98,6 +98,8 @@ public class RelatedPersonFhirResourceProviderIntegrationTest extends BaseFhirR4
 	
 	@Test
 	public void shouldReturnForAllRelatedPersonAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/RelatedPerson");
+		
 		MockHttpServletResponse response = get("/RelatedPerson").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -110,6 +110,8 @@ public class ServiceRequestFhirResourceProviderIntegrationTest extends BaseFhirR
 	
 	@Test
 	public void shouldSearchForExistingServiceRequestsAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/ServiceRequest");
+		
 		MockHttpServletResponse response = get("/ServiceRequest").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
@@ -663,6 +663,8 @@ public class TaskFhirResourceIntegrationTest extends BaseFhirR4IntegrationTest<T
 	
 	@Test
 	public void shouldSearchForAllTasksAsJson() throws Exception {
+		assertStatementsDoNotGrowWithPageSize("/Task");
+		
 		MockHttpServletResponse response = get("/Task").accept(FhirMediaTypes.JSON).go();
 		
 		assertThat(response, isOk());
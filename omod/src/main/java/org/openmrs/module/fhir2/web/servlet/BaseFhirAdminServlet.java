@@ -0,0 +1,48 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.servlet;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+import org.openmrs.api.context.Context;
+
+/**
+ * Base class for the servlets which report on the running FHIR module. Only super users may use
+ * them.
+ */
+public abstract class BaseFhirAdminServlet extends HttpServlet {
+	
+	private static final long serialVersionUID = 1L;
+	
+	@Override
+	protected final void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!Context.isAuthenticated()) {
+			response.setHeader("WWW-Authenticate", "Basic realm=\"OpenMRS\"");
+			response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "Not authenticated");
+			return;
+		}
+		
+		if (!Context.getAuthenticatedUser().isSuperUser()) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN, "Only super users may use this servlet");
+			return;
+		}
+		
+		writeReport(request, response);
+	}
+	
+	/**
+	 * Writes the report served by this servlet, once the user has been checked
+	 */
+	protected abstract void writeReport(HttpServletRequest request, HttpServletResponse response) throws IOException;
+}
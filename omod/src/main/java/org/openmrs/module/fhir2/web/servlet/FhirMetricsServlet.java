@@ -0,0 +1,34 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+
+/**
+ * Serves the metrics collected by {@link FhirMetrics} in the Prometheus text format. Only super users
+ * may read the metrics.
+ */
+public class FhirMetricsServlet extends BaseFhirAdminServlet {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final String PROMETHEUS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+	
+	@Override
+	protected void writeReport(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setContentType(PROMETHEUS_CONTENT_TYPE);
+		FhirMetrics.writePrometheus(response.getWriter());
+	}
+}
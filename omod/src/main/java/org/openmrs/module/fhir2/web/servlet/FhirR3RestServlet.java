@@ -15,6 +15,7 @@ import java.util.Collection;
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import org.openmrs.module.fhir2.api.annotations.R3Provider;
+import org.openmrs.module.fhir2.providers.r4.BulkExportFhirProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Component;
@@ -28,6 +29,11 @@ public class FhirR3RestServlet extends FhirRestServlet {
 		    escapedLength(servletContextPath) + escapedLength(servletPath) + escapedLength("/fhir2R3Servlet"));
 	}
 	
+	@Override
+	public void setBulkExportProvider(BulkExportFhirProvider bulkExportProvider) {
+		// bulk data export is only provided for R4
+	}
+	
 	@Override
 	protected Class<? extends Annotation> getResourceProviderAnnotation() {
 		return R3Provider.class;
@@ -20,21 +20,24 @@ import java.lang.annotation.Annotation;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import ca.uhn.fhir.context.FhirContext;
 import ca.uhn.fhir.rest.api.EncodingEnum;
 import ca.uhn.fhir.rest.server.BasePagingProvider;
-import ca.uhn.fhir.rest.server.FifoMemoryPagingProvider;
 import ca.uhn.fhir.rest.server.IResourceProvider;
 import ca.uhn.fhir.rest.server.IServerAddressStrategy;
 import ca.uhn.fhir.rest.server.RestfulServer;
 import ca.uhn.fhir.rest.server.interceptor.LoggingInterceptor;
 import lombok.AccessLevel;
 import lombok.Setter;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
 import org.openmrs.GlobalProperty;
 import org.openmrs.api.AdministrationService;
 import org.openmrs.api.GlobalPropertyListener;
@@ -43,12 +46,24 @@ import org.openmrs.module.ModuleFactory;
 import org.openmrs.module.fhir2.FhirActivator;
 import org.openmrs.module.fhir2.FhirConstants;
 import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.FhirService;
 import org.openmrs.module.fhir2.api.annotations.R4Provider;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.openmrs.module.fhir2.api.search.DatabaseSearchResultStore;
+import org.openmrs.module.fhir2.api.search.MemorySearchResultStore;
+import org.openmrs.module.fhir2.api.search.SearchResultStore;
 import org.openmrs.module.fhir2.api.spi.ModuleLifecycleListener;
 import org.openmrs.module.fhir2.narrative.OpenmrsThymeleafNarrativeGenerator;
+import org.openmrs.module.fhir2.providers.r4.BulkExportFhirProvider;
 import org.openmrs.module.fhir2.web.authentication.RequireAuthenticationInterceptor;
+import org.openmrs.module.fhir2.web.util.ConditionalReadInterceptor;
 import org.openmrs.module.fhir2.web.util.DisableCacheInterceptor;
+import org.openmrs.module.fhir2.web.util.MetricsInterceptor;
 import org.openmrs.module.fhir2.web.util.NarrativeUtils;
+import org.openmrs.module.fhir2.web.util.OpenmrsFhirPagingProvider;
+import org.openmrs.module.fhir2.web.util.SearchTotalInterceptor;
+import org.openmrs.module.fhir2.web.util.ServerTimingInterceptor;
+import org.openmrs.module.fhir2.web.util.SlowSearchInterceptor;
 import org.openmrs.module.fhir2.web.util.SummaryInterceptor;
 import org.openmrs.module.fhir2.web.util.SupportMergePatchInterceptor;
 import org.openmrs.util.OpenmrsClassLoader;
@@ -59,11 +74,16 @@ import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.MessageSource;
 import org.springframework.stereotype.Component;
 
+@Slf4j
 @Component
 public class FhirRestServlet extends RestfulServer implements ModuleLifecycleListener {
 	
 	private static final long serialVersionUID = 2L;
 	
+	private static final String MEMORY_SEARCH_RESULT_STORE = "memory";
+	
+	private static final String DATABASE_SEARCH_RESULT_STORE = "database";
+	
 	private static final List<String> DEFAULT_NARRATIVE_FILES = Arrays.asList(FhirConstants.OPENMRS_NARRATIVES_PROPERTY_FILE,
 	    FhirConstants.HAPI_NARRATIVES_PROPERTY_FILE);
 	
@@ -76,6 +96,9 @@ public class FhirRestServlet extends RestfulServer implements ModuleLifecycleLis
 	@Setter(value = AccessLevel.PUBLIC, onMethod_ = { @Qualifier("hapiLoggingInterceptor"), @Autowired })
 	private LoggingInterceptor loggingInterceptor;
 	
+	@Setter(value = AccessLevel.PUBLIC, onMethod_ = { @Autowired })
+	private List<FhirService<?>> fhirServices;
+	
 	private boolean started = false;
 	
 	@Setter(value = AccessLevel.PUBLIC, onMethod_ = { @Qualifier("messageSourceService"), @Autowired })
@@ -147,9 +170,15 @@ public class FhirRestServlet extends RestfulServer implements ModuleLifecycleLis
 		setDefaultResponseEncoding(EncodingEnum.JSON);
 
 		registerInterceptor(loggingInterceptor);
+		registerInterceptor(new MetricsInterceptor());
+		registerInterceptor(new ServerTimingInterceptor(globalPropertyService));
+		registerInterceptor(new SlowSearchInterceptor(globalPropertyService));
 		registerInterceptor(new RequireAuthenticationInterceptor());
-		registerInterceptor(new DisableCacheInterceptor());
+		registerInterceptor(new DisableCacheInterceptor(globalPropertyService));
+		registerInterceptor(new ConditionalReadInterceptor(globalPropertyService,
+				fhirServices != null ? fhirServices : new ArrayList<>()));
 		registerInterceptor(new SummaryInterceptor());
+		registerInterceptor(new SearchTotalInterceptor());
 		registerInterceptor(new SupportMergePatchInterceptor());
 
 		String narrativesOverridePropertyFile = NarrativeUtils.getValidatedPropertiesFilePath(
@@ -206,6 +235,15 @@ public class FhirRestServlet extends RestfulServer implements ModuleLifecycleLis
 		super.setResourceProviders(theProviders);
 	}
 	
+	/**
+	 * Sets the provider for bulk data export, which does not belong to a single resource type. Like the
+	 * resource providers, it is bound when the server is initialized.
+	 */
+	@Autowired
+	public void setBulkExportProvider(BulkExportFhirProvider bulkExportProvider) {
+		setPlainProviders(Collections.singletonList(bulkExportProvider));
+	}
+	
 	@Override
 	@Autowired
 	public void setServerAddressStrategy(IServerAddressStrategy theServerAddressStrategy) {
@@ -218,12 +256,47 @@ public class FhirRestServlet extends RestfulServer implements ModuleLifecycleLis
 		int maximumPageSize = globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_MAXIMUM_PAGE_SIZE,
 		    100);
 		
-		BasePagingProvider pagingProvider = new FifoMemoryPagingProvider(100);
+		SearchResultStore searchResultStore = createSearchResultStore();
+		FhirMetrics.registerStatistics(
+		    "search_result_store_" + getFhirContext().getVersion().getVersion().name().toLowerCase(),
+		    () -> searchResultStore.getStatistics().toMetrics());
+		
+		BasePagingProvider pagingProvider = new OpenmrsFhirPagingProvider(searchResultStore);
 		pagingProvider.setDefaultPageSize(defaultPageSize);
 		pagingProvider.setMaximumPageSize(maximumPageSize);
 		return pagingProvider;
 	}
 	
+	private SearchResultStore createSearchResultStore() {
+		String store = globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_PAGING_STORE,
+		    MEMORY_SEARCH_RESULT_STORE);
+		if (StringUtils.isNotBlank(store) && !MEMORY_SEARCH_RESULT_STORE.equalsIgnoreCase(store)) {
+			final ConfigurableApplicationContext ctx = FhirActivator.getApplicationContext();
+			if (ctx != null) {
+				if (DATABASE_SEARCH_RESULT_STORE.equalsIgnoreCase(store)) {
+					return ctx.getBean(DatabaseSearchResultStore.class);
+				} else if (ctx.containsBean(store)) {
+					return ctx.getBean(store, SearchResultStore.class);
+				}
+			}
+			
+			log.warn("Could not find the search result store {}, storing searches in memory", store);
+		}
+		
+		int maximumSize = globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_PAGING_STORE_MAXIMUM_SIZE, 100);
+		int timeToLive = globalPropertyService
+		        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_PAGING_STORE_TIME_TO_LIVE, 1800);
+		return new MemorySearchResultStore(maximumSize > 0 ? maximumSize : 100,
+		        TimeUnit.SECONDS.toMillis(timeToLive > 0 ? timeToLive : 1800));
+	}
+	
+	private List<FhirService<?>> getFhirServices(ConfigurableApplicationContext ctx) {
+		List<FhirService<?>> services = new ArrayList<>();
+		ctx.getBeansOfType(FhirService.class).values().forEach(service -> services.add((FhirService<?>) service));
+		return services;
+	}
+	
 	protected void autoInject() {
 		final ConfigurableApplicationContext ctx = FhirActivator.getApplicationContext();
 		if (ctx != null) {
@@ -256,10 +329,18 @@ public class FhirRestServlet extends RestfulServer implements ModuleLifecycleLis
 				        .filter(entry -> validBeanNames.contains(entry.getKey())).map(Map.Entry::getValue)
 				        .collect(Collectors.toList()));
 				
+				setBulkExportProvider(ctx.getBean(BulkExportFhirProvider.class));
+				
 				registerInterceptor(ctx.getBean("hapiLoggingInterceptor", LoggingInterceptor.class));
+				registerInterceptor(new MetricsInterceptor());
+				registerInterceptor(new ServerTimingInterceptor(ctx.getBean(FhirGlobalPropertyService.class)));
+				registerInterceptor(new SlowSearchInterceptor(ctx.getBean(FhirGlobalPropertyService.class)));
 				registerInterceptor(new RequireAuthenticationInterceptor());
-				registerInterceptor(new DisableCacheInterceptor());
+				registerInterceptor(new DisableCacheInterceptor(ctx.getBean(FhirGlobalPropertyService.class)));
+				registerInterceptor(new ConditionalReadInterceptor(ctx.getBean(FhirGlobalPropertyService.class),
+				        getFhirServices(ctx)));
 				registerInterceptor(new SummaryInterceptor());
+				registerInterceptor(new SearchTotalInterceptor());
 				registerInterceptor(new SupportMergePatchInterceptor());
 				
 				setAdministrationService(ctx.getBean("adminService", AdministrationService.class));
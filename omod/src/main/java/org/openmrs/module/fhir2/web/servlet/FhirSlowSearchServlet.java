@@ -0,0 +1,63 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.servlet;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+
+import org.apache.commons.lang3.math.NumberUtils;
+import org.openmrs.module.fhir2.api.metrics.SlowSearchLog;
+
+/**
+ * Lists the slowest of the recent slow searches kept by the {@link SlowSearchLog}, slowest first.
+ * The number of searches listed can be set with the {@code limit} parameter, which defaults to
+ * {@value #DEFAULT_LIMIT}. Only super users may read the list.
+ */
+public class FhirSlowSearchServlet extends BaseFhirAdminServlet {
+	
+	private static final long serialVersionUID = 1L;
+	
+	private static final int DEFAULT_LIMIT = 10;
+	
+	@Override
+	protected void writeReport(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		int limit = NumberUtils.toInt(request.getParameter("limit"), DEFAULT_LIMIT);
+		
+		response.setContentType("text/plain; charset=utf-8");
+		PrintWriter writer = response.getWriter();
+		for (SlowSearchLog.SlowSearch slowSearch : SlowSearchLog.getSlowest(limit)) {
+			writer.printf("%.3f ms at %tFT%<tT%<tz: %s%n", toMillis(slowSearch.getNanos()), slowSearch.getTimestamp(),
+			    slowSearch.getSearch());
+			writer.printf("  rows: %d, included: %d%n", slowSearch.getRows(), slowSearch.getIncludedRows());
+			for (Map.Entry<String, Long> stage : slowSearch.getStageNanos().entrySet()) {
+				writer.printf("  %s: %.3f ms%n", stage.getKey(), toMillis(stage.getValue()));
+			}
+			
+			for (int i = 0; i < slowSearch.getQueries().size(); i++) {
+				writer.printf("  hql: %s%n", slowSearch.getQueries().get(i));
+				if (slowSearch.getSql().get(i) != null) {
+					writer.printf("  sql: %s%n", slowSearch.getSql().get(i));
+				}
+			}
+			
+			writer.println();
+		}
+		
+		writer.flush();
+	}
+	
+	private static double toMillis(long nanos) {
+		return nanos / 1_000_000.0;
+	}
+}
@@ -0,0 +1,203 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openmrs.api.APIException;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.FhirService;
+import org.springframework.aop.support.AopUtils;
+import org.springframework.core.ResolvableType;
+
+/**
+ * Lets clients cache the resource types listed in the
+ * {@link FhirConstants#OPENMRS_FHIR_CONDITIONAL_READ_RESOURCE_TYPES} global property. <br/>
+ * Reads of these types are sent with {@code Cache-Control: private, no-cache} rather than
+ * {@code no-store}, together with an {@code ETag} holding the version id of the resource. A read
+ * with an {@code If-None-Match} header matching the current version, or, failing that, an
+ * {@code If-Modified-Since} header no older than the current version, is answered with
+ * {@code 304 Not Modified} using {@link FhirService#getVersionId(String)}, so the resource is
+ * neither loaded, translated nor encoded. Any other read is left to HAPI. <br/>
+ * The version id only reflects the date the owning row was last changed, so a change saved only to a
+ * dependent row, e.g., a person name, is not seen until the owning row is saved again.
+ */
+@Slf4j
+@Interceptor
+public class ConditionalReadInterceptor {
+	
+	private static final String CACHE_CONTROL = "private, no-cache";
+	
+	private final FhirGlobalPropertyService globalPropertyService;
+	
+	private final Map<String, List<FhirService<?>>> services = new HashMap<>();
+	
+	public ConditionalReadInterceptor(FhirGlobalPropertyService globalPropertyService,
+	    Collection<? extends FhirService<?>> services) {
+		this.globalPropertyService = globalPropertyService;
+		for (FhirService<?> service : services) {
+			Class<?> resourceClass = ResolvableType.forClass(AopUtils.getTargetClass(service)).as(FhirService.class)
+			        .resolveGeneric(0);
+			if (resourceClass != null) {
+				this.services.computeIfAbsent(resourceClass.getSimpleName(), k -> new ArrayList<>()).add(service);
+			}
+		}
+	}
+	
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+	public void handleIncomingRequest(RequestDetails requestDetails, ServletRequestDetails servletRequestDetails,
+	        RestOperationTypeEnum operation) {
+		if (operation != RestOperationTypeEnum.READ
+		        || !isConditionalReadEnabled(globalPropertyService, requestDetails)) {
+			return;
+		}
+		
+		String ifNoneMatch = requestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH);
+		String ifModifiedSince = requestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE);
+		if (StringUtils.isBlank(ifNoneMatch) && StringUtils.isBlank(ifModifiedSince)) {
+			return;
+		}
+		
+		String versionId = getVersionId(requestDetails);
+		if (versionId == null) {
+			return;
+		}
+		
+		// as in RFC 7232, If-Modified-Since is ignored when If-None-Match is sent
+		boolean notModified = StringUtils.isNotBlank(ifNoneMatch) ? matchesVersion(ifNoneMatch, versionId)
+		        : isNotModifiedSince(ifModifiedSince, versionId);
+		if (notModified) {
+			if (servletRequestDetails != null && servletRequestDetails.getServletResponse() != null) {
+				HttpServletResponse response = servletRequestDetails.getServletResponse();
+				response.addHeader(Constants.HEADER_ETAG, "W/\"" + versionId + "\"");
+				response.addHeader(Constants.HEADER_CACHE_CONTROL, CACHE_CONTROL);
+			}
+			
+			throw new NotModifiedException("Not Modified");
+		}
+	}
+	
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean handleOutgoingResponse(RequestDetails requestDetails, ResponseDetails responseDetails) {
+		if (requestDetails.getRestOperationType() != RestOperationTypeEnum.READ
+		        || !isConditionalReadEnabled(globalPropertyService, requestDetails)) {
+			return true;
+		}
+		
+		requestDetails.getResponse().addHeader(Constants.HEADER_CACHE_CONTROL, CACHE_CONTROL);
+		
+		// HAPI sends the version of the resource id as the ETag
+		IBaseResource resource = responseDetails.getResponseResource();
+		if (resource != null && resource.getIdElement() != null && !resource.getIdElement().hasVersionIdPart()
+		        && StringUtils.isNotBlank(resource.getMeta().getVersionId())) {
+			resource.setId(resource.getIdElement().withVersion(resource.getMeta().getVersionId()));
+		}
+		
+		return true;
+	}
+	
+	/**
+	 * @return true if reads of the resource type requested may be cached by clients
+	 */
+	static boolean isConditionalReadEnabled(FhirGlobalPropertyService globalPropertyService,
+	        RequestDetails requestDetails) {
+		String resourceTypes = globalPropertyService
+		        .getGlobalProperty(FhirConstants.OPENMRS_FHIR_CONDITIONAL_READ_RESOURCE_TYPES, "");
+		if (StringUtils.isBlank(resourceTypes) || requestDetails.getResourceName() == null) {
+			return false;
+		}
+		
+		for (String resourceType : resourceTypes.split(",")) {
+			if (resourceType.trim().equals(requestDetails.getResourceName())) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private String getVersionId(RequestDetails requestDetails) {
+		if (requestDetails.getId() == null || !requestDetails.getId().hasIdPart()) {
+			return null;
+		}
+		
+		String uuid = requestDetails.getId().getIdPart();
+		for (FhirService<?> service : services.getOrDefault(requestDetails.getResourceName(),
+		    Collections.emptyList())) {
+			try {
+				String versionId = service.getVersionId(uuid);
+				if (versionId != null) {
+					return versionId;
+				}
+			}
+			catch (APIException e) {
+				// the read itself will report the problem
+				log.debug("Could not look up the version of {}", requestDetails.getId(), e);
+				return null;
+			}
+		}
+		
+		return null;
+	}
+	
+	private static boolean matchesVersion(String ifNoneMatch, String versionId) {
+		for (String entityTag : ifNoneMatch.split(",")) {
+			String tag = entityTag.trim();
+			if (tag.equals("*")) {
+				return true;
+			}
+			
+			if (tag.startsWith("W/")) {
+				tag = tag.substring(2);
+			}
+			
+			if (StringUtils.strip(tag, "\"").equals(versionId)) {
+				return true;
+			}
+		}
+		
+		return false;
+	}
+	
+	private static boolean isNotModifiedSince(String ifModifiedSince, String versionId) {
+		try {
+			long lastModified = Long.parseLong(versionId) / 1000;
+			long since = ZonedDateTime.parse(ifModifiedSince.trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+			        .toEpochSecond();
+			return lastModified <= since;
+		}
+		catch (NumberFormatException | DateTimeParseException e) {
+			return false;
+		}
+	}
+}
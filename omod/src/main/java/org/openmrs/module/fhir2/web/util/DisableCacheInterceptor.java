@@ -15,12 +15,32 @@ import ca.uhn.fhir.interceptor.api.Pointcut;
 import ca.uhn.fhir.rest.api.Constants;
 import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
 import ca.uhn.fhir.rest.api.server.RequestDetails;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
 
+/**
+ * Prevents clients from storing responses to reads and searches. Reads of the resource types which
+ * clients may cache are left to the {@link ConditionalReadInterceptor}.
+ */
 @Interceptor
 public class DisableCacheInterceptor {
 	
+	private final FhirGlobalPropertyService globalPropertyService;
+	
+	public DisableCacheInterceptor() {
+		this(null);
+	}
+	
+	public DisableCacheInterceptor(FhirGlobalPropertyService globalPropertyService) {
+		this.globalPropertyService = globalPropertyService;
+	}
+	
 	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
 	public boolean handleOutgoingResponse(RequestDetails requestDetails) {
+		if (requestDetails.getRestOperationType() == RestOperationTypeEnum.READ && globalPropertyService != null
+		        && ConditionalReadInterceptor.isConditionalReadEnabled(globalPropertyService, requestDetails)) {
+			return true;
+		}
+		
 		if (requestDetails.getRestOperationType() == RestOperationTypeEnum.READ
 		        || requestDetails.getRestOperationType() == RestOperationTypeEnum.SEARCH_TYPE) {
 			requestDetails.getResponse().addHeader(Constants.HEADER_CACHE_CONTROL, "no-store");
@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+
+/**
+ * Tags the stages timed while handling a request with the resource type and operation of the
+ * request, and times the provider and encoding stages of the request itself, see
+ * {@link FhirMetrics}
+ */
+@Interceptor
+public class MetricsInterceptor {
+	
+	private static final String SYSTEM = "system";
+	
+	private static final String PROVIDER_TIMER = MetricsInterceptor.class.getName() + ".providerTimer";
+	
+	private static final String ENCODE_TIMER = MetricsInterceptor.class.getName() + ".encodeTimer";
+	
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+	public void startRequest(RequestDetails requestDetails, RestOperationTypeEnum operation) {
+		String resourceType = requestDetails.getResourceName() == null ? SYSTEM : requestDetails.getResourceName();
+		FhirMetrics.startRequest(resourceType, operation == null ? null : operation.getCode());
+		requestDetails.getUserData().put(PROVIDER_TIMER, FhirMetrics.startTimer(FhirMetrics.PROVIDER));
+	}
+	
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean startEncoding(RequestDetails requestDetails) {
+		stopTimer(requestDetails, PROVIDER_TIMER);
+		requestDetails.getUserData().put(ENCODE_TIMER, FhirMetrics.startTimer(FhirMetrics.ENCODE));
+		return true;
+	}
+	
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+	public void endRequest(RequestDetails requestDetails) {
+		try {
+			stopTimer(requestDetails, PROVIDER_TIMER);
+			stopTimer(requestDetails, ENCODE_TIMER);
+		}
+		finally {
+			FhirMetrics.endRequest();
+		}
+	}
+	
+	private void stopTimer(RequestDetails requestDetails, String key) {
+		Object timer = requestDetails.getUserData().remove(key);
+		if (timer instanceof FhirMetrics.Timer) {
+			((FhirMetrics.Timer) timer).close();
+		}
+	}
+}
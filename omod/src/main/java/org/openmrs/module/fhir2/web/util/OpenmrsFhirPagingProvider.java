@@ -0,0 +1,58 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import javax.annotation.Nonnull;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.BasePagingProvider;
+import lombok.Getter;
+import org.apache.commons.lang.StringUtils;
+import org.openmrs.module.fhir2.api.search.KeysetBundleProvider;
+import org.openmrs.module.fhir2.api.search.SearchResultStore;
+
+/**
+ * A paging provider which keeps searches in a pluggable {@link SearchResultStore}, e.g., in memory
+ * or in the database. <br/>
+ * Unlike HAPI's {@link ca.uhn.fhir.rest.server.FifoMemoryPagingProvider}, searches are stored under
+ * the {@link IBundleProvider#getUuid()} of the bundle provider, which is the id HAPI uses for links
+ * built from page ids, and requests for a page id are delegated to
+ * {@link KeysetBundleProvider#forPage(String)}.
+ */
+public class OpenmrsFhirPagingProvider extends BasePagingProvider {
+	
+	@Getter
+	private final SearchResultStore searchResultStore;
+	
+	public OpenmrsFhirPagingProvider(@Nonnull SearchResultStore searchResultStore) {
+		this.searchResultStore = searchResultStore;
+	}
+	
+	@Override
+	public IBundleProvider retrieveResultList(RequestDetails requestDetails, String searchId) {
+		return searchResultStore.retrieve(searchId);
+	}
+	
+	@Override
+	public IBundleProvider retrieveResultList(RequestDetails requestDetails, String searchId, String pageId) {
+		IBundleProvider bundleProvider = retrieveResultList(requestDetails, searchId);
+		if (bundleProvider instanceof KeysetBundleProvider && StringUtils.isNotBlank(pageId)) {
+			return ((KeysetBundleProvider) bundleProvider).forPage(pageId);
+		}
+		
+		return bundleProvider;
+	}
+	
+	@Override
+	public String storeResultList(RequestDetails requestDetails, IBundleProvider bundleProvider) {
+		return searchResultStore.store(bundleProvider);
+	}
+}
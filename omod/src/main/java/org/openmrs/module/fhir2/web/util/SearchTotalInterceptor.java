@@ -0,0 +1,69 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import ca.uhn.fhir.util.BundleUtil;
+import org.apache.commons.lang.StringUtils;
+import org.hl7.fhir.instance.model.api.IBaseBundle;
+import org.hl7.fhir.instance.model.api.IBaseResource;
+import org.openmrs.module.fhir2.api.search.SearchTotalModeHolder;
+
+/**
+ * Makes the {@code _total} parameter of a search available to the searches run while handling the
+ * request, see {@link SearchTotalModeHolder}. When a search sent with {@code _total=estimate} has
+ * too many results to count, the least number of results it is known to have is sent as the total
+ * of the bundle.
+ */
+@Interceptor
+public class SearchTotalInterceptor {
+	
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_POST_PROCESSED)
+	public void handleSearchTotal(RequestDetails requestDetails) {
+		SearchTotalModeHolder.clear();
+		
+		String[] total = requestDetails.getParameters().get(Constants.PARAM_SEARCH_TOTAL_MODE);
+		if (total == null || total.length == 0 || StringUtils.isBlank(total[0])) {
+			return;
+		}
+		
+		SearchTotalModeEnum searchTotalMode = SearchTotalModeEnum.fromCode(total[0].trim());
+		if (searchTotalMode == null) {
+			throw new InvalidRequestException("Invalid " + Constants.PARAM_SEARCH_TOTAL_MODE + " value: " + total[0]
+			        + ", expected one of none, estimate or accurate");
+		}
+		
+		SearchTotalModeHolder.set(searchTotalMode);
+	}
+	
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean handleMinimumTotal(RequestDetails requestDetails, ResponseDetails responseDetails) {
+		Integer minimumTotal = SearchTotalModeHolder.getMinimumTotal();
+		IBaseResource resource = responseDetails.getResponseResource();
+		if (minimumTotal != null && resource instanceof IBaseBundle
+		        && BundleUtil.getTotal(requestDetails.getFhirContext(), (IBaseBundle) resource) == null) {
+			BundleUtil.setTotal(requestDetails.getFhirContext(), (IBaseBundle) resource, minimumTotal);
+		}
+		
+		return true;
+	}
+	
+	@Hook(Pointcut.SERVER_PROCESSING_COMPLETED)
+	public void clearSearchTotal() {
+		SearchTotalModeHolder.clear();
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import javax.servlet.http.HttpServletResponse;
+
+import java.util.Locale;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+
+/**
+ * Sends a <a href="https://www.w3.org/TR/server-timing/">Server-Timing</a> header with each response,
+ * giving the time the request spent in the stages timed by {@link FhirMetrics}, when the
+ * {@link FhirConstants#OPENMRS_FHIR_SERVER_TIMING} global property is true. <br/>
+ * Encoding the response is not reported, since the headers are sent before the response is encoded.
+ * This must be registered after the {@link MetricsInterceptor}, which tags the request, and before
+ * any interceptor which writes the response itself.
+ */
+@Interceptor
+public class ServerTimingInterceptor {
+	
+	public static final String HEADER_SERVER_TIMING = "Server-Timing";
+	
+	private static final String[][] METRICS = { { "db-query", FhirMetrics.QUERY }, { "db-count", FhirMetrics.COUNT },
+	        { "translate", FhirMetrics.TRANSLATE }, { "include", FhirMetrics.INCLUDE },
+	        { "revinclude", FhirMetrics.REVINCLUDE } };
+	
+	private static final String TIMED = ServerTimingInterceptor.class.getName() + ".timed";
+	
+	private final FhirGlobalPropertyService globalPropertyService;
+	
+	public ServerTimingInterceptor(FhirGlobalPropertyService globalPropertyService) {
+		this.globalPropertyService = globalPropertyService;
+	}
+	
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+	public void startTiming(RequestDetails requestDetails) {
+		if (isServerTimingEnabled()) {
+			FhirMetrics.accumulateRequestTimes();
+			requestDetails.getUserData().put(TIMED, Boolean.TRUE);
+		}
+	}
+	
+	@Hook(Pointcut.SERVER_OUTGOING_RESPONSE)
+	public boolean addServerTiming(RequestDetails requestDetails, HttpServletResponse servletResponse) {
+		// the request times may also be added up for other uses, e.g., by the slow search log
+		if (servletResponse == null || !Boolean.TRUE.equals(requestDetails.getUserData().get(TIMED))
+		        || FhirMetrics.getRequestTime(FhirMetrics.QUERY) < 0) {
+			return true;
+		}
+		
+		StringBuilder serverTiming = new StringBuilder();
+		for (String[] metric : METRICS) {
+			if (serverTiming.length() > 0) {
+				serverTiming.append(", ");
+			}
+			
+			serverTiming.append(metric[0]).append(";dur=").append(
+			    String.format(Locale.ROOT, "%.3f", FhirMetrics.getRequestTime(metric[1]) / 1_000_000.0));
+		}
+		
+		servletResponse.setHeader(HEADER_SERVER_TIMING, serverTiming.toString());
+		return true;
+	}
+	
+	private boolean isServerTimingEnabled() {
+		return globalPropertyService != null && Boolean.parseBoolean(
+		    globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_SERVER_TIMING, "false"));
+	}
+}
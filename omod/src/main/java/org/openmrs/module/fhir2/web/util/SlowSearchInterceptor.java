@@ -0,0 +1,47 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import ca.uhn.fhir.interceptor.api.Hook;
+import ca.uhn.fhir.interceptor.api.Interceptor;
+import ca.uhn.fhir.interceptor.api.Pointcut;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.SlowSearchLog;
+
+/**
+ * Traces each request in the {@link SlowSearchLog} from the time it is handled until it completes,
+ * unless the {@link FhirConstants#OPENMRS_FHIR_SLOW_SEARCH_THRESHOLD} global property is 0. <br/>
+ * This must be registered after the {@link MetricsInterceptor}, which tags the request, so that the
+ * times of the stages of the request can be added up. The trace is ended before the
+ * {@link MetricsInterceptor} stops tagging the request, so those times can still be read.
+ */
+@Interceptor
+public class SlowSearchInterceptor {
+	
+	private final FhirGlobalPropertyService globalPropertyService;
+	
+	public SlowSearchInterceptor(FhirGlobalPropertyService globalPropertyService) {
+		this.globalPropertyService = globalPropertyService;
+	}
+	
+	@Hook(Pointcut.SERVER_INCOMING_REQUEST_PRE_HANDLED)
+	public void startTrace() {
+		if (globalPropertyService != null) {
+			SlowSearchLog.startTrace(globalPropertyService
+			        .getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_SLOW_SEARCH_THRESHOLD, 1000));
+		}
+	}
+	
+	@Hook(value = Pointcut.SERVER_PROCESSING_COMPLETED, order = -1)
+	public void endTrace() {
+		SlowSearchLog.endTrace();
+	}
+}
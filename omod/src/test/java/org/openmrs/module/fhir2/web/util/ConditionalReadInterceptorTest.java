@@ -0,0 +1,111 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import ca.uhn.fhir.rest.api.Constants;
+import ca.uhn.fhir.rest.api.RestOperationTypeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.exceptions.NotModifiedException;
+import org.hl7.fhir.r4.model.IdType;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.FhirPatientService;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ConditionalReadInterceptorTest {
+	
+	private static final String PATIENT_UUID = "a7e04421-525f-442f-8138-05b619d16def";
+	
+	private static final String VERSION_ID = "1577836800000";
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@Mock
+	private FhirPatientService patientService;
+	
+	@Mock
+	private RequestDetails requestDetails;
+	
+	private ConditionalReadInterceptor interceptor;
+	
+	@Before
+	public void setup() {
+		interceptor = new ConditionalReadInterceptor(globalPropertyService, Collections.singletonList(patientService));
+		
+		when(globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_CONDITIONAL_READ_RESOURCE_TYPES, ""))
+		        .thenReturn("Location, Patient");
+		when(requestDetails.getResourceName()).thenReturn("Patient");
+	}
+	
+	@Test(expected = NotModifiedException.class)
+	public void shouldAnswerNotModifiedWhenETagMatchesCurrentVersion() {
+		when(requestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH)).thenReturn("W/\"" + VERSION_ID + "\"");
+		when(requestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE)).thenReturn(null);
+		when(requestDetails.getId()).thenReturn(new IdType("Patient", PATIENT_UUID));
+		when(patientService.getVersionId(PATIENT_UUID)).thenReturn(VERSION_ID);
+		
+		interceptor.handleIncomingRequest(requestDetails, null, RestOperationTypeEnum.READ);
+	}
+	
+	@Test
+	public void shouldContinueWhenETagDoesNotMatchCurrentVersion() {
+		when(requestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH)).thenReturn("W/\"1\", \"2\"");
+		when(requestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE)).thenReturn(null);
+		when(requestDetails.getId()).thenReturn(new IdType("Patient", PATIENT_UUID));
+		when(patientService.getVersionId(PATIENT_UUID)).thenReturn(VERSION_ID);
+		
+		interceptor.handleIncomingRequest(requestDetails, null, RestOperationTypeEnum.READ);
+	}
+	
+	@Test
+	public void shouldAnswerNotModifiedWhenNotModifiedSince() {
+		when(requestDetails.getHeader(Constants.HEADER_IF_NONE_MATCH)).thenReturn(null);
+		when(requestDetails.getHeader(Constants.HEADER_IF_MODIFIED_SINCE)).thenReturn("Wed, 01 Jan 2020 00:00:00 GMT");
+		when(requestDetails.getId()).thenReturn(new IdType("Patient", PATIENT_UUID));
+		when(patientService.getVersionId(PATIENT_UUID)).thenReturn(VERSION_ID, "1577836801000");
+		
+		boolean notModified = false;
+		try {
+			interceptor.handleIncomingRequest(requestDetails, null, RestOperationTypeEnum.READ);
+		}
+		catch (NotModifiedException e) {
+			notModified = true;
+		}
+		
+		assertThat(notModified, equalTo(true));
+		
+		// modified a second later
+		interceptor.handleIncomingRequest(requestDetails, null, RestOperationTypeEnum.READ);
+	}
+	
+	@Test
+	public void shouldIgnoreResourceTypesWhichAreNotEnabled() {
+		when(requestDetails.getResourceName()).thenReturn("Observation");
+		
+		interceptor.handleIncomingRequest(requestDetails, null, RestOperationTypeEnum.READ);
+		
+		verify(patientService, never()).getVersionId(any());
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.notNullValue;
+import static org.hamcrest.Matchers.nullValue;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import ca.uhn.fhir.rest.api.server.IBundleProvider;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.SimpleBundleProvider;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.api.search.KeysetBundleProvider;
+import org.openmrs.module.fhir2.api.search.MemorySearchResultStore;
+
+@RunWith(MockitoJUnitRunner.class)
+public class OpenmrsFhirPagingProviderTest {
+	
+	private static final String SEARCH_UUID = "7a1d7a2c-7a1b-4c43-9a6c-9d1a4ca2ec4b";
+	
+	private static final String PAGE_ID = "AQACAwADRG9lAQAAACo";
+	
+	@Mock
+	private RequestDetails requestDetails;
+	
+	private OpenmrsFhirPagingProvider pagingProvider;
+	
+	@Before
+	public void setup() {
+		pagingProvider = new OpenmrsFhirPagingProvider(new MemorySearchResultStore(2, 60000));
+	}
+	
+	@Test
+	public void shouldStoreSearchUsingBundleProviderUuid() {
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider(Collections.emptyList(), SEARCH_UUID);
+		
+		String searchId = pagingProvider.storeResultList(requestDetails, bundleProvider);
+		
+		assertThat(searchId, equalTo(SEARCH_UUID));
+		assertThat(pagingProvider.retrieveResultList(requestDetails, SEARCH_UUID), sameInstance(bundleProvider));
+	}
+	
+	@Test
+	public void shouldGenerateSearchIdWhenBundleProviderHasNoUuid() {
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider();
+		
+		String searchId = pagingProvider.storeResultList(requestDetails, bundleProvider);
+		
+		assertThat(searchId, notNullValue());
+		assertThat(pagingProvider.retrieveResultList(requestDetails, searchId), sameInstance(bundleProvider));
+	}
+	
+	@Test
+	public void shouldResumeKeysetBundleProviderAtPageId() {
+		KeysetBundleProvider bundleProvider = mock(KeysetBundleProvider.class);
+		IBundleProvider page = mock(IBundleProvider.class);
+		when(bundleProvider.getUuid()).thenReturn(SEARCH_UUID);
+		when(bundleProvider.forPage(PAGE_ID)).thenReturn(page);
+		
+		pagingProvider.storeResultList(requestDetails, bundleProvider);
+		
+		assertThat(pagingProvider.retrieveResultList(requestDetails, SEARCH_UUID, PAGE_ID), sameInstance(page));
+	}
+	
+	@Test
+	public void shouldReturnStoredSearchForPageIdWhenNotKeysetBundleProvider() {
+		SimpleBundleProvider bundleProvider = new SimpleBundleProvider(Collections.emptyList(), SEARCH_UUID);
+		
+		pagingProvider.storeResultList(requestDetails, bundleProvider);
+		
+		assertThat(pagingProvider.retrieveResultList(requestDetails, SEARCH_UUID, PAGE_ID),
+		    sameInstance(bundleProvider));
+	}
+	
+	@Test
+	public void shouldReturnNullForUnknownSearch() {
+		assertThat(pagingProvider.retrieveResultList(requestDetails, SEARCH_UUID, PAGE_ID), nullValue());
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+
+import ca.uhn.fhir.context.FhirContext;
+import ca.uhn.fhir.rest.api.SearchTotalModeEnum;
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.api.server.ResponseDetails;
+import ca.uhn.fhir.rest.server.exceptions.InvalidRequestException;
+import org.hl7.fhir.r4.model.Bundle;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.api.search.SearchTotalModeHolder;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SearchTotalInterceptorTest {
+	
+	@Mock
+	private RequestDetails requestDetails;
+	
+	private final SearchTotalInterceptor interceptor = new SearchTotalInterceptor();
+	
+	@After
+	public void tearDown() {
+		SearchTotalModeHolder.clear();
+	}
+	
+	@Test
+	public void shouldHoldTheRequestedTotalModeUntilTheRequestCompletes() {
+		when(requestDetails.getParameters()).thenReturn(Collections.singletonMap("_total", new String[] { "none" }));
+		
+		interceptor.handleSearchTotal(requestDetails);
+		assertThat(SearchTotalModeHolder.get(), equalTo(SearchTotalModeEnum.NONE));
+		
+		interceptor.clearSearchTotal();
+		assertThat(SearchTotalModeHolder.get(), nullValue());
+	}
+	
+	@Test
+	public void shouldNotHoldATotalModeWhenNoneIsRequested() {
+		SearchTotalModeHolder.set(SearchTotalModeEnum.ESTIMATED);
+		
+		when(requestDetails.getParameters()).thenReturn(Collections.emptyMap());
+		
+		interceptor.handleSearchTotal(requestDetails);
+		
+		assertThat(SearchTotalModeHolder.get(), nullValue());
+	}
+	
+	@Test
+	public void shouldSendTheLeastNumberOfResultsAsAMissingTotal() {
+		SearchTotalModeHolder.setMinimumTotal(1001);
+		when(requestDetails.getFhirContext()).thenReturn(FhirContext.forR4Cached());
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET);
+		ResponseDetails responseDetails = new ResponseDetails(bundle);
+		
+		interceptor.handleMinimumTotal(requestDetails, responseDetails);
+		
+		assertThat(bundle.getTotal(), equalTo(1001));
+	}
+	
+	@Test
+	public void shouldNotReplaceAKnownTotal() {
+		SearchTotalModeHolder.setMinimumTotal(1001);
+		when(requestDetails.getFhirContext()).thenReturn(FhirContext.forR4Cached());
+		Bundle bundle = new Bundle().setType(Bundle.BundleType.SEARCHSET).setTotal(1200);
+		ResponseDetails responseDetails = new ResponseDetails(bundle);
+		
+		interceptor.handleMinimumTotal(requestDetails, responseDetails);
+		
+		assertThat(bundle.getTotal(), equalTo(1200));
+	}
+	
+	@Test(expected = InvalidRequestException.class)
+	public void shouldRejectAnUnknownTotalMode() {
+		when(requestDetails.getParameters())
+		        .thenReturn(Collections.singletonMap("_total", new String[] { "approximate" }));
+		
+		interceptor.handleSearchTotal(requestDetails);
+	}
+}
@@ -0,0 +1,90 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.matchesPattern;
+import static org.hamcrest.Matchers.nullValue;
+import static org.mockito.Mockito.when;
+
+import ca.uhn.fhir.rest.api.server.RequestDetails;
+import ca.uhn.fhir.rest.server.servlet.ServletRequestDetails;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+@RunWith(MockitoJUnitRunner.class)
+public class ServerTimingInterceptorTest {
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	private final MockHttpServletResponse servletResponse = new MockHttpServletResponse();
+	
+	private final RequestDetails requestDetails = new ServletRequestDetails();
+	
+	@After
+	public void tearDown() {
+		FhirMetrics.endRequest();
+	}
+	
+	@Test
+	public void shouldSendTheTimeSpentInEachStage() {
+		when(globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_SERVER_TIMING, "false"))
+		        .thenReturn("true");
+		ServerTimingInterceptor interceptor = new ServerTimingInterceptor(globalPropertyService);
+		
+		FhirMetrics.startRequest("Patient", "search-type");
+		interceptor.startTiming(requestDetails);
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		
+		assertThat(interceptor.addServerTiming(requestDetails, servletResponse), equalTo(true));
+		assertThat(servletResponse.getHeader(ServerTimingInterceptor.HEADER_SERVER_TIMING),
+		    matchesPattern("db-query;dur=\\d+\\.\\d{3}, db-count;dur=0\\.000, translate;dur=0\\.000, "
+		            + "include;dur=0\\.000, revinclude;dur=0\\.000"));
+	}
+	
+	@Test
+	public void shouldNotSendServerTimingUnlessEnabled() {
+		when(globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_SERVER_TIMING, "false"))
+		        .thenReturn("false");
+		ServerTimingInterceptor interceptor = new ServerTimingInterceptor(globalPropertyService);
+		
+		FhirMetrics.startRequest("Patient", "search-type");
+		interceptor.startTiming(requestDetails);
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		
+		assertThat(interceptor.addServerTiming(requestDetails, servletResponse), equalTo(true));
+		assertThat(servletResponse.getHeader(ServerTimingInterceptor.HEADER_SERVER_TIMING), nullValue());
+		assertThat(FhirMetrics.getRequestTime(FhirMetrics.QUERY), equalTo(-1L));
+	}
+	
+	@Test
+	public void shouldNotSendServerTimingWhenTheRequestTimesAreAddedUpForOtherUses() {
+		when(globalPropertyService.getGlobalProperty(FhirConstants.OPENMRS_FHIR_SERVER_TIMING, "false"))
+		        .thenReturn("false");
+		ServerTimingInterceptor interceptor = new ServerTimingInterceptor(globalPropertyService);
+		
+		FhirMetrics.startRequest("Patient", "search-type");
+		FhirMetrics.accumulateRequestTimes();
+		interceptor.startTiming(requestDetails);
+		FhirMetrics.startTimer(FhirMetrics.QUERY).close();
+		
+		assertThat(interceptor.addServerTiming(requestDetails, servletResponse), equalTo(true));
+		assertThat(servletResponse.getHeader(ServerTimingInterceptor.HEADER_SERVER_TIMING), nullValue());
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.web.util;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.junit.MockitoJUnitRunner;
+import org.openmrs.module.fhir2.FhirConstants;
+import org.openmrs.module.fhir2.api.FhirGlobalPropertyService;
+import org.openmrs.module.fhir2.api.metrics.FhirMetrics;
+import org.openmrs.module.fhir2.api.metrics.SlowSearchLog;
+
+@RunWith(MockitoJUnitRunner.class)
+public class SlowSearchInterceptorTest {
+	
+	@Mock
+	private FhirGlobalPropertyService globalPropertyService;
+	
+	@After
+	public void tearDown() {
+		SlowSearchLog.endTrace();
+		FhirMetrics.endRequest();
+	}
+	
+	@Test
+	public void shouldTraceTheRequestUntilItCompletes() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_SLOW_SEARCH_THRESHOLD, 1000))
+		        .thenReturn(1000);
+		SlowSearchInterceptor interceptor = new SlowSearchInterceptor(globalPropertyService);
+		
+		FhirMetrics.startRequest("Patient", "search-type");
+		interceptor.startTrace();
+		assertThat(SlowSearchLog.isTraced(), equalTo(true));
+		// the count is timed whether or not Server-Timing is enabled
+		assertThat(FhirMetrics.getRequestTime(FhirMetrics.COUNT), equalTo(0L));
+		
+		interceptor.endTrace();
+		assertThat(SlowSearchLog.isTraced(), equalTo(false));
+	}
+	
+	@Test
+	public void shouldNotTraceTheRequestWhenTheLogIsDisabled() {
+		when(globalPropertyService.getGlobalPropertyAsInteger(FhirConstants.OPENMRS_FHIR_SLOW_SEARCH_THRESHOLD, 1000))
+		        .thenReturn(0);
+		SlowSearchInterceptor interceptor = new SlowSearchInterceptor(globalPropertyService);
+		
+		interceptor.startTrace();
+		
+		assertThat(SlowSearchLog.isTraced(), equalTo(false));
+	}
+}
@@ -0,0 +1,640 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.testdata;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Bulk loads a synthetic, but realistic, clinical dataset into an OpenMRS database, so that the
+ * FHIR DAOs can be tested against data of the size found in production. <br/>
+ * The dataset is made of a tree of locations, patients with names, identifiers and attributes,
+ * visits, encounters with their providers, obs (including obs groups), test orders, cohorts and
+ * concept mappings. Everything is drawn from a {@link Random} seeded with the given seed, so the same
+ * settings always load the same rows, with the same uuids. <br/>
+ * The rows are inserted with JDBC batches and refer to the metadata of the standard test dataset
+ * (the admin user, the first identifier type, visit type, encounter type, etc.) by default, so the
+ * generator can be run against the H2 database of the context sensitive tests once the standard
+ * test data is loaded, or against a MySQL database. Ids are allocated after the highest id already
+ * in each table. When generating into MySQL, add {@code rewriteBatchedStatements=true} to the
+ * connection url so the driver sends each batch as a single statement. <br/>
+ * If the connection is in auto-commit mode, the generator commits after each batch; otherwise, the
+ * rows are left for the caller to commit or roll back. With the settings below, 100,000 patients with
+ * two visits of one encounter each and five obs per encounter make a million obs:
+ *
+ * <pre>
+ * new SyntheticDataGenerator(42L).patients(100_000).visitsPerPatient(2).encountersPerVisit(1).obsPerEncounter(5)
+ *         .generate(connection);
+ * </pre>
+ */
+public class SyntheticDataGenerator {
+	
+	private static final String[] GIVEN_NAMES = { "Amina", "Brian", "Chidi", "Daniela", "Esther", "Felix", "Grace",
+	        "Hassan", "Imani", "Joseph", "Kwame", "Lucia", "Moses", "Nadia", "Omar", "Priya", "Rose", "Samuel",
+	        "Tendai", "Wanjiru" };
+	
+	private static final String[] FAMILY_NAMES = { "Achieng", "Banda", "Chanda", "Dlamini", "Etienne", "Fernandes",
+	        "Gitau", "Haddad", "Ivanova", "Juma", "Kamau", "Lungu", "Mensah", "Nkosi", "Otieno", "Perez", "Rono",
+	        "Sithole", "Tembo", "Wekesa" };
+	
+	private static final LocalDate FIRST_VISIT_DATE = LocalDate.of(2015, 1, 1);
+	
+	private static final int VISIT_DAYS = 3650;
+	
+	private static final Timestamp DATE_CREATED = Timestamp.valueOf(LocalDateTime.of(2015, 1, 1, 0, 0));
+	
+	private final long seed;
+	
+	private Random random;
+	
+	private int batchSize = 1000;
+	
+	private int patients = 1000;
+	
+	private int visitsPerPatient = 2;
+	
+	private int encountersPerVisit = 2;
+	
+	private int obsPerEncounter = 5;
+	
+	private int obsGroupsPerEncounter = 1;
+	
+	private int ordersPerEncounter = 1;
+	
+	private int locationDepth = 3;
+	
+	private int locationsPerParent = 4;
+	
+	private int cohorts = 10;
+	
+	private int patientsPerCohort = 500;
+	
+	private int conceptMappings = 100;
+	
+	private int creatorId = 1;
+	
+	private int identifierTypeId = 1;
+	
+	private int personAttributeTypeId = 1;
+	
+	private int visitTypeId = 1;
+	
+	private int encounterTypeId = 1;
+	
+	private int encounterRoleId = 1;
+	
+	private int providerId = 1;
+	
+	private int orderTypeId = 2;
+	
+	private int careSettingId = 1;
+	
+	private int conceptSourceId = 1;
+	
+	private int conceptMapTypeId = 2;
+	
+	private int obsGroupConceptId = 23;
+	
+	private int[] numericConceptIds = { 5089, 5497 };
+	
+	private int[] orderConceptIds = { 5497 };
+	
+	private int[] mappedConceptIds = { 5089, 5497 };
+	
+	/**
+	 * @param seed the seed of the values drawn for the dataset
+	 */
+	public SyntheticDataGenerator(long seed) {
+		this.seed = seed;
+	}
+	
+	/**
+	 * @param batchSize the number of rows sent to the database in each batch
+	 */
+	public SyntheticDataGenerator batchSize(int batchSize) {
+		this.batchSize = batchSize;
+		return this;
+	}
+	
+	public SyntheticDataGenerator patients(int patients) {
+		this.patients = patients;
+		return this;
+	}
+	
+	public SyntheticDataGenerator visitsPerPatient(int visitsPerPatient) {
+		this.visitsPerPatient = visitsPerPatient;
+		return this;
+	}
+	
+	public SyntheticDataGenerator encountersPerVisit(int encountersPerVisit) {
+		this.encountersPerVisit = encountersPerVisit;
+		return this;
+	}
+	
+	/**
+	 * @param obsPerEncounter the number of obs of each encounter which are not part of an obs group
+	 */
+	public SyntheticDataGenerator obsPerEncounter(int obsPerEncounter) {
+		this.obsPerEncounter = obsPerEncounter;
+		return this;
+	}
+	
+	/**
+	 * @param obsGroupsPerEncounter the number of obs groups of each encounter, each of which has one
+	 *            member for each of the numeric concepts
+	 */
+	public SyntheticDataGenerator obsGroupsPerEncounter(int obsGroupsPerEncounter) {
+		this.obsGroupsPerEncounter = obsGroupsPerEncounter;
+		return this;
+	}
+	
+	public SyntheticDataGenerator ordersPerEncounter(int ordersPerEncounter) {
+		this.ordersPerEncounter = ordersPerEncounter;
+		return this;
+	}
+	
+	/**
+	 * Sets the shape of the tree of locations. Patients, visits and encounters are placed at the leaves
+	 * of the tree.
+	 *
+	 * @param locationDepth the number of levels of the tree
+	 * @param locationsPerParent the number of children of each location which is not a leaf
+	 */
+	public SyntheticDataGenerator locations(int locationDepth, int locationsPerParent) {
+		this.locationDepth = locationDepth;
+		this.locationsPerParent = locationsPerParent;
+		return this;
+	}
+	
+	public SyntheticDataGenerator cohorts(int cohorts, int patientsPerCohort) {
+		this.cohorts = cohorts;
+		this.patientsPerCohort = patientsPerCohort;
+		return this;
+	}
+	
+	/**
+	 * @param conceptMappings the number of reference terms to create, each mapped to one of the mapped
+	 *            concepts
+	 */
+	public SyntheticDataGenerator conceptMappings(int conceptMappings) {
+		this.conceptMappings = conceptMappings;
+		return this;
+	}
+	
+	public SyntheticDataGenerator creatorId(int creatorId) {
+		this.creatorId = creatorId;
+		return this;
+	}
+	
+	public SyntheticDataGenerator identifierTypeId(int identifierTypeId) {
+		this.identifierTypeId = identifierTypeId;
+		return this;
+	}
+	
+	public SyntheticDataGenerator personAttributeTypeId(int personAttributeTypeId) {
+		this.personAttributeTypeId = personAttributeTypeId;
+		return this;
+	}
+	
+	public SyntheticDataGenerator visitTypeId(int visitTypeId) {
+		this.visitTypeId = visitTypeId;
+		return this;
+	}
+	
+	public SyntheticDataGenerator encounterTypeId(int encounterTypeId) {
+		this.encounterTypeId = encounterTypeId;
+		return this;
+	}
+	
+	public SyntheticDataGenerator encounterProvider(int providerId, int encounterRoleId) {
+		this.providerId = providerId;
+		this.encounterRoleId = encounterRoleId;
+		return this;
+	}
+	
+	/**
+	 * @param orderTypeId the order type of the orders, which must be a test order type
+	 * @param careSettingId the care setting of the orders
+	 * @param orderConceptIds the concepts ordered
+	 */
+	public SyntheticDataGenerator orders(int orderTypeId, int careSettingId, int... orderConceptIds) {
+		this.orderTypeId = orderTypeId;
+		this.careSettingId = careSettingId;
+		this.orderConceptIds = orderConceptIds;
+		return this;
+	}
+	
+	/**
+	 * @param obsGroupConceptId the concept of the obs groups
+	 * @param numericConceptIds the numeric concepts of the obs, and of the members of obs groups
+	 */
+	public SyntheticDataGenerator obsConcepts(int obsGroupConceptId, int... numericConceptIds) {
+		this.obsGroupConceptId = obsGroupConceptId;
+		this.numericConceptIds = numericConceptIds;
+		return this;
+	}
+	
+	/**
+	 * @param conceptSourceId the concept source of the reference terms
+	 * @param conceptMapTypeId the map type of the concept mappings
+	 * @param mappedConceptIds the concepts the reference terms are mapped to
+	 */
+	public SyntheticDataGenerator conceptSource(int conceptSourceId, int conceptMapTypeId, int... mappedConceptIds) {
+		this.conceptSourceId = conceptSourceId;
+		this.conceptMapTypeId = conceptMapTypeId;
+		this.mappedConceptIds = mappedConceptIds;
+		return this;
+	}
+	
+	/**
+	 * Loads the dataset into the database of the given connection
+	 *
+	 * @param connection the connection to the database to load
+	 * @return the number of rows inserted into each table, in the order the tables were loaded
+	 * @throws SQLException if the rows could not be inserted
+	 */
+	public Map<String, Integer> generate(Connection connection) throws SQLException {
+		random = new Random(seed);
+		Map<String, Integer> rowCounts = new LinkedHashMap<>();
+		
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			List<Integer> locationIds = generateLocations(connection, rowCounts, autoCommit);
+			List<Integer> patientIds = generatePatients(connection, rowCounts, autoCommit, locationIds);
+			generateVisits(connection, rowCounts, autoCommit, locationIds, patientIds);
+			generateCohorts(connection, rowCounts, autoCommit, patientIds);
+			generateConceptMappings(connection, rowCounts, autoCommit);
+		}
+		finally {
+			if (autoCommit) {
+				connection.setAutoCommit(true);
+			}
+		}
+		
+		return rowCounts;
+	}
+	
+	private List<Integer> generateLocations(Connection connection, Map<String, Integer> rowCounts, boolean commit)
+	        throws SQLException {
+		List<Integer> leaves = new ArrayList<>();
+		try (BatchInsert location = new BatchInsert(connection, "location", commit, "location_id", "name",
+		        "description", "parent_location", "creator", "date_created", "retired", "uuid")) {
+			int nextLocationId = nextId(connection, "location", "location_id");
+			List<Integer> parents = Collections.singletonList(null);
+			for (int level = 1; level <= locationDepth; level++) {
+				List<Integer> children = new ArrayList<>();
+				for (Integer parent : parents) {
+					for (int i = 0; i < locationsPerParent; i++) {
+						int locationId = nextLocationId++;
+						location.add(locationId, "Synthetic Location " + locationId, "Level " + level + " location",
+						    parent, creatorId, DATE_CREATED, false, newUuid());
+						children.add(locationId);
+					}
+				}
+				
+				parents = children;
+			}
+			
+			leaves.addAll(parents);
+			location.countInto(rowCounts);
+		}
+		
+		return leaves;
+	}
+	
+	private List<Integer> generatePatients(Connection connection, Map<String, Integer> rowCounts, boolean commit,
+	        List<Integer> locationIds) throws SQLException {
+		List<Integer> patientIds = new ArrayList<>(patients);
+		int nextPersonId = nextId(connection, "person", "person_id");
+		int nextNameId = nextId(connection, "person_name", "person_name_id");
+		int nextIdentifierId = nextId(connection, "patient_identifier", "patient_identifier_id");
+		int nextAttributeId = nextId(connection, "person_attribute", "person_attribute_id");
+		
+		try (BatchInsert person = new BatchInsert(connection, "person", commit, "person_id", "gender", "birthdate",
+		        "birthdate_estimated", "dead", "creator", "date_created", "voided", "uuid");
+		        BatchInsert patient = new BatchInsert(connection, "patient", commit, "patient_id", "creator",
+		                "date_created", "voided").after(person);
+		        BatchInsert personName = new BatchInsert(connection, "person_name", commit, "person_name_id",
+		                "person_id", "preferred", "given_name", "family_name", "creator", "date_created", "voided",
+		                "uuid").after(person);
+		        BatchInsert patientIdentifier = new BatchInsert(connection, "patient_identifier", commit,
+		                "patient_identifier_id", "patient_id", "identifier", "identifier_type", "preferred",
+		                "location_id", "creator", "date_created", "voided", "uuid").after(patient);
+		        BatchInsert personAttribute = new BatchInsert(connection, "person_attribute", commit,
+		                "person_attribute_id", "person_id", "value", "person_attribute_type_id", "creator",
+		                "date_created", "voided", "uuid").after(person)) {
+			for (int i = 0; i < patients; i++) {
+				int personId = nextPersonId++;
+				patientIds.add(personId);
+				
+				person.add(personId, random.nextBoolean() ? "M" : "F", newBirthdate(), false, false, creatorId,
+				    DATE_CREATED, false, newUuid());
+				patient.add(personId, creatorId, DATE_CREATED, false);
+				personName.add(nextNameId++, personId, true, pick(GIVEN_NAMES), pick(FAMILY_NAMES), creatorId,
+				    DATE_CREATED, false, newUuid());
+				patientIdentifier.add(nextIdentifierId++, personId, "SYN-" + personId, identifierTypeId, true,
+				    pick(locationIds), creatorId, DATE_CREATED, false, newUuid());
+				personAttribute.add(nextAttributeId++, personId, "Attribute " + random.nextInt(100),
+				    personAttributeTypeId, creatorId, DATE_CREATED, false, newUuid());
+			}
+			
+			person.countInto(rowCounts);
+			patient.countInto(rowCounts);
+			personName.countInto(rowCounts);
+			patientIdentifier.countInto(rowCounts);
+			personAttribute.countInto(rowCounts);
+		}
+		
+		return patientIds;
+	}
+	
+	private void generateVisits(Connection connection, Map<String, Integer> rowCounts, boolean commit,
+	        List<Integer> locationIds, List<Integer> patientIds) throws SQLException {
+		int nextVisitId = nextId(connection, "visit", "visit_id");
+		int nextEncounterId = nextId(connection, "encounter", "encounter_id");
+		int nextEncounterProviderId = nextId(connection, "encounter_provider", "encounter_provider_id");
+		int nextObsId = nextId(connection, "obs", "obs_id");
+		int nextOrderId = nextId(connection, "orders", "order_id");
+		
+		// obs groups are added to the same batches as their members, before them, so they are always inserted first
+		try (BatchInsert visit = new BatchInsert(connection, "visit", commit, "visit_id", "patient_id", "visit_type_id",
+		        "date_started", "date_stopped", "location_id", "creator", "date_created", "voided", "uuid");
+		        BatchInsert encounter = new BatchInsert(connection, "encounter", commit, "encounter_id",
+		                "encounter_type", "patient_id", "location_id", "visit_id", "encounter_datetime", "creator",
+		                "date_created", "voided", "uuid").after(visit);
+		        BatchInsert encounterProvider = new BatchInsert(connection, "encounter_provider", commit,
+		                "encounter_provider_id", "encounter_id", "provider_id", "encounter_role_id", "creator",
+		                "date_created", "voided", "uuid").after(encounter);
+		        BatchInsert obs = new BatchInsert(connection, "obs", commit, "obs_id", "person_id", "concept_id",
+		                "encounter_id", "obs_group_id", "obs_datetime", "location_id", "value_numeric", "status",
+		                "creator", "date_created", "voided", "uuid").after(encounter);
+		        BatchInsert order = new BatchInsert(connection, "orders", commit, "order_id", "order_type_id",
+		                "order_number", "urgency", "order_action", "concept_id", "orderer", "date_activated",
+		                "patient_id", "care_setting", "encounter_id", "creator", "date_created", "voided", "uuid")
+		                        .after(encounter);
+		        BatchInsert testOrder = new BatchInsert(connection, "test_order", commit, "order_id").after(order)) {
+			for (int patientId : patientIds) {
+				for (int v = 0; v < visitsPerPatient; v++) {
+					int visitId = nextVisitId++;
+					int locationId = pick(locationIds);
+					LocalDateTime visitStart = FIRST_VISIT_DATE.plusDays(random.nextInt(VISIT_DAYS)).atTime(8, 0)
+					        .plusMinutes(random.nextInt(600));
+					visit.add(visitId, patientId, visitTypeId, Timestamp.valueOf(visitStart),
+					    Timestamp.valueOf(visitStart.plusHours(4)), locationId, creatorId, DATE_CREATED, false,
+					    newUuid());
+					
+					for (int e = 0; e < encountersPerVisit; e++) {
+						int encounterId = nextEncounterId++;
+						Timestamp encounterDatetime = Timestamp.valueOf(visitStart.plusMinutes(30L * e));
+						encounter.add(encounterId, encounterTypeId, patientId, locationId, visitId, encounterDatetime,
+						    creatorId, DATE_CREATED, false, newUuid());
+						encounterProvider.add(nextEncounterProviderId++, encounterId, providerId, encounterRoleId,
+						    creatorId, DATE_CREATED, false, newUuid());
+						
+						for (int o = 0; o < obsPerEncounter; o++) {
+							obs.add(nextObsId++, patientId, pick(numericConceptIds), encounterId, null,
+							    encounterDatetime, locationId, newNumericValue(), "FINAL", creatorId, DATE_CREATED,
+							    false, newUuid());
+						}
+						
+						for (int g = 0; g < obsGroupsPerEncounter; g++) {
+							int obsGroupId = nextObsId++;
+							obs.add(obsGroupId, patientId, obsGroupConceptId, encounterId, null, encounterDatetime,
+							    locationId, null, "FINAL", creatorId, DATE_CREATED, false, newUuid());
+							for (int conceptId : numericConceptIds) {
+								obs.add(nextObsId++, patientId, conceptId, encounterId, obsGroupId, encounterDatetime,
+								    locationId, newNumericValue(), "FINAL", creatorId, DATE_CREATED, false, newUuid());
+							}
+						}
+						
+						for (int r = 0; r < ordersPerEncounter; r++) {
+							int orderId = nextOrderId++;
+							order.add(orderId, orderTypeId, "SYN-ORD-" + orderId, "ROUTINE", "NEW",
+							    pick(orderConceptIds), providerId, encounterDatetime, patientId, careSettingId,
+							    encounterId, creatorId, DATE_CREATED, false, newUuid());
+							testOrder.add(orderId);
+						}
+					}
+				}
+			}
+			
+			visit.countInto(rowCounts);
+			encounter.countInto(rowCounts);
+			encounterProvider.countInto(rowCounts);
+			obs.countInto(rowCounts);
+			order.countInto(rowCounts);
+			testOrder.countInto(rowCounts);
+		}
+	}
+	
+	private void generateCohorts(Connection connection, Map<String, Integer> rowCounts, boolean commit,
+	        List<Integer> patientIds) throws SQLException {
+		int nextCohortId = nextId(connection, "cohort", "cohort_id");
+		int nextCohortMemberId = nextId(connection, "cohort_member", "cohort_member_id");
+		
+		try (BatchInsert cohort = new BatchInsert(connection, "cohort", commit, "cohort_id", "name", "description",
+		        "creator", "date_created", "voided", "uuid");
+		        BatchInsert cohortMember = new BatchInsert(connection, "cohort_member", commit, "cohort_member_id",
+		                "cohort_id", "patient_id", "start_date", "creator", "date_created", "voided", "uuid")
+		                        .after(cohort)) {
+			List<Integer> members = new ArrayList<>(patientIds);
+			int size = Math.min(patientsPerCohort, members.size());
+			for (int c = 0; c < cohorts; c++) {
+				int cohortId = nextCohortId++;
+				cohort.add(cohortId, "Synthetic Cohort " + cohortId, "Cohort of " + size + " patients", creatorId,
+				    DATE_CREATED, false, newUuid());
+				
+				Collections.shuffle(members, random);
+				for (int patientId : members.subList(0, size)) {
+					cohortMember.add(nextCohortMemberId++, cohortId, patientId, DATE_CREATED, creatorId, DATE_CREATED,
+					    false, newUuid());
+				}
+			}
+			
+			cohort.countInto(rowCounts);
+			cohortMember.countInto(rowCounts);
+		}
+	}
+	
+	private void generateConceptMappings(Connection connection, Map<String, Integer> rowCounts, boolean commit)
+	        throws SQLException {
+		int nextTermId = nextId(connection, "concept_reference_term", "concept_reference_term_id");
+		int nextMapId = nextId(connection, "concept_reference_map", "concept_map_id");
+		
+		try (BatchInsert term = new BatchInsert(connection, "concept_reference_term", commit,
+		        "concept_reference_term_id", "concept_source_id", "code", "creator", "date_created", "retired", "uuid");
+		        BatchInsert map = new BatchInsert(connection, "concept_reference_map", commit, "concept_map_id",
+		                "concept_reference_term_id", "concept_map_type_id", "concept_id", "creator", "date_created",
+		                "uuid").after(term)) {
+			for (int i = 0; i < conceptMappings; i++) {
+				int termId = nextTermId++;
+				term.add(termId, conceptSourceId, "SYN-" + termId, creatorId, DATE_CREATED, false, newUuid());
+				map.add(nextMapId++, termId, conceptMapTypeId, mappedConceptIds[i % mappedConceptIds.length], creatorId,
+				    DATE_CREATED, newUuid());
+			}
+			
+			term.countInto(rowCounts);
+			map.countInto(rowCounts);
+		}
+	}
+	
+	private static int nextId(Connection connection, String table, String idColumn) throws SQLException {
+		try (Statement statement = connection.createStatement();
+		        ResultSet resultSet = statement.executeQuery("select max(" + idColumn + ") from " + table)) {
+			return resultSet.next() ? resultSet.getInt(1) + 1 : 1;
+		}
+	}
+	
+	private String newUuid() {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+	
+	private java.sql.Date newBirthdate() {
+		return java.sql.Date
+		        .valueOf(LocalDate.of(1940 + random.nextInt(80), 1 + random.nextInt(12), 1 + random.nextInt(28)));
+	}
+	
+	private double newNumericValue() {
+		return 40 + random.nextInt(8000) / 100.0;
+	}
+	
+	private <T> T pick(T[] values) {
+		return values[random.nextInt(values.length)];
+	}
+	
+	private int pick(int[] values) {
+		return values[random.nextInt(values.length)];
+	}
+	
+	private int pick(List<Integer> values) {
+		return values.get(random.nextInt(values.size()));
+	}
+	
+	/**
+	 * Loads a dataset into a database from the command line. The JDBC driver of the database must be on
+	 * the classpath.
+	 *
+	 * @param args the JDBC url, user and password of the database, followed by the number of patients
+	 *            and the seed, both optional
+	 */
+	public static void main(String[] args) throws SQLException {
+		if (args.length < 3) {
+			System.err.println("Usage: SyntheticDataGenerator <jdbc url> <user> <password> [patients] [seed]");
+			System.exit(1);
+		}
+		
+		SyntheticDataGenerator generator = new SyntheticDataGenerator(args.length > 4 ? Long.parseLong(args[4]) : 42L);
+		if (args.length > 3) {
+			generator.patients(Integer.parseInt(args[3]));
+		}
+		
+		long start = System.nanoTime();
+		try (Connection connection = DriverManager.getConnection(args[0], args[1], args[2])) {
+			Map<String, Integer> rowCounts = generator.generate(connection);
+			rowCounts.forEach((table, rows) -> System.out.println(table + ": " + rows + " rows"));
+		}
+		
+		System.out.println("Loaded in " + (System.nanoTime() - start) / 1_000_000_000L + "s");
+	}
+	
+	/**
+	 * Inserts rows into a table with JDBC batches, executing each batch once it is full. As the batches
+	 * of different tables fill at different rates, the batches of the tables a table refers to are
+	 * executed before its own, so that the rows it refers to are always inserted first.
+	 */
+	private class BatchInsert implements AutoCloseable {
+		
+		private final Connection connection;
+		
+		private final String table;
+		
+		private final boolean commit;
+		
+		private final PreparedStatement statement;
+		
+		private final List<BatchInsert> dependencies = new ArrayList<>();
+		
+		private int pending = 0;
+		
+		private int rows = 0;
+		
+		BatchInsert(Connection connection, String table, boolean commit, String... columns) throws SQLException {
+			this.connection = connection;
+			this.table = table;
+			this.commit = commit;
+			
+			String[] placeholders = new String[columns.length];
+			Arrays.fill(placeholders, "?");
+			this.statement = connection.prepareStatement("insert into " + table + " (" + String.join(", ", columns)
+			        + ") values (" + String.join(", ", placeholders) + ")");
+		}
+		
+		BatchInsert after(BatchInsert... dependencies) {
+			this.dependencies.addAll(Arrays.asList(dependencies));
+			return this;
+		}
+		
+		void add(Object... values) throws SQLException {
+			for (int i = 0; i < values.length; i++) {
+				statement.setObject(i + 1, values[i]);
+			}
+			
+			statement.addBatch();
+			rows++;
+			if (++pending >= batchSize) {
+				flush();
+			}
+		}
+		
+		void countInto(Map<String, Integer> rowCounts) {
+			rowCounts.put(table, rows);
+		}
+		
+		private void flush() throws SQLException {
+			if (pending > 0) {
+				for (BatchInsert dependency : dependencies) {
+					dependency.flush();
+				}
+				
+				statement.executeBatch();
+				pending = 0;
+				if (commit) {
+					connection.commit();
+				}
+			}
+		}
+		
+		@Override
+		public void close() throws SQLException {
+			try {
+				flush();
+			}
+			finally {
+				statement.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,102 @@
+/*
+ * This Source Code Form is subject to the terms of the Mozilla Public License,
+ * v. 2.0. If a copy of the MPL was not distributed with this file, You can
+ * obtain one at http://mozilla.org/MPL/2.0/. OpenMRS is also distributed under
+ * the terms of the Healthcare Disclaimer located at http://openmrs.org/license.
+ *
+ * Copyright (C) OpenMRS Inc. OpenMRS is a registered trademark and the OpenMRS
+ * graphic logo is a trademark of OpenMRS Inc.
+ */
+package org.openmrs.module.fhir2.testdata;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.hasEntry;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.notNullValue;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.openmrs.Obs;
+import org.openmrs.Patient;
+import org.openmrs.api.ObsService;
+import org.openmrs.api.PatientService;
+import org.openmrs.test.BaseContextSensitiveTest;
+import org.springframework.beans.factory.annotation.Autowired;
+
+public class SyntheticDataGeneratorTest extends BaseContextSensitiveTest {
+	
+	private static final long SEED = 42L;
+	
+	@Autowired
+	private PatientService patientService;
+	
+	@Autowired
+	private ObsService obsService;
+	
+	@Test
+	public void generate_shouldLoadTheRequestedNumberOfRows() throws SQLException {
+		Map<String, Integer> rowCounts = smallDataset().generate(getConnection());
+		
+		assertThat(rowCounts, hasEntry("location", 12));
+		assertThat(rowCounts, hasEntry("patient", 20));
+		assertThat(rowCounts, hasEntry("patient_identifier", 20));
+		assertThat(rowCounts, hasEntry("visit", 40));
+		assertThat(rowCounts, hasEntry("encounter", 80));
+		// three obs, one obs group and its two members for each encounter
+		assertThat(rowCounts, hasEntry("obs", 480));
+		assertThat(rowCounts, hasEntry("orders", 80));
+		assertThat(rowCounts, hasEntry("cohort_member", 20));
+		assertThat(rowCounts, hasEntry("concept_reference_map", 5));
+		assertThat(queryForString("select count(*) from obs where obs_group_id is not null"), equalTo("160"));
+	}
+	
+	@Test
+	public void generate_shouldLoadRowsHibernateCanRead() throws SQLException {
+		smallDataset().generate(getConnection());
+		
+		Patient patient = patientService.getPatientByUuid(
+		    queryForString("select uuid from person where person_id = (select max(person_id) from person)"));
+		assertThat(patient, notNullValue());
+		assertThat(patient.getPersonName(), notNullValue());
+		assertThat(patient.getPatientIdentifier(), notNullValue());
+		
+		Obs obsGroup = obsService.getObsByUuid(
+		    queryForString("select uuid from obs where obs_id = (select max(obs_group_id) from obs)"));
+		assertThat(obsGroup, notNullValue());
+		assertThat(obsGroup.isObsGrouping(), is(true));
+		assertThat(obsGroup.getGroupMembers(), hasSize(2));
+	}
+	
+	@Test
+	public void generate_shouldDrawTheDatasetFromTheSeed() throws SQLException {
+		smallDataset().generate(getConnection());
+		
+		Random random = new Random(SEED);
+		String firstUuid = new UUID(random.nextLong(), random.nextLong()).toString();
+		assertThat(queryForString("select uuid from location where location_id = "
+		        + "(select min(location_id) from location where name like 'Synthetic Location %')"),
+		    equalTo(firstUuid));
+	}
+	
+	private SyntheticDataGenerator smallDataset() {
+		return new SyntheticDataGenerator(SEED).batchSize(7).patients(20).visitsPerPatient(2).encountersPerVisit(2)
+		        .obsPerEncounter(3).obsGroupsPerEncounter(1).ordersPerEncounter(1).locations(2, 3).cohorts(2, 10)
+		        .conceptMappings(5);
+	}
+	
+	private String queryForString(String sql) throws SQLException {
+		try (PreparedStatement statement = getConnection().prepareStatement(sql);
+		        ResultSet resultSet = statement.executeQuery()) {
+			resultSet.next();
+			return resultSet.getString(1);
+		}
+	}
+}